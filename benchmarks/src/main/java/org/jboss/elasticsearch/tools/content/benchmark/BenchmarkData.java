@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.jboss.elasticsearch.tools.content.StructureUtils;
+import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessor;
+import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessorFactory;
+
+/**
+ * Document fixtures and preprocessor configurations shared by benchmarks. Fixtures are JIRA issues with nested
+ * comments, as produced by JIRA river, which is the main user of preprocessors.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class BenchmarkData {
+
+	/**
+	 * Classpath path of JIRA issue used as base for all generated documents.
+	 */
+	public static final String JIRA_ISSUE_FILE = "/jira-issue.json";
+
+	/**
+	 * Classpath path of file with configuration of each built-in preprocessor.
+	 */
+	public static final String PREPROCESSORS_FILE = "/preprocessors.json";
+
+	/**
+	 * Classpath path of file with configuration of representative preprocessor chain.
+	 */
+	public static final String CHAIN_FILE = "/chain.json";
+
+	/**
+	 * Project codes used in generated documents, they are used as lookup keys too.
+	 */
+	public static final String[] PROJECT_CODES = new String[] { "ORG", "SWITCHYARD", "WFLY", "AS7", "RF", "HIBERNATE",
+			"ISPN", "DROOLS", "JBPM", "SEAM" };
+
+	/**
+	 * Read JSON file from classpath into Map of Maps structure.
+	 *
+	 * @param filePath path in classpath pointing to JSON file to read
+	 * @return parsed JSON file
+	 * @throws SettingsException if file can't be read
+	 */
+	public static Map<String, Object> loadJSONFromClasspathFile(String filePath) throws SettingsException {
+		InputStream is = BenchmarkData.class.getResourceAsStream(filePath);
+		if (is == null)
+			throw new SettingsException("File " + filePath + " not found in classpath");
+		XContentParser parser = null;
+		try {
+			parser = XContentFactory.xContent(XContentType.JSON).createParser(is);
+			return parser.mapOrderedAndClose();
+		} catch (IOException e) {
+			throw new SettingsException(e.getMessage(), e);
+		} finally {
+			if (parser != null)
+				parser.close();
+		}
+	}
+
+	/**
+	 * Create preprocessor from configuration stored in {@link #PREPROCESSORS_FILE}.
+	 *
+	 * @param name of preprocessor in configuration file
+	 * @return preprocessor instance
+	 * @throws IllegalArgumentException if preprocessor is not configured
+	 */
+	@SuppressWarnings("unchecked")
+	public static StructuredContentPreprocessor createPreprocessor(String name) throws IllegalArgumentException {
+		List<Map<String, Object>> configs = (List<Map<String, Object>>) loadJSONFromClasspathFile(PREPROCESSORS_FILE)
+				.get("preprocessors");
+		for (Map<String, Object> config : configs) {
+			if (name.equals(config.get("name")))
+				return StructuredContentPreprocessorFactory.createPreprocessor(config, null);
+		}
+		throw new IllegalArgumentException("Preprocessor " + name + " is not configured in " + PREPROCESSORS_FILE);
+	}
+
+	/**
+	 * Create list of JIRA issue documents. Each document has distinct key, and project codes are rotated over
+	 * {@link #PROJECT_CODES}.
+	 *
+	 * @param count of documents to create
+	 * @return list of documents
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Map<String, Object>> createDocuments(int count) {
+		Map<String, Object> issue = loadJSONFromClasspathFile(JIRA_ISSUE_FILE);
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(count);
+		for (int i = 0; i < count; i++) {
+			Map<String, Object> doc = (Map<String, Object>) deepCopy(issue);
+			String projectCode = PROJECT_CODES[i % PROJECT_CODES.length];
+			doc.put("key", projectCode + "-" + (1000 + i));
+			StructureUtils.putValueIntoMapOfMaps(doc, "fields.project.key", projectCode);
+			StructureUtils.putValueIntoMapOfMaps(doc, "fields.projectcode", projectCode);
+			ret.add(doc);
+		}
+		return ret;
+	}
+
+	/**
+	 * Deep copy of Map of Maps structure, as preprocessors change documents in place.
+	 *
+	 * @param value to copy
+	 * @return copy of value, immutable leaf values are shared
+	 */
+	@SuppressWarnings("unchecked")
+	public static Object deepCopy(Object value) {
+		if (value instanceof Map) {
+			Map<String, Object> src = (Map<String, Object>) value;
+			Map<String, Object> ret = new LinkedHashMap<String, Object>(src.size() * 2);
+			for (Map.Entry<String, Object> e : src.entrySet()) {
+				ret.put(e.getKey(), deepCopy(e.getValue()));
+			}
+			return ret;
+		} else if (value instanceof List) {
+			List<Object> src = (List<Object>) value;
+			List<Object> ret = new ArrayList<Object>(src.size());
+			for (Object o : src) {
+				ret.add(deepCopy(o));
+			}
+			return ret;
+		}
+		return value;
+	}
+
+	/**
+	 * Deep copy of list of documents.
+	 *
+	 * @param documents to copy
+	 * @return copied documents
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Map<String, Object>> deepCopy(List<Map<String, Object>> documents) {
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(documents.size());
+		for (Map<String, Object> doc : documents) {
+			ret.add((Map<String, Object>) deepCopy(doc));
+		}
+		return ret;
+	}
+
+}
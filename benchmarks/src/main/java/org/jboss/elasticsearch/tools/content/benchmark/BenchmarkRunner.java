@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with GC profiler, so allocation rate and bytes allocated per operation are reported together with
+ * throughput. Results are written to <code>jmh-result.json</code> so baselines can be compared between versions.
+ * <p>
+ * Usage: <code>java -cp target/benchmarks.jar org.jboss.elasticsearch.tools.content.benchmark.BenchmarkRunner [regexp]</code>
+ * where optional regexp selects benchmarks to run (all are run by default).
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class BenchmarkRunner {
+
+	public static final String RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+		Options options = new OptionsBuilder().include(include).addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON).result(RESULT_FILE).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+import org.jboss.elasticsearch.tools.content.ESLookupValuePreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link ESLookupValuePreprocessor} against in-memory local ElasticSearch node with lookup index
+ * containing one document for each of {@link BenchmarkData#PROJECT_CODES}. Lookup is benchmarked with direct search,
+ * with cache of lookup results and with preloaded lookup table.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ESLookupValuePreprocessorBenchmark {
+
+	private static final int DOCUMENT_COUNT = 100;
+	private static final int BATCH_SIZE = 50;
+
+	private static final String INDEX_NAME = "projects";
+	private static final String INDEX_TYPE = "project";
+
+	@Param({ "search", "cache", "preload" })
+	public String mode;
+
+	private Node node;
+	private Client client;
+	private File dataFolder;
+
+	private ESLookupValuePreprocessor tested;
+
+	private List<Map<String, Object>> documents;
+
+	private int index = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		dataFolder = File.createTempFile("sct-benchmark", "");
+		dataFolder.delete();
+		Settings settings = ImmutableSettings.settingsBuilder().put("index.store.type", "memory")
+				.put("gateway.type", "none").put("http.enabled", "false").put("path.data", dataFolder.getCanonicalPath())
+				.build();
+		node = NodeBuilder.nodeBuilder().settings(settings).local(true).node();
+		client = node.client();
+
+		client.admin().indices().prepareCreate(INDEX_NAME).execute().actionGet();
+		client.admin().indices().preparePutMapping(INDEX_NAME).setType(INDEX_TYPE)
+				.setSource("{\"" + INDEX_TYPE + "\":{\"properties\":{\"jira_project\":{\"type\":\"string\",\"analyzer\":\"keyword\"}}}}")
+				.execute().actionGet();
+		for (String code : BenchmarkData.PROJECT_CODES) {
+			Map<String, Object> project = new HashMap<String, Object>();
+			project.put("jira_project", code);
+			project.put("code", code.toLowerCase());
+			project.put("name", "Project " + code);
+			client.prepareIndex(INDEX_NAME, INDEX_TYPE).setId(code).setSource(project).execute().actionGet();
+		}
+		client.admin().indices().prepareRefresh(INDEX_NAME).execute().actionGet();
+
+		tested = new ESLookupValuePreprocessor();
+		tested.init("Project lookup", client, createSettings(mode));
+		documents = BenchmarkData.createDocuments(DOCUMENT_COUNT);
+	}
+
+	private static Map<String, Object> createSettings(String mode) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put("index_name", INDEX_NAME);
+		settings.put("index_type", INDEX_TYPE);
+		settings.put("source_field", "projectcode");
+		settings.put("idx_search_field", "jira_project");
+		settings.put("source_bases", Arrays.asList("comments.author", "comments.editor"));
+		Map<String, Object> mapping = new HashMap<String, Object>();
+		mapping.put("idx_result_field", "code");
+		mapping.put("target_field", "project_code");
+		mapping.put("value_default", "unknown {projectcode}");
+		settings.put("result_mapping", Collections.singletonList(mapping));
+		if ("cache".equals(mode)) {
+			settings.put("cache_max_entries", 1000);
+		} else if ("preload".equals(mode)) {
+			settings.put("preload", true);
+		}
+		return settings;
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (tested != null)
+			tested.close();
+		if (client != null)
+			client.close();
+		if (node != null)
+			node.close();
+		deleteRecursive(dataFolder);
+	}
+
+	private static void deleteRecursive(File file) {
+		if (file == null || !file.exists())
+			return;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursive(child);
+			}
+		}
+		file.delete();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> nextDocument() {
+		Map<String, Object> doc = documents.get(index);
+		index = (index + 1) % DOCUMENT_COUNT;
+		return (Map<String, Object>) BenchmarkData.deepCopy(doc);
+	}
+
+	@Benchmark
+	public Map<String, Object> preprocessData() {
+		return tested.preprocessData(nextDocument());
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> preprocessBatch() {
+		return tested.preprocessBatch(BenchmarkData.deepCopy(documents.subList(0, BATCH_SIZE)));
+	}
+
+}
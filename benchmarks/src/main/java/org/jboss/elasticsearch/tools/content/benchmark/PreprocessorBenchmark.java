@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link StructuredContentPreprocessor#preprocessData(Map)} for each built-in preprocessor which doesn't
+ * need ElasticSearch client. Preprocessors are configured in <code>preprocessors.json</code>. Each operation processes
+ * fresh copy of JIRA issue document, cost of the copy is measured by {@link #copyDocument()} baseline.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ESLookupValuePreprocessorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessorBenchmark {
+
+	private static final int DOCUMENT_COUNT = 100;
+
+	@Param({ "AddCurrentTimestamp", "AddValue", "AddMultipleValues", "MaxTimestamp", "RequiredValidator",
+			"SimpleValueMapMapper", "StripHtml", "StripHtmlStreaming", "TrimStringValue", "ValuesCollecting" })
+	public String preprocessor;
+
+	private StructuredContentPreprocessor tested;
+
+	private List<Map<String, Object>> documents;
+
+	private int index = 0;
+
+	@Setup
+	public void setup() {
+		tested = BenchmarkData.createPreprocessor(preprocessor);
+		documents = BenchmarkData.createDocuments(DOCUMENT_COUNT);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> nextDocument() {
+		Map<String, Object> doc = documents.get(index);
+		index = (index + 1) % DOCUMENT_COUNT;
+		return (Map<String, Object>) BenchmarkData.deepCopy(doc);
+	}
+
+	@Benchmark
+	public Map<String, Object> copyDocument() {
+		return nextDocument();
+	}
+
+	@Benchmark
+	public Map<String, Object> preprocessData() {
+		return tested.preprocessData(nextDocument());
+	}
+
+}
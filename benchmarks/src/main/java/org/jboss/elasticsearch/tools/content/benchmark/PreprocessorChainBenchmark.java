@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.elasticsearch.tools.content.ChainBatchResult;
+import org.jboss.elasticsearch.tools.content.ParallelPreprocessorChainExecutor;
+import org.jboss.elasticsearch.tools.content.PreprocessorChain;
+import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of representative {@link PreprocessorChain} configured in <code>chain.json</code>, which normalizes JIRA
+ * issue documents similarly as JIRA river does. Chain is benchmarked for one document, for batch of documents, and for
+ * batch processed by {@link ParallelPreprocessorChainExecutor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessorChainBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+	private static final int PARALLELISM = 4;
+
+	private PreprocessorChain chain;
+
+	private ParallelPreprocessorChainExecutor executor;
+
+	private List<Map<String, Object>> documents;
+
+	private int index = 0;
+
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setup() {
+		List<Map<String, Object>> config = (List<Map<String, Object>>) BenchmarkData.loadJSONFromClasspathFile(
+				BenchmarkData.CHAIN_FILE).get("preprocessors");
+		chain = StructuredContentPreprocessorFactory.createPreprocessorChain(config, null);
+		executor = new ParallelPreprocessorChainExecutor(chain, PARALLELISM);
+		documents = BenchmarkData.createDocuments(BATCH_SIZE);
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public Map<String, Object> process() {
+		Map<String, Object> doc = documents.get(index);
+		index = (index + 1) % BATCH_SIZE;
+		return chain.process((Map<String, Object>) BenchmarkData.deepCopy(doc));
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> processBatch() {
+		return chain.processBatch(BenchmarkData.deepCopy(documents));
+	}
+
+	@Benchmark
+	public ChainBatchResult processBatchParallel() {
+		return executor.processBatch(BenchmarkData.deepCopy(documents));
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> copyBatch() {
+		return BenchmarkData.deepCopy(documents);
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content.benchmark;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.elasticsearch.tools.content.StructureUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link StructureUtils} methods over JIRA issue document.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructureUtilsBenchmark {
+
+	private Map<String, Object> document;
+
+	private Map<String, Object> fields;
+
+	private Set<String> keysToLeave;
+
+	private Map<String, String> remapInstructions;
+
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setup() {
+		document = BenchmarkData.createDocuments(1).get(0);
+		fields = (Map<String, Object>) document.get("fields");
+		fields.put("votes_count", "2");
+		keysToLeave = new HashSet<String>();
+		keysToLeave.add("key");
+		keysToLeave.add("fields");
+		keysToLeave.add("comments");
+		remapInstructions = new HashMap<String, String>();
+		remapInstructions.put("key", "dcp_id");
+		remapInstructions.put("fields", "dcp_fields");
+		remapInstructions.put("comments", "dcp_comments");
+	}
+
+	@Benchmark
+	public Integer getIntegerValue() {
+		return StructureUtils.getIntegerValue(fields, "votes_count");
+	}
+
+	@Benchmark
+	public String getStringValue() {
+		return StructureUtils.getStringValue(fields, "summary");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public Map<String, Object> filterDataInMap() {
+		Map<String, Object> copy = (Map<String, Object>) BenchmarkData.deepCopy(document);
+		StructureUtils.filterDataInMap(copy, keysToLeave);
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public Map<String, Object> remapDataInMap() {
+		Map<String, Object> copy = (Map<String, Object>) BenchmarkData.deepCopy(document);
+		StructureUtils.remapDataInMap(copy, remapInstructions);
+		return copy;
+	}
+
+	@Benchmark
+	public Map<String, Object> putValueIntoMapOfMaps() {
+		Map<String, Object> map = new HashMap<String, Object>();
+		StructureUtils.putValueIntoMapOfMaps(map, "fields.project.key", "ORG");
+		StructureUtils.putValueIntoMapOfMaps(map, "fields.project.name", "jboss.org");
+		StructureUtils.putValueIntoMapOfMaps(map, "key", "ORG-1501");
+		return map;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public Map<String, Object> copyDocument() {
+		return (Map<String, Object>) BenchmarkData.deepCopy(document);
+	}
+
+}
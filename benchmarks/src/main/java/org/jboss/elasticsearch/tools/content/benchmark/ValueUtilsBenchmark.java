@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.elasticsearch.tools.content.CompiledTemplate;
+import org.jboss.elasticsearch.tools.content.ValueUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link ValueUtils} methods. Pattern replacement is benchmarked for both per call parsing and
+ * {@link CompiledTemplate}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueUtilsBenchmark {
+
+	private static final String PATTERN = "Issue {key} in project {fields.project.key} reported by {fields.reporter.displayName}: {__original}";
+
+	private static final String CSV = " search, indexer ,jira-river,, ORG-1501 , velias ";
+
+	private Map<String, Object> document;
+
+	private String summary;
+
+	private List<String> csvValues;
+
+	private CompiledTemplate template;
+
+	@Setup
+	public void setup() {
+		document = BenchmarkData.createDocuments(1).get(0);
+		summary = "  Search results are not updated after issue is moved to another project  ";
+		csvValues = ValueUtils.parseCsvString(CSV);
+		template = CompiledTemplate.compile(PATTERN);
+	}
+
+	@Benchmark
+	public String trimToNull() {
+		return ValueUtils.trimToNull(summary);
+	}
+
+	@Benchmark
+	public boolean isEmpty() {
+		return ValueUtils.isEmpty(summary);
+	}
+
+	@Benchmark
+	public List<String> parseCsvString() {
+		return ValueUtils.parseCsvString(CSV);
+	}
+
+	@Benchmark
+	public String createCsvString() {
+		return ValueUtils.createCsvString(csvValues);
+	}
+
+	@Benchmark
+	public String processStringValuePatternReplacement() {
+		return ValueUtils.processStringValuePatternReplacement(PATTERN, document, summary);
+	}
+
+	@Benchmark
+	public String compiledTemplateRender() {
+		return template.render(document, summary);
+	}
+
+}
@@ -5,6 +5,9 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
@@ -34,12 +37,21 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class AddCurrentTimestampPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class AddCurrentTimestampPreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor, StreamableStructuredContentPreprocessor {
 
 	protected static final String CFG_FIELD = "field";
 
 	protected String field;
 
+	/**
+	 * Timestamp shared by documents of batch processed by the thread, <code>null</code> out of
+	 * {@link #preprocessBatch(List)}.
+	 */
+	private final ThreadLocal<String> batchTimestamp = new ThreadLocal<String>();
+	protected FieldPath fieldPath;
+
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
 		if (settings == null) {
@@ -47,16 +59,70 @@ public class AddCurrentTimestampPreprocessor extends StructuredContentPreprocess
 		}
 		field = XContentMapValues.nodeStringValue(settings.get(CFG_FIELD), null);
 		validateConfigurationStringNotEmpty(field, CFG_FIELD);
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldPath = FieldPath.create(field);
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data) {
 		if (data == null)
 			return null;
-		StructureUtils.putValueIntoMapOfMaps(data, field, ISODateTimeFormat.dateTime().print(System.currentTimeMillis()));
+		fieldPath.put(data, getTimestamp());
 		return data;
 	}
 
+	/**
+	 * Get timestamp to be put into document.
+	 *
+	 * @return timestamp shared by whole batch if called from {@link #preprocessBatch(List)}, current timestamp otherwise
+	 */
+	protected String getTimestamp() {
+		String ret = batchTimestamp.get();
+		if (ret == null)
+			ret = ISODateTimeFormat.dateTime().print(System.currentTimeMillis());
+		return ret;
+	}
+
+	/**
+	 * Preprocess batch of documents by {@link #preprocessData(Map)}. Timestamp is formatted only once, so it is same for
+	 * all documents in batch.
+	 */
+	@Override
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> batch) {
+		if (batch == null)
+			return null;
+		batchTimestamp.set(ISODateTimeFormat.dateTime().print(System.currentTimeMillis()));
+		try {
+			List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(batch.size());
+			for (Map<String, Object> data : batch) {
+				ret.add(preprocessData(data));
+			}
+			return ret;
+		} finally {
+			batchTimestamp.remove();
+		}
+	}
+
+	@Override
+	public FieldAccess getFieldAccess() {
+		return new FieldAccess(null, Collections.singletonList(field));
+	}
+
+	@Override
+	public List<StreamingTransform> getStreamingTransforms() {
+		StreamingTransform ret = new StreamingTransform(null, field, true, true) {
+			@Override
+			public Object transform(Object value) {
+				return getTimestamp();
+			}
+		};
+		return Collections.singletonList(ret);
+	}
+
 	public String getField() {
 		return field;
 	}
@@ -5,6 +5,10 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.settings.SettingsException;
@@ -39,34 +43,104 @@ import org.elasticsearch.common.settings.SettingsException;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class AddMultipleValuesPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class AddMultipleValuesPreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor, StreamableStructuredContentPreprocessor {
 
 	protected Map<String, Object> fields;
 
+	protected CompiledFields compiledFields;
+
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
 		if (settings == null) {
 			throw new SettingsException("'settings' section is not defined for preprocessor " + name);
 		}
-		fields = settings;
+		fields = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(settings));
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		compiledFields = new CompiledFields(fields);
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data) {
 		if (data == null)
 			return null;
-		for (String key : fields.keySet()) {
-			Object value = fields.get(key);
-			if (value != null && (value instanceof String) && ((String) value).contains("{")) {
-				value = ValueUtils.processStringValuePatternReplacement((String) value, data, null);
+		CompiledFields cf = compiledFields;
+		for (int i = 0; i < cf.paths.length; i++) {
+			Object value = cf.values[i];
+			if (cf.templates[i] != null) {
+				value = cf.templates[i].render(data, null);
 			}
-			StructureUtils.putValueIntoMapOfMaps(data, key, value);
+			cf.paths[i].put(data, value);
 		}
 		return data;
 	}
 
+	@Override
+	public FieldAccess getFieldAccess() {
+		List<String> read = new ArrayList<String>();
+		for (CompiledTemplate template : compiledFields.templates) {
+			if (template != null)
+				read.addAll(template.getFieldKeys());
+		}
+		return new FieldAccess(read, fields.keySet());
+	}
+
+	/**
+	 * Streamed only if no value is pattern with keys.
+	 */
+	@Override
+	public List<StreamingTransform> getStreamingTransforms() {
+		List<StreamingTransform> ret = new ArrayList<StreamingTransform>();
+		CompiledFields cf = compiledFields;
+		for (int i = 0; i < cf.paths.length; i++) {
+			if (cf.templates[i] != null)
+				return null;
+			final Object value = cf.values[i];
+			ret.add(new StreamingTransform(null, cf.paths[i].getPath(), true, true) {
+				@Override
+				public Object transform(Object v) {
+					return value;
+				}
+			});
+		}
+		return ret;
+	}
+
 	public Map<String, Object> getFields() {
 		return fields;
 	}
 
+	/**
+	 * Fields to add compiled from Map, immutable so can be shared by more threads.
+	 */
+	protected static final class CompiledFields {
+		final FieldPath[] paths;
+		final Object[] values;
+		/**
+		 * Templates compiled from values which are String with pattern, <code>null</code> on other positions.
+		 */
+		final CompiledTemplate[] templates;
+
+		CompiledFields(Map<String, Object> source) {
+			paths = new FieldPath[source.size()];
+			values = new Object[source.size()];
+			templates = new CompiledTemplate[source.size()];
+			int i = 0;
+			for (Map.Entry<String, Object> field : source.entrySet()) {
+				paths[i] = new FieldPath(field.getKey());
+				Object value = field.getValue();
+				values[i] = value;
+				if (value != null && (value instanceof String) && ((String) value).contains("{")) {
+					templates[i] = CompiledTemplate.compile((String) value);
+				}
+				i++;
+			}
+		}
+	}
+
 }
@@ -5,6 +5,8 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.settings.SettingsException;
@@ -41,7 +43,9 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @see StructuredContentPreprocessorFactory
  * @see ValueUtils#processStringValuePatternReplacement(String, Map, Object)
  */
-public class AddValuePreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class AddValuePreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor, StreamableStructuredContentPreprocessor {
 
 	protected static final String CFG_FIELD = "field";
 	protected static final String CFG_VALUE = "value";
@@ -49,6 +53,12 @@ public class AddValuePreprocessor extends StructuredContentPreprocessorBase {
 	protected String field;
 	protected Object value = null;
 
+	protected FieldPath fieldPath;
+	/**
+	 * Template compiled from {@link #value} if it is String with pattern, <code>null</code> otherwise.
+	 */
+	protected CompiledTemplate valueTemplate;
+
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
 		if (settings == null) {
@@ -57,19 +67,52 @@ public class AddValuePreprocessor extends StructuredContentPreprocessorBase {
 		field = XContentMapValues.nodeStringValue(settings.get(CFG_FIELD), null);
 		validateConfigurationStringNotEmpty(field, CFG_FIELD);
 		value = settings.get(CFG_VALUE);
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldPath = FieldPath.create(field);
+		valueTemplate = null;
+		if (value instanceof String && ((String) value).contains("{")) {
+			valueTemplate = CompiledTemplate.compile((String) value);
+		}
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data) {
 		if (data == null)
 			return null;
-		if (value != null && (value instanceof String) && ((String) value).contains("{")) {
-			value = ValueUtils.processStringValuePatternReplacement((String) value, data, null);
+		Object v = value;
+		if (valueTemplate != null) {
+			v = valueTemplate.render(data, null);
 		}
-		StructureUtils.putValueIntoMapOfMaps(data, field, value);
+		fieldPath.put(data, v);
 		return data;
 	}
 
+	@Override
+	public FieldAccess getFieldAccess() {
+		return new FieldAccess(valueTemplate != null ? valueTemplate.getFieldKeys() : null,
+				Collections.singletonList(field));
+	}
+
+	/**
+	 * Streamed only if value is not pattern with keys.
+	 */
+	@Override
+	public List<StreamingTransform> getStreamingTransforms() {
+		if (valueTemplate != null)
+			return null;
+		StreamingTransform ret = new StreamingTransform(null, field, true, true) {
+			@Override
+			public Object transform(Object v) {
+				return value;
+			}
+		};
+		return Collections.singletonList(ret);
+	}
+
 	public String getField() {
 		return field;
 	}
@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.SettingsException;
+
+/**
+ * Adapter which allows to use synchronous {@link StructuredContentPreprocessor} as
+ * {@link AsyncStructuredContentPreprocessor}. Data are preprocessed in calling thread and listener is notified before
+ * {@link #preprocessDataAsync(Map, ActionListener)} returns.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public class AsyncPreprocessorAdapter implements AsyncStructuredContentPreprocessor {
+
+	protected final StructuredContentPreprocessor preprocessor;
+
+	/**
+	 * Get asynchronous variant of preprocessor.
+	 *
+	 * @param preprocessor to get asynchronous variant for
+	 * @return preprocessor itself if it is asynchronous already, adapter for it otherwise.
+	 * @throws IllegalArgumentException if preprocessor is null
+	 */
+	public static AsyncStructuredContentPreprocessor adapt(StructuredContentPreprocessor preprocessor)
+			throws IllegalArgumentException {
+		if (preprocessor instanceof AsyncStructuredContentPreprocessor)
+			return (AsyncStructuredContentPreprocessor) preprocessor;
+		return new AsyncPreprocessorAdapter(preprocessor);
+	}
+
+	/**
+	 * Create adapter.
+	 *
+	 * @param preprocessor to be adapted
+	 * @throws IllegalArgumentException if preprocessor is null
+	 */
+	public AsyncPreprocessorAdapter(StructuredContentPreprocessor preprocessor) throws IllegalArgumentException {
+		if (preprocessor == null)
+			throw new IllegalArgumentException("preprocessor must be defined");
+		this.preprocessor = preprocessor;
+	}
+
+	@Override
+	public void init(String name, Client client, Map<String, Object> settings) throws SettingsException {
+		preprocessor.init(name, client, settings);
+	}
+
+	@Override
+	public String getName() {
+		return preprocessor.getName();
+	}
+
+	@Override
+	public Map<String, Object> preprocessData(Map<String, Object> data) {
+		return preprocessor.preprocessData(data);
+	}
+
+	@Override
+	public void preprocessDataAsync(Map<String, Object> data, ActionListener<Map<String, Object>> listener) {
+		Map<String, Object> ret;
+		try {
+			ret = preprocessor.preprocessData(data);
+		} catch (RuntimeException e) {
+			listener.onFailure(e);
+			return;
+		}
+		listener.onResponse(ret);
+	}
+
+	/**
+	 * @return adapted preprocessor
+	 */
+	public StructuredContentPreprocessor getPreprocessor() {
+		return preprocessor;
+	}
+
+}
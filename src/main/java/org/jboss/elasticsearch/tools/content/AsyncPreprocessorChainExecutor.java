@@ -0,0 +1,107 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchInterruptedException;
+import org.elasticsearch.action.ActionListener;
+
+/**
+ * Executor which preprocesses batch of documents by {@link PreprocessorChain#processAsync(Map, ActionListener)}, so
+ * calling thread doesn't wait for responses of {@link AsyncStructuredContentPreprocessor}s (eg.
+ * {@link ESLookupValuePreprocessor}) and keeps many documents in flight at once, without thread per document. Number of
+ * documents in flight is limited by <code>maxInFlight</code> over all concurrent {@link #processBatch(List)} calls.
+ * Order of documents in result is same as in input batch. Failure of one document doesn't abort batch, but is
+ * collected in {@link ChainBatchResult}.
+ * <p>
+ * Preprocessors in chain are shared by all documents in flight, so they must be thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ThreadPerDocumentChainExecutor
+ */
+@ThreadSafe
+public class AsyncPreprocessorChainExecutor {
+
+	protected final PreprocessorChain chain;
+	protected final int maxInFlight;
+	protected final Semaphore inFlight;
+
+	/**
+	 * Create executor.
+	 *
+	 * @param chain used to preprocess documents
+	 * @param maxInFlight maximal number of documents preprocessed at once, must be greater than 0.
+	 * @throws IllegalArgumentException if maxInFlight is not greater than 0
+	 */
+	public AsyncPreprocessorChainExecutor(PreprocessorChain chain, int maxInFlight) throws IllegalArgumentException {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be greater than 0");
+		this.chain = chain;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Preprocess batch of documents. Blocks until all documents are processed.
+	 *
+	 * @param batch of documents to be preprocessed - documents may be changed during call!
+	 * @return result with preprocessed documents in same order as in <code>batch</code> and failures.
+	 * @throws ElasticSearchInterruptedException if calling thread is interrupted while waiting for documents
+	 */
+	@SuppressWarnings("unchecked")
+	public ChainBatchResult processBatch(List<Map<String, Object>> batch) throws ElasticSearchInterruptedException {
+		final Object[] documents = batch != null ? batch.toArray() : new Object[0];
+		final RuntimeException[] failures = new RuntimeException[documents.length];
+		final CountDownLatch done = new CountDownLatch(documents.length);
+		try {
+			for (int i = 0; i < documents.length; i++) {
+				inFlight.acquire();
+				final int index = i;
+				chain.processAsync((Map<String, Object>) documents[index], new ActionListener<Map<String, Object>>() {
+					@Override
+					public void onResponse(Map<String, Object> ret) {
+						documents[index] = ret;
+						finished();
+					}
+
+					@Override
+					public void onFailure(Throwable e) {
+						failures[index] = e instanceof RuntimeException ? (RuntimeException) e : new ElasticSearchException(
+								e.getMessage(), e);
+						finished();
+					}
+
+					private void finished() {
+						inFlight.release();
+						done.countDown();
+					}
+				});
+			}
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ElasticSearchInterruptedException("Interrupted while waiting for documents preprocessing", e);
+		}
+		return ChainBatchResult.create(documents, failures);
+	}
+
+	public PreprocessorChain getChain() {
+		return chain;
+	}
+
+	/**
+	 * @return maximal number of documents preprocessed at once
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+}
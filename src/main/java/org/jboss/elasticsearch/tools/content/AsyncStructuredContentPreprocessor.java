@@ -0,0 +1,39 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+
+import org.elasticsearch.action.ActionListener;
+
+/**
+ * {@link StructuredContentPreprocessor} which is able to preprocess data without blocking calling thread, eg. while
+ * waiting for ElasticSearch response. Result is passed to {@link ActionListener} same way as ElasticSearch client does
+ * it, so {@link org.elasticsearch.action.support.PlainActionFuture} can be used if you need future instead of callback.
+ * Synchronous preprocessors can be used over this interface thanks to {@link AsyncPreprocessorAdapter}.
+ * <p>
+ * Thread safety contract is same as for {@link StructuredContentPreprocessor}. Listener may be called from other
+ * thread than {@link #preprocessDataAsync(Map, ActionListener)} call was performed in (typically from ElasticSearch
+ * client thread), or directly from calling thread if no blocking operation is necessary.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see PreprocessorChain#processAsync(Map, ActionListener)
+ * @see AsyncPreprocessorChainExecutor
+ */
+@ThreadSafe
+public interface AsyncStructuredContentPreprocessor extends StructuredContentPreprocessor {
+
+	/**
+	 * Preprocess data asynchronously. Exactly one of listener's methods is called when preprocessing is finished.
+	 * Exceptions are never thrown from this method, but passed to {@link ActionListener#onFailure(Throwable)}.
+	 *
+	 * @param data to be preprocessed - may be changed during call!
+	 * @param listener to be notified with preprocessed data (same as returned from {@link #preprocessData(Map)}) or
+	 *          failure.
+	 */
+	void preprocessDataAsync(Map<String, Object> data, ActionListener<Map<String, Object>> listener);
+
+}
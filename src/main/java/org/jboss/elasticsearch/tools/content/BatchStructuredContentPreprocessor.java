@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link StructuredContentPreprocessor} which is able to preprocess whole batch of documents at once, so work common
+ * for more documents (eg. lookups over same key or current timestamp) can be performed only once for batch.
+ * {@link PreprocessorChain#processBatch(List)} uses {@link #preprocessBatch(List)} for preprocessors implementing this
+ * interface. {@link StructuredContentPreprocessorBase} implements it by calling {@link #preprocessData(Map)} for each
+ * document, override it where batching pays off.
+ * <p>
+ * Thread safety contract is same as for {@link StructuredContentPreprocessor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public interface BatchStructuredContentPreprocessor extends StructuredContentPreprocessor {
+
+	/**
+	 * Preprocess batch of documents. Result for each document must be same as if {@link #preprocessData(Map)} is called
+	 * for it (except of values depending on time of the call, which may be same for whole batch).
+	 *
+	 * @param batch of documents to be preprocessed - documents may be changed during call!
+	 * @return list with preprocessed documents in same order as in <code>batch</code>, <code>null</code> if
+	 *         <code>batch</code> is <code>null</code>.
+	 */
+	List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> batch);
+
+}
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+/**
+ * Simple bloom filter of String keys backed by bit set. Answers if key may be contained in filter, false positives are
+ * possible with configured probability but false negatives are not. Size of bit set and number of hash functions are
+ * computed from expected number of keys. Keys are hashed by one 64 bit hash split into two 32 bit hashes combined for
+ * each hash function (double hashing).
+ * <p>
+ * Filter is not thread safe while keys are put into it, but may be shared by more threads once it is filled and safely
+ * published.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ESLookupSource#enableBloomFilter(long)
+ */
+public class BloomFilter {
+
+	private final long[] bits;
+	private final long numBits;
+	private final int numHashFunctions;
+
+	/**
+	 * Create empty filter.
+	 *
+	 * @param expectedKeys expected number of keys put into filter, must be greater than 0
+	 * @param fpp false positive probability when expected number of keys is put, must be between 0 and 1
+	 * @throws IllegalArgumentException if parameters are invalid
+	 */
+	public BloomFilter(int expectedKeys, double fpp) throws IllegalArgumentException {
+		if (expectedKeys < 1)
+			throw new IllegalArgumentException("expectedKeys must be greater than 0");
+		if (fpp <= 0 || fpp >= 1)
+			throw new IllegalArgumentException("fpp must be between 0 and 1");
+		long m = (long) Math.ceil(-expectedKeys * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		bits = new long[(int) ((m + 63) / 64)];
+		numBits = bits.length * 64L;
+		numHashFunctions = Math.max(1, (int) Math.round((double) m / expectedKeys * Math.log(2)));
+	}
+
+	/**
+	 * Put key into filter.
+	 *
+	 * @param key to put
+	 */
+	public void put(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= numHashFunctions; i++) {
+			long index = bitIndex(h1 + i * h2);
+			bits[(int) (index >>> 6)] |= 1L << index;
+		}
+	}
+
+	/**
+	 * Check if key may be contained in filter.
+	 *
+	 * @param key to check
+	 * @return false if key is surely not contained in filter, true if it may be contained
+	 */
+	public boolean mightContain(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= numHashFunctions; i++) {
+			long index = bitIndex(h1 + i * h2);
+			if ((bits[(int) (index >>> 6)] & (1L << index)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	private long bitIndex(int combinedHash) {
+		return (combinedHash & 0x7fffffffL) % numBits;
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of key chars with final avalanche mix, so both 32 bit halves are well distributed.
+	 */
+	private static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @return number of bits in filter
+	 */
+	public long getNumBits() {
+		return numBits;
+	}
+
+	/**
+	 * @return number of hash functions used for each key
+	 */
+	public int getNumHashFunctions() {
+		return numHashFunctions;
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Result of batch preprocessing where failures of particular documents do not abort whole batch. Contains preprocessed
+ * documents in same order as in input batch, and failures mapped by index of failed document in batch.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ParallelPreprocessorChainExecutor
+ * @see ThreadPerDocumentChainExecutor
+ */
+public class ChainBatchResult {
+
+	private final List<Map<String, Object>> documents;
+	private final SortedMap<Integer, RuntimeException> failures;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param documents preprocessed documents in order of input batch. <code>null</code> is on position of failed
+	 *          document.
+	 * @param failures exceptions thrown during preprocessing of failed documents, key is index of document in batch.
+	 */
+	public ChainBatchResult(List<Map<String, Object>> documents, SortedMap<Integer, RuntimeException> failures) {
+		this.documents = Collections.unmodifiableList(documents);
+		this.failures = Collections.unmodifiableSortedMap(failures);
+	}
+
+	/**
+	 * Create result from arrays filled by executor.
+	 *
+	 * @param documents preprocessed documents in order of input batch
+	 * @param failures exception thrown for document on same index, <code>null</code> if document didn't fail
+	 * @return result
+	 */
+	@SuppressWarnings("unchecked")
+	static ChainBatchResult create(Object[] documents, RuntimeException[] failures) {
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(documents.length);
+		SortedMap<Integer, RuntimeException> failuresMap = new TreeMap<Integer, RuntimeException>();
+		for (int i = 0; i < documents.length; i++) {
+			if (failures[i] != null) {
+				failuresMap.put(i, failures[i]);
+				ret.add(null);
+			} else {
+				ret.add((Map<String, Object>) documents[i]);
+			}
+		}
+		return new ChainBatchResult(ret, failuresMap);
+	}
+
+	/**
+	 * Get preprocessed documents.
+	 *
+	 * @return list of preprocessed documents in same order as input batch. Contains <code>null</code> on position of
+	 *         document which failed, see {@link #getFailures()}.
+	 */
+	public List<Map<String, Object>> getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Get failures of documents preprocessing, eg. {@link InvalidDataException} thrown from validating preprocessor.
+	 *
+	 * @return map where key is index of failed document in batch and value is exception thrown for it. Never null.
+	 */
+	public SortedMap<Integer, RuntimeException> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return true if preprocessing of at least one document failed
+	 */
+	public boolean hasFailures() {
+		return !failures.isEmpty();
+	}
+
+	/**
+	 * @param index of document in batch
+	 * @return true if preprocessing of document on given index failed
+	 */
+	public boolean isFailed(int index) {
+		return failures.containsKey(index);
+	}
+
+}
@@ -0,0 +1,328 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Insertion ordered Map with small footprint, intended for small objects in document structure (eg. author, editor or
+ * comment). Keys and values are stored in one array and keys are searched linearly, so no hash table and entry objects
+ * are allocated. Map is promoted to {@link LinkedHashMap} when number of keys exceeds {@link #PROMOTION_THRESHOLD}, so
+ * big Maps are not slow. <code>null</code> keys and values are supported.
+ * <p>
+ * Instances are not thread safe, same as {@link java.util.HashMap}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see StructureUtils#createMap()
+ */
+public class CompactMap<K, V> extends AbstractMap<K, V> {
+
+	/**
+	 * Maximal number of keys stored in array.
+	 */
+	public static final int PROMOTION_THRESHOLD = 8;
+
+	private static final int DEFAULT_CAPACITY = 4;
+
+	/**
+	 * Keys on even and values on odd positions, <code>null</code> after promotion.
+	 */
+	private Object[] table;
+
+	private int size;
+
+	/**
+	 * Map used after promotion, <code>null</code> before it.
+	 */
+	private Map<K, V> promoted;
+
+	private int modCount;
+
+	private Set<Map.Entry<K, V>> entrySet;
+
+	/**
+	 * Create empty Map.
+	 */
+	public CompactMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create empty Map.
+	 *
+	 * @param expectedSize expected number of keys, used to size array
+	 */
+	public CompactMap(int expectedSize) {
+		if (expectedSize > PROMOTION_THRESHOLD) {
+			promoted = new LinkedHashMap<K, V>();
+		} else {
+			table = new Object[2 * Math.max(expectedSize, 1)];
+		}
+	}
+
+	/**
+	 * Create Map with content of other Map.
+	 *
+	 * @param m to copy content from
+	 */
+	public CompactMap(Map<? extends K, ? extends V> m) {
+		this(m.size());
+		putAll(m);
+	}
+
+	/**
+	 * @return true if Map was promoted to {@link LinkedHashMap} because of number of keys
+	 */
+	public boolean isPromoted() {
+		return promoted != null;
+	}
+
+	private int indexOf(Object key) {
+		int end = 2 * size;
+		if (key == null) {
+			for (int i = 0; i < end; i += 2) {
+				if (table[i] == null)
+					return i;
+			}
+		} else {
+			for (int i = 0; i < end; i += 2) {
+				if (key.equals(table[i]))
+					return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		if (promoted != null)
+			return promoted.size();
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (promoted != null)
+			return promoted.containsKey(key);
+		return indexOf(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		if (promoted != null)
+			return promoted.get(key);
+		int i = indexOf(key);
+		return i >= 0 ? (V) table[i + 1] : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V put(K key, V value) {
+		if (promoted != null)
+			return promoted.put(key, value);
+		int i = indexOf(key);
+		if (i >= 0) {
+			V ret = (V) table[i + 1];
+			table[i + 1] = value;
+			return ret;
+		}
+		modCount++;
+		if (size == PROMOTION_THRESHOLD) {
+			promote();
+			return promoted.put(key, value);
+		}
+		if (2 * size == table.length) {
+			Object[] t = new Object[Math.min(2 * table.length, 2 * PROMOTION_THRESHOLD)];
+			System.arraycopy(table, 0, t, 0, table.length);
+			table = t;
+		}
+		table[2 * size] = key;
+		table[2 * size + 1] = value;
+		size++;
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void promote() {
+		Map<K, V> m = new LinkedHashMap<K, V>();
+		for (int i = 0; i < 2 * size; i += 2) {
+			m.put((K) table[i], (V) table[i + 1]);
+		}
+		promoted = m;
+		table = null;
+		size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V remove(Object key) {
+		if (promoted != null)
+			return promoted.remove(key);
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		V ret = (V) table[i + 1];
+		removeAt(i);
+		return ret;
+	}
+
+	private void removeAt(int i) {
+		modCount++;
+		int end = 2 * size;
+		System.arraycopy(table, i + 2, table, i, end - i - 2);
+		table[end - 2] = null;
+		table[end - 1] = null;
+		size--;
+	}
+
+	@Override
+	public void clear() {
+		modCount++;
+		if (promoted != null) {
+			promoted = null;
+			table = new Object[2 * DEFAULT_CAPACITY];
+		} else {
+			Arrays.fill(table, 0, 2 * size, null);
+		}
+		size = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					if (promoted != null)
+						return promoted.entrySet().iterator();
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return CompactMap.this.size();
+				}
+
+				@Override
+				public void clear() {
+					CompactMap.this.clear();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Iterator over array, not used after promotion.
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		private int next = 0;
+		private int current = -1;
+		private int expectedModCount = modCount;
+
+		/**
+		 * Returns true also if Map was modified (eg. promoted) out of iterator, so {@link #next()} throws
+		 * {@link ConcurrentModificationException}.
+		 */
+		@Override
+		public boolean hasNext() {
+			return next < 2 * size || modCount != expectedModCount;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (!hasNext())
+				throw new NoSuchElementException();
+			current = next;
+			next += 2;
+			return new Entry(current);
+		}
+
+		@Override
+		public void remove() {
+			if (current < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			removeAt(current);
+			next = current;
+			current = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	/**
+	 * Entry with key and value read from array when created, so it stays valid after the array is shifted by removal or
+	 * dropped by promotion. Value is written through to the Map by key while the key is in it.
+	 */
+	private final class Entry implements Map.Entry<K, V> {
+
+		private final K key;
+		private V value;
+
+		@SuppressWarnings("unchecked")
+		Entry(int index) {
+			this.key = (K) table[index];
+			this.value = (V) table[index + 1];
+		}
+
+		@Override
+		public K getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return value;
+		}
+
+		@Override
+		public V setValue(V value) {
+			V ret = this.value;
+			this.value = value;
+			if (containsKey(key))
+				put(key, value);
+			return ret;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+			return eq(getKey(), other.getKey()) && eq(getValue(), other.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			K k = getKey();
+			V v = getValue();
+			return (k == null ? 0 : k.hashCode()) ^ (v == null ? 0 : v.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	private static boolean eq(Object o1, Object o2) {
+		return o1 == null ? o2 == null : o1.equals(o2);
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precompiled pattern with keys for replacement by values from data structure. Syntax and semantic of pattern is same
+ * as for {@link ValueUtils#processStringValuePatternReplacement(String, Map, Object)}, but pattern is parsed only
+ * once when template is compiled, into literal segments and segments with precompiled {@link FieldPath}s. Pattern
+ * without any key is recognized as constant, so it's value is evaluated only once. Intended to be compiled in
+ * {@link StructuredContentPreprocessorBase#init(Map)} and then used for all preprocessed documents. Instances are
+ * immutable.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public final class CompiledTemplate {
+
+	/**
+	 * Estimation of length of value replacing one key, used to size buffer for rendered value.
+	 */
+	private static final int KEY_VALUE_LENGTH_ESTIMATION = 16;
+
+	private final String pattern;
+
+	/**
+	 * Segments of template. Instance of String is literal, {@link KeySegment} is key to lookup in data, <code>null</code>
+	 * is {@link ValueUtils#PATTERN_KEY_ORIGINAL_VALUE}.
+	 */
+	private final Object[] segments;
+
+	/**
+	 * Rendered value if template is constant, <code>null</code> otherwise.
+	 */
+	private final String constantValue;
+
+	private final List<String> keys;
+
+	private final int estimatedLength;
+
+	private CompiledTemplate(String pattern, Object[] segments, List<String> keys, int literalsLength) {
+		this.pattern = pattern;
+		this.segments = segments;
+		this.keys = Collections.unmodifiableList(keys);
+		this.estimatedLength = literalsLength + KEY_VALUE_LENGTH_ESTIMATION * keys.size();
+		if (keys.isEmpty()) {
+			if (pattern == null || pattern.length() == 0) {
+				constantValue = pattern;
+			} else {
+				StringBuilder sb = new StringBuilder(literalsLength);
+				for (Object s : segments) {
+					sb.append(s);
+				}
+				constantValue = sb.toString();
+			}
+		} else {
+			constantValue = null;
+		}
+	}
+
+	/**
+	 * Compile pattern into template.
+	 *
+	 * @param pattern to compile, see {@link ValueUtils#processStringValuePatternReplacement(String, Map, Object)} for
+	 *          syntax. Can be <code>null</code>.
+	 * @return compiled template
+	 */
+	public static CompiledTemplate compile(String pattern) {
+		List<Object> segments = new ArrayList<Object>();
+		List<String> keys = new ArrayList<String>();
+		int literalsLength = 0;
+		if (pattern != null) {
+			int literalStart = 0;
+			int idx = 0;
+			while (idx < pattern.length()) {
+				int braceStart = pattern.indexOf('{', idx);
+				if (braceStart < 0)
+					break;
+				int braceEnd = pattern.indexOf('}', braceStart + 1);
+				if (braceEnd < 0)
+					break;
+				if (braceStart > literalStart) {
+					segments.add(pattern.substring(literalStart, braceStart));
+					literalsLength += braceStart - literalStart;
+				}
+				String key = pattern.substring(braceStart + 1, braceEnd);
+				if (key.length() > 0) {
+					keys.add(key);
+					if (ValueUtils.PATTERN_KEY_ORIGINAL_VALUE.equals(key)) {
+						segments.add(null);
+					} else {
+						segments.add(new KeySegment(key));
+					}
+				}
+				idx = braceEnd + 1;
+				literalStart = idx;
+			}
+			if (literalStart < pattern.length()) {
+				segments.add(pattern.substring(literalStart));
+				literalsLength += pattern.length() - literalStart;
+			}
+		}
+		return new CompiledTemplate(pattern, segments.toArray(), keys, literalsLength);
+	}
+
+	/**
+	 * Render template with values from data.
+	 *
+	 * @param data to get replacement values from. Can be <code>null</code>.
+	 * @param originalValue used in pattern if {@value ValueUtils#PATTERN_KEY_ORIGINAL_VALUE} is used as key
+	 * @return value with replaced keys
+	 */
+	public String render(Map<String, Object> data, Object originalValue) {
+		if (constantValue != null || keys.isEmpty())
+			return constantValue;
+		StringBuilder sb = new StringBuilder(estimatedLength);
+		for (Object segment : segments) {
+			if (segment instanceof String) {
+				sb.append((String) segment);
+			} else {
+				Object v = null;
+				if (segment == null) {
+					v = originalValue;
+				} else if (data != null) {
+					v = ((KeySegment) segment).get(data);
+				}
+				if (v != null) {
+					sb.append(v.toString());
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return true if template contains no key for replacement so it is rendered always to the same value.
+	 */
+	public boolean isConstant() {
+		return keys.isEmpty();
+	}
+
+	/**
+	 * @return keys used in template, in order of occurrence. Never <code>null</code>.
+	 */
+	public List<String> getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return keys used in template which are paths of fields in data, so without
+	 *         {@value ValueUtils#PATTERN_KEY_ORIGINAL_VALUE}. Never <code>null</code>.
+	 */
+	public List<String> getFieldKeys() {
+		List<String> ret = new ArrayList<String>(keys.size());
+		for (String key : keys) {
+			if (!ValueUtils.PATTERN_KEY_ORIGINAL_VALUE.equals(key))
+				ret.add(key);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return pattern this template was compiled from
+	 */
+	public String getPattern() {
+		return pattern;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+
+	/**
+	 * Segment of template for key to be replaced by value from data.
+	 */
+	private static final class KeySegment {
+
+		private final String key;
+		private final FieldPath path;
+
+		KeySegment(String key) {
+			this.key = key;
+			this.path = (key.indexOf('.') >= 0 && !ValueUtils.isEmpty(key)) ? new FieldPath(key) : null;
+		}
+
+		Object get(Map<String, Object> data) {
+			if (path != null)
+				return path.get(data);
+			return data.get(key);
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link PreprocessorMetrics} implementation. Counters and {@link LatencyHistogram} are kept for each
+ * preprocessor name, all updates are lock free. Latency of batch invocation is recorded into histogram as mean latency
+ * for each document in batch.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public class DefaultPreprocessorMetrics implements PreprocessorMetrics {
+
+	private final boolean modificationDetection;
+
+	private final ConcurrentMap<String, Metrics> metrics = new ConcurrentHashMap<String, Metrics>();
+
+	/**
+	 * Create metrics without modification detection.
+	 */
+	public DefaultPreprocessorMetrics() {
+		this(false);
+	}
+
+	/**
+	 * Create metrics.
+	 *
+	 * @param modificationDetection true to count documents modified by preprocessors, see
+	 *          {@link PreprocessorMetrics#isModificationDetectionEnabled()}
+	 */
+	public DefaultPreprocessorMetrics(boolean modificationDetection) {
+		this.modificationDetection = modificationDetection;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public boolean isModificationDetectionEnabled() {
+		return modificationDetection;
+	}
+
+	@Override
+	public void recordInvocation(String preprocessorName, int documents, long durationNanos, int modifiedDocuments) {
+		Metrics m = getMetrics(preprocessorName);
+		m.record(documents, durationNanos);
+		if (modifiedDocuments > 0)
+			m.modifiedCount.addAndGet(modifiedDocuments);
+	}
+
+	@Override
+	public void recordError(String preprocessorName, int documents, long durationNanos) {
+		Metrics m = getMetrics(preprocessorName);
+		m.record(documents, durationNanos);
+		m.errorCount.addAndGet(documents);
+	}
+
+	@Override
+	public Map<String, PreprocessorMetricsSnapshot> snapshot() {
+		Map<String, PreprocessorMetricsSnapshot> ret = new LinkedHashMap<String, PreprocessorMetricsSnapshot>();
+		for (Map.Entry<String, Metrics> e : metrics.entrySet()) {
+			Metrics m = e.getValue();
+			ret.put(e.getKey(), new PreprocessorMetricsSnapshot(e.getKey(), m.invocationCount.get(), m.totalNanos.get(),
+					m.errorCount.get(), m.modifiedCount.get(), m.latency.getCounts()));
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * Remove all collected metrics.
+	 */
+	public void reset() {
+		metrics.clear();
+	}
+
+	private Metrics getMetrics(String preprocessorName) {
+		Metrics m = metrics.get(preprocessorName);
+		if (m == null) {
+			m = new Metrics();
+			Metrics existing = metrics.putIfAbsent(preprocessorName, m);
+			if (existing != null)
+				m = existing;
+		}
+		return m;
+	}
+
+	private static final class Metrics {
+		final AtomicLong invocationCount = new AtomicLong();
+		final AtomicLong totalNanos = new AtomicLong();
+		final AtomicLong errorCount = new AtomicLong();
+		final AtomicLong modifiedCount = new AtomicLong();
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		void record(int documents, long durationNanos) {
+			if (documents < 1)
+				return;
+			invocationCount.addAndGet(documents);
+			totalNanos.addAndGet(durationNanos);
+			latency.record(durationNanos / documents, documents);
+		}
+	}
+
+}
@@ -0,0 +1,648 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.get.GetField;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+
+/**
+ * {@link LookupSource} searching lookup keys in ElasticSearch index. Lookup key is searched in
+ * <code>searchField</code> by <code>match</code> query or cached <code>term</code> filter depending on lookup mode,
+ * or used as document id in <code>get</code> lookup mode. Values of result fields are read from first found document.
+ * Batches of keys are resolved by one multi search (or multi get) request.
+ * <p>
+ * Whole lookup index can be preloaded into memory table by {@link #enablePreload(long)}, or bloom filter of all lookup
+ * keys can be loaded by {@link #enableBloomFilter(long)} so keys surely missing in index are not searched. Call
+ * {@link #close()} to stop background refresh of them.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ESLookupValuePreprocessor
+ */
+@ThreadSafe
+public class ESLookupSource implements LookupSource {
+
+	protected static final ESLogger logger = Loggers.getLogger(ESLookupSource.class);
+
+	protected static final TimeValue PRELOAD_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+	protected static final int PRELOAD_SCROLL_SIZE = 100;
+
+	/**
+	 * False positive probability of {@link #bloomFilter}.
+	 */
+	protected static final double BLOOM_FILTER_FPP = 0.01;
+
+	protected final Client client;
+	protected final String indexName;
+	protected final String indexType;
+	protected final String lookupMode;
+	protected final String searchField;
+	protected final String[] resultFields;
+
+	protected boolean preload;
+
+	/**
+	 * Table with whole lookup index if preload is enabled. String value of <code>searchField</code> (or document id in
+	 * <code>get</code> lookup mode) is key, value is same as returned by {@link #lookup(Object)}. Replaced as whole when
+	 * refreshed, never changed. <code>null</code> if preload is not enabled or not finished successfully yet.
+	 */
+	protected volatile Map<String, Map<String, Object>> preloadedTable;
+
+	protected boolean useBloomFilter;
+
+	/**
+	 * Bloom filter of all values of <code>searchField</code> in lookup index if enabled. Lookup keys not contained in it
+	 * are not searched. Replaced as whole when refreshed, never changed. <code>null</code> if not enabled or not loaded
+	 * successfully yet.
+	 */
+	protected volatile BloomFilter bloomFilter;
+
+	/**
+	 * Executor refreshing {@link #preloadedTable} or {@link #bloomFilter} in background, <code>null</code> if not
+	 * configured.
+	 */
+	protected ScheduledExecutorService reloadExecutor;
+
+	/**
+	 * Create source.
+	 *
+	 * @param client ElasticSearch client to be used
+	 * @param indexName name of lookup index
+	 * @param indexType type of documents in lookup index
+	 * @param lookupMode one of <code>ESLookupValuePreprocessor.LOOKUP_MODE_xx</code> constants
+	 * @param searchField field to search lookup key in, not used in <code>get</code> lookup mode
+	 * @param resultFields names of fields read from found document
+	 * @throws IllegalArgumentException if some parameter is not defined
+	 */
+	public ESLookupSource(Client client, String indexName, String indexType, String lookupMode, String searchField,
+			String[] resultFields) throws IllegalArgumentException {
+		if (client == null)
+			throw new IllegalArgumentException("client must be defined");
+		if (indexName == null || indexType == null)
+			throw new IllegalArgumentException("indexName and indexType must be defined");
+		if (lookupMode == null)
+			throw new IllegalArgumentException("lookupMode must be defined");
+		if (searchField == null && !ESLookupValuePreprocessor.LOOKUP_MODE_GET.equals(lookupMode))
+			throw new IllegalArgumentException("searchField must be defined");
+		if (resultFields == null)
+			throw new IllegalArgumentException("resultFields must be defined");
+		this.client = client;
+		this.indexName = indexName;
+		this.indexType = indexType;
+		this.lookupMode = lookupMode;
+		this.searchField = searchField;
+		this.resultFields = resultFields;
+	}
+
+	/**
+	 * Enable preload of whole lookup index into memory table, lookups are performed against this table without any
+	 * request then. Lookup key must be exactly same as value of <code>searchField</code> (index analysis is not
+	 * applied). Lookup index is searched if preload fails.
+	 *
+	 * @param refreshInterval interval of table refresh in background in milliseconds, 0 if table is not refreshed
+	 */
+	public void enablePreload(long refreshInterval) {
+		preload = true;
+		useBloomFilter = false;
+		startReload(refreshInterval);
+	}
+
+	/**
+	 * Enable bloom filter of all values of <code>searchField</code> in lookup index, keys which are not contained in it
+	 * are not searched. Lookup key must be exactly same as value of <code>searchField</code> (index analysis is not
+	 * applied). Ignored if preload is enabled.
+	 *
+	 * @param refreshInterval interval of bloom filter refresh in background in milliseconds, 0 if it is not refreshed
+	 */
+	public void enableBloomFilter(long refreshInterval) {
+		if (preload)
+			return;
+		useBloomFilter = true;
+		startReload(refreshInterval);
+	}
+
+	private void startReload(long refreshInterval) {
+		reload();
+		if (refreshInterval > 0 && reloadExecutor == null) {
+			reloadExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ESLookupSource '" + indexName + "/" + indexType + "' reload");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					reload();
+				}
+			}, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public Map<String, Object> lookup(Object key) throws ElasticSearchException {
+		Map<String, Map<String, Object>> table = preloadedTable;
+		if (table != null) {
+			Map<String, Object> ret = table.get(key.toString());
+			if (ret == null)
+				return Collections.emptyMap();
+			return ret;
+		}
+		if (!mayContain(key))
+			return Collections.emptyMap();
+		return searchIndex(key);
+	}
+
+	/**
+	 * Search lookup index for one value by one search (or get in <code>get</code> lookup mode) request.
+	 *
+	 * @param key to be looked up
+	 * @return unmodifiable Map with values of result fields, empty Map if nothing found
+	 * @throws ElasticSearchException if request fails
+	 */
+	protected Map<String, Object> searchIndex(Object key) throws ElasticSearchException {
+		if (isGetLookupMode()) {
+			GetResponse resp = client.prepareGet(indexName, indexType, key.toString()).setFields(resultFields).execute()
+					.actionGet();
+			return readGetResponse(resp);
+		}
+		SearchResponse resp = prepareSearchRequest(key).execute().actionGet();
+		return readSearchResponse(key, resp);
+	}
+
+	@Override
+	public Map<Object, Map<String, Object>> lookup(Collection<Object> keys, Map<Object, ElasticSearchException> failures)
+			throws ElasticSearchException {
+		Map<Object, Map<String, Object>> ret = new HashMap<Object, Map<String, Object>>();
+		List<Object> toSearch = lookupLocally(keys, ret);
+		if (!toSearch.isEmpty())
+			readMultiResponse(toSearch, executeMultiRequest(toSearch).actionGet(), ret, failures);
+		return ret;
+	}
+
+	@Override
+	public void lookupAsync(Collection<Object> keys, Map<Object, ElasticSearchException> failures,
+			ActionListener<Map<Object, Map<String, Object>>> listener) {
+		Map<Object, Map<String, Object>> ret = new HashMap<Object, Map<String, Object>>();
+		List<Object> toSearch;
+		ListenableActionFuture<? extends ActionResponse> future = null;
+		try {
+			toSearch = lookupLocally(keys, ret);
+			if (!toSearch.isEmpty())
+				future = executeMultiRequest(toSearch);
+		} catch (RuntimeException e) {
+			listener.onFailure(e);
+			return;
+		}
+		if (future == null) {
+			listener.onResponse(ret);
+		} else {
+			addMultiResponseListener(future, toSearch, ret, failures, listener);
+		}
+	}
+
+	private <T extends ActionResponse> void addMultiResponseListener(ListenableActionFuture<T> future,
+			final List<Object> keys, final Map<Object, Map<String, Object>> ret,
+			final Map<Object, ElasticSearchException> failures,
+			final ActionListener<Map<Object, Map<String, Object>>> listener) {
+		future.addListener(new ActionListener<T>() {
+			@Override
+			public void onResponse(T resp) {
+				try {
+					readMultiResponse(keys, resp, ret, failures);
+				} catch (RuntimeException e) {
+					listener.onFailure(e);
+					return;
+				}
+				listener.onResponse(ret);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	/**
+	 * Resolve keys from {@link #preloadedTable} if available, skip keys not contained in {@link #bloomFilter}.
+	 *
+	 * @param keys to be looked up
+	 * @param ret Map to put keys found in preloaded table into
+	 * @return keys which have to be searched in lookup index
+	 */
+	private List<Object> lookupLocally(Collection<Object> keys, Map<Object, Map<String, Object>> ret) {
+		List<Object> toSearch = new ArrayList<Object>();
+		Map<String, Map<String, Object>> table = preloadedTable;
+		for (Object key : keys) {
+			if (key == null)
+				continue;
+			if (table != null) {
+				putResult(ret, key, table.get(key.toString()));
+			} else if (mayContain(key)) {
+				toSearch.add(key);
+			}
+		}
+		return toSearch;
+	}
+
+	/**
+	 * Execute multi search (or multi get in <code>get</code> lookup mode) request for more values.
+	 *
+	 * @param keys to be looked up
+	 * @return future of {@link MultiSearchResponse} or {@link MultiGetResponse}
+	 */
+	protected ListenableActionFuture<? extends ActionResponse> executeMultiRequest(List<Object> keys) {
+		if (isGetLookupMode()) {
+			return prepareMultiGetRequest(keys).execute();
+		} else {
+			return prepareMultiSearchRequest(keys).execute();
+		}
+	}
+
+	/**
+	 * Read response of {@link #executeMultiRequest(List)}.
+	 *
+	 * @param keys looked up by request, in same order as in request
+	 * @param resp response to read
+	 * @param ret Map to put found keys into
+	 * @param failures Map to put keys whose item of response failed into
+	 */
+	protected void readMultiResponse(List<Object> keys, ActionResponse resp, Map<Object, Map<String, Object>> ret,
+			Map<Object, ElasticSearchException> failures) {
+		if (resp instanceof MultiGetResponse) {
+			MultiGetItemResponse[] items = ((MultiGetResponse) resp).getResponses();
+			for (int i = 0; i < items.length; i++) {
+				if (items[i].isFailed()) {
+					failures.put(keys.get(i), new ElasticSearchException(items[i].getFailure().getMessage()));
+				} else {
+					putResult(ret, keys.get(i), readGetResponse(items[i].getResponse()));
+				}
+			}
+		} else {
+			MultiSearchResponse.Item[] items = ((MultiSearchResponse) resp).getResponses();
+			for (int i = 0; i < items.length; i++) {
+				if (items[i].isFailure()) {
+					failures.put(keys.get(i), new ElasticSearchException(items[i].getFailureMessage()));
+				} else {
+					putResult(ret, keys.get(i), readSearchResponse(keys.get(i), items[i].getResponse()));
+				}
+			}
+		}
+	}
+
+	private static void putResult(Map<Object, Map<String, Object>> ret, Object key, Map<String, Object> result) {
+		if (result != null && !result.isEmpty())
+			ret.put(key, result);
+	}
+
+	/**
+	 * @return true if {@link #preloadedTable} is loaded
+	 */
+	@Override
+	public boolean isInMemory() {
+		return preloadedTable != null;
+	}
+
+	/**
+	 * Check if lookup key may exist in lookup index.
+	 *
+	 * @param key lookup key
+	 * @return false if key surely doesn't exist in lookup index due {@link #bloomFilter}, true otherwise
+	 */
+	protected boolean mayContain(Object key) {
+		BloomFilter filter = bloomFilter;
+		return filter == null || filter.mightContain(key.toString());
+	}
+
+	private void reload() {
+		if (preload) {
+			reloadPreloadedTable();
+		} else if (useBloomFilter) {
+			reloadBloomFilter();
+		}
+	}
+
+	/**
+	 * Reload {@link #preloadedTable} from whole lookup index. Actual table is kept if reload fails.
+	 */
+	protected void reloadPreloadedTable() {
+		try {
+			Map<String, Map<String, Object>> table = loadLookupTable();
+			preloadedTable = table;
+			logger.debug("Lookup table preloaded from {}/{} with {} entries", indexName, indexType, table.size());
+		} catch (ElasticSearchException e) {
+			logger.warn("Lookup table preload from {}/{} failed due '{}:{}'", indexName, indexType, e.getClass().getName(),
+					e.getMessage());
+		}
+	}
+
+	/**
+	 * Reload {@link #bloomFilter} from all values of <code>searchField</code> in lookup index. Actual filter is kept if
+	 * reload fails.
+	 */
+	protected void reloadBloomFilter() {
+		try {
+			bloomFilter = loadBloomFilter();
+			logger.debug("Bloom filter of lookup keys loaded from {}/{}", indexName, indexType);
+		} catch (ElasticSearchException e) {
+			logger.warn("Bloom filter of lookup keys load from {}/{} failed due '{}:{}'", indexName, indexType, e
+					.getClass().getName(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Load bloom filter with all values of <code>searchField</code> in lookup index using scan search.
+	 *
+	 * @return bloom filter with String values of <code>searchField</code>
+	 * @throws ElasticSearchException if search fails
+	 */
+	protected BloomFilter loadBloomFilter() throws ElasticSearchException {
+		final List<String> keys = new ArrayList<String>();
+		scanIndex(false, new ScanCallback() {
+			@Override
+			public void hit(String key, SearchHit hit) {
+				keys.add(key);
+			}
+		});
+		BloomFilter filter = new BloomFilter(Math.max(keys.size(), 1), BLOOM_FILTER_FPP);
+		for (String key : keys) {
+			filter.put(key);
+		}
+		return filter;
+	}
+
+	/**
+	 * Load whole lookup index into the table using scan search.
+	 *
+	 * @return table with String value of <code>searchField</code> as key and value as returned by
+	 *         {@link #readHit(SearchHit)}
+	 * @throws ElasticSearchException if search fails
+	 */
+	protected Map<String, Map<String, Object>> loadLookupTable() throws ElasticSearchException {
+		final Map<String, Map<String, Object>> table = new HashMap<String, Map<String, Object>>();
+		scanIndex(true, new ScanCallback() {
+			Map<String, Object> result;
+			SearchHit lastHit;
+
+			@Override
+			public void hit(String key, SearchHit hit) {
+				if (hit != lastHit) {
+					lastHit = hit;
+					result = readHit(hit);
+				}
+				if (table.containsKey(key)) {
+					logger.warn("More results found for lookup over value {}", key);
+				} else {
+					table.put(key, result);
+				}
+			}
+		});
+		return table;
+	}
+
+	/**
+	 * Callback for {@link ESLookupSource#scanIndex(boolean, ScanCallback)}.
+	 */
+	protected static interface ScanCallback {
+		/**
+		 * Called for each value of <code>searchField</code> (or document id in <code>get</code> lookup mode) in each
+		 * document of lookup index.
+		 *
+		 * @param key String value of <code>searchField</code> or document id
+		 * @param hit document from lookup index
+		 */
+		void hit(String key, SearchHit hit);
+	}
+
+	/**
+	 * Scan whole lookup index using scan search.
+	 *
+	 * @param withResultFields true if result fields have to be loaded too
+	 * @param callback called for each value of <code>searchField</code> or document id
+	 * @throws ElasticSearchException if search fails
+	 */
+	protected void scanIndex(boolean withResultFields, ScanCallback callback) throws ElasticSearchException {
+		SearchRequestBuilder req = client.prepareSearch(indexName).setTypes(indexType).setSearchType(SearchType.SCAN)
+				.setScroll(PRELOAD_SCROLL_KEEP_ALIVE).setSize(PRELOAD_SCROLL_SIZE).setQuery(QueryBuilders.matchAllQuery());
+		if (searchField != null)
+			req.addField(searchField);
+		if (withResultFields) {
+			for (String field : resultFields) {
+				req.addField(field);
+			}
+		}
+		SearchResponse resp = req.execute().actionGet();
+		while (true) {
+			resp = client.prepareSearchScroll(resp.getScrollId()).setScroll(PRELOAD_SCROLL_KEEP_ALIVE).execute()
+					.actionGet();
+			if (resp.getHits().getHits().length == 0)
+				break;
+			for (SearchHit hit : resp.getHits()) {
+				if (searchField == null) {
+					callback.hit(hit.getId(), hit);
+					continue;
+				}
+				SearchHitField keyField = hit.field(searchField);
+				if (keyField == null || keyField.getValues() == null)
+					continue;
+				for (Object key : keyField.getValues()) {
+					if (key instanceof Collection) {
+						for (Object k : (Collection<?>) key) {
+							if (k != null)
+								callback.hit(k.toString(), hit);
+						}
+					} else if (key != null) {
+						callback.hit(key.toString(), hit);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prepare search request to lookup index for one value. Cached <code>term</code> filter is used in
+	 * <code>term</code> lookup mode, <code>match</code> query otherwise.
+	 *
+	 * @param key to be looked up
+	 * @return search request builder
+	 */
+	public SearchRequestBuilder prepareSearchRequest(Object key) {
+		SearchRequestBuilder req = client.prepareSearch(indexName).setTypes(indexType);
+		if (ESLookupValuePreprocessor.LOOKUP_MODE_TERM.equals(lookupMode)) {
+			req.setQuery(QueryBuilders.constantScoreQuery(FilterBuilders.termFilter(searchField, key).cache(true)));
+		} else {
+			req.setQuery(QueryBuilders.matchAllQuery()).setFilter(
+					FilterBuilders.queryFilter(QueryBuilders.matchQuery(searchField, key)));
+		}
+		for (String field : resultFields) {
+			req.addField(field);
+		}
+		return req;
+	}
+
+	/**
+	 * Prepare multi search request to lookup index for more values.
+	 *
+	 * @param keys to be looked up
+	 * @return multi search request builder
+	 */
+	public MultiSearchRequestBuilder prepareMultiSearchRequest(List<Object> keys) {
+		MultiSearchRequestBuilder req = client.prepareMultiSearch();
+		for (Object key : keys) {
+			req.add(prepareSearchRequest(key));
+		}
+		return req;
+	}
+
+	/**
+	 * Prepare multi get request to lookup index for more values, used in <code>get</code> lookup mode.
+	 *
+	 * @param keys to be looked up, used as document ids
+	 * @return multi get request builder
+	 */
+	public MultiGetRequestBuilder prepareMultiGetRequest(List<Object> keys) {
+		MultiGetRequestBuilder req = client.prepareMultiGet();
+		for (Object key : keys) {
+			req.add(new MultiGetRequest.Item(indexName, indexType, key.toString()).fields(resultFields));
+		}
+		return req;
+	}
+
+	/**
+	 * Read values of result fields from search response.
+	 *
+	 * @param key looked up, used for logging
+	 * @param resp search response to read
+	 * @return unmodifiable Map with values of result fields from first found document, empty Map if nothing found
+	 */
+	public Map<String, Object> readSearchResponse(Object key, SearchResponse resp) {
+		if (resp.getHits().getTotalHits() > 0) {
+			if (resp.getHits().getTotalHits() > 1) {
+				logger.warn("More results found for lookup over value {}", key);
+			}
+			return readHit(resp.getHits().hits()[0]);
+		}
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * Read values of result fields from get response.
+	 *
+	 * @param resp get response to read
+	 * @return unmodifiable Map with values of result fields from found document, empty Map if document doesn't exist
+	 */
+	public Map<String, Object> readGetResponse(GetResponse resp) {
+		if (!resp.isExists())
+			return Collections.emptyMap();
+		Map<String, Object> ret = new CompactMap<String, Object>(resultFields.length);
+		for (String resultField : resultFields) {
+			GetField field = resp.getField(resultField);
+			ret.put(resultField, field != null ? field.getValue() : null);
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * Read values of result fields from search hit.
+	 *
+	 * @param hit to read
+	 * @return unmodifiable Map with values of result fields
+	 */
+	public Map<String, Object> readHit(SearchHit hit) {
+		Map<String, Object> ret = new CompactMap<String, Object>(resultFields.length);
+		for (String resultField : resultFields) {
+			SearchHitField field = hit.field(resultField);
+			ret.put(resultField, field != null ? field.getValue() : null);
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * @return true if lookup index documents are get directly by lookup key used as id
+	 */
+	public boolean isGetLookupMode() {
+		return ESLookupValuePreprocessor.LOOKUP_MODE_GET.equals(lookupMode);
+	}
+
+	/**
+	 * Stop background refresh of preloaded table or bloom filter if running and release them.
+	 */
+	@Override
+	public void close() {
+		if (reloadExecutor != null) {
+			reloadExecutor.shutdownNow();
+			reloadExecutor = null;
+		}
+		preloadedTable = null;
+		bloomFilter = null;
+	}
+
+	public boolean isPreload() {
+		return preload;
+	}
+
+	/**
+	 * @return true if bloom filter of lookup keys is used
+	 */
+	public boolean isBloomFilter() {
+		return useBloomFilter;
+	}
+
+	public String getIndexName() {
+		return indexName;
+	}
+
+	public String getIndexType() {
+		return indexType;
+	}
+
+	public String getLookupMode() {
+		return lookupMode;
+	}
+
+	public String getSearchField() {
+		return searchField;
+	}
+
+	public String[] getResultFields() {
+		return resultFields;
+	}
+
+}
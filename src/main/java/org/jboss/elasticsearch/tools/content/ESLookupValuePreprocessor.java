@@ -5,20 +5,28 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.elasticsearch.ElasticSearchException;
-import org.elasticsearch.action.search.SearchRequestBuilder;
-import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.query.FilterBuilders;
-import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.search.SearchHit;
 
 /**
  * Content preprocessor which allows to Look up value over ElasticSearch search request containing some value from data
@@ -51,7 +59,21 @@ import org.elasticsearch.search.SearchHit;
  * <li><code>source_value<code> - value to be used as 'lookup key'. Can be used as alternative instead of <code>source_field<code>. 
  * You can use pattern for keys replacement with values from input data here. Keys are enclosed in curly braces, dot notation for deeper nesting may be used in keys.  
  * <li><code>idx_search_field<code> - field in search index document to be asked for 'lookup key' obtained from source field. ElasticSearch <code>text</code>
- * filter is used against this field. Search is not performed if 'lookup key' is empty.
+ * filter is used against this field. Search is not performed if 'lookup key' is empty. Not used in <code>get</code>
+ * lookup mode.
+ * <li><code>lookup_mode</code> - optional way how lookup index is asked for 'lookup key'. <code>match</code> (default)
+ * means analyzed <code>match</code> query against <code>idx_search_field</code>. <code>term</code> means cached
+ * <code>term</code> filter against <code>idx_search_field</code>, which is much cheaper but requires non-analyzed field
+ * in lookup index. <code>get</code> means that 'lookup key' is id of document in lookup index, so it is loaded by (multi)
+ * get request directly.
+ * <li><code>lookup_table</code> - optional object with static lookup data used instead of search index. Field name is
+ * 'lookup key', value is object with <code>idx_result_field</code>s. ElasticSearch client and <code>index_*</code>
+ * options are not necessary then.
+ * <li><code>lookup_file</code> - optional path to local file with static lookup data used instead of search index, see
+ * {@link FileLookupSource} for supported JSON and CSV formats. Value of <code>idx_search_field</code> from record is
+ * used as 'lookup key'. File is loaded into memory when preprocessor is initialized. ElasticSearch client and
+ * <code>index_*</code> options are not necessary then. Options <code>preload</code>, <code>bloom_filter</code> and
+ * <code>circuit_breaker_*</code> are used with search index only.
  * <li>
  * <code>result_mapping<code> - array of mappings from lookup result to the data. Each mapping definition may contain these fields:
  * <ul>
@@ -67,8 +89,54 @@ import org.elasticsearch.search.SearchHit;
  * <li><code>source_bases</code> - list of fields in source data which are used as bases for lookups evaluation. If
  * defined then lookup is performed for each of this fields, <code>source_field</code>, <code>target_field</code> and
  * keys in <code>value_default</code> and<code>source_value</code> are resolved relatively against this base. Base must
- * provide object or list of objects. See example later. </ul>
+ * provide object or list of objects. See example later.
+ * <li><code>cache_max_entries</code> - optional maximal number of lookup results cached over all preprocessed
+ * documents. Cache is not used if not defined or 0. Least recently used results are evicted from cache if this number
+ * is reached. Results are cached for lookup keys not found in index too, so lookup is not repeated for them.
+ * Concurrent lookups for same key are coalesced even if cache is not used, so only one search request is sent and
+ * other threads wait for its result.
+ * <li><code>cache_ttl</code> - optional time to live of cached lookup result, eg. <code>10m</code>, <code>30s</code>
+ * or number of milliseconds. Results never expire if not defined. Used only if <code>cache_max_entries</code> is
+ * defined.
+ * <li><code>cache_dir</code> - optional directory where cached lookup results are persisted, so they are loaded when
+ * preprocessor is initialized again (eg. after restart) instead of searching lookup index again. File name is derived
+ * from preprocessor name. Used only if <code>cache_max_entries</code> is defined. Call {@link #close()} when
+ * preprocessor is not used anymore.
+ * <li><code>cache_generation</code> - optional value stored with persisted lookup results. Change it to discard
+ * results persisted before, eg. when content of lookup index changed. Results are discarded when lookup configuration
+ * changes too.
+ * <li><code>cache_negative_ttl</code> - optional time to live of cached result for lookup key not found in index, eg.
+ * <code>1m</code>. Value of <code>cache_ttl</code> is used if not defined. Used only if <code>cache_max_entries</code>
+ * is defined.
+ * <li><code>preload</code> - optional, if <code>true</code> then whole lookup index is loaded into memory table when
+ * preprocessor is initialized, and lookups are performed against this table without any search request. Intended for
+ * small lookup indices. Lookup key must be exactly same as value of <code>idx_search_field</code> in this mode (search
+ * index analysis is not applied). Search requests are used if preload fails.
+ * <li><code>preload_refresh_interval</code> - optional interval of preloaded table refresh in background, eg.
+ * <code>10m</code>. Table is not refreshed if not defined. Call {@link #close()} to stop refresh if preprocessor is not
+ * used anymore. Bloom filter (see <code>bloom_filter</code>) is refreshed with this interval too.
+ * <li><code>bloom_filter</code> - optional, if <code>true</code> then bloom filter of all values of
+ * <code>idx_search_field</code> in lookup index is loaded when preprocessor is initialized, and lookup keys which are
+ * not contained in it are not searched, default values are used for them directly. Intended for big lookup indices
+ * where lot of lookup keys are missing. Lookup key must be exactly same as value of <code>idx_search_field</code> in
+ * this mode (search index analysis is not applied). Not used if <code>preload</code> is <code>true</code>.
+ * <li><code>circuit_breaker_failure_rate</code> - optional percentage (1 - 100) of failed lookup requests which opens
+ * circuit breaker. While breaker is open, lookup index is not asked, cached lookup results are used even if expired,
+ * and default values are used for other lookup keys immediately. One probe request is performed in background after
+ * <code>circuit_breaker_open_duration</code>, breaker closes if it succeeds. Circuit breaker is not used if neither
+ * this nor <code>circuit_breaker_slow_request</code> is defined, default is 50 then.
+ * <li><code>circuit_breaker_slow_request</code> - optional duration of lookup request which is counted as failed by
+ * circuit breaker, eg. <code>500ms</code>.
+ * <li><code>circuit_breaker_window</code> - optional number of last lookup requests evaluated by circuit breaker,
+ * default is 20.
+ * <li><code>circuit_breaker_open_duration</code> - optional time circuit breaker stays open before probe request is
+ * performed, default is <code>30s</code>.
+ * </ul>
  * 
+ * Use {@link #preprocessBatch(List)} (or {@link PreprocessorChain#processBatch(List)}) to preprocess more documents at
+ * once, distinct lookup keys from all documents are resolved by few multi search requests then.
+ * {@link #preprocessDataAsync(Map, ActionListener)} (used by {@link PreprocessorChain#processAsync(Map, ActionListener)})
+ * doesn't block calling thread while waiting for search responses.
  * 
  * Example of configuration for this preprocessor for lookup of multiple values of same structure:
  * 
@@ -181,7 +249,9 @@ import org.elasticsearch.search.SearchHit;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase implements
+		AsyncStructuredContentPreprocessor, ProjectableStructuredContentPreprocessor {
 
 	protected static final String CFG_index_name = "index_name";
 	protected static final String CFG_index_type = "index_type";
@@ -193,6 +263,35 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 	protected static final String CFG_target_field = "target_field";
 	protected static final String CFG_value_default = "value_default";
 	protected static final String CFG_source_bases = "source_bases";
+	protected static final String CFG_cache_max_entries = "cache_max_entries";
+	protected static final String CFG_cache_ttl = "cache_ttl";
+	protected static final String CFG_preload = "preload";
+	protected static final String CFG_preload_refresh_interval = "preload_refresh_interval";
+	protected static final String CFG_cache_negative_ttl = "cache_negative_ttl";
+	protected static final String CFG_bloom_filter = "bloom_filter";
+	protected static final String CFG_lookup_mode = "lookup_mode";
+	protected static final String CFG_cache_dir = "cache_dir";
+	protected static final String CFG_cache_generation = "cache_generation";
+	protected static final String CFG_circuit_breaker_failure_rate = "circuit_breaker_failure_rate";
+	protected static final String CFG_circuit_breaker_slow_request = "circuit_breaker_slow_request";
+	protected static final String CFG_circuit_breaker_window = "circuit_breaker_window";
+	protected static final String CFG_circuit_breaker_open_duration = "circuit_breaker_open_duration";
+	protected static final String CFG_lookup_table = "lookup_table";
+	protected static final String CFG_lookup_file = "lookup_file";
+
+	protected static final String LOOKUP_MODE_MATCH = "match";
+	protected static final String LOOKUP_MODE_TERM = "term";
+	protected static final String LOOKUP_MODE_GET = "get";
+
+	/**
+	 * Maximal number of lookup keys resolved by one batch lookup of {@link #lookupSource} (one multi search request for
+	 * lookup index) by {@link #preprocessBatch(List)}.
+	 */
+	protected static final int MULTI_SEARCH_MAX_REQUESTS = 100;
+
+	protected static final int CIRCUIT_BREAKER_DEFAULT_FAILURE_RATE = 50;
+	protected static final int CIRCUIT_BREAKER_DEFAULT_WINDOW = 20;
+	protected static final long CIRCUIT_BREAKER_DEFAULT_OPEN_DURATION = 30000;
 
 	protected List<String> sourceBases;
 
@@ -201,21 +300,83 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 	protected String sourceField;
 	protected String sourceValuePattern;
 	protected String idxSearchField;
+	/**
+	 * How lookup index is asked for lookup key, one of <code>LOOKUP_MODE_xx</code> constants.
+	 */
+	protected String lookupMode;
 	protected List<Map<String, String>> resultMapping;
 
+	/**
+	 * Source all lookup keys are resolved by. {@link ESLookupSource} by default, local source if
+	 * <code>lookup_table</code> or <code>lookup_file</code> is configured, or any source set by
+	 * {@link #setLookupSource(LookupSource)}. {@link #lookupCache} and {@link #circuitBreaker} are not used while
+	 * source is {@link LookupSource#isInMemory()}.
+	 */
+	protected LookupSource lookupSource;
+
+	protected List<FieldPath> sourceBasesPaths;
+	protected FieldPath sourceFieldPath;
+	/**
+	 * Template compiled from {@link #sourceValuePattern}, <code>null</code> if {@link #sourceField} is defined.
+	 */
+	protected CompiledTemplate sourceValueTemplate;
+	protected Map<String, FieldPath> targetFieldPaths;
+	/**
+	 * Templates compiled from <code>value_default</code> of {@link #resultMapping} records, on same positions as records.
+	 * <code>null</code> if default is not defined for record.
+	 */
+	protected CompiledTemplate[] valueDefaultTemplates;
+
+	/**
+	 * Cache of lookup results shared by all preprocessed documents, <code>null</code> if not configured. Contains values
+	 * of <code>idx_result_field</code>s as returned by {@link #searchLookupIndex(Object)}, so defaults (which may depend
+	 * on preprocessed document) are evaluated for each document.
+	 */
+	protected LookupCache<Object, Map<String, Object>> lookupCache;
+
+	/**
+	 * Time to live of lookup results for keys not found in lookup index in {@link #lookupCache}, in milliseconds.
+	 */
+	protected long cacheNegativeTtl;
+
+	/**
+	 * File {@link #lookupCache} is persisted into if <code>cache_dir</code> is configured, <code>null</code> otherwise.
+	 */
+	protected LookupCacheFile lookupCacheFile;
+
+	protected boolean preload;
+
+	protected boolean useBloomFilter;
+
+	/**
+	 * Circuit breaker guarding requests to lookup index, <code>null</code> if not configured.
+	 */
+	protected LookupCircuitBreaker circuitBreaker;
+
+	/**
+	 * Lookups actually performed by {@link #searchLookupIndexCoalesced(Object)}, lookup key is key. Threads looking up
+	 * same key wait for the future instead of sending another search request. Entry is removed when lookup finishes.
+	 */
+	protected final ConcurrentMap<Object, PlainActionFuture<Map<String, Object>>> inFlightLookups =
+			new ConcurrentHashMap<Object, PlainActionFuture<Map<String, Object>>>();
+
 	@SuppressWarnings("unchecked")
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
-		if (client == null) {
+		boolean localLookup = settings != null
+				&& (settings.get(CFG_lookup_table) != null || settings.get(CFG_lookup_file) != null);
+		if (client == null && !localLookup) {
 			throw new SettingsException("ElasticSearch client is required for preprocessor " + name);
 		}
 		if (settings == null) {
 			throw new SettingsException("'settings' section is not defined for preprocessor " + name);
 		}
 		indexName = XContentMapValues.nodeStringValue(settings.get(CFG_index_name), null);
-		validateConfigurationStringNotEmpty(indexName, CFG_index_name);
 		indexType = XContentMapValues.nodeStringValue(settings.get(CFG_index_type), null);
-		validateConfigurationStringNotEmpty(indexType, CFG_index_type);
+		if (!localLookup) {
+			validateConfigurationStringNotEmpty(indexName, CFG_index_name);
+			validateConfigurationStringNotEmpty(indexType, CFG_index_type);
+		}
 		sourceField = XContentMapValues.nodeStringValue(settings.get(CFG_source_field), null);
 		if (ValueUtils.isEmpty(sourceField)) {
 			sourceField = null;
@@ -227,9 +388,204 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 		}
 		resultMapping = (List<Map<String, String>>) settings.get(CFG_result_mapping);
 		validateResultMappingConfiguration(resultMapping, CFG_result_mapping);
+		lookupMode = ValueUtils.trimToNull(XContentMapValues.nodeStringValue(settings.get(CFG_lookup_mode), null));
+		if (lookupMode == null) {
+			lookupMode = LOOKUP_MODE_MATCH;
+		} else if (!LOOKUP_MODE_MATCH.equals(lookupMode) && !LOOKUP_MODE_TERM.equals(lookupMode)
+				&& !LOOKUP_MODE_GET.equals(lookupMode)) {
+			throw new SettingsException("Invalid 'settings/" + CFG_lookup_mode + "' configuration value '" + lookupMode
+					+ "' for '" + name + "' preprocessor, use one of: " + LOOKUP_MODE_MATCH + ", " + LOOKUP_MODE_TERM + ", "
+					+ LOOKUP_MODE_GET);
+		}
 		idxSearchField = XContentMapValues.nodeStringValue(settings.get(CFG_idx_search_field), null);
-		validateConfigurationStringNotEmpty(idxSearchField, CFG_idx_search_field);
+		if (isGetLookupMode()) {
+			idxSearchField = null;
+		} else if (!localLookup) {
+			validateConfigurationStringNotEmpty(idxSearchField, CFG_idx_search_field);
+		}
 		sourceBases = (List<String>) settings.get(CFG_source_bases);
+		compileConfiguration();
+
+		lookupCache = null;
+		int cacheMaxEntries = readIntegerConfigValue(settings, CFG_cache_max_entries);
+		if (cacheMaxEntries > 0) {
+			long cacheTtl = readTimeConfigValue(settings, CFG_cache_ttl);
+			lookupCache = new LookupCache<Object, Map<String, Object>>(cacheMaxEntries, cacheTtl);
+			cacheNegativeTtl = settings.get(CFG_cache_negative_ttl) != null ? readTimeConfigValue(settings,
+					CFG_cache_negative_ttl) : cacheTtl;
+		}
+
+		circuitBreaker = null;
+		if (!localLookup
+				&& (settings.get(CFG_circuit_breaker_failure_rate) != null || settings
+						.get(CFG_circuit_breaker_slow_request) != null)) {
+			circuitBreaker = createCircuitBreaker(settings);
+		}
+
+		close();
+		preload = !localLookup && XContentMapValues.nodeBooleanValue(settings.get(CFG_preload), false);
+		useBloomFilter = !localLookup && !preload
+				&& XContentMapValues.nodeBooleanValue(settings.get(CFG_bloom_filter), false);
+		if (localLookup) {
+			lookupSource = createLocalLookupSource(settings);
+		} else {
+			ESLookupSource source = createESLookupSource();
+			if (preload) {
+				source.enablePreload(readTimeConfigValue(settings, CFG_preload_refresh_interval));
+			} else if (useBloomFilter) {
+				source.enableBloomFilter(readTimeConfigValue(settings, CFG_preload_refresh_interval));
+			}
+			lookupSource = source;
+		}
+		if (lookupCacheFile != null) {
+			lookupCacheFile.close();
+			lookupCacheFile = null;
+		}
+		String cacheDir = ValueUtils.trimToNull(XContentMapValues.nodeStringValue(settings.get(CFG_cache_dir), null));
+		if (cacheDir != null && lookupCache != null) {
+			openLookupCacheFile(cacheDir, XContentMapValues.nodeStringValue(settings.get(CFG_cache_generation), ""));
+		}
+	}
+
+	/**
+	 * Create source searching lookup index in ElasticSearch, used if no local source is configured.
+	 * 
+	 * @return lookup source
+	 */
+	protected ESLookupSource createESLookupSource() {
+		return new ESLookupSource(client, indexName, indexType, lookupMode, idxSearchField, getIdxResultFields());
+	}
+
+	/**
+	 * Create local lookup source from <code>lookup_table</code> or <code>lookup_file</code> configuration.
+	 * 
+	 * @param settings to read configuration from
+	 * @return lookup source
+	 * @throws SettingsException thrown if configuration is not valid or file can't be loaded
+	 */
+	@SuppressWarnings("unchecked")
+	protected LookupSource createLocalLookupSource(Map<String, Object> settings) throws SettingsException {
+		Object lookupTable = settings.get(CFG_lookup_table);
+		if (lookupTable != null) {
+			if (!(lookupTable instanceof Map)) {
+				throw new SettingsException("Invalid 'settings/" + CFG_lookup_table + "' configuration value for '" + name
+						+ "' preprocessor, object expected");
+			}
+			try {
+				return new MapLookupSource((Map<String, Map<String, Object>>) lookupTable);
+			} catch (ClassCastException e) {
+				throw new SettingsException("Invalid 'settings/" + CFG_lookup_table + "' configuration value for '" + name
+						+ "' preprocessor, object with objects expected");
+			}
+		}
+		String lookupFile = XContentMapValues.nodeStringValue(settings.get(CFG_lookup_file), null);
+		validateConfigurationStringNotEmpty(lookupFile, CFG_lookup_file);
+		try {
+			return new FileLookupSource(new File(lookupFile.trim()), idxSearchField, Arrays.asList(getIdxResultFields()));
+		} catch (IOException e) {
+			throw new SettingsException("Invalid 'settings/" + CFG_lookup_file + "' configuration value for '" + name
+					+ "' preprocessor, file can't be loaded: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Create circuit breaker from configuration.
+	 * 
+	 * @param settings to read configuration from
+	 * @return circuit breaker
+	 * @throws SettingsException thrown if configuration is not valid
+	 */
+	protected LookupCircuitBreaker createCircuitBreaker(Map<String, Object> settings) throws SettingsException {
+		int failureRate = readIntegerConfigValue(settings, CFG_circuit_breaker_failure_rate);
+		if (failureRate == 0) {
+			failureRate = CIRCUIT_BREAKER_DEFAULT_FAILURE_RATE;
+		} else if (failureRate > 100) {
+			throw new SettingsException("Invalid 'settings/" + CFG_circuit_breaker_failure_rate
+					+ "' configuration value for '" + name + "' preprocessor: " + failureRate);
+		}
+		int window = readIntegerConfigValue(settings, CFG_circuit_breaker_window);
+		long openDuration = settings.get(CFG_circuit_breaker_open_duration) != null ? readTimeConfigValue(settings,
+				CFG_circuit_breaker_open_duration) : CIRCUIT_BREAKER_DEFAULT_OPEN_DURATION;
+		return new LookupCircuitBreaker(failureRate, readTimeConfigValue(settings, CFG_circuit_breaker_slow_request),
+				window > 0 ? window : CIRCUIT_BREAKER_DEFAULT_WINDOW, openDuration);
+	}
+
+	/**
+	 * Open {@link #lookupCacheFile} and load persisted lookup results from it into {@link #lookupCache}. Persisted
+	 * results are discarded if lookup configuration or <code>cache_generation</code> changed. Cache is not persisted if
+	 * file can't be opened.
+	 * 
+	 * @param cacheDir directory to store cache file into
+	 * @param cacheGeneration configured generation of cache
+	 */
+	protected void openLookupCacheFile(String cacheDir, String cacheGeneration) {
+		StringBuilder generation = new StringBuilder();
+		generation.append(cacheGeneration).append('|').append(indexName).append('|').append(indexType).append('|')
+				.append(lookupMode).append('|').append(idxSearchField);
+		for (Map<String, String> mappingRecord : resultMapping) {
+			generation.append('|').append(mappingRecord.get(CFG_idx_result_field));
+		}
+		File file = new File(cacheDir, name.replaceAll("[^A-Za-z0-9_\\-]", "_") + ".lookupcache");
+		lookupCacheFile = new LookupCacheFile(file, generation.toString());
+		try {
+			int loaded = lookupCacheFile.open(lookupCache);
+			logger.debug("{} lookup results loaded for '{}' preprocessor from {}", loaded, name, file);
+		} catch (IOException e) {
+			logger.warn("Lookup cache file {} can't be opened for '{}' preprocessor due '{}:{}'", file, name, e.getClass()
+					.getName(), e.getMessage());
+			lookupCacheFile = null;
+		}
+	}
+
+	/**
+	 * Read time configuration value, eg. <code>10m</code>, <code>30s</code> or number of milliseconds.
+	 * 
+	 * @param settings to read value from
+	 * @param configFieldName name of field in preprocessor settings structure
+	 * @return value in milliseconds, 0 if not defined
+	 * @throws SettingsException thrown if value is not valid
+	 */
+	protected long readTimeConfigValue(Map<String, Object> settings, String configFieldName) throws SettingsException {
+		String value = XContentMapValues.nodeStringValue(settings.get(configFieldName), null);
+		if (ValueUtils.isEmpty(value))
+			return 0;
+		long ret;
+		try {
+			ret = TimeValue.parseTimeValue(value.trim(), null).millis();
+		} catch (Exception e) {
+			throw new SettingsException("Invalid 'settings/" + configFieldName + "' configuration value for '" + name
+					+ "' preprocessor: " + e.getMessage());
+		}
+		if (ret < 0) {
+			throw new SettingsException("Invalid 'settings/" + configFieldName + "' configuration value for '" + name
+					+ "' preprocessor: " + value);
+		}
+		return ret;
+	}
+
+	/**
+	 * Read non negative integer configuration value.
+	 * 
+	 * @param settings to read value from
+	 * @param configFieldName name of field in preprocessor settings structure
+	 * @return value, 0 if not defined
+	 * @throws SettingsException thrown if value is not valid
+	 */
+	protected int readIntegerConfigValue(Map<String, Object> settings, String configFieldName) throws SettingsException {
+		Object o = settings.get(configFieldName);
+		if (o == null || (o instanceof String && ValueUtils.isEmpty((String) o)))
+			return 0;
+		int ret;
+		try {
+			ret = XContentMapValues.nodeIntegerValue(o);
+		} catch (NumberFormatException e) {
+			ret = -1;
+		}
+		if (ret < 0) {
+			throw new SettingsException("Invalid 'settings/" + configFieldName + "' configuration value for '" + name
+					+ "' preprocessor: " + o);
+		}
+		return ret;
 	}
 
 	/**
@@ -257,52 +613,133 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data) {
+		return preprocessData(data, null, false);
+	}
+
+	/**
+	 * Preprocess batch of documents. Distinct lookup keys from all documents in batch (and all <code>source_bases</code>)
+	 * are collected first and resolved by few multi search requests, so network round trips are not performed for each
+	 * lookup key. Result for each document is same as if {@link #preprocessData(Map)} is called for it.
+	 * 
+	 * @param batch of documents to be preprocessed - documents may be changed during call!
+	 * @return list with preprocessed documents in same order as in <code>batch</code>, <code>null</code> if
+	 *         <code>batch</code> is <code>null</code>.
+	 */
+	@Override
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> batch) {
+		if (batch == null)
+			return null;
+		Map<Object, Object> prefetched = lookupSource.isInMemory() ? null : prefetchLookups(batch);
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(batch.size());
+		for (Map<String, Object> data : batch) {
+			ret.add(preprocessData(data, prefetched, false));
+		}
+		return ret;
+	}
+
+	/**
+	 * Preprocess one document.
+	 * 
+	 * @param data to be preprocessed
+	 * @param prefetched results of lookups performed for whole batch, see {@link #prefetchLookups(List)}. Can be
+	 *          <code>null</code>.
+	 * @param prefetchedOnly if true then lookup keys missing in <code>prefetched</code> are not resolved by blocking
+	 *          lookup, default values are used for them same as for failed lookup. Used for asynchronous preprocessing.
+	 * @return preprocessed data
+	 */
+	protected Map<String, Object> preprocessData(Map<String, Object> data, Map<Object, Object> prefetched,
+			boolean prefetchedOnly) {
 		if (data == null)
 			return null;
 
-		if (sourceBases == null) {
-			processOneSourceValue(data, null);
+		if (sourceBasesPaths == null) {
+			processOneSourceValue(data, prefetched != null ? new LookupContenxt(prefetched, prefetchedOnly) : null);
 		} else {
-			LookupContenxt context = new LookupContenxt();
-			for (String base : sourceBases) {
-				Object obj = XContentMapValues.extractValue(base, data);
-				if (obj != null) {
-					if (obj instanceof Map) {
-						processOneSourceValue((Map<String, Object>) obj, context);
-					} else if (obj instanceof Collection) {
-						for (Object o : (Collection<Object>) obj) {
-							if (o instanceof Map) {
-								processOneSourceValue((Map<String, Object>) o, context);
-							} else {
-								logger.warn("Source base {} contains collection with invalid value to be processed {}", base, obj);
-							}
+			LookupContenxt context = new LookupContenxt(prefetched, prefetchedOnly);
+			for (Map<String, Object> base : resolveSourceBases(data, true)) {
+				processOneSourceValue(base, context);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Get objects from document which are used as bases for lookups evaluation as configured by
+	 * <code>source_bases</code>.
+	 * 
+	 * @param data document to get bases from
+	 * @param logWarnings if true then invalid values in base fields are logged
+	 * @return list of bases
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> resolveSourceBases(Map<String, Object> data, boolean logWarnings) {
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>();
+		for (FieldPath base : sourceBasesPaths) {
+			Object obj = base.get(data);
+			if (obj != null) {
+				if (obj instanceof Map) {
+					ret.add((Map<String, Object>) obj);
+				} else if (obj instanceof Collection) {
+					for (Object o : (Collection<Object>) obj) {
+						if (o instanceof Map) {
+							ret.add((Map<String, Object>) o);
+						} else if (logWarnings) {
+							logger.warn("Source base {} contains collection with invalid value to be processed {}", base, obj);
 						}
-					} else {
-						logger.warn("Source base {} contains invalid value to be processed {}", base, obj);
 					}
+				} else if (logWarnings) {
+					logger.warn("Source base {} contains invalid value to be processed {}", base, obj);
 				}
 			}
 		}
-		return data;
+		return ret;
 	}
 
-	@SuppressWarnings("unchecked")
-	private void processOneSourceValue(Map<String, Object> data, LookupContenxt context) {
-		Object sourceValue = null;
-		if (sourceField != null) {
-			sourceValue = XContentMapValues.extractValue(sourceField, data);
+	/**
+	 * Get 'lookup key' from data, from <code>source_field</code> or <code>source_value</code> pattern.
+	 * 
+	 * @param data to get value from
+	 * @return lookup key, may be Collection of keys
+	 */
+	protected Object getSourceValue(Map<String, Object> data) {
+		if (sourceFieldPath != null) {
+			return sourceFieldPath.get(data);
 		} else {
-			sourceValue = ValueUtils.processStringValuePatternReplacement(sourceValuePattern, data, null);
+			return sourceValueTemplate.render(data, null);
+		}
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		sourceBasesPaths = FieldPath.create(sourceBases);
+		sourceFieldPath = FieldPath.create(sourceField);
+		sourceValueTemplate = null;
+		if (sourceFieldPath == null && sourceValuePattern != null)
+			sourceValueTemplate = CompiledTemplate.compile(sourceValuePattern);
+		targetFieldPaths = new HashMap<String, FieldPath>();
+		valueDefaultTemplates = new CompiledTemplate[resultMapping.size()];
+		int i = 0;
+		for (Map<String, String> mappingRecord : resultMapping) {
+			String targetField = mappingRecord.get(CFG_target_field);
+			targetFieldPaths.put(targetField, new FieldPath(targetField));
+			String valueDefault = mappingRecord.get(CFG_value_default);
+			if (valueDefault != null)
+				valueDefaultTemplates[i] = CompiledTemplate.compile(valueDefault);
+			i++;
 		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void processOneSourceValue(Map<String, Object> data, LookupContenxt context) {
+		Object sourceValue = getSourceValue(data);
 		Map<String, Object> targetValues = null;
 		if (sourceValue instanceof Collection) {
 			if (context == null)
-				context = new LookupContenxt();
+				context = new LookupContenxt(null, false);
 			Collection<Object> sourceCollection = (Collection<Object>) sourceValue;
-			targetValues = new HashMap<String, Object>();
+			targetValues = StructureUtils.createMap();
 			for (Object sourceObject : sourceCollection) {
 				Map<String, Object> v = lookupValue(sourceObject, data, context);
 				if (v != null) {
@@ -311,7 +748,7 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 						if (vo != null) {
 							List<Object> colTarget = (List<Object>) targetValues.get(targetField);
 							if (colTarget == null) {
-								colTarget = new ArrayList<Object>();
+								colTarget = StructureUtils.createList();
 								targetValues.put(targetField, colTarget);
 							}
 							colTarget.add(vo);
@@ -323,12 +760,230 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 			targetValues = lookupValue(sourceValue, data, context);
 		}
 		if (targetValues != null) {
-			for (String targetField : targetValues.keySet())
-				StructureUtils.putValueIntoMapOfMaps(data, targetField, targetValues.get(targetField));
+			for (Map.Entry<String, Object> targetValue : targetValues.entrySet())
+				targetFieldPaths.get(targetValue.getKey()).put(data, targetValue.getValue());
+		}
+	}
+
+	/**
+	 * Collect distinct lookup keys from all documents in batch and resolve them by multi search requests. Keys found in
+	 * {@link #lookupCache} are not searched again.
+	 * 
+	 * @param batch of documents to collect lookup keys from
+	 * @return Map with lookup key as key, and value as returned by {@link #searchLookupIndex(Object)} or
+	 *         {@link ElasticSearchException} if search for this key failed.
+	 */
+	protected Map<Object, Object> prefetchLookups(List<Map<String, Object>> batch) {
+		Map<Object, Object> prefetched = new HashMap<Object, Object>();
+		List<Object> toSearch = collectLookupsToSearch(batch, prefetched);
+		for (int from = 0; from < toSearch.size(); from += MULTI_SEARCH_MAX_REQUESTS) {
+			multiSearchLookupIndex(toSearch.subList(from, Math.min(toSearch.size(), from + MULTI_SEARCH_MAX_REQUESTS)),
+					prefetched);
+		}
+		return prefetched;
+	}
+
+	/**
+	 * Collect distinct lookup keys from all documents in batch. Keys found in {@link #lookupCache} are put into
+	 * <code>prefetched</code> directly, same as results of {@link #lookupWhileCircuitOpen(Object)} if
+	 * {@link #circuitBreaker} is open.
+	 * 
+	 * @param batch of documents to collect lookup keys from
+	 * @param prefetched Map to put cached results into, see {@link #prefetchLookups(List)}
+	 * @return list of lookup keys which have to be searched in lookup index
+	 */
+	protected List<Object> collectLookupsToSearch(List<Map<String, Object>> batch, Map<Object, Object> prefetched) {
+		Set<Object> sourceValues = new LinkedHashSet<Object>();
+		for (Map<String, Object> data : batch) {
+			if (data == null)
+				continue;
+			if (sourceBasesPaths == null) {
+				collectSourceValues(data, sourceValues);
+			} else {
+				for (Map<String, Object> base : resolveSourceBases(data, false)) {
+					collectSourceValues(base, sourceValues);
+				}
+			}
+		}
+
+		List<Object> toSearch = new ArrayList<Object>();
+		for (Object sourceValue : sourceValues) {
+			Map<String, Object> cached = lookupCache != null ? lookupCache.get(sourceValue) : null;
+			if (cached != null) {
+				prefetched.put(sourceValue, cached);
+			} else if (circuitBreaker != null && !circuitBreaker.isRequestAllowed()) {
+				try {
+					prefetched.put(sourceValue, lookupWhileCircuitOpen(sourceValue));
+				} catch (ElasticSearchException e) {
+					prefetched.put(sourceValue, e);
+				}
+			} else {
+				toSearch.add(sourceValue);
+			}
+		}
+		return toSearch;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collectSourceValues(Map<String, Object> data, Set<Object> sourceValues) {
+		Object sourceValue = getSourceValue(data);
+		if (sourceValue instanceof Collection) {
+			for (Object o : (Collection<Object>) sourceValue) {
+				if (o != null)
+					sourceValues.add(o);
+			}
+		} else if (sourceValue != null) {
+			sourceValues.add(sourceValue);
+		}
+	}
+
+	/**
+	 * Resolve more values by one batch lookup of {@link #lookupSource}, which is one multi search (or multi get in
+	 * <code>get</code> lookup mode) request for lookup index. Results are stored into {@link #lookupCache} if
+	 * configured. Failure of one item of request fails lookup of its value only.
+	 * 
+	 * @param sourceValues to be looked up
+	 * @param prefetched Map to put results into, see {@link #prefetchLookups(List)}
+	 */
+	protected void multiSearchLookupIndex(List<Object> sourceValues, Map<Object, Object> prefetched) {
+		long start = System.currentTimeMillis();
+		Map<Object, ElasticSearchException> failures = new HashMap<Object, ElasticSearchException>();
+		Map<Object, Map<String, Object>> results;
+		try {
+			results = lookupSource.lookup(sourceValues, failures);
+		} catch (RuntimeException e) {
+			lookupRequestFinished(false, start);
+			if (!(e instanceof ElasticSearchException))
+				throw e;
+			putLookupFailure(sourceValues, (ElasticSearchException) e, prefetched);
+			return;
+		}
+		lookupRequestFinished(true, start);
+		putLookupResults(sourceValues, results, failures, prefetched);
+	}
+
+	/**
+	 * Resolve more values by asynchronous batch lookup of {@link #lookupSource}. Results are stored into
+	 * {@link #lookupCache} if configured.
+	 * 
+	 * @param sourceValues to be looked up
+	 * @param prefetched Map to put results into, see {@link #prefetchLookups(List)}
+	 * @param requestFinished called when results or failure are put into <code>prefetched</code>
+	 */
+	protected void multiSearchLookupIndexAsync(final List<Object> sourceValues, final Map<Object, Object> prefetched,
+			final Runnable requestFinished) {
+		final long start = System.currentTimeMillis();
+		final AtomicBoolean finished = new AtomicBoolean();
+		final Map<Object, ElasticSearchException> failures = new HashMap<Object, ElasticSearchException>();
+		ActionListener<Map<Object, Map<String, Object>>> listener;
+		listener = new ActionListener<Map<Object, Map<String, Object>>>() {
+			@Override
+			public void onResponse(Map<Object, Map<String, Object>> results) {
+				if (!finished.compareAndSet(false, true))
+					return;
+				lookupRequestFinished(true, start);
+				putLookupResults(sourceValues, results, failures, prefetched);
+				requestFinished.run();
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				if (!finished.compareAndSet(false, true))
+					return;
+				lookupRequestFinished(false, start);
+				putLookupFailure(sourceValues, e instanceof ElasticSearchException ? (ElasticSearchException) e
+						: new ElasticSearchException(e.getMessage(), e), prefetched);
+				requestFinished.run();
+			}
+		};
+		try {
+			lookupSource.lookupAsync(sourceValues, failures, listener);
+		} catch (RuntimeException e) {
+			listener.onFailure(e);
+		}
+	}
+
+	private void putLookupResults(List<Object> sourceValues, Map<Object, Map<String, Object>> results,
+			Map<Object, ElasticSearchException> failures, Map<Object, Object> prefetched) {
+		for (Object sourceValue : sourceValues) {
+			ElasticSearchException failure = failures.get(sourceValue);
+			if (failure != null) {
+				prefetched.put(sourceValue, failure);
+				continue;
+			}
+			Map<String, Object> resultFields = results.get(sourceValue);
+			if (resultFields == null)
+				resultFields = Collections.emptyMap();
+			prefetched.put(sourceValue, resultFields);
+			putIntoLookupCache(sourceValue, resultFields);
+		}
+	}
+
+	private void putLookupFailure(List<Object> sourceValues, ElasticSearchException e, Map<Object, Object> prefetched) {
+		for (Object sourceValue : sourceValues) {
+			prefetched.put(sourceValue, e);
+		}
+	}
+
+	/**
+	 * Preprocess one document without blocking calling thread. All lookup keys of document which are not available in
+	 * {@link #lookupCache} are resolved by asynchronous batch lookups of {@link #lookupSource} (multi search or multi get
+	 * requests executed with {@link ActionListener} for lookup index), and document is preprocessed in ElasticSearch
+	 * client thread when all responses are received. Document is preprocessed directly if source is in memory. Result is
+	 * same as from {@link #preprocessData(Map)}, including default values used for failed lookups. Response thread is
+	 * never blocked by another lookup, default values are used if some lookup key was not resolved.
+	 */
+	@Override
+	public void preprocessDataAsync(final Map<String, Object> data, final ActionListener<Map<String, Object>> listener) {
+		if (data == null || lookupSource.isInMemory()) {
+			completeAsync(data, null, listener);
+			return;
+		}
+		final Map<Object, Object> prefetched = new ConcurrentHashMap<Object, Object>();
+		final List<Object> toSearch;
+		try {
+			toSearch = collectLookupsToSearch(Collections.singletonList(data), prefetched);
+		} catch (RuntimeException e) {
+			listener.onFailure(e);
+			return;
+		}
+		if (toSearch.isEmpty()) {
+			completeAsync(data, prefetched, listener);
+			return;
+		}
+		final AtomicInteger pendingRequests = new AtomicInteger((toSearch.size() + MULTI_SEARCH_MAX_REQUESTS - 1)
+				/ MULTI_SEARCH_MAX_REQUESTS);
+		for (int from = 0; from < toSearch.size(); from += MULTI_SEARCH_MAX_REQUESTS) {
+			final List<Object> sourceValues = toSearch.subList(from,
+					Math.min(toSearch.size(), from + MULTI_SEARCH_MAX_REQUESTS));
+			Runnable requestFinished = new Runnable() {
+				@Override
+				public void run() {
+					if (pendingRequests.decrementAndGet() == 0)
+						completeAsync(data, prefetched, listener);
+				}
+			};
+			multiSearchLookupIndexAsync(sourceValues, prefetched, requestFinished);
+		}
+	}
+
+	private void completeAsync(Map<String, Object> data, Map<Object, Object> prefetched,
+			ActionListener<Map<String, Object>> listener) {
+		Map<String, Object> ret;
+		try {
+			ret = preprocessData(data, prefetched, prefetched != null);
+		} catch (RuntimeException e) {
+			listener.onFailure(e);
+			return;
 		}
+		listener.onResponse(ret);
 	}
 
-	private boolean esExceptionWarned = false;
+	/**
+	 * Flag used to log ES exception only once for more subsequent failed lookups. It is not a state of lookups, so it is
+	 * shared by all threads.
+	 */
+	private volatile boolean esExceptionWarned = false;
 
 	/**
 	 * Perform lookup for one value in ES with default handling.
@@ -337,8 +992,9 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 	 * @param data used in default pattern evaluation
 	 * @return Map with looked up values (defaults handled already) and target_field names as keys
 	 */
+	@SuppressWarnings("unchecked")
 	protected Map<String, Object> lookupValue(Object sourceValue, Map<String, Object> data, LookupContenxt context) {
-		Map<String, Object> value = new HashMap<String, Object>();
+		Map<String, Object> value = StructureUtils.createMap();
 
 		if (sourceValue != null) {
 
@@ -346,33 +1002,25 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 				return context.lookupCache.get(sourceValue);
 
 			try {
-				SearchRequestBuilder req = client.prepareSearch(indexName).setTypes(indexType)
-						.setQuery(QueryBuilders.matchAllQuery())
-						.setFilter(FilterBuilders.queryFilter(QueryBuilders.matchQuery(idxSearchField, sourceValue)));
-				for (Map<String, String> mappingRecord : resultMapping) {
-					req.addField(mappingRecord.get(CFG_idx_result_field));
+				Map<String, Object> resultFields = null;
+				if (context != null && context.prefetched != null) {
+					Object prefetchedValue = context.prefetched.get(sourceValue);
+					if (prefetchedValue instanceof ElasticSearchException)
+						throw (ElasticSearchException) prefetchedValue;
+					resultFields = (Map<String, Object>) prefetchedValue;
 				}
-
-				SearchResponse resp = req.execute().actionGet();
-
-				if (resp.getHits().getTotalHits() > 0) {
-					if (resp.getHits().getTotalHits() > 1) {
-						logger.warn("More results found for lookup over value {}", sourceValue);
-					}
-					SearchHit hit = resp.getHits().hits()[0];
-					for (Map<String, String> mappingRecord : resultMapping) {
-						Object v = hit.field(mappingRecord.get(CFG_idx_result_field)).getValue();
-						if (v == null && mappingRecord.get(CFG_value_default) != null) {
-							v = ValueUtils.processStringValuePatternReplacement(mappingRecord.get(CFG_value_default), data,
-									sourceValue);
-						}
-						value.put(mappingRecord.get(CFG_target_field), v);
-					}
-				} else {
+				if (resultFields == null && context != null && context.prefetchedOnly) {
+					logger.warn("Lookup key '{}' was not prefetched for '{}' preprocessor so default value is used for field instead",
+							sourceValue, name);
 					processDefaultValues(sourceValue, data, value);
+				} else {
+					if (resultFields == null)
+						resultFields = lookupSourceValue(sourceValue);
+					processResultValues(sourceValue, resultFields, data, value);
 				}
 
-				esExceptionWarned = false;
+				if (esExceptionWarned)
+					esExceptionWarned = false;
 			} catch (ElasticSearchException e) {
 				if (!esExceptionWarned) {
 					esExceptionWarned = true;
@@ -389,20 +1037,268 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 		return value;
 	}
 
+	/**
+	 * Resolve one value by {@link #lookupSource}. In memory source is used directly, without {@link #lookupCache} and
+	 * {@link #circuitBreaker}.
+	 * 
+	 * @param sourceValue to be looked up
+	 * @return Map with values of <code>idx_result_field</code>s from found document, empty Map if nothing found
+	 * @throws ElasticSearchException if search fails
+	 */
+	protected Map<String, Object> lookupSourceValue(Object sourceValue) throws ElasticSearchException {
+		if (lookupSource.isInMemory())
+			return lookupSource.lookup(sourceValue);
+		return searchLookupIndexCached(sourceValue);
+	}
+
+	/**
+	 * Search lookup index for one value, use {@link #lookupCache} if configured. Failed searches are not cached.
+	 * 
+	 * @param sourceValue to be looked up
+	 * @return Map with values of <code>idx_result_field</code>s from found document, empty Map if nothing found
+	 * @throws ElasticSearchException if search fails
+	 */
+	protected Map<String, Object> searchLookupIndexCached(Object sourceValue) throws ElasticSearchException {
+		if (lookupCache != null) {
+			Map<String, Object> ret = lookupCache.get(sourceValue);
+			if (ret != null)
+				return ret;
+		}
+		if (circuitBreaker != null && !circuitBreaker.isRequestAllowed())
+			return lookupWhileCircuitOpen(sourceValue);
+		return searchLookupIndexCoalesced(sourceValue);
+	}
+
+	/**
+	 * Lookup value while {@link #circuitBreaker} is open, so lookup index is not asked. Probe request is started in
+	 * background if it is time to check lookup index recovery.
+	 * 
+	 * @param sourceValue to be looked up
+	 * @return value from {@link #lookupCache} even if it is expired already
+	 * @throws ElasticSearchException if value is not cached, so default values are used
+	 */
+	protected Map<String, Object> lookupWhileCircuitOpen(Object sourceValue) throws ElasticSearchException {
+		Map<String, Object> ret = lookupCache != null ? lookupCache.getIncludingExpired(sourceValue) : null;
+		long probe = circuitBreaker.tryStartProbe();
+		if (probe != LookupCircuitBreaker.NO_PROBE) {
+			logger.debug("Probing lookup index for '{}' preprocessor while circuit breaker is open", name);
+			probeLookupIndex(sourceValue, probe);
+		}
+		if (ret != null)
+			return ret;
+		throw new ElasticSearchException("Lookup index is not asked as circuit breaker is open for '" + name
+				+ "' preprocessor");
+	}
+
+	/**
+	 * Perform probe request of {@link #circuitBreaker} in background by asynchronous lookup of {@link #lookupSource}.
+	 * Outcome is always passed to circuit breaker, including exception thrown by source. Result is stored into
+	 * {@link #lookupCache} if configured.
+	 * 
+	 * @param sourceValue to be looked up by probe
+	 * @param probe token returned by {@link LookupCircuitBreaker#tryStartProbe()}
+	 */
+	protected void probeLookupIndex(final Object sourceValue, final long probe) {
+		final long start = System.currentTimeMillis();
+		final List<Object> sourceValues = Collections.singletonList(sourceValue);
+		final Map<Object, ElasticSearchException> failures = new HashMap<Object, ElasticSearchException>();
+		try {
+			lookupSource.lookupAsync(sourceValues, failures, new ActionListener<Map<Object, Map<String, Object>>>() {
+				@Override
+				public void onResponse(Map<Object, Map<String, Object>> results) {
+					putLookupResults(sourceValues, results, failures, new HashMap<Object, Object>());
+					probeFinished(probe, failures.isEmpty(), start);
+				}
+
+				@Override
+				public void onFailure(Throwable e) {
+					probeFinished(probe, false, start);
+				}
+			});
+		} catch (RuntimeException e) {
+			logger.warn("Probe of lookup index failed for '{}' preprocessor due '{}:{}'", name, e.getClass().getName(),
+					e.getMessage());
+			probeFinished(probe, false, start);
+		}
+	}
+
+	/**
+	 * Record outcome of request to lookup index into {@link #circuitBreaker} if configured.
+	 * 
+	 * @param success true if request succeeded
+	 * @param start time request started at
+	 */
+	protected void lookupRequestFinished(boolean success, long start) {
+		if (circuitBreaker == null)
+			return;
+		if (circuitBreaker.requestFinished(success, System.currentTimeMillis() - start)) {
+			logger.warn("Circuit breaker opened for '{}' preprocessor due failed or slow lookup requests", name);
+		}
+	}
+
+	/**
+	 * Record outcome of probe request into {@link #circuitBreaker}.
+	 * 
+	 * @param probe token returned by {@link LookupCircuitBreaker#tryStartProbe()}
+	 * @param success true if probe succeeded
+	 * @param start time probe started at
+	 */
+	protected void probeFinished(long probe, boolean success, long start) {
+		if (circuitBreaker.probeFinished(probe, success, System.currentTimeMillis() - start)) {
+			logger.info("Circuit breaker closed for '{}' preprocessor, lookup index is asked again", name);
+		}
+	}
+
+	/**
+	 * Put lookup result into {@link #lookupCache} if configured. {@link #cacheNegativeTtl} is used for keys not found.
+	 * Result is appended to {@link #lookupCacheFile} too if configured.
+	 * 
+	 * @param sourceValue lookup key
+	 * @param resultFields lookup result
+	 */
+	protected void putIntoLookupCache(Object sourceValue, Map<String, Object> resultFields) {
+		if (lookupCache == null)
+			return;
+		long ttl = resultFields.isEmpty() ? cacheNegativeTtl : lookupCache.getTtl();
+		lookupCache.put(sourceValue, resultFields, ttl);
+		LookupCacheFile file = lookupCacheFile;
+		if (file != null) {
+			file.append(sourceValue, resultFields, ttl);
+		}
+	}
+
+	/**
+	 * Search lookup index for one value, but only once for more threads looking up same value at the same time. First
+	 * thread performs search and stores result into {@link #lookupCache} if configured, other threads wait for its
+	 * result instead of sending same search request again. Failure of the search is passed to all waiting threads.
+	 * 
+	 * @param sourceValue to be looked up
+	 * @return Map with values of <code>idx_result_field</code>s from found document, empty Map if nothing found
+	 * @throws ElasticSearchException if search fails
+	 */
+	protected Map<String, Object> searchLookupIndexCoalesced(Object sourceValue) throws ElasticSearchException {
+		PlainActionFuture<Map<String, Object>> lookup = PlainActionFuture.newFuture();
+		PlainActionFuture<Map<String, Object>> inFlight = inFlightLookups.putIfAbsent(sourceValue, lookup);
+		if (inFlight != null)
+			return inFlight.actionGet();
+		long start = System.currentTimeMillis();
+		try {
+			Map<String, Object> ret;
+			try {
+				ret = searchLookupIndex(sourceValue);
+			} catch (RuntimeException e) {
+				lookupRequestFinished(false, start);
+				throw e;
+			}
+			lookupRequestFinished(true, start);
+			putIntoLookupCache(sourceValue, ret);
+			lookup.onResponse(ret);
+			return ret;
+		} catch (RuntimeException e) {
+			lookup.onFailure(e);
+			throw e;
+		} finally {
+			inFlightLookups.remove(sourceValue, lookup);
+		}
+	}
+
+	/**
+	 * Search lookup index for one value.
+	 * 
+	 * @param sourceValue to be looked up
+	 * @return unmodifiable Map with values of <code>idx_result_field</code>s from found document, empty Map if nothing
+	 *         found
+	 * @throws ElasticSearchException if search fails
+	 */
+	protected Map<String, Object> searchLookupIndex(Object sourceValue) throws ElasticSearchException {
+		return lookupSource.lookup(sourceValue);
+	}
+
+	/**
+	 * @return names of <code>idx_result_field</code>s from {@link #resultMapping}
+	 */
+	protected String[] getIdxResultFields() {
+		String[] ret = new String[resultMapping.size()];
+		int i = 0;
+		for (Map<String, String> mappingRecord : resultMapping) {
+			ret[i++] = mappingRecord.get(CFG_idx_result_field);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return true if lookup index documents are get directly by lookup key used as id
+	 */
+	protected boolean isGetLookupMode() {
+		return LOOKUP_MODE_GET.equals(lookupMode);
+	}
+
+	private void processResultValues(Object sourceValue, Map<String, Object> resultFields, Map<String, Object> data,
+			Map<String, Object> value) {
+		if (resultFields.isEmpty()) {
+			processDefaultValues(sourceValue, data, value);
+			return;
+		}
+		int i = 0;
+		for (Map<String, String> mappingRecord : resultMapping) {
+			Object v = resultFields.get(mappingRecord.get(CFG_idx_result_field));
+			if (v == null && valueDefaultTemplates[i] != null) {
+				v = valueDefaultTemplates[i].render(data, sourceValue);
+			}
+			value.put(mappingRecord.get(CFG_target_field), v);
+			i++;
+		}
+	}
+
 	private void processDefaultValues(Object sourceValue, Map<String, Object> data, Map<String, Object> value) {
+		int i = 0;
 		for (Map<String, String> mappingRecord : resultMapping) {
-			if (mappingRecord.get(CFG_value_default) != null) {
-				Object v = ValueUtils.processStringValuePatternReplacement(mappingRecord.get(CFG_value_default), data,
-						sourceValue);
-				value.put(mappingRecord.get(CFG_target_field), v);
+			if (valueDefaultTemplates[i] != null) {
+				value.put(mappingRecord.get(CFG_target_field), valueDefaultTemplates[i].render(data, sourceValue));
 			} else {
 				value.put(mappingRecord.get(CFG_target_field), null);
 			}
+			i++;
 		}
 	}
 
-	private class LookupContenxt {
+	/**
+	 * Context of one {@link ESLookupValuePreprocessor#preprocessData(Map)} call. Created for each call so lookups over
+	 * same value are not repeated for more source bases in one document, and never shared between threads.
+	 */
+	protected static class LookupContenxt {
 		Map<Object, Map<String, Object>> lookupCache = new HashMap<Object, Map<String, Object>>();
+
+		/**
+		 * Results of lookups prefetched for whole batch, see {@link ESLookupValuePreprocessor#prefetchLookups(List)}.
+		 * <code>null</code> if not preprocessed in batch.
+		 */
+		final Map<Object, Object> prefetched;
+
+		/**
+		 * If true then lookup keys missing in {@link #prefetched} must not be resolved by blocking lookup.
+		 */
+		final boolean prefetchedOnly;
+
+		LookupContenxt(Map<Object, Object> prefetched, boolean prefetchedOnly) {
+			this.prefetched = prefetched;
+			this.prefetchedOnly = prefetchedOnly;
+		}
+	}
+
+	@Override
+	public FieldAccess getFieldAccess() {
+		List<String> read = new ArrayList<String>();
+		if (sourceFieldPath != null) {
+			read.add(sourceField);
+		} else {
+			read.addAll(sourceValueTemplate.getFieldKeys());
+		}
+		for (CompiledTemplate template : valueDefaultTemplates) {
+			if (template != null)
+				read.addAll(template.getFieldKeys());
+		}
+		return FieldAccess.create(sourceBases, read, targetFieldPaths.keySet());
 	}
 
 	public List<String> getSourceBases() {
@@ -433,4 +1329,67 @@ public class ESLookupValuePreprocessor extends StructuredContentPreprocessorBase
 		return resultMapping;
 	}
 
+	/**
+	 * Close lookup source (which stops background refresh of preloaded lookup table or bloom filter if running) and
+	 * lookup cache file. Call it when preprocessor is not necessary anymore.
+	 */
+	public void close() {
+		if (lookupSource != null)
+			lookupSource.close();
+		if (lookupCacheFile != null) {
+			lookupCacheFile.close();
+			lookupCacheFile = null;
+		}
+	}
+
+	public boolean isPreload() {
+		return preload;
+	}
+
+	/**
+	 * @return true if bloom filter of lookup keys is used
+	 */
+	public boolean isBloomFilter() {
+		return useBloomFilter;
+	}
+
+	/**
+	 * @return source lookup keys are resolved by
+	 */
+	public LookupSource getLookupSource() {
+		return lookupSource;
+	}
+
+	/**
+	 * Replace source lookup keys are resolved by, eg. by custom {@link LookupSource} implementation. Previous source is
+	 * closed and {@link #lookupCache} is cleared. Call it after {@link #init(Map)}.
+	 * 
+	 * @param lookupSource to be used
+	 * @throws IllegalArgumentException if source is null
+	 */
+	public void setLookupSource(LookupSource lookupSource) throws IllegalArgumentException {
+		if (lookupSource == null)
+			throw new IllegalArgumentException("lookupSource must be defined");
+		LookupSource previous = this.lookupSource;
+		this.lookupSource = lookupSource;
+		if (previous != null && previous != lookupSource)
+			previous.close();
+		if (lookupCache != null)
+			lookupCache.clear();
+	}
+
+	/**
+	 * @return circuit breaker guarding requests to lookup index, <code>null</code> if not configured
+	 */
+	public LookupCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * @return cache of lookup results with hit and miss counters, <code>null</code> if not configured
+	 */
+	public LookupCache<Object, Map<String, Object>> getLookupCache() {
+		return lookupCache;
+	}
+
 }
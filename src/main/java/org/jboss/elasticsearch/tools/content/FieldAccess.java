@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Paths of fields (in dot notation) read and written by preprocessor or by whole {@link PreprocessorChain}, obtained by
+ * static analysis of configuration. Reading of field means its whole subtree may be read. Instances are immutable.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ProjectableStructuredContentPreprocessor
+ * @see ProjectedJsonReader
+ */
+@ThreadSafe
+public final class FieldAccess {
+
+	/**
+	 * Access of unknown fields, so whole document must be available.
+	 */
+	public static final FieldAccess WHOLE_DOCUMENT = new FieldAccess();
+
+	/**
+	 * Access of no field.
+	 */
+	public static final FieldAccess NONE = new FieldAccess(null, null);
+
+	private final boolean wholeDocument;
+	private final Set<String> readFields;
+	private final Set<String> writtenFields;
+
+	private FieldAccess() {
+		this.wholeDocument = true;
+		this.readFields = Collections.emptySet();
+		this.writtenFields = Collections.emptySet();
+	}
+
+	/**
+	 * Create field access.
+	 *
+	 * @param readFields paths of fields read, can be <code>null</code>. Empty values are skipped.
+	 * @param writtenFields paths of fields written, can be <code>null</code>. Empty values are skipped.
+	 */
+	public FieldAccess(Collection<String> readFields, Collection<String> writtenFields) {
+		this.wholeDocument = false;
+		this.readFields = copy(readFields);
+		this.writtenFields = copy(writtenFields);
+	}
+
+	/**
+	 * Create field access of preprocessor which processes fields relative to more <code>source_bases</code>.
+	 *
+	 * @param sourceBases paths of bases in document, can be <code>null</code> if fields are relative to document root
+	 * @param readFields paths of fields read relative to each base, can be <code>null</code>
+	 * @param writtenFields paths of fields written relative to each base, can be <code>null</code>
+	 * @return field access with paths relative to document root
+	 */
+	public static FieldAccess create(List<String> sourceBases, Collection<String> readFields,
+			Collection<String> writtenFields) {
+		if (sourceBases == null)
+			return new FieldAccess(readFields, writtenFields);
+		return new FieldAccess(prefix(sourceBases, readFields), prefix(sourceBases, writtenFields));
+	}
+
+	private static Collection<String> prefix(List<String> sourceBases, Collection<String> fields) {
+		if (fields == null)
+			return null;
+		Set<String> ret = new LinkedHashSet<String>();
+		for (String base : sourceBases) {
+			if (ValueUtils.isEmpty(base))
+				continue;
+			for (String field : fields) {
+				if (!ValueUtils.isEmpty(field))
+					ret.add(base + "." + field);
+			}
+		}
+		return ret;
+	}
+
+	private static Set<String> copy(Collection<String> fields) {
+		if (fields == null || fields.isEmpty())
+			return Collections.emptySet();
+		Set<String> ret = new LinkedHashSet<String>();
+		for (String field : fields) {
+			if (!ValueUtils.isEmpty(field))
+				ret.add(field);
+		}
+		return Collections.unmodifiableSet(ret);
+	}
+
+	/**
+	 * Merge with other field access, eg. of next preprocessor in chain.
+	 *
+	 * @param other to merge with, <code>null</code> means {@link #WHOLE_DOCUMENT}
+	 * @return field access containing fields of both
+	 */
+	public FieldAccess merge(FieldAccess other) {
+		if (wholeDocument || other == null || other.wholeDocument)
+			return WHOLE_DOCUMENT;
+		Set<String> read = new LinkedHashSet<String>(readFields);
+		read.addAll(other.readFields);
+		Set<String> written = new LinkedHashSet<String>(writtenFields);
+		written.addAll(other.writtenFields);
+		return new FieldAccess(read, written);
+	}
+
+	/**
+	 * @return true if fields accessed are not known, so whole document must be available
+	 */
+	public boolean isWholeDocument() {
+		return wholeDocument;
+	}
+
+	/**
+	 * @return unmodifiable set of paths of fields read, empty if {@link #isWholeDocument()}
+	 */
+	public Set<String> getReadFields() {
+		return readFields;
+	}
+
+	/**
+	 * @return unmodifiable set of paths of fields written, empty if {@link #isWholeDocument()}
+	 */
+	public Set<String> getWrittenFields() {
+		return writtenFields;
+	}
+
+	/**
+	 * @return set of paths of fields read or written, empty if {@link #isWholeDocument()}
+	 */
+	public Set<String> getFields() {
+		Set<String> ret = new LinkedHashSet<String>(readFields);
+		ret.addAll(writtenFields);
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		if (wholeDocument)
+			return "FieldAccess [whole document]";
+		return "FieldAccess [read=" + readFields + ", written=" + writtenFields + "]";
+	}
+
+}
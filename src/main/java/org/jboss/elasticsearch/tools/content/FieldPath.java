@@ -0,0 +1,214 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+/**
+ * Precompiled path to the field in Map of Maps structure. Dot notation is used for deeper level of nesting, eg.
+ * <code>fields.author.name</code>. Path is parsed only once when instance is created, so it is intended to be created
+ * in {@link StructuredContentPreprocessorBase#init(Map)} and then used for all preprocessed documents. Instances are
+ * immutable.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see StructureUtils#putValueIntoMapOfMaps(Map, String, Object)
+ * @see XContentMapValues#extractValue(String, Map)
+ */
+@ThreadSafe
+public final class FieldPath {
+
+	private final String path;
+
+	/**
+	 * Tokens used for {@link #get(Map)}, empty tokens are removed.
+	 */
+	private final String[] getTokens;
+
+	/**
+	 * Tokens of path joined by dot from index of first array dimension to index of second array dimension. Used for keys
+	 * containing dot which are looked up by {@link #get(Map)} if value is not found for one token.
+	 */
+	private final String[][] joinedTokens;
+
+	/**
+	 * Tokens used for {@link #put(Map, Object)}.
+	 */
+	private final String[] putTokens;
+
+	/**
+	 * Create path.
+	 *
+	 * @param path to parse. Dot notation can be used for deeper level of nesting.
+	 * @throws IllegalArgumentException if path is empty
+	 */
+	public FieldPath(String path) throws IllegalArgumentException {
+		if (ValueUtils.isEmpty(path)) {
+			throw new IllegalArgumentException("path must be defined");
+		}
+		this.path = path;
+		this.putTokens = path.contains(".") ? path.split("\\.") : new String[] { path };
+
+		List<String> tl = new ArrayList<String>(putTokens.length);
+		for (String t : putTokens) {
+			if (t.length() > 0)
+				tl.add(t);
+		}
+		this.getTokens = tl.toArray(new String[tl.size()]);
+
+		this.joinedTokens = new String[getTokens.length][getTokens.length];
+		for (int i = 0; i < getTokens.length; i++) {
+			String key = getTokens[i];
+			joinedTokens[i][i] = key;
+			for (int j = i + 1; j < getTokens.length; j++) {
+				key = key + "." + getTokens[j];
+				joinedTokens[i][j] = key;
+			}
+		}
+	}
+
+	/**
+	 * Create path from String if not empty.
+	 *
+	 * @param path to parse, can be <code>null</code> or empty
+	 * @return path or <code>null</code> if path is empty
+	 */
+	public static FieldPath create(String path) {
+		if (ValueUtils.isEmpty(path))
+			return null;
+		return new FieldPath(path);
+	}
+
+	/**
+	 * Create paths from Strings.
+	 *
+	 * @param paths to parse, can be <code>null</code>. Empty values are skipped.
+	 * @return list of paths or <code>null</code> if <code>paths</code> is <code>null</code>
+	 */
+	public static List<FieldPath> create(List<String> paths) {
+		if (paths == null)
+			return null;
+		List<FieldPath> ret = new ArrayList<FieldPath>(paths.size());
+		for (String p : paths) {
+			if (!ValueUtils.isEmpty(p))
+				ret.add(new FieldPath(p));
+		}
+		return ret;
+	}
+
+	/**
+	 * Get value from Map of Maps structure. Semantic is same as for {@link XContentMapValues#extractValue(String, Map)}
+	 * so lists may be in path (List of values from all list members is returned then), and keys containing dot are
+	 * supported.
+	 *
+	 * @param data to get value from. Can be <code>null</code>.
+	 * @return value or <code>null</code> if not found.
+	 */
+	public Object get(Map<String, Object> data) {
+		if (data == null || getTokens.length == 0)
+			return null;
+		if (getTokens.length == 1)
+			return data.get(getTokens[0]);
+		return get(0, data);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object get(int index, Object currentValue) {
+		while (index < getTokens.length) {
+			if (currentValue instanceof Map) {
+				Map<String, Object> map = (Map<String, Object>) currentValue;
+				Object mapValue = map.get(getTokens[index]);
+				int nextIndex = index + 1;
+				while (mapValue == null && nextIndex < getTokens.length) {
+					mapValue = map.get(joinedTokens[index][nextIndex]);
+					nextIndex++;
+				}
+				index = nextIndex;
+				currentValue = mapValue;
+			} else if (currentValue instanceof List) {
+				List<Object> valueList = (List<Object>) currentValue;
+				List<Object> newList = new ArrayList<Object>(valueList.size());
+				for (Object o : valueList) {
+					Object listValue = get(index, o);
+					if (listValue != null)
+						newList.add(listValue);
+				}
+				return newList;
+			} else {
+				return null;
+			}
+		}
+		return currentValue;
+	}
+
+	/**
+	 * Put value into Map of Maps structure. Missing Maps in path are created. Semantic is same as for
+	 * {@link StructureUtils#putValueIntoMapOfMaps(Map, String, Object)}.
+	 *
+	 * @param data to put value into. Nothing is done if <code>null</code>.
+	 * @param value to put
+	 * @throws IllegalArgumentException if value can't be added due something wrong in data structure
+	 */
+	@SuppressWarnings("unchecked")
+	public void put(Map<String, Object> data, Object value) throws IllegalArgumentException {
+		if (data == null || putTokens.length == 0)
+			return;
+		Map<String, Object> levelData = data;
+		int last = putTokens.length - 1;
+		for (int i = 0; i < last; i++) {
+			String tok = putTokens[i];
+			Object o = levelData.get(tok);
+			if (o == null) {
+				Map<String, Object> lv = StructureUtils.createMap();
+				levelData.put(tok, lv);
+				levelData = lv;
+			} else if (o instanceof Map) {
+				levelData = (Map<String, Object>) o;
+			} else {
+				throw new IllegalArgumentException("Cant put value for field '" + path
+						+ "' because some element in the path is not Map");
+			}
+		}
+		levelData.put(putTokens[last], value);
+	}
+
+	/**
+	 * @return true if path has only one level, so no dot notation is used.
+	 */
+	public boolean isSimple() {
+		return putTokens.length == 1;
+	}
+
+	/**
+	 * @return path as given to constructor
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public int hashCode() {
+		return path.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof FieldPath))
+			return false;
+		return path.equals(((FieldPath) obj).path);
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+
+}
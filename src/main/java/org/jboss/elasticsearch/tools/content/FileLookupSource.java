@@ -0,0 +1,183 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+/**
+ * {@link LookupSource} loading static reference data from local file into in-memory hash table when created. Supported
+ * file formats (UTF-8 encoded):
+ * <ul>
+ * <li>CSV (file name ends with <code>.csv</code>) - first line contains field names, each next line one record.
+ * Values are separated by comma, may be enclosed in double quotes (quote is escaped by doubling).
+ * <li>JSON array of objects, each object is one record.
+ * <li>JSON object, field name is lookup key and value is object with record.
+ * </ul>
+ * Value of <code>keyField</code> from record is used as lookup key (each value if it is array), except JSON object
+ * format. Records without key are ignored.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public class FileLookupSource extends MapLookupSource {
+
+	private final File file;
+
+	/**
+	 * Create source and load file.
+	 *
+	 * @param file to load data from
+	 * @param keyField name of field with lookup key in record, can be null for JSON object format only
+	 * @param resultFields names of fields kept from record in table, all fields are kept if null
+	 * @throws IOException if file can't be read or has invalid format
+	 * @throws IllegalArgumentException if file is null
+	 */
+	public FileLookupSource(File file, String keyField, Collection<String> resultFields) throws IOException,
+			IllegalArgumentException {
+		if (file == null)
+			throw new IllegalArgumentException("file must be defined");
+		this.file = file;
+		InputStream is = new FileInputStream(file);
+		try {
+			if (file.getName().toLowerCase().endsWith(".csv")) {
+				loadCsv(is, keyField, resultFields);
+			} else {
+				loadJson(is, keyField, resultFields);
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void loadJson(InputStream is, String keyField, Collection<String> resultFields) throws IOException {
+		XContentParser parser = XContentFactory.xContent(XContentType.JSON).createParser(is);
+		try {
+			XContentParser.Token token = parser.nextToken();
+			if (token == XContentParser.Token.START_OBJECT) {
+				for (Map.Entry<String, Object> e : parser.map().entrySet()) {
+					if (!(e.getValue() instanceof Map))
+						throw new IOException("Value of '" + e.getKey() + "' is not an object in " + file);
+					putRecord(e.getKey(), (Map<String, Object>) e.getValue(), resultFields);
+				}
+			} else if (token == XContentParser.Token.START_ARRAY) {
+				if (keyField == null)
+					throw new IOException("Key field must be defined for array of records in " + file);
+				while ((token = parser.nextToken()) == XContentParser.Token.START_OBJECT) {
+					Map<String, Object> record = parser.map();
+					putRecord(XContentMapValues.extractValue(keyField, record), record, resultFields);
+				}
+				if (token != XContentParser.Token.END_ARRAY)
+					throw new IOException("Array of records contains value which is not an object in " + file);
+			} else {
+				throw new IOException("JSON object or array of records expected in " + file);
+			}
+		} finally {
+			parser.close();
+		}
+	}
+
+	protected void loadCsv(InputStream is, String keyField, Collection<String> resultFields) throws IOException {
+		if (keyField == null)
+			throw new IOException("Key field must be defined for CSV file " + file);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+		String line = reader.readLine();
+		if (line == null)
+			return;
+		List<String> header = parseCsvLine(line);
+		int lineNumber = 1;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().length() == 0)
+				continue;
+			List<String> values = parseCsvLine(line);
+			if (values.size() > header.size())
+				throw new IOException("Line " + lineNumber + " contains more values than header in " + file);
+			Map<String, Object> record = new CompactMap<String, Object>(header.size());
+			for (int i = 0; i < values.size(); i++) {
+				record.put(header.get(i), values.get(i));
+			}
+			String key = (String) record.get(keyField);
+			if (!ValueUtils.isEmpty(key))
+				putRecord(key, record, resultFields);
+		}
+	}
+
+	/**
+	 * Parse one line of CSV file.
+	 *
+	 * @param line to parse
+	 * @return list of values
+	 */
+	protected static List<String> parseCsvLine(String line) {
+		List<String> ret = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						value.append(c);
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					value.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				ret.add(value.toString());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		ret.add(value.toString());
+		return ret;
+	}
+
+	private void putRecord(Object key, Map<String, Object> record, Collection<String> resultFields) {
+		if (key == null)
+			return;
+		if (resultFields != null) {
+			Map<String, Object> r = new CompactMap<String, Object>(resultFields.size());
+			for (String field : resultFields) {
+				r.put(field, XContentMapValues.extractValue(field, record));
+			}
+			record = r;
+		}
+		if (key instanceof Collection) {
+			for (Object k : (Collection<?>) key) {
+				if (k != null)
+					put(k, record);
+			}
+		} else {
+			put(key, record);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+}
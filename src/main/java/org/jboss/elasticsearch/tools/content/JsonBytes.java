@@ -0,0 +1,288 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.elasticsearch.ElasticSearchParseException;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+/**
+ * Scanning and writing of UTF-8 encoded JSON bytes shared by {@link LazyJsonMap} and {@link ProjectedJsonReader}.
+ * Scanning methods work over region of source array ending at <code>end</code> and throw
+ * {@link ElasticSearchParseException} if JSON is invalid.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+final class JsonBytes {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] NULL = "null".getBytes(UTF8);
+	private static final byte[] TRUE = "true".getBytes(UTF8);
+	private static final byte[] FALSE = "false".getBytes(UTF8);
+	private static final byte[] HEX = "0123456789abcdef".getBytes(UTF8);
+
+	private JsonBytes() {
+	}
+
+	/**
+	 * Write value as JSON. {@link LazyJsonMap}s and {@link RawJsonValue}s write their source bytes.
+	 *
+	 * @param value to write
+	 * @param out to write UTF-8 encoded JSON into
+	 * @throws IOException if writing fails
+	 */
+	@SuppressWarnings("unchecked")
+	static void writeValue(Object value, OutputStream out) throws IOException {
+		if (value == null) {
+			out.write(NULL);
+		} else if (value instanceof String) {
+			writeString((String) value, out);
+		} else if (value instanceof Boolean) {
+			out.write(((Boolean) value).booleanValue() ? TRUE : FALSE);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+				|| value instanceof BigInteger) {
+			out.write(value.toString().getBytes(UTF8));
+		} else if (value instanceof LazyJsonMap) {
+			((LazyJsonMap) value).writeTo(out);
+		} else if (value instanceof RawJsonValue) {
+			((RawJsonValue) value).writeTo(out);
+		} else if (value instanceof Map) {
+			out.write('{');
+			boolean first = true;
+			for (Map.Entry<Object, Object> e : ((Map<Object, Object>) value).entrySet()) {
+				if (!first)
+					out.write(',');
+				first = false;
+				writeString(String.valueOf(e.getKey()), out);
+				out.write(':');
+				writeValue(e.getValue(), out);
+			}
+			out.write('}');
+		} else if (value instanceof Collection || value instanceof Object[]) {
+			Collection<Object> c = value instanceof Collection ? (Collection<Object>) value : Arrays.asList((Object[]) value);
+			out.write('[');
+			boolean first = true;
+			for (Object o : c) {
+				if (!first)
+					out.write(',');
+				first = false;
+				writeValue(o, out);
+			}
+			out.write(']');
+		} else {
+			// other numbers, dates etc. are written same way as ElasticSearch does it
+			XContentBuilder builder = XContentFactory.jsonBuilder().value(value);
+			builder.bytes().writeTo(out);
+		}
+	}
+
+	static void writeString(String value, OutputStream out) throws IOException {
+		out.write('"');
+		int plainStart = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\' || c < 0x20) {
+				if (i > plainStart)
+					out.write(value.substring(plainStart, i).getBytes(UTF8));
+				plainStart = i + 1;
+				out.write('\\');
+				switch (c) {
+				case '"':
+				case '\\':
+					out.write(c);
+					break;
+				case '\n':
+					out.write('n');
+					break;
+				case '\r':
+					out.write('r');
+					break;
+				case '\t':
+					out.write('t');
+					break;
+				default:
+					out.write('u');
+					out.write('0');
+					out.write('0');
+					out.write(HEX[c >> 4]);
+					out.write(HEX[c & 0xF]);
+				}
+			}
+		}
+		if (plainStart < value.length())
+			out.write(value.substring(plainStart).getBytes(UTF8));
+		out.write('"');
+	}
+
+	/**
+	 * Parse JSON literal, eg. number, <code>true</code>, <code>false</code> or <code>null</code>.
+	 *
+	 * @return Integer, Long or BigInteger for integral number, Double for other number
+	 */
+	static Object parseLiteral(byte[] source, int start, int end) {
+		String literal = new String(source, start, end - start, UTF8);
+		if ("null".equals(literal))
+			return null;
+		if ("true".equals(literal))
+			return Boolean.TRUE;
+		if ("false".equals(literal))
+			return Boolean.FALSE;
+		try {
+			if (literal.indexOf('.') >= 0 || literal.indexOf('e') >= 0 || literal.indexOf('E') >= 0)
+				return Double.valueOf(literal);
+			long l = Long.parseLong(literal);
+			if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE)
+				return Integer.valueOf((int) l);
+			return Long.valueOf(l);
+		} catch (NumberFormatException e) {
+			try {
+				return new BigInteger(literal);
+			} catch (NumberFormatException e2) {
+				throw new ElasticSearchParseException("Invalid JSON value '" + literal + "' at position " + start);
+			}
+		}
+	}
+
+	/**
+	 * Decode JSON string.
+	 *
+	 * @param start position of opening quote
+	 * @param end position after closing quote
+	 */
+	static String decodeString(byte[] source, int start, int end) {
+		int i = start + 1;
+		int contentEnd = end - 1;
+		while (i < contentEnd && source[i] != '\\')
+			i++;
+		if (i == contentEnd)
+			return new String(source, start + 1, contentEnd - start - 1, UTF8);
+		StringBuilder sb = new StringBuilder(new String(source, start + 1, i - start - 1, UTF8));
+		int plainStart = i;
+		while (i < contentEnd) {
+			if (source[i] != '\\') {
+				i++;
+				continue;
+			}
+			if (i > plainStart)
+				sb.append(new String(source, plainStart, i - plainStart, UTF8));
+			byte c = source[i + 1];
+			switch (c) {
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'u':
+				if (i + 6 > contentEnd)
+					throw new ElasticSearchParseException("Invalid JSON string escape at position " + i);
+				try {
+					sb.append((char) Integer.parseInt(new String(source, i + 2, 4, UTF8), 16));
+				} catch (NumberFormatException e) {
+					throw new ElasticSearchParseException("Invalid JSON string escape at position " + i);
+				}
+				i += 4;
+				break;
+			default:
+				sb.append((char) c);
+			}
+			i += 2;
+			plainStart = i;
+		}
+		if (plainStart < contentEnd)
+			sb.append(new String(source, plainStart, contentEnd - plainStart, UTF8));
+		return sb.toString();
+	}
+
+	static int skipWhitespace(byte[] source, int pos, int end) {
+		while (pos < end) {
+			byte b = source[pos];
+			if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+				break;
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return position after closing quote of string starting at pos
+	 */
+	static int skipString(byte[] source, int pos, int end) {
+		pos++;
+		while (pos < end) {
+			byte b = source[pos];
+			if (b == '"')
+				return pos + 1;
+			if (b == '\\')
+				pos++;
+			pos++;
+		}
+		throw new ElasticSearchParseException("Unterminated JSON string");
+	}
+
+	/**
+	 * @return position after end of value starting at pos
+	 */
+	static int skipValue(byte[] source, int pos, int end) {
+		if (pos >= end)
+			throw new ElasticSearchParseException("JSON value expected at position " + pos);
+		byte b = source[pos];
+		if (b == '"')
+			return skipString(source, pos, end);
+		if (b == '{' || b == '[') {
+			int depth = 0;
+			while (pos < end) {
+				b = source[pos];
+				if (b == '"') {
+					pos = skipString(source, pos, end);
+					continue;
+				}
+				if (b == '{' || b == '[') {
+					depth++;
+				} else if (b == '}' || b == ']') {
+					depth--;
+					if (depth == 0)
+						return pos + 1;
+				}
+				pos++;
+			}
+			throw new ElasticSearchParseException("Unterminated JSON object or array");
+		}
+		int start = pos;
+		while (pos < end) {
+			b = source[pos];
+			if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t')
+				break;
+			pos++;
+		}
+		if (pos == start)
+			throw new ElasticSearchParseException("JSON value expected at position " + pos);
+		return pos;
+	}
+
+	static void expect(byte[] source, int pos, int end, char c) {
+		if (pos >= end || source[pos] != c)
+			throw new ElasticSearchParseException("Invalid JSON, '" + c + "' expected at position " + pos);
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies with logarithmic buckets, similar to HDR histogram. Each power of two range is
+ * divided into {@value #SUB_BUCKET_COUNT} linear sub-buckets, so recorded value is known with relative error lower
+ * than 1/{@value #SUB_BUCKET_COUNT} over whole range of positive <code>long</code>, with fixed memory footprint.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see DefaultPreprocessorMetrics
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * Number of linear sub-buckets in each power of two range.
+	 */
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Number of buckets needed to cover all positive <code>long</code> values.
+	 */
+	protected static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * Record value.
+	 *
+	 * @param value to record, negative value is recorded as 0
+	 */
+	public void record(long value) {
+		counts.incrementAndGet(bucketIndex(value));
+	}
+
+	/**
+	 * Record same value more times.
+	 *
+	 * @param value to record, negative value is recorded as 0
+	 * @param count how many times value is recorded
+	 */
+	public void record(long value, long count) {
+		if (count > 0)
+			counts.addAndGet(bucketIndex(value), count);
+	}
+
+	/**
+	 * Get copy of bucket counts, which can be used with static methods of this class to evaluate histogram.
+	 *
+	 * @return copy of bucket counts
+	 */
+	public long[] getCounts() {
+		long[] ret = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			ret[i] = counts.get(i);
+		}
+		return ret;
+	}
+
+	/**
+	 * Get index of bucket for value.
+	 *
+	 * @param value to get bucket for
+	 * @return bucket index
+	 */
+	protected static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT)
+			return value < 0 ? 0 : (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * Get highest value which is recorded into bucket.
+	 *
+	 * @param index of bucket
+	 * @return highest value of bucket
+	 */
+	protected static long bucketHighestValue(int index) {
+		if (index < SUB_BUCKET_COUNT)
+			return index;
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lowest = ((long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT)) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Get total count of values in histogram.
+	 *
+	 * @param counts of buckets, see {@link #getCounts()}
+	 * @return total count of values
+	 */
+	public static long getTotalCount(long[] counts) {
+		long total = 0;
+		for (long c : counts) {
+			total += c;
+		}
+		return total;
+	}
+
+	/**
+	 * Get value at percentile. Highest value of bucket where percentile falls is returned, so real value is lower or equal
+	 * to it, within histogram precision.
+	 *
+	 * @param counts of buckets, see {@link #getCounts()}
+	 * @param percentile to get value for, from 0 to 100
+	 * @return value at percentile, 0 if histogram is empty
+	 */
+	public static long getValueAtPercentile(long[] counts, double percentile) {
+		long total = getTotalCount(counts);
+		if (total == 0)
+			return 0;
+		double p = Math.min(Math.max(percentile, 0), 100);
+		long countAtPercentile = Math.max(1, (long) Math.ceil(p / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= countAtPercentile)
+				return bucketHighestValue(i);
+		}
+		return bucketHighestValue(counts.length - 1);
+	}
+
+	/**
+	 * Get maximal recorded value.
+	 *
+	 * @param counts of buckets, see {@link #getCounts()}
+	 * @return maximal value within histogram precision, 0 if histogram is empty
+	 */
+	public static long getMaxValue(long[] counts) {
+		for (int i = counts.length - 1; i >= 0; i--) {
+			if (counts[i] > 0)
+				return bucketHighestValue(i);
+		}
+		return 0;
+	}
+
+}
@@ -0,0 +1,357 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+/**
+ * Map view of JSON object backed by raw UTF-8 encoded JSON bytes, so document doesn't need to be parsed into Map of
+ * Maps structure before it is preprocessed. Fields of object are indexed (only boundaries of values are found, nothing
+ * is decoded) when map is accessed first time, and value is parsed when it is accessed. Nested objects are
+ * {@link LazyJsonMap}s over same bytes again, so only accessed subtrees are parsed.
+ * <p>
+ * Map can be changed as usual. {@link #writeTo(OutputStream)} copies regions of source bytes which were not changed
+ * verbatim, so untouched parts of document are not parsed and serialized again. Note that lists and maps obtained from
+ * this map are always serialized again as they may be changed by caller.
+ * <p>
+ * Instances are not thread safe, same as {@link java.util.HashMap}. Source bytes must not be changed.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LazyJsonMap extends AbstractMap<String, Object> {
+
+	private final byte[] source;
+	private final int offset;
+	private final int length;
+
+	/**
+	 * Indexed fields of object, <code>null</code> until map is accessed.
+	 */
+	private Map<String, Slot> slots;
+
+	private Set<Map.Entry<String, Object>> entrySet;
+
+	/**
+	 * Create map over JSON object.
+	 *
+	 * @param source UTF-8 encoded JSON object
+	 */
+	public LazyJsonMap(byte[] source) {
+		this(source, 0, source.length);
+	}
+
+	/**
+	 * Create map over JSON object.
+	 *
+	 * @param source bytes containing UTF-8 encoded JSON object
+	 * @param offset of JSON object in source
+	 * @param length of JSON object in source
+	 * @throws IllegalArgumentException if region is out of source bounds
+	 */
+	public LazyJsonMap(byte[] source, int offset, int length) throws IllegalArgumentException {
+		if (source == null)
+			throw new IllegalArgumentException("source must be defined");
+		if (offset < 0 || length < 0 || offset + length > source.length)
+			throw new IllegalArgumentException("offset and length must be within source");
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Create map over JSON object, eg. source of document obtained from ElasticSearch.
+	 *
+	 * @param source UTF-8 encoded JSON object
+	 */
+	public LazyJsonMap(BytesReference source) {
+		this(source.hasArray() ? source.array() : source.toBytes(), source.hasArray() ? source.arrayOffset() : 0, source
+				.length());
+	}
+
+	/**
+	 * @return true if fields of object are indexed already
+	 */
+	public boolean isIndexed() {
+		return slots != null;
+	}
+
+	private Map<String, Slot> slots() {
+		if (slots == null)
+			slots = index();
+		return slots;
+	}
+
+	private Map<String, Slot> index() {
+		Map<String, Slot> ret = new CompactMap<String, Slot>();
+		int end = offset + length;
+		int pos = JsonBytes.skipWhitespace(source, offset, end);
+		JsonBytes.expect(source, pos, end, '{');
+		pos = JsonBytes.skipWhitespace(source, pos + 1, end);
+		if (pos < end && source[pos] == '}')
+			return ret;
+		while (true) {
+			JsonBytes.expect(source, pos, end, '"');
+			int keyEnd = JsonBytes.skipString(source, pos, end);
+			String key = JsonBytes.decodeString(source, pos, keyEnd);
+			pos = JsonBytes.skipWhitespace(source, keyEnd, end);
+			JsonBytes.expect(source, pos, end, ':');
+			int valueStart = JsonBytes.skipWhitespace(source, pos + 1, end);
+			int valueEnd = JsonBytes.skipValue(source, valueStart, end);
+			ret.put(key, new Slot(valueStart, valueEnd));
+			pos = JsonBytes.skipWhitespace(source, valueEnd, end);
+			if (pos < end && source[pos] == ',') {
+				pos = JsonBytes.skipWhitespace(source, pos + 1, end);
+			} else {
+				JsonBytes.expect(source, pos, end, '}');
+				return ret;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return slots().size();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slots().containsKey(key);
+	}
+
+	@Override
+	public Object get(Object key) {
+		Slot slot = slots().get(key);
+		return slot != null ? slot.getValue() : null;
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		Slot slot = slots().get(key);
+		if (slot == null) {
+			slots.put(key, new Slot(value));
+			return null;
+		}
+		Object ret = slot.getValue();
+		slot.setValue(value);
+		return ret;
+	}
+
+	@Override
+	public Object remove(Object key) {
+		Slot slot = slots().remove(key);
+		return slot != null ? slot.getValue() : null;
+	}
+
+	@Override
+	public void clear() {
+		slots = new CompactMap<String, Slot>();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, Object>>() {
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					final Iterator<Map.Entry<String, Slot>> it = slots().entrySet().iterator();
+					return new Iterator<Map.Entry<String, Object>>() {
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String, Object> next() {
+							final Map.Entry<String, Slot> e = it.next();
+							return new Map.Entry<String, Object>() {
+								@Override
+								public String getKey() {
+									return e.getKey();
+								}
+
+								@Override
+								public Object getValue() {
+									return e.getValue().getValue();
+								}
+
+								@Override
+								public Object setValue(Object value) {
+									Object ret = e.getValue().getValue();
+									e.getValue().setValue(value);
+									return ret;
+								}
+
+								@Override
+								public boolean equals(Object o) {
+									if (!(o instanceof Map.Entry))
+										return false;
+									Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+									Object v = getValue();
+									return getKey().equals(other.getKey())
+											&& (v == null ? other.getValue() == null : v.equals(other.getValue()));
+								}
+
+								@Override
+								public int hashCode() {
+									Object v = getValue();
+									return getKey().hashCode() ^ (v == null ? 0 : v.hashCode());
+								}
+
+								@Override
+								public String toString() {
+									return getKey() + "=" + getValue();
+								}
+							};
+						}
+
+						@Override
+						public void remove() {
+							it.remove();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return slots().size();
+				}
+			};
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Write JSON object with actual content of this map. Regions of source which were not changed are copied verbatim.
+	 *
+	 * @param out to write UTF-8 encoded JSON into
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		if (slots == null) {
+			out.write(source, offset, length);
+			return;
+		}
+		out.write('{');
+		boolean first = true;
+		for (Map.Entry<String, Slot> e : slots.entrySet()) {
+			if (!first)
+				out.write(',');
+			first = false;
+			JsonBytes.writeString(e.getKey(), out);
+			out.write(':');
+			Slot slot = e.getValue();
+			if (slot.isSourceValid()) {
+				out.write(source, slot.start, slot.end - slot.start);
+			} else {
+				JsonBytes.writeValue(slot.value, out);
+			}
+		}
+		out.write('}');
+	}
+
+	/**
+	 * @return UTF-8 encoded JSON object with actual content of this map, see {@link #writeTo(OutputStream)}
+	 */
+	public BytesReference toBytes() {
+		BytesStreamOutput out = new BytesStreamOutput();
+		try {
+			writeTo(out);
+		} catch (IOException e) {
+			// not thrown by in-memory stream
+			throw new IllegalStateException(e);
+		}
+		return out.bytes();
+	}
+
+	/**
+	 * Parse value from source.
+	 */
+	private Object parseValue(int start, int end) {
+		byte b = source[start];
+		if (b == '{')
+			return new LazyJsonMap(source, start, end - start);
+		if (b == '[')
+			return parseArray(start, end);
+		if (b == '"')
+			return JsonBytes.decodeString(source, start, end);
+		return JsonBytes.parseLiteral(source, start, end);
+	}
+
+	private List<Object> parseArray(int start, int end) {
+		List<Object> ret = new ArrayList<Object>();
+		int pos = JsonBytes.skipWhitespace(source, start + 1, end);
+		if (pos < end && source[pos] == ']')
+			return ret;
+		while (true) {
+			int valueEnd = JsonBytes.skipValue(source, pos, end);
+			ret.add(parseValue(pos, valueEnd));
+			pos = JsonBytes.skipWhitespace(source, valueEnd, end);
+			if (pos < end && source[pos] == ',') {
+				pos = JsonBytes.skipWhitespace(source, pos + 1, end);
+			} else {
+				JsonBytes.expect(source, pos, end, ']');
+				return ret;
+			}
+		}
+	}
+
+	/**
+	 * Value of field, either region of source or value set by caller.
+	 */
+	private final class Slot {
+		final int start;
+		final int end;
+		Object value;
+		boolean parsed;
+		boolean changed;
+
+		Slot(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		Slot(Object value) {
+			this.start = -1;
+			this.end = -1;
+			this.value = value;
+			this.parsed = true;
+			this.changed = true;
+		}
+
+		Object getValue() {
+			if (!parsed) {
+				value = parseValue(start, end);
+				parsed = true;
+			}
+			return value;
+		}
+
+		void setValue(Object value) {
+			this.value = value;
+			this.parsed = true;
+			this.changed = true;
+		}
+
+		/**
+		 * @return true if value may be copied from source verbatim
+		 */
+		boolean isSourceValid() {
+			return !changed && (!parsed || !(value instanceof Map || value instanceof List));
+		}
+	}
+
+}
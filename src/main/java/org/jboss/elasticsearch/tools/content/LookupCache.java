@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of lookup results shared by all documents preprocessed by one preprocessor instance. Least recently
+ * used entry is evicted if maximal number of entries is reached. Entries expire after configured time to live, which may
+ * be overridden for particular entry. Counters of cache hits and misses are maintained so cache efficiency can be
+ * monitored.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @param <K> type of lookup key
+ * @param <V> type of cached value
+ * @see ESLookupValuePreprocessor
+ */
+@ThreadSafe
+public class LookupCache<K, V> {
+
+	private final int maxEntries;
+	private final long ttl;
+
+	private final Map<K, Entry<V>> entries;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Create cache.
+	 *
+	 * @param maxEntries maximal number of entries in cache, must be greater than 0
+	 * @param ttl time to live of cache entry in milliseconds, 0 means no expiration
+	 * @throws IllegalArgumentException if parameters are invalid
+	 */
+	@SuppressWarnings("serial")
+	public LookupCache(final int maxEntries, long ttl) throws IllegalArgumentException {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be greater than 0");
+		if (ttl < 0)
+			throw new IllegalArgumentException("ttl must not be negative");
+		this.maxEntries = maxEntries;
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get value from cache.
+	 *
+	 * @param key to get value for
+	 * @return cached value or <code>null</code> if not cached or expired
+	 */
+	public V get(K key) {
+		Entry<V> e;
+		synchronized (entries) {
+			e = entries.get(key);
+		}
+		if (e != null && !isExpired(e, System.currentTimeMillis())) {
+			hitCount.incrementAndGet();
+			return e.value;
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Get value from cache even if it is expired already, eg. to be used while source of values is not available. Hit and
+	 * miss counters are not changed.
+	 *
+	 * @param key to get value for
+	 * @return cached value or <code>null</code> if not cached (or evicted already)
+	 */
+	public V getIncludingExpired(K key) {
+		Entry<V> e;
+		synchronized (entries) {
+			e = entries.get(key);
+		}
+		return e != null ? e.value : null;
+	}
+
+	/**
+	 * Put value into cache.
+	 *
+	 * @param key to put value for
+	 * @param value to put, <code>null</code> is not cached
+	 */
+	public void put(K key, V value) {
+		put(key, value, ttl);
+	}
+
+	/**
+	 * Put value into cache with own time to live, eg. shorter one for negative lookup results.
+	 *
+	 * @param key to put value for
+	 * @param value to put, <code>null</code> is not cached
+	 * @param ttl time to live of this entry in milliseconds, 0 means no expiration
+	 */
+	public void put(K key, V value, long ttl) {
+		if (value == null)
+			return;
+		Entry<V> e = new Entry<V>(value, System.currentTimeMillis(), ttl);
+		synchronized (entries) {
+			entries.put(key, e);
+		}
+	}
+
+	/**
+	 * Remove all entries from cache. Counters are not reset.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return actual number of entries in cache, including expired ones not evicted yet
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	private static boolean isExpired(Entry<?> e, long now) {
+		return e.ttl > 0 && (now - e.created) >= e.ttl;
+	}
+
+	/**
+	 * @return number of successful lookups into cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return number of lookups into cache which didn't find valid value
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @return default time to live of cache entry in milliseconds, 0 means no expiration
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	@Override
+	public String toString() {
+		return "LookupCache [maxEntries=" + maxEntries + ", ttl=" + ttl + ", size=" + size() + ", hitCount="
+				+ getHitCount() + ", missCount=" + getMissCount() + "]";
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long created;
+		final long ttl;
+
+		Entry(V value, long created, long ttl) {
+			this.value = value;
+			this.created = created;
+			this.ttl = ttl;
+		}
+	}
+
+}
@@ -0,0 +1,450 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+/**
+ * Append-only file which persists content of {@link LookupCache} over restarts. File is loaded into the cache by
+ * {@link #open(LookupCache)}, then each value put into the cache should be appended by
+ * {@link #append(Object, Map, long)}. Appended values are queued and written by background thread through buffered
+ * stream, so caller is never blocked by file I/O. Values are dropped if queue is full. Later record for same key
+ * replaces earlier one, so file is compacted to live records when opened if it contains too many stale ones, and by
+ * writer thread whenever file grows over <code>COMPACT_RATIO</code> times its size after last compaction.
+ * <p>
+ * File starts with header containing format version and generation marker. Whole file is discarded if generation
+ * marker doesn't match, eg. because lookup configuration changed. Each record contains creation time and time to live,
+ * so expired records are not loaded, and CRC checksum, so file is truncated after last valid record if it is corrupted
+ * (eg. by crash during write).
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ESLookupValuePreprocessor
+ */
+@ThreadSafe
+public class LookupCacheFile {
+
+	private static final ESLogger logger = Loggers.getLogger(LookupCacheFile.class);
+
+	protected static final int MAGIC = 0x4C4B4346;
+	protected static final int VERSION = 1;
+
+	/**
+	 * File is compacted if it contains more than this multiple of live records when opened, or if it grows over this
+	 * multiple of its size after last compaction.
+	 */
+	protected static final int COMPACT_RATIO = 2;
+
+	/**
+	 * Default minimal size of file in bytes compacted by writer thread.
+	 */
+	public static final long DEFAULT_COMPACT_MIN_LENGTH = 1024 * 1024;
+
+	/**
+	 * Maximal number of appended values waiting for writer thread.
+	 */
+	protected static final int QUEUE_CAPACITY = 10000;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Record STOP = new Record(null, null, 0, 0);
+
+	private final File file;
+	private final String generation;
+	private final long compactMinLength;
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private RandomAccessFile raf;
+	private int maxRecords = Integer.MAX_VALUE;
+	private volatile Writer writer;
+
+	/**
+	 * Create persistent cache file with {@link #DEFAULT_COMPACT_MIN_LENGTH}. Call {@link #open(LookupCache)} to use it.
+	 *
+	 * @param file to persist cache into
+	 * @param generation marker of cache content, file with other marker is discarded. Can't be null.
+	 * @throws IllegalArgumentException if parameters are invalid
+	 */
+	public LookupCacheFile(File file, String generation) throws IllegalArgumentException {
+		this(file, generation, DEFAULT_COMPACT_MIN_LENGTH);
+	}
+
+	/**
+	 * Create persistent cache file. Call {@link #open(LookupCache)} to use it.
+	 *
+	 * @param file to persist cache into
+	 * @param generation marker of cache content, file with other marker is discarded. Can't be null.
+	 * @param compactMinLength minimal size of file in bytes compacted by writer thread, must be greater than 0
+	 * @throws IllegalArgumentException if parameters are invalid
+	 */
+	public LookupCacheFile(File file, String generation, long compactMinLength) throws IllegalArgumentException {
+		if (file == null)
+			throw new IllegalArgumentException("file must be defined");
+		if (generation == null)
+			throw new IllegalArgumentException("generation must be defined");
+		if (compactMinLength < 1)
+			throw new IllegalArgumentException("compactMinLength must be greater than 0");
+		this.file = file;
+		this.generation = generation;
+		this.compactMinLength = compactMinLength;
+	}
+
+	/**
+	 * Load valid records from file into cache and start writer thread appending into the file. File is created if it
+	 * doesn't exist. File never keeps more live records than maximal number of entries of the cache.
+	 *
+	 * @param cache to load records into
+	 * @return number of records loaded into the cache
+	 * @throws IOException if file can't be read or written
+	 */
+	public synchronized int open(LookupCache<Object, Map<String, Object>> cache) throws IOException {
+		close();
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Can't create directory " + dir);
+		maxRecords = cache.getMaxEntries();
+		raf = new RandomAccessFile(file, "rw");
+		try {
+			long now = System.currentTimeMillis();
+			Map<Object, Record> records = new LinkedHashMap<Object, Record>();
+			int recordCount = read(records, now);
+			if (recordCount < 0 || recordCount > COMPACT_RATIO * Math.max(records.size(), 1)) {
+				rewrite(records.values());
+			}
+			for (Record r : records.values()) {
+				long ttl = 0;
+				if (r.ttl > 0)
+					ttl = r.created + r.ttl - now;
+				cache.put(r.key, r.value, ttl);
+			}
+			writer = new Writer();
+			return records.size();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read valid records from file. File is read through stream, not memory mapped, so it can be truncated after last
+	 * valid record.
+	 *
+	 * @param records to put valid not expired records into, at most <code>maxRecords</code> last written ones are kept
+	 * @param now actual time used to check expiration
+	 * @return number of all valid records in file, -1 if file has to be rewritten because header is invalid
+	 * @throws IOException if file can't be read
+	 */
+	private int read(Map<Object, Record> records, long now) throws IOException {
+		long length = raf.length();
+		if (length == 0)
+			return -1;
+		raf.seek(0);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()),
+				BUFFER_SIZE));
+		long position = readHeader(in, length);
+		if (position < 0)
+			return -1;
+		int recordCount = 0;
+		long validLength = position;
+		while (length - position >= 8) {
+			int recordLength = in.readInt();
+			int crc = in.readInt();
+			if (recordLength <= 0 || recordLength > length - position - 8)
+				break;
+			byte[] payload = new byte[recordLength];
+			in.readFully(payload);
+			if (crc != crc(payload, 0, recordLength))
+				break;
+			Record r;
+			try {
+				r = readRecord(payload);
+			} catch (IOException e) {
+				break;
+			} catch (RuntimeException e) {
+				break;
+			}
+			recordCount++;
+			position += 8 + recordLength;
+			validLength = position;
+			records.remove(r.key);
+			if (r.ttl <= 0 || now - r.created < r.ttl) {
+				records.put(r.key, r);
+				if (records.size() > maxRecords) {
+					Iterator<Record> eldest = records.values().iterator();
+					eldest.next();
+					eldest.remove();
+				}
+			}
+		}
+		if (validLength < length)
+			raf.setLength(validLength);
+		return recordCount;
+	}
+
+	/**
+	 * @return length of valid header, -1 if header is invalid
+	 */
+	private long readHeader(DataInputStream in, long length) throws IOException {
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return -1;
+			int generationLength = in.readInt();
+			if (generationLength < 0 || generationLength > length - 12)
+				return -1;
+			byte[] g = new byte[generationLength];
+			in.readFully(g);
+			if (!generation.equals(new String(g, "UTF-8")))
+				return -1;
+			return 12 + generationLength;
+		} catch (EOFException e) {
+			return -1;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Record readRecord(byte[] payload) throws IOException {
+		BytesStreamInput in = new BytesStreamInput(payload, false);
+		Object key = in.readGenericValue();
+		long created = in.readLong();
+		long ttl = in.readLong();
+		Map<String, Object> value = (Map<String, Object>) in.readGenericValue();
+		return new Record(key, Collections.unmodifiableMap(value), created, ttl);
+	}
+
+	/**
+	 * Rewrite file to contain header and passed records only.
+	 */
+	private void rewrite(Iterable<Record> records) throws IOException {
+		raf.setLength(0);
+		raf.seek(0);
+		DataOutputStream out = newOutputStream();
+		byte[] g = generation.getBytes("UTF-8");
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(g.length);
+		out.write(g);
+		for (Record r : records) {
+			writeRecord(out, serialize(r));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Stream writing at actual position of the file. Must not be closed, as it closes the file too.
+	 */
+	private DataOutputStream newOutputStream() {
+		return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(raf.getChannel()), BUFFER_SIZE));
+	}
+
+	/**
+	 * Queue value put into cache to be appended to the file by writer thread. Nothing is done if file is not opened,
+	 * value is dropped if queue of writer thread is full.
+	 *
+	 * @param key lookup key
+	 * @param value cached value, must not be changed later
+	 * @param ttl time to live of value in milliseconds, 0 means no expiration
+	 */
+	public void append(Object key, Map<String, Object> value, long ttl) {
+		Writer w = writer;
+		if (w == null || w.failed)
+			return;
+		if (!w.queue.offer(new Record(key, value, System.currentTimeMillis(), ttl)))
+			droppedCount.incrementAndGet();
+	}
+
+	private static BytesReference serialize(Record r) throws IOException {
+		BytesStreamOutput out = new BytesStreamOutput();
+		out.writeGenericValue(r.key);
+		out.writeLong(r.created);
+		out.writeLong(r.ttl);
+		out.writeGenericValue(r.value);
+		return out.bytes();
+	}
+
+	private static void writeRecord(DataOutputStream out, BytesReference bytes) throws IOException {
+		byte[] payload = bytes.array();
+		int offset = bytes.arrayOffset();
+		int length = bytes.length();
+		out.writeInt(length);
+		out.writeInt(crc(payload, offset, length));
+		out.write(payload, offset, length);
+	}
+
+	private static int crc(byte[] data, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Close the file. Values queued already are written before, values are not appended until file is opened again.
+	 */
+	public synchronized void close() {
+		Writer w = writer;
+		writer = null;
+		if (w != null)
+			w.stop();
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+			raf = null;
+		}
+	}
+
+	/**
+	 * @return true if file is opened for appending
+	 */
+	public synchronized boolean isOpen() {
+		return raf != null;
+	}
+
+	/**
+	 * @return number of values not appended because queue of writer thread was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getCompactMinLength() {
+		return compactMinLength;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Background thread writing queued records into the file and compacting it. It owns the file until
+	 * {@link #stop()} returns.
+	 */
+	private final class Writer implements Runnable {
+
+		final BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(QUEUE_CAPACITY);
+		volatile boolean failed;
+
+		private final Thread thread;
+		private final DataOutputStream out;
+		private long compactThreshold;
+
+		Writer() throws IOException {
+			raf.seek(raf.length());
+			out = newOutputStream();
+			compactThreshold = Math.max(COMPACT_RATIO * raf.length(), compactMinLength);
+			thread = new Thread(this, "LookupCacheFile '" + file.getName() + "' writer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				boolean running = true;
+				while (running) {
+					Record r = queue.take();
+					do {
+						if (r == STOP) {
+							running = false;
+							break;
+						}
+						write(r);
+					} while ((r = queue.poll()) != null);
+					out.flush();
+					if (raf.length() > compactThreshold)
+						compact();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (IOException e) {
+				failed(e);
+			} catch (RuntimeException e) {
+				failed(e);
+			}
+		}
+
+		private void failed(Exception e) {
+			failed = true;
+			queue.clear();
+			logger.warn("Lookup cache file {} can't be written due '{}:{}'", file, e.getClass().getName(), e.getMessage());
+		}
+
+		private void write(Record r) throws IOException {
+			BytesReference payload;
+			try {
+				payload = serialize(r);
+			} catch (IOException e) {
+				logger.warn("Lookup result for key '{}' can't be written into cache file {} due '{}:{}'", r.key, file, e
+						.getClass().getName(), e.getMessage());
+				return;
+			}
+			writeRecord(out, payload);
+		}
+
+		private void compact() throws IOException {
+			Map<Object, Record> records = new LinkedHashMap<Object, Record>();
+			read(records, System.currentTimeMillis());
+			rewrite(records.values());
+			compactThreshold = Math.max(COMPACT_RATIO * raf.length(), compactMinLength);
+		}
+
+		/**
+		 * Write all queued records and stop thread.
+		 */
+		void stop() {
+			try {
+				while (thread.isAlive() && !queue.offer(STOP, 100, TimeUnit.MILLISECONDS)) {
+				}
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static final class Record {
+		final Object key;
+		final Map<String, Object> value;
+		final long created;
+		final long ttl;
+
+		Record(Object key, Map<String, Object> value, long created, long ttl) {
+			this.key = key;
+			this.value = value;
+			this.created = created;
+			this.ttl = ttl;
+		}
+	}
+
+}
@@ -0,0 +1,236 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+/**
+ * Circuit breaker guarding requests to lookup index. Outcomes of last <code>windowSize</code> requests are evaluated,
+ * request is counted as failed if it throws exception or takes longer than <code>slowRequestThreshold</code>. When
+ * percentage of failed requests reaches <code>failureRateThreshold</code> breaker opens, and no requests should be
+ * performed (see {@link #isRequestAllowed()}) until <code>openDuration</code> elapses. Then one probe request is
+ * allowed (see {@link #tryStartProbe()}), and breaker closes if it succeeds or opens again if it fails or doesn't
+ * finish in <code>probeTimeout</code>. Only the probe decides about breaker state then, outcomes of other requests
+ * (eg. started before breaker opened) are ignored.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ESLookupValuePreprocessor
+ */
+@ThreadSafe
+public class LookupCircuitBreaker {
+
+	public static final int STATE_CLOSED = 0;
+	public static final int STATE_OPEN = 1;
+	public static final int STATE_HALF_OPEN = 2;
+
+	/**
+	 * Value returned by {@link #tryStartProbe()} if probe request should not be performed.
+	 */
+	public static final long NO_PROBE = 0;
+
+	/**
+	 * Default time in milliseconds after which unfinished probe request is counted as failed.
+	 */
+	public static final long DEFAULT_PROBE_TIMEOUT = 60000;
+
+	private final int failureRateThreshold;
+	private final long slowRequestThreshold;
+	private final long openDuration;
+	private final long probeTimeout;
+
+	/**
+	 * Ring buffer with outcomes of last requests, <code>true</code> for failed request.
+	 */
+	private final boolean[] window;
+	private int windowPosition;
+	private int windowCount;
+	private int windowFailures;
+
+	private int state = STATE_CLOSED;
+	private long openedAt;
+
+	/**
+	 * Token of running probe request, {@link #NO_PROBE} if no probe is running.
+	 */
+	private long probe = NO_PROBE;
+	private long lastProbe = NO_PROBE;
+	private long probeStartedAt;
+
+	/**
+	 * Create circuit breaker with {@link #DEFAULT_PROBE_TIMEOUT}.
+	 *
+	 * @param failureRateThreshold percentage of failed requests which opens breaker, 1 - 100
+	 * @param slowRequestThreshold duration of request in milliseconds which is counted as failed, 0 means no limit
+	 * @param windowSize number of last requests evaluated, breaker is not opened before this number of requests is
+	 *          performed. Must be greater than 0.
+	 * @param openDuration time in milliseconds breaker stays open before probe request is allowed
+	 * @throws IllegalArgumentException if parameters are invalid
+	 */
+	public LookupCircuitBreaker(int failureRateThreshold, long slowRequestThreshold, int windowSize, long openDuration)
+			throws IllegalArgumentException {
+		this(failureRateThreshold, slowRequestThreshold, windowSize, openDuration, DEFAULT_PROBE_TIMEOUT);
+	}
+
+	/**
+	 * Create circuit breaker.
+	 *
+	 * @param failureRateThreshold percentage of failed requests which opens breaker, 1 - 100
+	 * @param slowRequestThreshold duration of request in milliseconds which is counted as failed, 0 means no limit
+	 * @param windowSize number of last requests evaluated, breaker is not opened before this number of requests is
+	 *          performed. Must be greater than 0.
+	 * @param openDuration time in milliseconds breaker stays open before probe request is allowed
+	 * @param probeTimeout time in milliseconds after which unfinished probe request is counted as failed, so breaker
+	 *          opens again. Must be greater than 0.
+	 * @throws IllegalArgumentException if parameters are invalid
+	 */
+	public LookupCircuitBreaker(int failureRateThreshold, long slowRequestThreshold, int windowSize, long openDuration,
+			long probeTimeout) throws IllegalArgumentException {
+		if (failureRateThreshold < 1 || failureRateThreshold > 100)
+			throw new IllegalArgumentException("failureRateThreshold must be between 1 and 100");
+		if (slowRequestThreshold < 0)
+			throw new IllegalArgumentException("slowRequestThreshold must not be negative");
+		if (windowSize < 1)
+			throw new IllegalArgumentException("windowSize must be greater than 0");
+		if (openDuration < 0)
+			throw new IllegalArgumentException("openDuration must not be negative");
+		if (probeTimeout < 1)
+			throw new IllegalArgumentException("probeTimeout must be greater than 0");
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowRequestThreshold = slowRequestThreshold;
+		this.openDuration = openDuration;
+		this.probeTimeout = probeTimeout;
+		this.window = new boolean[windowSize];
+	}
+
+	/**
+	 * @return true if breaker is closed so request to lookup index can be performed
+	 */
+	public synchronized boolean isRequestAllowed() {
+		return state == STATE_CLOSED;
+	}
+
+	/**
+	 * Start probe request if breaker is open for <code>openDuration</code> already. Only one probe is allowed at a time,
+	 * its outcome must be passed to {@link #probeFinished(long, boolean, long)} with returned token.
+	 *
+	 * @return token of probe request if caller should perform it, {@link #NO_PROBE} otherwise
+	 */
+	public synchronized long tryStartProbe() {
+		checkProbeTimeout();
+		if (state == STATE_OPEN && System.currentTimeMillis() - openedAt >= openDuration) {
+			state = STATE_HALF_OPEN;
+			probe = ++lastProbe;
+			probeStartedAt = System.currentTimeMillis();
+			return probe;
+		}
+		return NO_PROBE;
+	}
+
+	/**
+	 * Record outcome of probe request started by {@link #tryStartProbe()}. Outcome is ignored if probe timed out
+	 * already.
+	 *
+	 * @param probeToken token returned by {@link #tryStartProbe()}
+	 * @param success true if probe request succeeded
+	 * @param duration of probe request in milliseconds
+	 * @return true if breaker closed due this probe
+	 */
+	public synchronized boolean probeFinished(long probeToken, boolean success, long duration) {
+		checkProbeTimeout();
+		if (state != STATE_HALF_OPEN || probeToken == NO_PROBE || probeToken != probe)
+			return false;
+		probe = NO_PROBE;
+		if (!success || (slowRequestThreshold > 0 && duration > slowRequestThreshold)) {
+			open();
+			return false;
+		}
+		state = STATE_CLOSED;
+		return true;
+	}
+
+	/**
+	 * Open breaker again if running probe doesn't finish in <code>probeTimeout</code>.
+	 */
+	private void checkProbeTimeout() {
+		if (state == STATE_HALF_OPEN && System.currentTimeMillis() - probeStartedAt >= probeTimeout) {
+			probe = NO_PROBE;
+			open();
+		}
+	}
+
+	/**
+	 * Record outcome of request to lookup index. Outcome is ignored if breaker is not closed, use
+	 * {@link #probeFinished(long, boolean, long)} for probe request.
+	 *
+	 * @param success true if request succeeded
+	 * @param duration of request in milliseconds
+	 * @return true if breaker opened due this request
+	 */
+	public synchronized boolean requestFinished(boolean success, long duration) {
+		boolean failed = !success || (slowRequestThreshold > 0 && duration > slowRequestThreshold);
+		if (state != STATE_CLOSED)
+			return false;
+
+		if (windowCount == window.length) {
+			if (window[windowPosition])
+				windowFailures--;
+		} else {
+			windowCount++;
+		}
+		window[windowPosition] = failed;
+		if (failed)
+			windowFailures++;
+		windowPosition = (windowPosition + 1) % window.length;
+
+		if (windowCount == window.length && windowFailures * 100 >= failureRateThreshold * windowCount) {
+			open();
+			return true;
+		}
+		return false;
+	}
+
+	private void open() {
+		state = STATE_OPEN;
+		openedAt = System.currentTimeMillis();
+		windowPosition = 0;
+		windowCount = 0;
+		windowFailures = 0;
+	}
+
+	/**
+	 * @return actual state, one of <code>STATE_xx</code> constants
+	 */
+	public synchronized int getState() {
+		checkProbeTimeout();
+		return state;
+	}
+
+	public int getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	public long getSlowRequestThreshold() {
+		return slowRequestThreshold;
+	}
+
+	public int getWindowSize() {
+		return window.length;
+	}
+
+	public long getOpenDuration() {
+		return openDuration;
+	}
+
+	public long getProbeTimeout() {
+		return probeTimeout;
+	}
+
+	@Override
+	public String toString() {
+		return "LookupCircuitBreaker [failureRateThreshold=" + failureRateThreshold + ", slowRequestThreshold="
+				+ slowRequestThreshold + ", windowSize=" + window.length + ", openDuration=" + openDuration + ", probeTimeout="
+				+ probeTimeout + ", state=" + getState() + "]";
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.ActionListener;
+
+/**
+ * Source of lookup results used by {@link ESLookupValuePreprocessor}. Resolves 'lookup keys' to Maps with values of
+ * result fields (<code>idx_result_field</code>s of preprocessor configuration). Implementations must be thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ESLookupSource
+ * @see MapLookupSource
+ * @see FileLookupSource
+ */
+@ThreadSafe
+public interface LookupSource {
+
+	/**
+	 * Resolve one lookup key.
+	 *
+	 * @param key to be looked up
+	 * @return unmodifiable Map with values of result fields, empty Map if nothing found
+	 * @throws ElasticSearchException if lookup fails
+	 */
+	Map<String, Object> lookup(Object key) throws ElasticSearchException;
+
+	/**
+	 * Resolve batch of lookup keys at once. Lookup of one key may fail while others are resolved, eg. if one item of
+	 * multi search request fails.
+	 *
+	 * @param keys to be looked up
+	 * @param failures Map to put keys whose lookup failed into, with failure as value
+	 * @return Map with lookup key as key and unmodifiable Map with values of result fields as value. Keys which are not
+	 *         found or failed are not contained.
+	 * @throws ElasticSearchException if lookup of whole batch fails
+	 */
+	Map<Object, Map<String, Object>> lookup(Collection<Object> keys, Map<Object, ElasticSearchException> failures)
+			throws ElasticSearchException;
+
+	/**
+	 * Resolve batch of lookup keys without blocking calling thread. Listener may be called from other thread, or from
+	 * calling thread if result is available immediately.
+	 *
+	 * @param keys to be looked up
+	 * @param failures Map to put keys whose lookup failed into, filled before listener is notified about response
+	 * @param listener notified with same result as returned by {@link #lookup(Collection, Map)}. Failure of whole batch
+	 *          is passed to the listener, never thrown.
+	 */
+	void lookupAsync(Collection<Object> keys, Map<Object, ElasticSearchException> failures,
+			ActionListener<Map<Object, Map<String, Object>>> listener);
+
+	/**
+	 * Check if lookups are resolved from memory without any remote request at the moment, so it is not necessary to cache
+	 * them, batch them or guard them by circuit breaker.
+	 *
+	 * @return true if lookups are resolved from memory
+	 */
+	boolean isInMemory();
+
+	/**
+	 * Release resources held by source. Source is not used after this call.
+	 */
+	void close();
+
+}
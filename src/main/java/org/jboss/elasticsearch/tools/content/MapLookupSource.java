@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.ActionListener;
+
+/**
+ * {@link LookupSource} resolving lookup keys from in-memory hash table, intended for static reference data. String
+ * value of lookup key is used as table key, so eg. number <code>10</code> and String <code>"10"</code> are same keys.
+ * Table is never changed after source is created.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public class MapLookupSource implements LookupSource {
+
+	protected final Map<String, Map<String, Object>> table;
+
+	/**
+	 * Create source from table.
+	 *
+	 * @param table with lookup key as key and Map with values of result fields as value. Content is copied, so later
+	 *          changes of passed table are not reflected.
+	 * @throws IllegalArgumentException if table is null
+	 */
+	public MapLookupSource(Map<?, ? extends Map<String, Object>> table) throws IllegalArgumentException {
+		this();
+		if (table == null)
+			throw new IllegalArgumentException("table must be defined");
+		for (Map.Entry<?, ? extends Map<String, Object>> e : table.entrySet()) {
+			if (e.getKey() != null && e.getValue() != null)
+				put(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * Create empty source, subclasses fill it by {@link #put(Object, Map)}.
+	 */
+	protected MapLookupSource() {
+		table = new HashMap<String, Map<String, Object>>();
+	}
+
+	/**
+	 * Put record into table. Used when source is created only.
+	 *
+	 * @param key lookup key of record
+	 * @param record values of result fields
+	 */
+	protected void put(Object key, Map<String, Object> record) {
+		table.put(key.toString(), Collections.unmodifiableMap(new CompactMap<String, Object>(record)));
+	}
+
+	@Override
+	public Map<String, Object> lookup(Object key) {
+		if (key == null)
+			return Collections.emptyMap();
+		Map<String, Object> ret = table.get(key.toString());
+		if (ret == null)
+			return Collections.emptyMap();
+		return ret;
+	}
+
+	@Override
+	public Map<Object, Map<String, Object>> lookup(Collection<Object> keys,
+			Map<Object, ElasticSearchException> failures) {
+		Map<Object, Map<String, Object>> ret = new HashMap<Object, Map<String, Object>>();
+		for (Object key : keys) {
+			if (key == null)
+				continue;
+			Map<String, Object> record = table.get(key.toString());
+			if (record != null)
+				ret.put(key, record);
+		}
+		return ret;
+	}
+
+	@Override
+	public void lookupAsync(Collection<Object> keys, Map<Object, ElasticSearchException> failures,
+			ActionListener<Map<Object, Map<String, Object>>> listener) {
+		Map<Object, Map<String, Object>> ret;
+		try {
+			ret = lookup(keys, failures);
+		} catch (RuntimeException e) {
+			listener.onFailure(e);
+			return;
+		}
+		listener.onResponse(ret);
+	}
+
+	/**
+	 * @return always true, whole table is in memory
+	 */
+	@Override
+	public boolean isInMemory() {
+		return true;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * @return number of lookup keys in table
+	 */
+	public int size() {
+		return table.size();
+	}
+
+}
@@ -5,6 +5,7 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.Collections;
 import java.util.Map;
 
 import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
@@ -40,13 +41,19 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor {
 
 	protected static final String CFG_TARGET_FIELD = "target_field";
 	protected static final String CFG_SOURCE_FIELD = "source_field";
 
+	private static final DateTimeFormatter DATE_PARSER = ISODateTimeFormat.dateTimeParser();
+
 	protected String fieldTarget;
 	protected String fieldSource;
+	protected FieldPath fieldTargetPath;
+	protected FieldPath fieldSourcePath;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
@@ -57,6 +64,13 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 		fieldSource = XContentMapValues.nodeStringValue(settings.get(CFG_SOURCE_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldSource, CFG_SOURCE_FIELD);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldTargetPath = FieldPath.create(fieldTarget);
+		fieldSourcePath = FieldPath.create(fieldSource);
 	}
 
 	@Override
@@ -67,52 +81,56 @@ public class MaxTimestampPreprocessor extends StructuredContentPreprocessorBase
 		String maxTimestamp = null;
 		long maxTimestampParsed = 0;
 
-		Object sourceData = XContentMapValues.extractValue(fieldSource, data);
+		Object sourceData = fieldSourcePath.get(data);
 		if (sourceData != null) {
-			DateTimeFormatter dateParser = ISODateTimeFormat.dateTimeParser();
 			if (sourceData instanceof Iterable) {
 				for (Object o : (Iterable<?>) sourceData) {
 					if (o instanceof String) {
+						String timestamp = (String) o;
 						try {
-							String timestamp = (String) o;
-							if (timestamp != null && !timestamp.trim().isEmpty()) {
-								long timestampParsed = dateParser.parseMillis(timestamp.trim());
+							if (!timestamp.trim().isEmpty()) {
+								long timestampParsed = DATE_PARSER.parseMillis(timestamp.trim());
 								if (timestampParsed > maxTimestampParsed) {
 									maxTimestampParsed = timestampParsed;
 									maxTimestamp = timestamp;
 								}
 							}
 						} catch (Exception e) {
-							logger.debug("Value {} is not valid timestamp", 0);
+							logger.debug("Value {} is not valid timestamp", timestamp);
 						}
 					}
 				}
 			} else if (sourceData instanceof String) {
+				String timestamp = ((String) sourceData).trim();
 				try {
-					String timestamp = (String) sourceData;
-					if (timestamp != null && !timestamp.trim().isEmpty()) {
-						timestamp = timestamp.trim();
+					if (!timestamp.isEmpty()) {
 						// parse it to check format
-						dateParser.parseMillis(timestamp);
+						DATE_PARSER.parseMillis(timestamp);
 						maxTimestamp = timestamp;
 					}
 				} catch (Exception e) {
-					logger.debug("Value {} is not valid timestamp", 0);
+					logger.debug("Value {} is not valid timestamp", timestamp);
 				}
-			} else {
+			} else if (logger.isDebugEnabled()) {
 				logger.debug("Value for field {} is not Iterable nor String but is {}", fieldSource, sourceData.getClass()
 						.getName());
 			}
-		} else {
+		} else if (logger.isDebugEnabled()) {
 			logger.debug("Value for field {} not found in data", fieldSource);
 		}
 
-		logger.debug("Max timestamp found in {} is {}", fieldSource, maxTimestamp);
+		if (logger.isDebugEnabled())
+			logger.debug("Max timestamp found in {} is {}", fieldSource, maxTimestamp);
 
-		StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, maxTimestamp);
+		fieldTargetPath.put(data, maxTimestamp);
 		return data;
 	}
 
+	@Override
+	public FieldAccess getFieldAccess() {
+		return new FieldAccess(Collections.singletonList(fieldSource), Collections.singletonList(fieldTarget));
+	}
+
 	public String getFieldTarget() {
 		return fieldTarget;
 	}
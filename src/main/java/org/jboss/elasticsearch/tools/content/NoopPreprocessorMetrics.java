@@ -0,0 +1,48 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * {@link PreprocessorMetrics} which collects nothing. Used by {@link PreprocessorChain} by default, chain doesn't
+ * measure invocations at all then.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public final class NoopPreprocessorMetrics implements PreprocessorMetrics {
+
+	public static final NoopPreprocessorMetrics INSTANCE = new NoopPreprocessorMetrics();
+
+	private NoopPreprocessorMetrics() {
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return false;
+	}
+
+	@Override
+	public boolean isModificationDetectionEnabled() {
+		return false;
+	}
+
+	@Override
+	public void recordInvocation(String preprocessorName, int documents, long durationNanos, int modifiedDocuments) {
+	}
+
+	@Override
+	public void recordError(String preprocessorName, int documents, long durationNanos) {
+	}
+
+	@Override
+	public Map<String, PreprocessorMetricsSnapshot> snapshot() {
+		return Collections.emptyMap();
+	}
+
+}
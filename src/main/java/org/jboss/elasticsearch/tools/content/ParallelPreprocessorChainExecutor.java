@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.util.concurrent.jsr166y.ForkJoinPool;
+import org.elasticsearch.common.util.concurrent.jsr166y.RecursiveAction;
+
+/**
+ * Executor which preprocesses batch of documents by {@link PreprocessorChain} in parallel using {@link ForkJoinPool}.
+ * Batch is split into chunks processed by pool threads, each document is processed by whole chain in one thread.
+ * Order of documents in result is same as in input batch. Failure of one document (eg. {@link InvalidDataException}
+ * thrown from {@link RequiredValidatorPreprocessor}) doesn't abort batch, but is collected in {@link ChainBatchResult}.
+ * <p>
+ * Preprocessors in chain are shared by all pool threads, so they must be thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see PreprocessorChain
+ */
+@ThreadSafe
+public class ParallelPreprocessorChainExecutor {
+
+	/**
+	 * Number of chunks created for each pool thread, gives pool chance to balance load if some documents take longer.
+	 */
+	protected static final int CHUNKS_PER_THREAD = 4;
+
+	protected final PreprocessorChain chain;
+	protected final ForkJoinPool pool;
+	private final boolean poolOwner;
+
+	/**
+	 * Create executor with own {@link ForkJoinPool}. Call {@link #shutdown()} when executor is not necessary anymore.
+	 *
+	 * @param chain used to preprocess documents
+	 * @param parallelism number of threads used to preprocess documents, must be greater than 0.
+	 * @throws IllegalArgumentException if parallelism is not greater than 0
+	 */
+	public ParallelPreprocessorChainExecutor(PreprocessorChain chain, int parallelism) throws IllegalArgumentException {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be greater than 0");
+		this.chain = chain;
+		this.pool = new ForkJoinPool(parallelism);
+		this.poolOwner = true;
+	}
+
+	/**
+	 * Create executor over existing {@link ForkJoinPool}. Pool is not shut down by {@link #shutdown()}.
+	 *
+	 * @param chain used to preprocess documents
+	 * @param pool used to run preprocessing
+	 */
+	public ParallelPreprocessorChainExecutor(PreprocessorChain chain, ForkJoinPool pool) {
+		this.chain = chain;
+		this.pool = pool;
+		this.poolOwner = false;
+	}
+
+	/**
+	 * Preprocess batch of documents in parallel. Blocks until all documents are processed.
+	 *
+	 * @param batch of documents to be preprocessed - documents may be changed during call!
+	 * @return result with preprocessed documents in same order as in <code>batch</code> and failures.
+	 */
+	public ChainBatchResult processBatch(List<Map<String, Object>> batch) {
+		Object[] documents = batch != null ? batch.toArray() : new Object[0];
+		RuntimeException[] failures = new RuntimeException[documents.length];
+		if (documents.length > 0) {
+			int threshold = Math.max(1, documents.length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+			pool.invoke(new ChunkTask(documents, failures, 0, documents.length, threshold));
+		}
+		return ChainBatchResult.create(documents, failures);
+	}
+
+	/**
+	 * Shut down {@link ForkJoinPool} if it was created by this executor.
+	 */
+	public void shutdown() {
+		if (poolOwner)
+			pool.shutdown();
+	}
+
+	public PreprocessorChain getChain() {
+		return chain;
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Task processing chunk of documents. Splits itself into two halves until chunk size is below threshold.
+	 */
+	@SuppressWarnings("serial")
+	private class ChunkTask extends RecursiveAction {
+
+		private final Object[] documents;
+		private final RuntimeException[] failures;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		ChunkTask(Object[] documents, RuntimeException[] failures, int from, int to, int threshold) {
+			this.documents = documents;
+			this.failures = failures;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				for (int i = from; i < to; i++) {
+					try {
+						documents[i] = chain.process((Map<String, Object>) documents[i]);
+					} catch (RuntimeException e) {
+						failures[i] = e;
+					}
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkTask(documents, failures, from, middle, threshold), new ChunkTask(documents, failures,
+						middle, to, threshold));
+			}
+		}
+	}
+
+}
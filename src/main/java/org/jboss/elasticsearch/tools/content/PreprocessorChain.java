@@ -0,0 +1,346 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+
+/**
+ * Chain of {@link StructuredContentPreprocessor}s built once from configuration and then used to preprocess data. Use
+ * {@link #process(Map)} for one document or {@link #processBatch(List)} for more documents at once, so you needn't
+ * write loops over preprocessors in your code. {@link #processAsync(Map, ActionListener)} doesn't block calling thread
+ * in {@link AsyncStructuredContentPreprocessor}s. Chain may be created from configuration using
+ * {@link StructuredContentPreprocessorFactory#createPreprocessorChain(List, Client)}.
+ * {@link #processBatch(List, StructurePool)} reuses Maps and Lists created in documents over more batches.
+ * <p>
+ * Each invocation of each preprocessor may be measured and reported to {@link PreprocessorMetrics} passed to the
+ * constructor. Nothing is measured by default.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see StructuredContentPreprocessorFactory
+ */
+@ThreadSafe
+public class PreprocessorChain {
+
+	protected final StructuredContentPreprocessor[] preprocessors;
+
+	protected final PreprocessorMetrics metrics;
+
+	/**
+	 * Create chain without metrics.
+	 *
+	 * @param preprocessors to be used in chain, in order of invocation. Can be <code>null</code> or empty, data are not
+	 *          changed by chain then.
+	 */
+	public PreprocessorChain(List<StructuredContentPreprocessor> preprocessors) {
+		this(preprocessors, null);
+	}
+
+	/**
+	 * Create chain.
+	 *
+	 * @param preprocessors to be used in chain, in order of invocation. Can be <code>null</code> or empty, data are not
+	 *          changed by chain then.
+	 * @param metrics to report invocations of preprocessors to. {@link NoopPreprocessorMetrics} is used if
+	 *          <code>null</code>.
+	 */
+	public PreprocessorChain(List<StructuredContentPreprocessor> preprocessors, PreprocessorMetrics metrics) {
+		if (preprocessors == null) {
+			this.preprocessors = new StructuredContentPreprocessor[0];
+		} else {
+			this.preprocessors = preprocessors.toArray(new StructuredContentPreprocessor[preprocessors.size()]);
+		}
+		this.metrics = metrics != null ? metrics : NoopPreprocessorMetrics.INSTANCE;
+	}
+
+	/**
+	 * Preprocess one document by all preprocessors in chain.
+	 *
+	 * @param data to be preprocessed - may be changed during call!
+	 * @return preprocessed data - typically same object as <code>data</code> parameter, but with changed structure.
+	 */
+	public Map<String, Object> process(Map<String, Object> data) {
+		boolean measure = metrics.isEnabled();
+		for (StructuredContentPreprocessor preprocessor : preprocessors) {
+			if (measure) {
+				data = preprocessMeasured(preprocessor, data);
+			} else {
+				data = preprocessor.preprocessData(data);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Preprocess batch of documents by all preprocessors in chain. Each preprocessor is applied to all documents in batch
+	 * before next preprocessor is invoked, so preprocessor's configuration is used for whole batch at once. Result for
+	 * each document is same as if {@link #process(Map)} is called for it. Exception thrown from any preprocessor (eg.
+	 * {@link InvalidDataException}) aborts processing of whole batch. {@link BatchStructuredContentPreprocessor}s (eg.
+	 * {@link ESLookupValuePreprocessor} which resolves lookups for whole batch at once) are invoked once for whole batch
+	 * using {@link BatchStructuredContentPreprocessor#preprocessBatch(List)}.
+	 *
+	 * @param batch of documents to be preprocessed - documents may be changed during call!
+	 * @return list with preprocessed documents in same order as in <code>batch</code>, <code>null</code> if
+	 *         <code>batch</code> is <code>null</code>.
+	 */
+	public List<Map<String, Object>> processBatch(List<Map<String, Object>> batch) {
+		if (batch == null)
+			return null;
+		List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>(batch);
+		boolean measure = metrics.isEnabled();
+		for (StructuredContentPreprocessor preprocessor : preprocessors) {
+			if (preprocessor instanceof BatchStructuredContentPreprocessor) {
+				BatchStructuredContentPreprocessor batchPreprocessor = (BatchStructuredContentPreprocessor) preprocessor;
+				if (measure) {
+					documents = preprocessBatchMeasured(batchPreprocessor, documents);
+				} else {
+					documents = batchPreprocessor.preprocessBatch(documents);
+				}
+			} else {
+				for (int i = 0; i < documents.size(); i++) {
+					if (measure) {
+						documents.set(i, preprocessMeasured(preprocessor, documents.get(i)));
+					} else {
+						documents.set(i, preprocessor.preprocessData(documents.get(i)));
+					}
+				}
+			}
+		}
+		return documents;
+	}
+
+	/**
+	 * Preprocess batch of documents same way as {@link #processBatch(List)}, but Maps and Lists created by the library
+	 * during preprocessing (see {@link StructureUtils#createMap()}) are taken from pool, so they may be reused for next
+	 * batch once {@link StructurePool#release()} is called. Pool is used only for structures created in calling thread.
+	 *
+	 * @param batch of documents to be preprocessed - documents may be changed during call!
+	 * @param pool to take structures from, <code>null</code> to create them as usually. Documents must not be used after
+	 *          pool is released!
+	 * @return list with preprocessed documents in same order as in <code>batch</code>, <code>null</code> if
+	 *         <code>batch</code> is <code>null</code>.
+	 */
+	public List<Map<String, Object>> processBatch(List<Map<String, Object>> batch, StructurePool pool) {
+		if (pool == null)
+			return processBatch(batch);
+		StructurePool previous = StructurePool.bind(pool);
+		try {
+			return processBatch(batch);
+		} finally {
+			StructurePool.bind(previous);
+		}
+	}
+
+	/**
+	 * Preprocess one document by all preprocessors in chain without blocking calling thread in
+	 * {@link AsyncStructuredContentPreprocessor}s (eg. {@link ESLookupValuePreprocessor} waiting for search responses).
+	 * Other preprocessors are invoked synchronously in thread which finished previous preprocessor. So one thread may
+	 * have many documents in flight, see {@link AsyncPreprocessorChainExecutor}. Result is same as from
+	 * {@link #process(Map)}.
+	 *
+	 * @param data to be preprocessed - may be changed during call!
+	 * @param listener notified with preprocessed data or with exception thrown from any preprocessor. Exactly one of its
+	 *          methods is called, possibly from other thread.
+	 */
+	public void processAsync(Map<String, Object> data, ActionListener<Map<String, Object>> listener) {
+		processAsync(0, data, listener);
+	}
+
+	private void processAsync(int from, Map<String, Object> data, ActionListener<Map<String, Object>> listener) {
+		boolean measure = metrics.isEnabled();
+		for (int i = from; i < preprocessors.length; i++) {
+			StructuredContentPreprocessor preprocessor = preprocessors[i];
+			if (preprocessor instanceof AsyncStructuredContentPreprocessor) {
+				AsyncStepListener step = new AsyncStepListener(i, data, listener);
+				try {
+					((AsyncStructuredContentPreprocessor) preprocessor).preprocessDataAsync(data, step);
+				} catch (RuntimeException e) {
+					// exception thrown synchronously, rethrown only if listener was notified already
+					if (!step.fail(e))
+						throw e;
+				}
+				return;
+			}
+			try {
+				if (measure) {
+					data = preprocessMeasured(preprocessor, data);
+				} else {
+					data = preprocessor.preprocessData(data);
+				}
+			} catch (RuntimeException e) {
+				listener.onFailure(e);
+				return;
+			}
+		}
+		listener.onResponse(data);
+	}
+
+	/**
+	 * Listener of one {@link AsyncStructuredContentPreprocessor} invocation which continues with next preprocessor in
+	 * chain. Invocation is measured from listener creation if metrics are enabled. Only first notification is passed
+	 * further.
+	 */
+	private final class AsyncStepListener implements ActionListener<Map<String, Object>> {
+
+		private final int index;
+		private final Map<String, Object> data;
+		private final ActionListener<Map<String, Object>> listener;
+		private final boolean measure;
+		private final int hashBefore;
+		private final long start;
+		private final AtomicBoolean notified = new AtomicBoolean();
+
+		AsyncStepListener(int index, Map<String, Object> data, ActionListener<Map<String, Object>> listener) {
+			this.index = index;
+			this.data = data;
+			this.listener = listener;
+			this.measure = metrics.isEnabled();
+			this.hashBefore = measure && metrics.isModificationDetectionEnabled() ? PreprocessorChain.hashCode(data) : 0;
+			this.start = measure ? System.nanoTime() : 0;
+		}
+
+		@Override
+		public void onResponse(Map<String, Object> ret) {
+			if (!notified.compareAndSet(false, true))
+				return;
+			if (measure) {
+				int modified = metrics.isModificationDetectionEnabled() && isModified(data, hashBefore, ret) ? 1 : 0;
+				metrics.recordInvocation(preprocessors[index].getName(), 1, System.nanoTime() - start, modified);
+			}
+			processAsync(index + 1, ret, listener);
+		}
+
+		@Override
+		public void onFailure(Throwable e) {
+			fail(e);
+		}
+
+		/**
+		 * Pass failure to listener if it was not notified yet.
+		 *
+		 * @return true if failure was passed, false if listener was notified already
+		 */
+		boolean fail(Throwable e) {
+			if (!notified.compareAndSet(false, true))
+				return false;
+			if (measure)
+				metrics.recordError(preprocessors[index].getName(), 1, System.nanoTime() - start);
+			listener.onFailure(e);
+			return true;
+		}
+	}
+
+	private Map<String, Object> preprocessMeasured(StructuredContentPreprocessor preprocessor, Map<String, Object> data) {
+		boolean detectModification = metrics.isModificationDetectionEnabled();
+		int hashBefore = detectModification ? hashCode(data) : 0;
+		long start = System.nanoTime();
+		Map<String, Object> ret;
+		try {
+			ret = preprocessor.preprocessData(data);
+		} catch (RuntimeException e) {
+			metrics.recordError(preprocessor.getName(), 1, System.nanoTime() - start);
+			throw e;
+		}
+		long duration = System.nanoTime() - start;
+		int modified = detectModification && isModified(data, hashBefore, ret) ? 1 : 0;
+		metrics.recordInvocation(preprocessor.getName(), 1, duration, modified);
+		return ret;
+	}
+
+	private List<Map<String, Object>> preprocessBatchMeasured(BatchStructuredContentPreprocessor preprocessor,
+			List<Map<String, Object>> documents) {
+		boolean detectModification = metrics.isModificationDetectionEnabled();
+		List<Map<String, Object>> before = null;
+		int[] hashesBefore = null;
+		if (detectModification) {
+			before = new ArrayList<Map<String, Object>>(documents);
+			hashesBefore = new int[documents.size()];
+			for (int i = 0; i < hashesBefore.length; i++) {
+				hashesBefore[i] = hashCode(documents.get(i));
+			}
+		}
+		long start = System.nanoTime();
+		List<Map<String, Object>> ret;
+		try {
+			ret = preprocessor.preprocessBatch(documents);
+		} catch (RuntimeException e) {
+			metrics.recordError(preprocessor.getName(), documents.size(), System.nanoTime() - start);
+			throw e;
+		}
+		long duration = System.nanoTime() - start;
+		int modified = 0;
+		if (detectModification) {
+			for (int i = 0; i < ret.size(); i++) {
+				if (isModified(before.get(i), hashesBefore[i], ret.get(i)))
+					modified++;
+			}
+		}
+		metrics.recordInvocation(preprocessor.getName(), documents.size(), duration, modified);
+		return ret;
+	}
+
+	private static int hashCode(Map<String, Object> data) {
+		return data != null ? data.hashCode() : 0;
+	}
+
+	/**
+	 * Check if document was modified by preprocessor. Document is modified if preprocessor returned other instance or if
+	 * hash code of whole structure changed.
+	 */
+	private static boolean isModified(Map<String, Object> before, int hashBefore, Map<String, Object> after) {
+		return before != after || hashCode(after) != hashBefore;
+	}
+
+	/**
+	 * Get preprocessors in this chain.
+	 *
+	 * @return unmodifiable list of preprocessors in order of invocation.
+	 */
+	public List<StructuredContentPreprocessor> getPreprocessors() {
+		return Collections.unmodifiableList(Arrays.asList(preprocessors));
+	}
+
+	/**
+	 * Get fields of document read and written by preprocessors in this chain, eg. to create {@link ProjectedJsonReader}
+	 * for documents preprocessed by chain.
+	 *
+	 * @return field access merged from all preprocessors, {@link FieldAccess#WHOLE_DOCUMENT} if some of them doesn't
+	 *         implement {@link ProjectableStructuredContentPreprocessor}
+	 */
+	public FieldAccess getFieldAccess() {
+		FieldAccess ret = FieldAccess.NONE;
+		for (StructuredContentPreprocessor preprocessor : preprocessors) {
+			if (!(preprocessor instanceof ProjectableStructuredContentPreprocessor))
+				return FieldAccess.WHOLE_DOCUMENT;
+			ret = ret.merge(((ProjectableStructuredContentPreprocessor) preprocessor).getFieldAccess());
+			if (ret.isWholeDocument())
+				return ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return number of preprocessors in this chain
+	 */
+	public int size() {
+		return preprocessors.length;
+	}
+
+	/**
+	 * @return metrics invocations of preprocessors are reported to, never <code>null</code>
+	 */
+	public PreprocessorMetrics getMetrics() {
+		return metrics;
+	}
+
+}
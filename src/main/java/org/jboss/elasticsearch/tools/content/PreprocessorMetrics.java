@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+
+/**
+ * SPI for metrics of preprocessors invoked by {@link PreprocessorChain}. Chain measures each invocation of each
+ * preprocessor and reports it here, so slow steps of long chains can be found in production. Implementation must be
+ * thread safe as chain may be used from more threads (eg. by {@link ParallelPreprocessorChainExecutor}).
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see DefaultPreprocessorMetrics
+ * @see NoopPreprocessorMetrics
+ * @see PreprocessorChain#PreprocessorChain(java.util.List, PreprocessorMetrics)
+ */
+public interface PreprocessorMetrics {
+
+	/**
+	 * Check if metrics are collected at all. Chain doesn't measure anything if this returns false.
+	 *
+	 * @return true if metrics are collected
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Check if chain should detect whether preprocessor modified document. Detection compares hash code of whole
+	 * document before and after invocation, which is expensive for big documents, so it is optional.
+	 *
+	 * @return true if documents modified count should be recorded
+	 */
+	boolean isModificationDetectionEnabled();
+
+	/**
+	 * Record successful invocation of preprocessor.
+	 *
+	 * @param preprocessorName name of preprocessor, see {@link StructuredContentPreprocessor#getName()}
+	 * @param documents number of documents processed by invocation, more than one for batch invocations
+	 * @param durationNanos duration of invocation in nanoseconds
+	 * @param modifiedDocuments number of documents modified by invocation, always 0 if
+	 *          {@link #isModificationDetectionEnabled()} is false
+	 */
+	void recordInvocation(String preprocessorName, int documents, long durationNanos, int modifiedDocuments);
+
+	/**
+	 * Record invocation of preprocessor which failed with exception.
+	 *
+	 * @param preprocessorName name of preprocessor, see {@link StructuredContentPreprocessor#getName()}
+	 * @param documents number of documents processed by invocation, more than one for batch invocations
+	 * @param durationNanos duration of invocation in nanoseconds
+	 */
+	void recordError(String preprocessorName, int documents, long durationNanos);
+
+	/**
+	 * Get snapshot of metrics collected up to now.
+	 *
+	 * @return unmodifiable map with snapshot for each preprocessor name, never <code>null</code>
+	 */
+	Map<String, PreprocessorMetricsSnapshot> snapshot();
+
+}
@@ -0,0 +1,109 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+/**
+ * Immutable snapshot of metrics collected for one preprocessor.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see PreprocessorMetrics#snapshot()
+ */
+@ThreadSafe
+public final class PreprocessorMetricsSnapshot {
+
+	private final String preprocessorName;
+	private final long invocationCount;
+	private final long totalNanos;
+	private final long errorCount;
+	private final long modifiedCount;
+	private final long[] latencyCounts;
+
+	/**
+	 * Create snapshot.
+	 *
+	 * @param preprocessorName name of preprocessor
+	 * @param invocationCount number of documents processed by preprocessor, including failed ones
+	 * @param totalNanos cumulative duration of all invocations in nanoseconds
+	 * @param errorCount number of documents for which preprocessor failed
+	 * @param modifiedCount number of documents modified by preprocessor
+	 * @param latencyCounts bucket counts of latency histogram, see {@link LatencyHistogram#getCounts()}. Not copied so
+	 *          caller must not change it.
+	 */
+	public PreprocessorMetricsSnapshot(String preprocessorName, long invocationCount, long totalNanos, long errorCount,
+			long modifiedCount, long[] latencyCounts) {
+		this.preprocessorName = preprocessorName;
+		this.invocationCount = invocationCount;
+		this.totalNanos = totalNanos;
+		this.errorCount = errorCount;
+		this.modifiedCount = modifiedCount;
+		this.latencyCounts = latencyCounts;
+	}
+
+	public String getPreprocessorName() {
+		return preprocessorName;
+	}
+
+	/**
+	 * @return number of documents processed by preprocessor, including failed ones
+	 */
+	public long getInvocationCount() {
+		return invocationCount;
+	}
+
+	/**
+	 * @return cumulative duration of all invocations in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return number of documents for which preprocessor failed
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * @return number of documents modified by preprocessor, 0 if modification detection is not enabled
+	 */
+	public long getModifiedCount() {
+		return modifiedCount;
+	}
+
+	/**
+	 * @return mean latency of one document in nanoseconds
+	 */
+	public long getMeanNanos() {
+		return invocationCount > 0 ? totalNanos / invocationCount : 0;
+	}
+
+	/**
+	 * Get latency of one document at percentile, within precision of {@link LatencyHistogram}.
+	 *
+	 * @param percentile from 0 to 100
+	 * @return latency in nanoseconds
+	 */
+	public long getLatencyAtPercentile(double percentile) {
+		return LatencyHistogram.getValueAtPercentile(latencyCounts, percentile);
+	}
+
+	/**
+	 * @return maximal latency of one document in nanoseconds, within precision of {@link LatencyHistogram}
+	 */
+	public long getMaxNanos() {
+		return LatencyHistogram.getMaxValue(latencyCounts);
+	}
+
+	@Override
+	public String toString() {
+		return "PreprocessorMetricsSnapshot [preprocessorName=" + preprocessorName + ", invocationCount="
+				+ invocationCount + ", totalNanos=" + totalNanos + ", errorCount=" + errorCount + ", modifiedCount="
+				+ modifiedCount + ", meanNanos=" + getMeanNanos() + ", p50=" + getLatencyAtPercentile(50) + ", p99="
+				+ getLatencyAtPercentile(99) + ", maxNanos=" + getMaxNanos() + "]";
+	}
+
+}
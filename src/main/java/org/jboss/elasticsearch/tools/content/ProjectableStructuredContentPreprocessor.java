@@ -0,0 +1,30 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+
+/**
+ * {@link StructuredContentPreprocessor} which knows fields of document it reads and writes from its configuration, so
+ * documents may be read by {@link ProjectedJsonReader} which parses only those fields.
+ * {@link PreprocessorChain#getFieldAccess()} merges field access of all preprocessors in chain, whole document is
+ * necessary if some preprocessor doesn't implement this interface.
+ * <p>
+ * Thread safety contract is same as for {@link StructuredContentPreprocessor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public interface ProjectableStructuredContentPreprocessor extends StructuredContentPreprocessor {
+
+	/**
+	 * Get fields read and written by {@link #preprocessData(Map)}. Called after preprocessor is initialized.
+	 *
+	 * @return field access, {@link FieldAccess#WHOLE_DOCUMENT} if fields are not known for actual configuration
+	 */
+	FieldAccess getFieldAccess();
+
+}
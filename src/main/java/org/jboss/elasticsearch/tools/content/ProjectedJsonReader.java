@@ -0,0 +1,277 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+
+/**
+ * Reader of UTF-8 encoded JSON documents into Map of Maps structure which builds Maps only for fields accessed by
+ * preprocessors, as given by {@link FieldAccess} (typically from {@link PreprocessorChain#getFieldAccess()}). Document
+ * is scanned only once. Field on accessed path is parsed whole, objects on the way to it contain only fields on
+ * accessed paths parsed (lists on the way are handled same way as by {@link FieldPath#get(Map)}). All other fields are
+ * kept as {@link RawJsonValue}s, so no Maps, Lists and Strings are allocated for them.
+ * <p>
+ * Preprocessed document must be serialized by {@link #writeTo(Map, OutputStream)} or {@link #toBytes(Map)}, which
+ * copy {@link RawJsonValue}s verbatim. Instances are immutable, so one reader may be shared by more threads.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see LazyJsonMap
+ */
+@ThreadSafe
+public class ProjectedJsonReader {
+
+	private final FieldAccess fieldAccess;
+
+	/**
+	 * Root of tree of accessed paths.
+	 */
+	private final PathNode root;
+
+	/**
+	 * Create reader.
+	 *
+	 * @param fieldAccess fields to be parsed, both read and written. Whole document is parsed if
+	 *          {@link FieldAccess#isWholeDocument()}.
+	 * @throws IllegalArgumentException if fieldAccess is null
+	 */
+	public ProjectedJsonReader(FieldAccess fieldAccess) throws IllegalArgumentException {
+		if (fieldAccess == null)
+			throw new IllegalArgumentException("fieldAccess must be defined");
+		this.fieldAccess = fieldAccess;
+		root = new PathNode();
+		if (fieldAccess.isWholeDocument()) {
+			root.terminal = true;
+		} else {
+			for (String path : fieldAccess.getFields()) {
+				PathNode node = root;
+				for (String token : path.split("\\.")) {
+					if (token.length() > 0)
+						node = node.child(token);
+				}
+				node.terminal = true;
+			}
+		}
+	}
+
+	/**
+	 * Read document.
+	 *
+	 * @param source UTF-8 encoded JSON object
+	 * @return document with fields on accessed paths parsed
+	 */
+	public Map<String, Object> read(byte[] source) {
+		return read(source, 0, source.length);
+	}
+
+	/**
+	 * Read document, eg. source of document obtained from ElasticSearch.
+	 *
+	 * @param source UTF-8 encoded JSON object
+	 * @return document with fields on accessed paths parsed
+	 */
+	public Map<String, Object> read(BytesReference source) {
+		if (source.hasArray())
+			return read(source.array(), source.arrayOffset(), source.length());
+		return read(source.toBytes());
+	}
+
+	/**
+	 * Read document.
+	 *
+	 * @param source bytes containing UTF-8 encoded JSON object
+	 * @param offset of JSON object in source
+	 * @param length of JSON object in source
+	 * @return document with fields on accessed paths parsed
+	 * @throws IllegalArgumentException if region is out of source bounds
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<String, Object> read(byte[] source, int offset, int length) throws IllegalArgumentException {
+		if (source == null)
+			throw new IllegalArgumentException("source must be defined");
+		if (offset < 0 || length < 0 || offset + length > source.length)
+			throw new IllegalArgumentException("offset and length must be within source");
+		int end = offset + length;
+		int start = JsonBytes.skipWhitespace(source, offset, end);
+		JsonBytes.expect(source, start, end, '{');
+		int valueEnd = JsonBytes.skipValue(source, start, end);
+		if (root.terminal)
+			return (Map<String, Object>) parseValue(source, start, valueEnd);
+		return readObject(source, start, valueEnd, root);
+	}
+
+	private static Object readValue(byte[] source, int start, int end, PathNode node) {
+		if (node == null)
+			return new RawJsonValue(source, start, end - start);
+		if (node.terminal)
+			return parseValue(source, start, end);
+		byte b = source[start];
+		if (b == '{')
+			return readObject(source, start, end, node);
+		if (b == '[')
+			return readArray(source, start, end, node);
+		return parseValue(source, start, end);
+	}
+
+	private static Map<String, Object> readObject(byte[] source, int start, int end, PathNode node) {
+		Map<String, Object> ret = StructureUtils.createMap();
+		int pos = JsonBytes.skipWhitespace(source, start + 1, end);
+		if (pos < end && source[pos] == '}')
+			return ret;
+		while (true) {
+			JsonBytes.expect(source, pos, end, '"');
+			int keyEnd = JsonBytes.skipString(source, pos, end);
+			String key = JsonBytes.decodeString(source, pos, keyEnd);
+			pos = JsonBytes.skipWhitespace(source, keyEnd, end);
+			JsonBytes.expect(source, pos, end, ':');
+			int valueStart = JsonBytes.skipWhitespace(source, pos + 1, end);
+			int valueEnd = JsonBytes.skipValue(source, valueStart, end);
+			ret.put(key, readValue(source, valueStart, valueEnd, node != null ? node.find(key) : null));
+			pos = JsonBytes.skipWhitespace(source, valueEnd, end);
+			if (pos < end && source[pos] == ',') {
+				pos = JsonBytes.skipWhitespace(source, pos + 1, end);
+			} else {
+				JsonBytes.expect(source, pos, end, '}');
+				return ret;
+			}
+		}
+	}
+
+	private static List<Object> readArray(byte[] source, int start, int end, PathNode node) {
+		List<Object> ret = new ArrayList<Object>();
+		int pos = JsonBytes.skipWhitespace(source, start + 1, end);
+		if (pos < end && source[pos] == ']')
+			return ret;
+		while (true) {
+			int valueEnd = JsonBytes.skipValue(source, pos, end);
+			ret.add(readValue(source, pos, valueEnd, node));
+			pos = JsonBytes.skipWhitespace(source, valueEnd, end);
+			if (pos < end && source[pos] == ',') {
+				pos = JsonBytes.skipWhitespace(source, pos + 1, end);
+			} else {
+				JsonBytes.expect(source, pos, end, ']');
+				return ret;
+			}
+		}
+	}
+
+	/**
+	 * Parse whole JSON value.
+	 *
+	 * @return {@link CompactMap} for object, ArrayList for array, String, Boolean, number or <code>null</code> otherwise
+	 */
+	static Object parseValue(byte[] source, int start, int end) {
+		byte b = source[start];
+		if (b == '{')
+			return readObject(source, start, end, PathNode.ALL);
+		if (b == '[')
+			return readArray(source, start, end, PathNode.ALL);
+		if (b == '"')
+			return JsonBytes.decodeString(source, start, end);
+		return JsonBytes.parseLiteral(source, start, end);
+	}
+
+	/**
+	 * Write document read by this reader (or any other Map of Maps structure).
+	 *
+	 * @param data document to write
+	 * @param out to write UTF-8 encoded JSON into
+	 * @throws IOException if writing fails
+	 */
+	public static void writeTo(Map<String, Object> data, OutputStream out) throws IOException {
+		JsonBytes.writeValue(data, out);
+	}
+
+	/**
+	 * @param data document to write
+	 * @return UTF-8 encoded JSON object, see {@link #writeTo(Map, OutputStream)}
+	 */
+	public static BytesReference toBytes(Map<String, Object> data) {
+		BytesStreamOutput out = new BytesStreamOutput();
+		try {
+			writeTo(data, out);
+		} catch (IOException e) {
+			// not thrown by in-memory stream
+			throw new IllegalStateException(e);
+		}
+		return out.bytes();
+	}
+
+	/**
+	 * @return fields parsed by this reader
+	 */
+	public FieldAccess getFieldAccess() {
+		return fieldAccess;
+	}
+
+	/**
+	 * Node of tree of accessed paths, one level of nesting for each token of path.
+	 */
+	private static final class PathNode {
+
+		/**
+		 * Node used to parse whole value.
+		 */
+		static final PathNode ALL = new PathNode();
+		static {
+			ALL.terminal = true;
+		}
+
+		/**
+		 * True if value of field is accessed whole.
+		 */
+		boolean terminal;
+		Map<String, PathNode> children;
+
+		PathNode child(String token) {
+			if (children == null)
+				children = new HashMap<String, PathNode>();
+			PathNode ret = children.get(token);
+			if (ret == null) {
+				ret = new PathNode();
+				children.put(token, ret);
+			}
+			return ret;
+		}
+
+		/**
+		 * Find node for key of object field. Key containing dot is matched against more levels of paths, same as
+		 * {@link FieldPath#get(Map)} does it.
+		 *
+		 * @return node or <code>null</code> if field is not on accessed path
+		 */
+		PathNode find(String key) {
+			if (terminal)
+				return this;
+			if (children == null)
+				return null;
+			PathNode ret = children.get(key);
+			if (ret != null || key.indexOf('.') < 0)
+				return ret;
+			ret = this;
+			for (String token : key.split("\\.")) {
+				if (token.length() == 0)
+					continue;
+				if (ret.children == null)
+					return null;
+				ret = ret.children.get(token);
+				if (ret == null)
+					return null;
+				if (ret.terminal)
+					return ret;
+			}
+			return ret;
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Opaque JSON value which was not parsed by {@link ProjectedJsonReader} because no preprocessor in chain accesses it.
+ * Keeps region of source bytes only, which is written verbatim when document is serialized by
+ * {@link ProjectedJsonReader#writeTo(java.util.Map, OutputStream)}. Instances are immutable, source bytes must not be
+ * changed.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public final class RawJsonValue {
+
+	private final byte[] source;
+	private final int offset;
+	private final int length;
+
+	/**
+	 * Create value.
+	 *
+	 * @param source bytes containing UTF-8 encoded JSON value
+	 * @param offset of value in source
+	 * @param length of value in source
+	 * @throws IllegalArgumentException if region is out of source bounds
+	 */
+	public RawJsonValue(byte[] source, int offset, int length) throws IllegalArgumentException {
+		if (source == null)
+			throw new IllegalArgumentException("source must be defined");
+		if (offset < 0 || length <= 0 || offset + length > source.length)
+			throw new IllegalArgumentException("offset and length must be within source");
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Write value.
+	 *
+	 * @param out to write UTF-8 encoded JSON into
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(source, offset, length);
+	}
+
+	/**
+	 * Parse value, eg. if it is necessary to access it after all.
+	 *
+	 * @return value parsed same way as by {@link ProjectedJsonReader} without projection
+	 */
+	public Object parse() {
+		return ProjectedJsonReader.parseValue(source, offset, offset + length);
+	}
+
+	/**
+	 * @return copy of UTF-8 encoded JSON value
+	 */
+	public byte[] toBytes() {
+		return Arrays.copyOfRange(source, offset, offset + length);
+	}
+
+	/**
+	 * @return length of UTF-8 encoded JSON value in bytes
+	 */
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public int hashCode() {
+		int ret = 1;
+		for (int i = offset; i < offset + length; i++) {
+			ret = 31 * ret + source[i];
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof RawJsonValue))
+			return false;
+		RawJsonValue other = (RawJsonValue) obj;
+		if (length != other.length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (source[offset + i] != other.source[other.offset + i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return JSON value
+	 */
+	@Override
+	public String toString() {
+		return new String(source, offset, length, JsonBytes.UTF8);
+	}
+
+}
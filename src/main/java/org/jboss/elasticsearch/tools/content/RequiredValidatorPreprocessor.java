@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.tools.content;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import org.elasticsearch.common.settings.SettingsException;
@@ -40,11 +41,14 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class RequiredValidatorPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class RequiredValidatorPreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor {
 
 	protected static final String CFG_FIELD = "field";
 
 	protected String field;
+	protected FieldPath fieldPath;
 
 	@Override
 	public void init(Map<String, Object> settings) throws SettingsException {
@@ -53,13 +57,19 @@ public class RequiredValidatorPreprocessor extends StructuredContentPreprocessor
 		}
 		field = XContentMapValues.nodeStringValue(settings.get(CFG_FIELD), null);
 		validateConfigurationStringNotEmpty(field, CFG_FIELD);
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldPath = FieldPath.create(field);
 	}
 
 	@Override
 	public Map<String, Object> preprocessData(Map<String, Object> data) {
 		if (data == null)
 			return null;
-		Object sourceData = XContentMapValues.extractValue(field, data);
+		Object sourceData = fieldPath.get(data);
 		if (sourceData == null) {
 			throw new InvalidDataException("Field " + field + " is required");
 		} else if (sourceData instanceof String) {
@@ -76,6 +86,11 @@ public class RequiredValidatorPreprocessor extends StructuredContentPreprocessor
 		return data;
 	}
 
+	@Override
+	public FieldAccess getFieldAccess() {
+		return new FieldAccess(Collections.singletonList(field), null);
+	}
+
 	public String getField() {
 		return field;
 	}
@@ -5,7 +5,10 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.settings.SettingsException;
@@ -53,7 +56,9 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @see StructuredContentPreprocessorFactory
  * @see ValueUtils#processStringValuePatternReplacement(String, Map, Object)
  */
-public class SimpleValueMapMapperPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class SimpleValueMapMapperPreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor, StreamableStructuredContentPreprocessor {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
 	protected static final String CFG_TARGET_FIELD = "target_field";
@@ -62,7 +67,10 @@ public class SimpleValueMapMapperPreprocessor extends StructuredContentPreproces
 
 	protected String fieldSource;
 	protected String fieldTarget;
+	protected FieldPath fieldSourcePath;
+	protected FieldPath fieldTargetPath;
 	protected String defaultValue = null;
+	protected CompiledTemplate defaultValueTemplate;
 	protected Map<String, String> valueMap = null;
 
 	@SuppressWarnings("unchecked")
@@ -80,6 +88,14 @@ public class SimpleValueMapMapperPreprocessor extends StructuredContentPreproces
 		if (valueMap == null || valueMap.isEmpty()) {
 			logger.warn("'settings/" + CFG_VALUE_MAPPING + "' is not defined for preprocessor '{}'", name);
 		}
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldSourcePath = FieldPath.create(fieldSource);
+		fieldTargetPath = FieldPath.create(fieldTarget);
+		defaultValueTemplate = defaultValue != null ? CompiledTemplate.compile(defaultValue) : null;
 	}
 
 	@Override
@@ -87,42 +103,70 @@ public class SimpleValueMapMapperPreprocessor extends StructuredContentPreproces
 		if (data == null)
 			return null;
 
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
+		String newVal = mapValue(fieldSourcePath.get(data), data);
+		if (newVal != null) {
+			putTargetValue(data, newVal);
 		}
+		return data;
+	}
 
-		if (v == null) {
-			putDefaultValue(data, null);
-		} else if (v instanceof Map || v instanceof Collection || v.getClass().isArray()) {
+	/**
+	 * Map one value of source field. Used for both Map of Maps structure and streaming.
+	 *
+	 * @param v value of source field, can be <code>null</code>
+	 * @param data document used to evaluate default value pattern, can be <code>null</code> if pattern doesn't use keys
+	 *          from other fields
+	 * @return mapped value, default value if mapping is not found. <code>null</code> if default value is not defined or
+	 *         value is not simple (warning is logged then).
+	 */
+	protected String mapValue(Object v, Map<String, Object> data) {
+		if (v instanceof Map || v instanceof Collection || (v != null && v.getClass().isArray())) {
 			logger
 					.warn("value for field '" + fieldSource
 							+ "' is not simple value (but is List or Array or Map), so can't be processed by '" + name
 							+ "' preprocessor");
-		} else {
-			String origValue = v.toString();
-			String newVal = null;
-			if (valueMap != null && !ValueUtils.isEmpty(origValue))
-				newVal = valueMap.get(origValue);
-			if (newVal != null) {
-				putTargetValue(data, newVal);
-			} else {
-				putDefaultValue(data, origValue);
-			}
+			return null;
 		}
-		return data;
+		String origValue = v != null ? v.toString() : null;
+		String newVal = null;
+		if (valueMap != null && !ValueUtils.isEmpty(origValue))
+			newVal = valueMap.get(origValue);
+		if (newVal != null)
+			return newVal;
+		if (defaultValueTemplate != null)
+			return defaultValueTemplate.render(data, origValue);
+		return null;
 	}
 
-	private void putDefaultValue(Map<String, Object> data, String originalValue) {
-		if (defaultValue != null) {
-			putTargetValue(data, ValueUtils.processStringValuePatternReplacement(defaultValue, data, originalValue));
-		}
+	protected void putTargetValue(Map<String, Object> data, String value) {
+		fieldTargetPath.put(data, value);
 	}
 
-	protected void putTargetValue(Map<String, Object> data, String value) {
-		StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, value);
+	@Override
+	public FieldAccess getFieldAccess() {
+		List<String> read = new ArrayList<String>();
+		read.add(fieldSource);
+		if (defaultValueTemplate != null)
+			read.addAll(defaultValueTemplate.getFieldKeys());
+		return new FieldAccess(read, Collections.singletonList(fieldTarget));
+	}
+
+	/**
+	 * Streamed only if source and target field is same and default value doesn't use keys from other fields.
+	 */
+	@Override
+	public List<StreamingTransform> getStreamingTransforms() {
+		final CompiledTemplate template = defaultValueTemplate;
+		if (!fieldSource.equals(fieldTarget) || (template != null && !template.getFieldKeys().isEmpty()))
+			return null;
+		StreamingTransform ret = new StreamingTransform(null, fieldSource, false, template != null) {
+			@Override
+			public Object transform(Object value) {
+				String newVal = mapValue(value, null);
+				return newVal != null ? newVal : value;
+			}
+		};
+		return Collections.singletonList(ret);
 	}
 
 	public String getFieldSource() {
@@ -0,0 +1,31 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link StructuredContentPreprocessor} which is able to express {@link #preprocessData(Map)} as transformations of
+ * fields performed over stream of JSON tokens, so {@link StreamingPreprocessorChain} can preprocess documents without
+ * Map of Maps structure.
+ * <p>
+ * Thread safety contract is same as for {@link StructuredContentPreprocessor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public interface StreamableStructuredContentPreprocessor extends StructuredContentPreprocessor {
+
+	/**
+	 * Get transformations with same result as {@link #preprocessData(Map)}. Called after preprocessor is initialized.
+	 *
+	 * @return transformations in order of invocation, <code>null</code> if preprocessor can't be streamed with actual
+	 *         configuration (eg. if pattern with keys from other fields is used)
+	 */
+	List<StreamingTransform> getStreamingTransforms();
+
+}
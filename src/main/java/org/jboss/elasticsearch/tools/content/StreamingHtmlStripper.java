@@ -0,0 +1,536 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.parser.Parser;
+
+/**
+ * Single pass HTML stripper which produces same text as <code>Jsoup.clean</code> with <code>Whitelist.relaxed()</code>
+ * followed by text extraction in {@link StripHtmlPreprocessor}, but without building any DOM. Input is tokenized and
+ * text is emitted directly:
+ * <ul>
+ * <li>tags allowed by <code>Whitelist.relaxed()</code> separate text, tags not allowed are removed but their text
+ * content is kept, so text around them is joined
+ * <li>content of <code>script</code> and <code>style</code> elements, comments and doctype are removed
+ * <li>HTML entities are unescaped
+ * <li>whitespaces are normalized, non breaking spaces are replaced by normal spaces, each text part is trimmed and
+ * parts are separated by one space
+ * </ul>
+ * Stack of open elements is tracked in simplified form to find out which end tags close separator elements. Text is
+ * not moved as HTML tree builder does for some malformed structures (eg. text directly in <code>table</code> or
+ * formatting elements misnested with block elements), so output may differ from DOM based stripping for them.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see StripHtmlPreprocessor
+ */
+@ThreadSafe
+public final class StreamingHtmlStripper {
+
+	/**
+	 * Tags allowed by <code>org.jsoup.safety.Whitelist.relaxed()</code>, they separate text parts.
+	 */
+	private static final Set<String> SEPARATOR_TAGS = new HashSet<String>();
+
+	/**
+	 * Tags without end tag.
+	 */
+	private static final Set<String> VOID_TAGS = new HashSet<String>();
+
+	/**
+	 * Formatting tags, HTML tree builder moves them into block elements if closed inside of them.
+	 */
+	private static final Set<String> FORMATTING_TAGS = new HashSet<String>();
+
+	/**
+	 * Tags with special parsing rules in HTML tree builder, end tags of other elements are not closing them.
+	 */
+	private static final Set<String> SPECIAL_TAGS = new HashSet<String>();
+
+	/**
+	 * Tags which close open <code>p</code> element.
+	 */
+	private static final Set<String> CLOSES_P_TAGS = new HashSet<String>();
+
+	/**
+	 * Tags limiting scope where elements are closed by start tags.
+	 */
+	private static final Set<String> SCOPE_TAGS = new HashSet<String>();
+
+	/**
+	 * Tags with content which is not parsed for other tags. Value is true if content is text, false if it is removed.
+	 */
+	private static final Map<String, Boolean> RAW_CONTENT_TAGS = new HashMap<String, Boolean>();
+
+	/**
+	 * Tags with content which is not parsed for other tags, but entities are unescaped.
+	 */
+	private static final Set<String> ESCAPABLE_RAW_CONTENT_TAGS = new HashSet<String>();
+
+	static {
+		String[] separators = new String[] { "a", "b", "blockquote", "br", "caption", "cite", "code", "col", "colgroup",
+				"dd", "div", "dl", "dt", "em", "h1", "h2", "h3", "h4", "h5", "h6", "i", "img", "li", "ol", "p", "pre", "q",
+				"small", "strike", "strong", "sub", "sup", "table", "tbody", "td", "tfoot", "th", "thead", "tr", "u", "ul" };
+		addAll(SEPARATOR_TAGS, separators);
+		addAll(VOID_TAGS, "area", "base", "basefont", "bgsound", "br", "col", "embed", "hr", "img", "input", "keygen",
+				"link", "meta", "param", "source", "track", "wbr");
+		addAll(FORMATTING_TAGS, "a", "b", "big", "code", "em", "font", "i", "nobr", "s", "small", "strike", "strong",
+				"tt", "u");
+		addAll(SPECIAL_TAGS, "address", "applet", "area", "article", "aside", "base", "basefont", "bgsound",
+				"blockquote", "body", "br", "button", "caption", "center", "col", "colgroup", "dd", "details", "dir", "div",
+				"dl", "dt", "embed", "fieldset", "figcaption", "figure", "footer", "form", "frame", "frameset", "h1", "h2",
+				"h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html", "iframe", "img", "input", "isindex", "li",
+				"link", "listing", "marquee", "menu", "meta", "nav", "noembed", "noframes", "noscript", "object", "ol", "p",
+				"param", "plaintext", "pre", "script", "section", "select", "style", "summary", "table", "tbody", "td",
+				"textarea", "tfoot", "th", "thead", "title", "tr", "ul", "wbr", "xmp");
+		addAll(CLOSES_P_TAGS, "address", "article", "aside", "blockquote", "center", "details", "dir", "div", "dl",
+				"fieldset", "figcaption", "figure", "footer", "header", "hgroup", "menu", "nav", "ol", "p", "section",
+				"summary", "ul", "h1", "h2", "h3", "h4", "h5", "h6", "pre", "listing", "form", "hr", "xmp", "table",
+				"plaintext");
+		addAll(SCOPE_TAGS, "applet", "caption", "html", "table", "td", "th", "marquee", "object", "button");
+		RAW_CONTENT_TAGS.put("script", Boolean.FALSE);
+		RAW_CONTENT_TAGS.put("style", Boolean.FALSE);
+		RAW_CONTENT_TAGS.put("xmp", Boolean.TRUE);
+		RAW_CONTENT_TAGS.put("iframe", Boolean.TRUE);
+		RAW_CONTENT_TAGS.put("noembed", Boolean.TRUE);
+		RAW_CONTENT_TAGS.put("noframes", Boolean.TRUE);
+		ESCAPABLE_RAW_CONTENT_TAGS.add("title");
+		ESCAPABLE_RAW_CONTENT_TAGS.add("textarea");
+	}
+
+	private static void addAll(Set<String> set, String... values) {
+		for (String v : values) {
+			set.add(v);
+		}
+	}
+
+	private StreamingHtmlStripper() {
+	}
+
+	/**
+	 * Strip HTML tags from value and unescape HTML entities.
+	 *
+	 * @param value to strip
+	 * @return text from value. Same object is returned if value is <code>null</code> or blank.
+	 */
+	public static String stripHtml(String value) {
+		if (value == null || value.trim().isEmpty())
+			return value;
+		return new Tokenizer(value).run();
+	}
+
+	/**
+	 * Tokenizer state for one input value.
+	 */
+	private static final class Tokenizer {
+
+		private final String in;
+		private final int len;
+		private int pos = 0;
+
+		private final StringBuilder out;
+		private final StringBuilder part = new StringBuilder();
+
+		/**
+		 * Simplified stack of open elements as maintained by HTML tree builder, used to find out which end tags close
+		 * separator elements and which are ignored.
+		 */
+		private final List<String> openElements = new ArrayList<String>();
+
+		/**
+		 * Formatting elements closed implicitly, HTML tree builder reconstructs them for following text.
+		 */
+		private final List<String> reconstructElements = new ArrayList<String>();
+
+		Tokenizer(String in) {
+			this.in = in;
+			this.len = in.length();
+			this.out = new StringBuilder(len);
+		}
+
+		String run() {
+			int textStart = 0;
+			while (pos < len) {
+				int lt = in.indexOf('<', pos);
+				if (lt < 0) {
+					break;
+				}
+				// '<' can't be part of entity, so text may be split here
+				appendText(textStart, lt);
+				textStart = lt;
+				pos = lt;
+				if (processMarkup()) {
+					textStart = pos;
+				} else {
+					// not a markup so '<' is text
+					pos = lt + 1;
+				}
+			}
+			appendText(textStart, len);
+			flushPart();
+			int l = out.length();
+			if (l > 0 && out.charAt(l - 1) == ' ')
+				out.setLength(l - 1);
+			return out.toString();
+		}
+
+		/**
+		 * Process markup starting at {@link #pos} which points to <code>&lt;</code>. {@link #pos} points after markup
+		 * then.
+		 *
+		 * @return false if it is not markup so <code>&lt;</code> is text.
+		 */
+		private boolean processMarkup() {
+			int i = pos + 1;
+			if (i >= len)
+				return false;
+			char c = in.charAt(i);
+			if (isLetter(c)) {
+				processTag(i, false);
+			} else if (c == '/') {
+				i++;
+				if (i >= len)
+					return false;
+				c = in.charAt(i);
+				if (isLetter(c)) {
+					processTag(i, true);
+				} else if (c == '>') {
+					pos = i + 1;
+				} else {
+					skipTo(">", i);
+				}
+			} else if (c == '!') {
+				if (in.startsWith("--", i + 1)) {
+					i += 3;
+					if (in.startsWith(">", i)) {
+						pos = i + 1;
+					} else if (in.startsWith("->", i)) {
+						pos = i + 2;
+					} else {
+						skipTo("-->", i);
+					}
+				} else {
+					skipTo(">", i + 1);
+				}
+			} else if (c == '?') {
+				skipTo(">", i + 1);
+			} else {
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Skip input up to and including terminator, rest of input is skipped if terminator is not found.
+		 */
+		private void skipTo(String terminator, int from) {
+			int idx = from < len ? in.indexOf(terminator, from) : -1;
+			pos = idx < 0 ? len : idx + terminator.length();
+		}
+
+		/**
+		 * Process start or end tag, {@link #pos} points after tag (and after raw content for some elements) then.
+		 *
+		 * @param nameStart index of first letter of tag name
+		 * @param endTag true if it is end tag
+		 */
+		private void processTag(int nameStart, boolean endTag) {
+			int i = nameStart;
+			while (i < len) {
+				char c = in.charAt(i);
+				if (isWhitespace(c) || c == '/' || c == '>')
+					break;
+				i++;
+			}
+			String name = in.substring(nameStart, i).toLowerCase();
+			int tagEnd = findTagEnd(i);
+			if (tagEnd < 0) {
+				// unfinished tag is removed with rest of input
+				pos = len;
+				return;
+			}
+			pos = tagEnd + 1;
+			if ("image".equals(name))
+				name = "img";
+
+			if (endTag) {
+				processEndTag(name);
+			} else {
+				processStartTag(name);
+			}
+		}
+
+		private void processStartTag(String name) {
+			if (CLOSES_P_TAGS.contains(name)) {
+				closeInScope("p");
+				if (isHeading(name) && !openElements.isEmpty() && isHeading(openElements.get(openElements.size() - 1)))
+					popTo(openElements.size() - 1);
+			} else if ("li".equals(name) || "dd".equals(name) || "dt".equals(name)) {
+				closeListItem(name);
+				closeInScope("p");
+			}
+			if ("a".equals(name)) {
+				// nested link is not allowed, so open one is closed
+				processFormattingEndTag(name);
+				reconstructElements.remove(name);
+			}
+			if (!SPECIAL_TAGS.contains(name) || VOID_TAGS.contains(name))
+				reconstructFormattingElements();
+			if (SEPARATOR_TAGS.contains(name))
+				flushPart();
+			if (VOID_TAGS.contains(name))
+				return;
+
+			Boolean rawText = RAW_CONTENT_TAGS.get(name);
+			if (rawText != null) {
+				int end = findRawContentEnd(name);
+				if (rawText.booleanValue())
+					part.append(in, pos, end);
+				pos = end;
+			} else if (ESCAPABLE_RAW_CONTENT_TAGS.contains(name)) {
+				int end = findRawContentEnd(name);
+				appendText(pos, end);
+				pos = end;
+			} else if ("plaintext".equals(name)) {
+				part.append(in, pos, len);
+				pos = len;
+			} else {
+				openElements.add(name);
+			}
+		}
+
+		private void processEndTag(String name) {
+			if ("br".equals(name)) {
+				// HTML parser creates element for end tag
+				flushPart();
+			} else if ("p".equals(name)) {
+				// HTML parser creates element for end tag without start tag
+				if (!closeInScope(name))
+					flushPart();
+			} else if (FORMATTING_TAGS.contains(name)) {
+				processFormattingEndTag(name);
+			} else if (isHeading(name)) {
+				for (int i = openElements.size() - 1; i >= 0; i--) {
+					String e = openElements.get(i);
+					if (isHeading(e)) {
+						popTo(i);
+						return;
+					}
+					if (SCOPE_TAGS.contains(e))
+						return;
+				}
+			} else if (CLOSES_P_TAGS.contains(name) || "li".equals(name) || "dd".equals(name) || "dt".equals(name)) {
+				closeInScope(name);
+			} else {
+				for (int i = openElements.size() - 1; i >= 0; i--) {
+					String e = openElements.get(i);
+					if (e.equals(name)) {
+						popTo(i);
+						return;
+					}
+					if (SPECIAL_TAGS.contains(e)) {
+						// end tag is ignored by HTML parser
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Process end tag of formatting element similarly as adoption agency algorithm of HTML tree builder does.
+		 */
+		private void processFormattingEndTag(String name) {
+			int index = openElements.lastIndexOf(name);
+			if (index < 0) {
+				index = reconstructElements.lastIndexOf(name);
+				if (index >= 0)
+					reconstructElements.remove(index);
+				return;
+			}
+			int furthestBlock = -1;
+			for (int i = index + 1; i < openElements.size(); i++) {
+				if (SPECIAL_TAGS.contains(openElements.get(i))) {
+					furthestBlock = i;
+					break;
+				}
+			}
+			if (furthestBlock < 0) {
+				popTo(index);
+				return;
+			}
+			// formatting element is moved into the furthest block, text continues in the block
+			if (furthestBlock + 1 < openElements.size() && !SPECIAL_TAGS.contains(openElements.get(furthestBlock + 1))) {
+				popTo(furthestBlock + 1);
+			}
+			openElements.remove(index);
+			if (furthestBlock == openElements.size() && SEPARATOR_TAGS.contains(name))
+				flushPart();
+		}
+
+		/**
+		 * Close open element if it is in scope.
+		 *
+		 * @return true if element was closed
+		 */
+		private boolean closeInScope(String name) {
+			for (int i = openElements.size() - 1; i >= 0; i--) {
+				String e = openElements.get(i);
+				if (e.equals(name)) {
+					popTo(i);
+					return true;
+				}
+				if (SCOPE_TAGS.contains(e) || ("li".equals(name) && ("ol".equals(e) || "ul".equals(e))))
+					return false;
+			}
+			return false;
+		}
+
+		private void closeListItem(String name) {
+			for (int i = openElements.size() - 1; i >= 0; i--) {
+				String e = openElements.get(i);
+				if (e.equals(name) || (!"li".equals(name) && ("dd".equals(e) || "dt".equals(e)))) {
+					popTo(i);
+					return;
+				}
+				if (SPECIAL_TAGS.contains(e) && !"address".equals(e) && !"div".equals(e) && !"p".equals(e))
+					return;
+			}
+		}
+
+		/**
+		 * Pop elements from stack of open elements up to index, text is separated if any separator element is closed.
+		 */
+		private void popTo(int index) {
+			int reconstructIndex = reconstructElements.size();
+			for (int i = openElements.size() - 1; i >= index; i--) {
+				String e = openElements.remove(i);
+				if (i > index && FORMATTING_TAGS.contains(e))
+					reconstructElements.add(reconstructIndex, e);
+				if (SEPARATOR_TAGS.contains(e))
+					flushPart();
+			}
+		}
+
+		/**
+		 * Open again formatting elements closed implicitly, text is separated if any of them is separator element.
+		 */
+		private void reconstructFormattingElements() {
+			if (reconstructElements.isEmpty())
+				return;
+			for (String e : reconstructElements) {
+				if (SEPARATOR_TAGS.contains(e))
+					flushPart();
+				openElements.add(e);
+			}
+			reconstructElements.clear();
+		}
+
+		/**
+		 * Find end of tag with attributes.
+		 *
+		 * @param from position after tag name
+		 * @return index of <code>&gt;</code> closing the tag or -1 if tag is not closed
+		 */
+		private int findTagEnd(int from) {
+			int i = from;
+			while (i < len) {
+				char c = in.charAt(i);
+				if (c == '>') {
+					return i;
+				} else if (c == '=') {
+					i++;
+					while (i < len && isWhitespace(in.charAt(i)))
+						i++;
+					if (i < len) {
+						char q = in.charAt(i);
+						if (q == '"' || q == '\'') {
+							int qe = in.indexOf(q, i + 1);
+							if (qe < 0)
+								return -1;
+							i = qe + 1;
+						}
+					}
+				} else {
+					i++;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Find end tag for element with raw content.
+		 *
+		 * @param name of element
+		 * @return index of <code>&lt;</code> of end tag, or input length if not found
+		 */
+		private int findRawContentEnd(String name) {
+			int i = pos;
+			int nl = name.length();
+			while (true) {
+				int lt = in.indexOf("</", i);
+				if (lt < 0)
+					return len;
+				int ne = lt + 2 + nl;
+				if (ne <= len && in.regionMatches(true, lt + 2, name, 0, nl)) {
+					if (ne == len)
+						return lt;
+					char c = in.charAt(ne);
+					if (isWhitespace(c) || c == '/' || c == '>')
+						return lt;
+				}
+				i = lt + 2;
+			}
+		}
+
+		/**
+		 * Append text from input into actual text part, entities are unescaped.
+		 */
+		private void appendText(int from, int to) {
+			if (from >= to)
+				return;
+			reconstructFormattingElements();
+			int amp = in.indexOf('&', from);
+			if (amp < 0 || amp >= to) {
+				part.append(in, from, to);
+			} else {
+				part.append(Parser.unescapeEntities(in.substring(from, to), false));
+			}
+		}
+
+		/**
+		 * Write actual text part to the output.
+		 */
+		private void flushPart() {
+			if (part.length() == 0)
+				return;
+			String text = StringUtil.normaliseWhitespace(part.toString()).replace('\u00A0', ' ').trim();
+			part.setLength(0);
+			if (!text.isEmpty()) {
+				out.append(text).append(' ');
+			}
+		}
+
+		private static boolean isHeading(String name) {
+			return name.length() == 2 && name.charAt(0) == 'h' && name.charAt(1) >= '1' && name.charAt(1) <= '6';
+		}
+
+		private static boolean isLetter(char c) {
+			return Character.isLetter(c);
+		}
+
+		private static boolean isWhitespace(char c) {
+			return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+		}
+	}
+
+}
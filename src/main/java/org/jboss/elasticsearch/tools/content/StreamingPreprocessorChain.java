@@ -0,0 +1,386 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.ElasticSearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Preprocesses documents by {@link PreprocessorChain} directly from JSON into JSON, without building Map of Maps
+ * structure, eg. for bulk reindexing. If all preprocessors in chain implement
+ * {@link StreamableStructuredContentPreprocessor}, their {@link StreamingTransform}s are applied to stream of tokens read
+ * from {@link XContentParser} and written into {@link XContentBuilder}. Only values of transformed fields are
+ * materialized, all other parts of document are copied token by token, so memory used for one document depends on
+ * depth of document only. Fields put into document are written at the end of their parent object.
+ * <p>
+ * Document is read into Map of Maps structure and preprocessed by {@link PreprocessorChain#process(Map)} if chain
+ * can't be streamed (some preprocessor is not streamable, or transformations conflict - eg. one field is transformed
+ * and is parent of other transformed field, or same object is accessed over <code>source_bases</code> by one
+ * preprocessor and over field path by other one). Note that keys containing dot are not matched against nested paths
+ * in streaming mode, and that invocations of preprocessors are not reported to {@link PreprocessorMetrics}.
+ * <p>
+ * Instances are immutable, so can be shared by more threads.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@ThreadSafe
+public class StreamingPreprocessorChain {
+
+	private static final int ARRAYS_UNKNOWN = 0;
+	private static final int ARRAYS_DESCEND = 1;
+	private static final int ARRAYS_COPY = 2;
+
+	protected final PreprocessorChain chain;
+
+	/**
+	 * Root of tree of transformed paths, <code>null</code> if chain can't be streamed.
+	 */
+	private final PathNode root;
+
+	private final ProjectedJsonReader fallbackReader;
+
+	/**
+	 * Create streaming chain.
+	 *
+	 * @param chain to preprocess documents by
+	 * @throws IllegalArgumentException if chain is null
+	 */
+	public StreamingPreprocessorChain(PreprocessorChain chain) throws IllegalArgumentException {
+		if (chain == null)
+			throw new IllegalArgumentException("chain must be defined");
+		this.chain = chain;
+		this.root = buildTree(chain);
+		this.fallbackReader = root == null ? new ProjectedJsonReader(chain.getFieldAccess()) : null;
+	}
+
+	private static PathNode buildTree(PreprocessorChain chain) {
+		PathNode ret = new PathNode();
+		for (StructuredContentPreprocessor preprocessor : chain.getPreprocessors()) {
+			if (!(preprocessor instanceof StreamableStructuredContentPreprocessor))
+				return null;
+			List<StreamingTransform> transforms = ((StreamableStructuredContentPreprocessor) preprocessor)
+					.getStreamingTransforms();
+			if (transforms == null)
+				return null;
+			for (StreamingTransform transform : transforms) {
+				List<String> bases = transform.getSourceBases();
+				if (bases == null) {
+					if (!ret.add(tokens(transform.getField()), 0, transform, 0))
+						return null;
+				} else {
+					for (String base : bases) {
+						if (ValueUtils.isEmpty(base))
+							continue;
+						List<String> baseTokens = tokens(base);
+						List<String> t = new ArrayList<String>(baseTokens);
+						t.addAll(tokens(transform.getField()));
+						if (!ret.add(t, 0, transform, baseTokens.size()))
+							return null;
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static List<String> tokens(String path) {
+		List<String> ret = new ArrayList<String>();
+		for (String token : path.split("\\.")) {
+			if (token.length() > 0)
+				ret.add(token);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return true if chain is streamed, false if documents are preprocessed over Map of Maps structure
+	 */
+	public boolean isStreamable() {
+		return root != null;
+	}
+
+	/**
+	 * Preprocess one document.
+	 *
+	 * @param source UTF-8 encoded JSON object
+	 * @return UTF-8 encoded JSON object with preprocessed document
+	 * @throws IOException if reading or writing of JSON fails
+	 */
+	public BytesReference process(BytesReference source) throws IOException {
+		if (root == null) {
+			return ProjectedJsonReader.toBytes(chain.process(fallbackReader.read(source)));
+		}
+		XContentParser parser = XContentFactory.xContent(XContentType.JSON).createParser(source);
+		try {
+			XContentBuilder builder = XContentFactory.jsonBuilder();
+			process(parser, builder);
+			return builder.bytes();
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Preprocess one document.
+	 *
+	 * @param parser to read document from, positioned before or at start of document object. Positioned at the end of
+	 *          document object after call.
+	 * @param builder to write preprocessed document into
+	 * @throws IOException if reading or writing of JSON fails
+	 */
+	public void process(XContentParser parser, XContentBuilder builder) throws IOException {
+		Token token = parser.currentToken();
+		if (token == null)
+			token = parser.nextToken();
+		if (token != Token.START_OBJECT)
+			throw new ElasticSearchParseException("JSON object expected but " + token + " found");
+		if (root == null) {
+			builder.map(chain.process(parser.mapOrdered()));
+		} else {
+			processObject(parser, builder, root);
+		}
+	}
+
+	/**
+	 * Process object, parser is positioned at its start.
+	 */
+	private void processObject(XContentParser parser, XContentBuilder builder, PathNode node) throws IOException {
+		builder.startObject();
+		Set<String> seen = node.createsMissing ? new HashSet<String>() : null;
+		Token token;
+		while ((token = parser.nextToken()) == Token.FIELD_NAME) {
+			String name = parser.currentName();
+			PathNode child = node.children.get(name);
+			if (child == null) {
+				builder.copyCurrentStructure(parser);
+				continue;
+			}
+			if (seen != null)
+				seen.add(name);
+			token = parser.nextToken();
+			builder.field(name);
+			processValue(parser, builder, child, token);
+		}
+		if (token != Token.END_OBJECT)
+			throw new ElasticSearchParseException("Field name or end of object expected but " + token + " found");
+		if (seen != null)
+			writeMissing(builder, node, seen);
+		builder.endObject();
+	}
+
+	private void processValue(XContentParser parser, XContentBuilder builder, PathNode node, Token token)
+			throws IOException {
+		if (node.transforms != null) {
+			processLeaf(parser, builder, node, token);
+		} else if (token == Token.START_OBJECT) {
+			processObject(parser, builder, node);
+		} else if (token == Token.START_ARRAY && node.arrays == ARRAYS_DESCEND) {
+			builder.startArray();
+			while ((token = parser.nextToken()) != Token.END_ARRAY) {
+				if (token == null)
+					throw new ElasticSearchParseException("Unterminated JSON array");
+				if (token == Token.START_OBJECT) {
+					processObject(parser, builder, node);
+				} else {
+					builder.copyCurrentStructure(parser);
+				}
+			}
+			builder.endArray();
+		} else if (node.createsMissing && token == Token.VALUE_NULL) {
+			builder.startObject();
+			writeMissing(builder, node, null);
+			builder.endObject();
+		} else if (node.createsMissing) {
+			throw new IllegalArgumentException("Cant put value for field '" + node.putField
+					+ "' because some element in the path is not Map");
+		} else {
+			builder.copyCurrentStructure(parser);
+		}
+	}
+
+	private void processLeaf(XContentParser parser, XContentBuilder builder, PathNode node, Token token)
+			throws IOException {
+		LeafValue v = new LeafValue();
+		v.present = true;
+		if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+			if (!node.hasPut) {
+				// transformations are applied to simple values only
+				builder.copyCurrentStructure(parser);
+				return;
+			}
+			parser.skipChildren();
+			v.simple = false;
+		} else if (token == Token.VALUE_STRING) {
+			v.value = parser.text();
+		} else if (token == Token.VALUE_NUMBER) {
+			v.value = parser.numberValue();
+		} else if (token == Token.VALUE_BOOLEAN) {
+			v.value = parser.booleanValue();
+		} else if (token != Token.VALUE_NULL) {
+			builder.copyCurrentStructure(parser);
+			return;
+		}
+		v.apply(node.transforms);
+		if (v.changed) {
+			builder.value(v.value);
+		} else {
+			builder.copyCurrentStructure(parser);
+		}
+	}
+
+	/**
+	 * Write fields created by transformations which are not present in object.
+	 *
+	 * @param seen names of fields present in object, <code>null</code> if object is created
+	 */
+	private void writeMissing(XContentBuilder builder, PathNode node, Set<String> seen) throws IOException {
+		for (Map.Entry<String, PathNode> e : node.children.entrySet()) {
+			PathNode child = e.getValue();
+			if (!child.createsMissing || (seen != null && seen.contains(e.getKey())))
+				continue;
+			if (child.transforms != null) {
+				LeafValue v = new LeafValue();
+				v.apply(child.transforms);
+				if (v.present)
+					builder.field(e.getKey()).value(v.value);
+			} else {
+				builder.startObject(e.getKey());
+				writeMissing(builder, child, null);
+				builder.endObject();
+			}
+		}
+	}
+
+	/**
+	 * @return chain documents are preprocessed by
+	 */
+	public PreprocessorChain getChain() {
+		return chain;
+	}
+
+	/**
+	 * Value of transformed field.
+	 */
+	private static final class LeafValue {
+		Object value;
+		boolean present;
+		boolean simple = true;
+		boolean changed;
+
+		void apply(List<StreamingTransform> transforms) {
+			for (StreamingTransform transform : transforms) {
+				if (transform.isPut()) {
+					set(transform.transform(null));
+				} else if (!simple) {
+					// value which is not simple is not changed
+				} else if (value == null) {
+					if (transform.isAppliedToMissingValue())
+						set(transform.transform(null));
+				} else {
+					Object nv = transform.transform(value);
+					if (nv != value)
+						set(nv);
+				}
+			}
+		}
+
+		private void set(Object newValue) {
+			value = newValue;
+			present = true;
+			simple = true;
+			changed = true;
+		}
+	}
+
+	/**
+	 * Node of tree of transformed paths, one level of nesting for each token of path.
+	 */
+	private static final class PathNode {
+
+		final Map<String, PathNode> children = new LinkedHashMap<String, PathNode>();
+
+		/**
+		 * Transformations of this field in order of invocation, <code>null</code> if field is not transformed.
+		 */
+		List<StreamingTransform> transforms;
+
+		/**
+		 * How arrays in this field are processed, one of <code>ARRAYS_xx</code> constants.
+		 */
+		int arrays = ARRAYS_UNKNOWN;
+
+		/**
+		 * True if some transformation puts value into this field or into its child.
+		 */
+		boolean createsMissing;
+
+		/**
+		 * True if some transformation puts value into this field regardless of its value.
+		 */
+		boolean hasPut;
+
+		/**
+		 * Path of some field put into this field or into its child, used for error message.
+		 */
+		String putField;
+
+		/**
+		 * Add transformation into tree.
+		 *
+		 * @param tokens of transformed path
+		 * @param index of token for this node's child
+		 * @param transform to add
+		 * @param baseLength number of tokens of path which are base, arrays are descended into there
+		 * @return false if transformation conflicts with other ones
+		 */
+		boolean add(List<String> tokens, int index, StreamingTransform transform, int baseLength) {
+			if (transform.isAppliedToMissingValue()) {
+				createsMissing = true;
+				if (putField == null)
+					putField = transform.getField();
+			}
+			if (index == tokens.size()) {
+				if (!children.isEmpty())
+					return false;
+				if (transforms == null)
+					transforms = new ArrayList<StreamingTransform>();
+				transforms.add(transform);
+				if (transform.isPut())
+					hasPut = true;
+				return true;
+			}
+			if (transforms != null)
+				return false;
+			String token = tokens.get(index);
+			PathNode child = children.get(token);
+			if (child == null) {
+				child = new PathNode();
+				children.put(token, child);
+			}
+			if (index + 1 < tokens.size()) {
+				int a = index < baseLength ? ARRAYS_DESCEND : ARRAYS_COPY;
+				if (child.arrays != ARRAYS_UNKNOWN && child.arrays != a)
+					return false;
+				child.arrays = a;
+			}
+			return child.add(tokens, index + 1, transform, baseLength);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.List;
+
+/**
+ * Transformation of one field performed by {@link StreamableStructuredContentPreprocessor} while document is streamed
+ * by {@link StreamingPreprocessorChain}, so without Map of Maps structure. Transformation either changes simple value
+ * (String, number, Boolean) of field in place, or puts value into field regardless of its current value. Field is
+ * relative to each of <code>source_bases</code> if defined. Instances must be immutable.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see StreamingPreprocessorChain
+ */
+@ThreadSafe
+public abstract class StreamingTransform {
+
+	private final List<String> sourceBases;
+	private final String field;
+	private final boolean put;
+	private final boolean appliedToMissingValue;
+
+	/**
+	 * Create transformation.
+	 *
+	 * @param sourceBases paths of bases field is relative to, <code>null</code> if field is relative to document root
+	 * @param field path of transformed field
+	 * @param put if true then value is put into field regardless of its current value, as
+	 *          {@link FieldPath#put(java.util.Map, Object)} does it. Missing objects in path are created.
+	 * @param appliedToMissingValue if true then {@link #transform(Object)} is called with <code>null</code> if field is
+	 *          missing, and value is put into field then. Always true if <code>put</code> is true.
+	 * @throws IllegalArgumentException if field is empty or sourceBases are used together with put
+	 */
+	protected StreamingTransform(List<String> sourceBases, String field, boolean put, boolean appliedToMissingValue)
+			throws IllegalArgumentException {
+		if (ValueUtils.isEmpty(field))
+			throw new IllegalArgumentException("field must be defined");
+		if (sourceBases != null && (put || appliedToMissingValue))
+			throw new IllegalArgumentException("sourceBases can't be used for transformation putting values");
+		this.sourceBases = sourceBases;
+		this.field = field;
+		this.put = put;
+		this.appliedToMissingValue = put || appliedToMissingValue;
+	}
+
+	/**
+	 * Transform value of field.
+	 *
+	 * @param value current simple value of field, <code>null</code> if field is missing or contains <code>null</code>.
+	 *          Not used for put transformation.
+	 * @return new value of field, same instance as <code>value</code> if value is not changed
+	 */
+	public abstract Object transform(Object value);
+
+	/**
+	 * @return paths of bases field is relative to, <code>null</code> if field is relative to document root
+	 */
+	public List<String> getSourceBases() {
+		return sourceBases;
+	}
+
+	/**
+	 * @return path of transformed field
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @return true if value is put into field regardless of its current value
+	 */
+	public boolean isPut() {
+		return put;
+	}
+
+	/**
+	 * @return true if value is put into field also if it is missing
+	 */
+	public boolean isAppliedToMissingValue() {
+		return appliedToMissingValue;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [field=" + field + ", sourceBases=" + sourceBases + ", put=" + put + "]";
+	}
+
+}
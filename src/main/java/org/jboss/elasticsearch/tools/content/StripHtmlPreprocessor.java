@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.tools.content;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -45,20 +46,34 @@ import org.jsoup.select.NodeVisitor;
  * <li><code>source_bases</code> - list of fields in source data which are used as bases for stripping. If defined then
  * stripping is performed for each of this fields, <code>source_field</code> and <code>target_field</code> are resolved
  * relatively against this base. Base must provide object or list of objects.
+ * <li><code>strip_mode</code> - optional mode of stripping. <code>jsoup</code> (default) means that value is cleaned and
+ * parsed into DOM by Jsoup library. <code>streaming</code> means that {@link StreamingHtmlStripper} is used, which is
+ * much faster and produces same text in one pass without DOM, but text may be placed differently for some malformed
+ * HTML structures.
  * </ul>
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class StripHtmlPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class StripHtmlPreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor, StreamableStructuredContentPreprocessor {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
 	protected static final String CFG_TARGET_FIELD = "target_field";
 	protected static final String CFG_source_bases = "source_bases";
+	protected static final String CFG_strip_mode = "strip_mode";
+
+	protected static final String STRIP_MODE_JSOUP = "jsoup";
+	protected static final String STRIP_MODE_STREAMING = "streaming";
 
 	protected String fieldSource;
 	protected String fieldTarget;
+	protected FieldPath fieldSourcePath;
+	protected FieldPath fieldTargetPath;
+	protected List<FieldPath> sourceBasesPaths;
 	protected List<String> sourceBases;
+	protected boolean streaming = false;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -71,6 +86,23 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorBase {
 		fieldTarget = XContentMapValues.nodeStringValue(settings.get(CFG_TARGET_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
 		sourceBases = (List<String>) settings.get(CFG_source_bases);
+		compileConfiguration();
+		String stripMode = ValueUtils.trimToNull(XContentMapValues.nodeStringValue(settings.get(CFG_strip_mode), null));
+		if (stripMode == null || STRIP_MODE_JSOUP.equals(stripMode)) {
+			streaming = false;
+		} else if (STRIP_MODE_STREAMING.equals(stripMode)) {
+			streaming = true;
+		} else {
+			throw new SettingsException("Invalid 'settings/" + CFG_strip_mode + "' configuration value '" + stripMode
+					+ "' for '" + name + "' preprocessor, use one of: " + STRIP_MODE_JSOUP + ", " + STRIP_MODE_STREAMING);
+		}
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldSourcePath = FieldPath.create(fieldSource);
+		fieldTargetPath = FieldPath.create(fieldTarget);
+		sourceBasesPaths = FieldPath.create(sourceBases);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -79,11 +111,11 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorBase {
 		if (data == null)
 			return null;
 
-		if (sourceBases == null) {
+		if (sourceBasesPaths == null) {
 			processOneSourceValue(data);
 		} else {
-			for (String base : sourceBases) {
-				Object obj = XContentMapValues.extractValue(base, data);
+			for (FieldPath base : sourceBasesPaths) {
+				Object obj = base.get(data);
 				if (obj != null) {
 					if (obj instanceof Map) {
 						processOneSourceValue((Map<String, Object>) obj);
@@ -105,25 +137,37 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorBase {
 	}
 
 	private void processOneSourceValue(Map<String, Object> data) {
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
+		String value = stripHtmlValue(fieldSourcePath.get(data));
+		if (value != null) {
+			fieldTargetPath.put(data, value);
 		}
+	}
 
-		if (v != null) {
-			if (!(v instanceof String)) {
-				logger.warn("value for field '" + fieldSource + "' is not String, so can't be processed by '" + name
-						+ "' preprocessor");
-			} else {
-				String value = stripHtml(v.toString());
-				StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, value);
-			}
+	/**
+	 * Strip HTML from one value of source field. Used for both Map of Maps structure and streaming.
+	 *
+	 * @param v value of source field, can be <code>null</code>
+	 * @return value without HTML, <code>null</code> if value is <code>null</code> or is not String (warning is logged
+	 *         then)
+	 */
+	protected String stripHtmlValue(Object v) {
+		if (v == null)
+			return null;
+		if (!(v instanceof String)) {
+			logger.warn("value for field '" + fieldSource + "' is not String, so can't be processed by '" + name
+					+ "' preprocessor");
+			return null;
 		}
+		return stripHtml(v.toString());
 	}
 
 	protected String stripHtml(String value) {
+		if (streaming)
+			return StreamingHtmlStripper.stripHtml(value);
+		return stripHtmlJsoup(value);
+	}
+
+	protected String stripHtmlJsoup(String value) {
 		if (value == null || value.trim().isEmpty())
 			return value;
 		Document doc = Jsoup.parse(Jsoup.clean(value, Whitelist.relaxed()));
@@ -158,6 +202,29 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorBase {
 		return output;
 	}
 
+	@Override
+	public FieldAccess getFieldAccess() {
+		return FieldAccess.create(sourceBases, Collections.singletonList(fieldSource),
+				Collections.singletonList(fieldTarget));
+	}
+
+	/**
+	 * Streamed only if source and target field is same.
+	 */
+	@Override
+	public List<StreamingTransform> getStreamingTransforms() {
+		if (!fieldSource.equals(fieldTarget))
+			return null;
+		StreamingTransform ret = new StreamingTransform(sourceBases, fieldSource, false, false) {
+			@Override
+			public Object transform(Object value) {
+				String v = stripHtmlValue(value);
+				return v != null ? v : value;
+			}
+		};
+		return Collections.singletonList(ret);
+	}
+
 	public String getFieldSource() {
 		return fieldSource;
 	}
@@ -169,4 +236,11 @@ public class StripHtmlPreprocessor extends StructuredContentPreprocessorBase {
 	public List<String> getSourceBases() {
 		return sourceBases;
 	}
+
+	/**
+	 * @return true if {@link StreamingHtmlStripper} is used
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
 }
@@ -0,0 +1,180 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool of Maps and Lists created by the library during preprocessing of batch of documents, so they are reused by next
+ * batch instead of becoming garbage, eg. in high-throughput bulk indexing. Pool is used by
+ * {@link StructureUtils#createMap()} and {@link StructureUtils#createList()} while it is bound to the thread by
+ * {@link PreprocessorChain#processBatch(List, StructurePool)}, structures are created as usually otherwise.
+ * <p>
+ * Typical usage is:
+ * 
+ * <pre>
+ * StructurePool pool = new StructurePool();
+ * for (List&lt;Map&lt;String, Object&gt;&gt; batch : batches) {
+ * 	List&lt;Map&lt;String, Object&gt;&gt; documents = chain.processBatch(batch, pool);
+ * 	// serialize documents into bulk request
+ * 	pool.release();
+ * }
+ * </pre>
+ * 
+ * All structures handed out by pool are cleared by {@link #release()}, so preprocessed documents (and any Maps or
+ * Lists obtained from them) must not be used after it! Instances are not thread safe, use one pool per thread.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class StructurePool {
+
+	/**
+	 * Default maximal number of free Maps and free Lists retained by pool.
+	 */
+	public static final int DEFAULT_MAX_RETAINED = 4096;
+
+	private static final ThreadLocal<StructurePool> CURRENT = new ThreadLocal<StructurePool>();
+
+	private final int maxRetained;
+
+	private final List<CompactMap<String, Object>> freeMaps = new ArrayList<CompactMap<String, Object>>();
+	private final List<ArrayList<Object>> freeLists = new ArrayList<ArrayList<Object>>();
+
+	private final List<CompactMap<String, Object>> usedMaps = new ArrayList<CompactMap<String, Object>>();
+	private final List<ArrayList<Object>> usedLists = new ArrayList<ArrayList<Object>>();
+
+	private long createdCount;
+	private long reusedCount;
+
+	/**
+	 * Create pool retaining {@link #DEFAULT_MAX_RETAINED} free structures.
+	 */
+	public StructurePool() {
+		this(DEFAULT_MAX_RETAINED);
+	}
+
+	/**
+	 * Create pool.
+	 *
+	 * @param maxRetained maximal number of free Maps and free Lists retained by pool after {@link #release()}, rest of
+	 *          them is left for garbage collector.
+	 * @throws IllegalArgumentException if maxRetained is negative
+	 */
+	public StructurePool(int maxRetained) throws IllegalArgumentException {
+		if (maxRetained < 0)
+			throw new IllegalArgumentException("maxRetained must be positive or 0");
+		this.maxRetained = maxRetained;
+	}
+
+	/**
+	 * @return pool bound to the current thread, <code>null</code> if there is none
+	 */
+	static StructurePool current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Bind pool to the current thread.
+	 *
+	 * @param pool to bind, <code>null</code> to unbind
+	 * @return pool bound to the current thread before call, to be bound back later
+	 */
+	static StructurePool bind(StructurePool pool) {
+		StructurePool ret = CURRENT.get();
+		if (pool != null) {
+			CURRENT.set(pool);
+		} else {
+			CURRENT.remove();
+		}
+		return ret;
+	}
+
+	/**
+	 * Get empty Map from pool.
+	 *
+	 * @return empty insertion ordered Map, valid until {@link #release()}
+	 */
+	public Map<String, Object> createMap() {
+		CompactMap<String, Object> ret;
+		if (freeMaps.isEmpty()) {
+			ret = new CompactMap<String, Object>();
+			createdCount++;
+		} else {
+			ret = freeMaps.remove(freeMaps.size() - 1);
+			reusedCount++;
+		}
+		usedMaps.add(ret);
+		return ret;
+	}
+
+	/**
+	 * Get empty List from pool.
+	 *
+	 * @return empty List, valid until {@link #release()}
+	 */
+	public List<Object> createList() {
+		ArrayList<Object> ret;
+		if (freeLists.isEmpty()) {
+			ret = new ArrayList<Object>();
+			createdCount++;
+		} else {
+			ret = freeLists.remove(freeLists.size() - 1);
+			reusedCount++;
+		}
+		usedLists.add(ret);
+		return ret;
+	}
+
+	/**
+	 * Clear all structures handed out by pool since last release and take them back for reuse. Call it once documents
+	 * preprocessed with this pool are not used anymore (eg. bulk request is serialized).
+	 */
+	public void release() {
+		for (CompactMap<String, Object> m : usedMaps) {
+			m.clear();
+			if (freeMaps.size() < maxRetained)
+				freeMaps.add(m);
+		}
+		usedMaps.clear();
+		for (ArrayList<Object> l : usedLists) {
+			l.clear();
+			if (freeLists.size() < maxRetained)
+				freeLists.add(l);
+		}
+		usedLists.clear();
+	}
+
+	/**
+	 * @return number of structures handed out by pool since last release
+	 */
+	public int getUsedCount() {
+		return usedMaps.size() + usedLists.size();
+	}
+
+	/**
+	 * @return number of free structures retained for reuse
+	 */
+	public int getFreeCount() {
+		return freeMaps.size() + freeLists.size();
+	}
+
+	/**
+	 * @return number of structures newly created by pool since it was created
+	 */
+	public long getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * @return number of structures reused by pool since it was created
+	 */
+	public long getReusedCount() {
+		return reusedCount;
+	}
+
+}
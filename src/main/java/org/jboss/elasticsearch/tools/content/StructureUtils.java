@@ -6,9 +6,10 @@ package org.jboss.elasticsearch.tools.content;
  * as indicated by the @authors tag. All rights reserved.
  */
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -119,7 +120,35 @@ public class StructureUtils {
   }
 
   /**
-   * Put value into Map of Maps structure. Dot notation supported for deeper level of nesting.
+   * Create Map for Map of Maps structure. {@link CompactMap} is used to keep footprint of small objects in documents
+   * low, all structures created by this library use it. Map is taken from {@link StructurePool} if some is bound to the
+   * current thread.
+   * 
+   * @return new empty insertion ordered Map
+   */
+  public static Map<String, Object> createMap() {
+    StructurePool pool = StructurePool.current();
+    if (pool != null)
+      return pool.createMap();
+    return new CompactMap<String, Object>();
+  }
+
+  /**
+   * Create List for Map of Maps structure. List is taken from {@link StructurePool} if some is bound to the current
+   * thread.
+   * 
+   * @return new empty List
+   */
+  public static List<Object> createList() {
+    StructurePool pool = StructurePool.current();
+    if (pool != null)
+      return pool.createList();
+    return new ArrayList<Object>();
+  }
+
+  /**
+   * Put value into Map of Maps structure. Dot notation supported for deeper level of nesting. Use
+   * {@link FieldPath#put(Map, Object)} if you put values into same field repeatedly, it parses field only once.
    * 
    * @param map Map to put value into
    * @param field to put value into. Dot notation can be used.
@@ -144,7 +173,7 @@ public class StructureUtils {
         } else {
           Object o = levelData.get(tok);
           if (o == null) {
-            Map<String, Object> lv = new LinkedHashMap<String, Object>();
+            Map<String, Object> lv = createMap();
             levelData.put(tok, lv);
             levelData = lv;
           } else if (o instanceof Map) {
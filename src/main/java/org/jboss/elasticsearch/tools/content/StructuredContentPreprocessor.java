@@ -13,13 +13,21 @@ import org.elasticsearch.common.settings.SettingsException;
 /**
  * Interface for components used to preprocess structured data before other action, eg. indexed document is created from
  * them. Instances may be created from configuration using {@link StructuredContentPreprocessorFactory}.
+ * <p>
+ * Thread safety contract: {@link #init(String, Client, Map)} is called only once, before instance is used to
+ * preprocess data. After it instance is immutable and {@link #preprocessData(Map)} may be called concurrently from
+ * more threads, eg. from {@link ParallelPreprocessorChainExecutor}. So implementations must not change instance
+ * fields in {@link #preprocessData(Map)}, all state necessary for one call must be kept in local variables or in call
+ * context object created for that call. Instance created and initialized in one thread must be passed to other threads
+ * in a safe way, eg. over {@link java.util.concurrent.Executor} or other concurrent structure.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
+@ThreadSafe
 public interface StructuredContentPreprocessor {
 
   /**
-   * Initialize preprocessor after created.
+   * Initialize preprocessor after created. Called only once, before preprocessor is used.
    * 
    * @param name name of preprocessor
    * @param client ElasticSearch client which can be used in this preprocessor to access data in ES cluster.
@@ -36,7 +44,7 @@ public interface StructuredContentPreprocessor {
   String getName();
 
   /**
-   * Preprocess data.
+   * Preprocess data. May be called concurrently from more threads, so must not change state of this instance.
    * 
    * @param data to be preprocessed - may be changed during call!
    * @return preprocessed data - typically same object ad <code>data</code> parameter, but with changed structure.
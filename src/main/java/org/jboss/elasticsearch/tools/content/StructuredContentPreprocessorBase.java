@@ -5,7 +5,9 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.client.Client;
@@ -14,11 +16,12 @@ import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.SettingsException;
 
 /**
- * Abstract base class for {@link StructuredContentPreprocessor} implementations.
+ * Abstract base class for {@link StructuredContentPreprocessor} implementations. Implements
+ * {@link BatchStructuredContentPreprocessor} by calling {@link #preprocessData(Map)} for each document in batch.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
-public abstract class StructuredContentPreprocessorBase implements StructuredContentPreprocessor {
+public abstract class StructuredContentPreprocessorBase implements BatchStructuredContentPreprocessor {
 
 	protected ESLogger logger = null;
 
@@ -44,6 +47,15 @@ public abstract class StructuredContentPreprocessorBase implements StructuredCon
 	 */
 	public abstract void init(Map<String, Object> settings) throws SettingsException;
 
+	/**
+	 * Compile configuration fields into paths and templates used by {@link #preprocessData(Map)}, so they are parsed only
+	 * once and never changed while data are preprocessed. Implementations call it at the end of {@link #init(Map)}.
+	 * Subclass or test which changes configuration fields directly must call it again before preprocessor is used.
+	 * Default implementation does nothing.
+	 */
+	protected void compileConfiguration() {
+	}
+
 	/**
 	 * Validate configuration string is not null or empty. Useful for your {@link #init(Map)} implementation.
 	 * 
@@ -96,6 +108,21 @@ public abstract class StructuredContentPreprocessorBase implements StructuredCon
 		}
 	}
 
+	/**
+	 * Preprocess batch of documents by calling {@link #preprocessData(Map)} for each of them. Override it if batch can be
+	 * preprocessed more effectively.
+	 */
+	@Override
+	public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> batch) {
+		if (batch == null)
+			return null;
+		List<Map<String, Object>> ret = new ArrayList<Map<String, Object>>(batch.size());
+		for (Map<String, Object> data : batch) {
+			ret.add(preprocessData(data));
+		}
+		return ret;
+	}
+
 	@Override
 	public String getName() {
 		return name;
@@ -94,4 +94,31 @@ public class StructuredContentPreprocessorFactory {
     return ret;
   }
 
+  /**
+   * Create chain of preprocessors from array of configurations described in this class's javadoc.
+   *
+   * @param preprocessorConfig List of configuration structure in Map of Maps
+   * @param client ES client to be passed to the preprocessors.
+   * @return chain with created preprocessors
+   * @throws IllegalArgumentException if something is wrong and preprocessor can't be instantiated.
+   */
+  public static PreprocessorChain createPreprocessorChain(List<Map<String, Object>> preprocessorConfig, Client client)
+      throws IllegalArgumentException {
+    return new PreprocessorChain(createPreprocessors(preprocessorConfig, client));
+  }
+
+  /**
+   * Create chain of preprocessors from array of configurations described in this class's javadoc, with metrics.
+   *
+   * @param preprocessorConfig List of configuration structure in Map of Maps
+   * @param client ES client to be passed to the preprocessors.
+   * @param metrics to report invocations of preprocessors to, see {@link PreprocessorChain}
+   * @return chain with created preprocessors
+   * @throws IllegalArgumentException if something is wrong and preprocessor can't be instantiated.
+   */
+  public static PreprocessorChain createPreprocessorChain(List<Map<String, Object>> preprocessorConfig, Client client,
+      PreprocessorMetrics metrics) throws IllegalArgumentException {
+    return new PreprocessorChain(createPreprocessors(preprocessorConfig, client), metrics);
+  }
+
 }
@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elasticsearch.ElasticSearchInterruptedException;
+
+/**
+ * Executor which preprocesses batch of documents by {@link PreprocessorChain} running each document in its own thread,
+ * with bounded number of documents in flight. It is intended for I/O bound chains (eg. with
+ * {@link ESLookupValuePreprocessor} blocked in ElasticSearch requests), where blocking calls of more documents overlap
+ * and throughput is not capped by number of CPUs.
+ * <p>
+ * Virtual threads are used if running on Java 21+ (they are looked up by reflection, so library still runs on older
+ * Java), bounded pool of daemon platform threads is used otherwise. Number of documents in flight is limited by
+ * <code>maxInFlight</code> over all concurrent {@link #processBatch(List)} calls in both cases. Order of documents in
+ * result is same as in input batch. Failure of one document doesn't abort batch, but is collected in
+ * {@link ChainBatchResult}.
+ * <p>
+ * Preprocessors in chain are shared by all threads, so they must be thread safe.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ * @see ParallelPreprocessorChainExecutor
+ */
+@ThreadSafe
+public class ThreadPerDocumentChainExecutor {
+
+	private static final AtomicInteger EXECUTOR_COUNTER = new AtomicInteger();
+
+	protected final PreprocessorChain chain;
+	protected final int maxInFlight;
+	protected final ExecutorService executor;
+	protected final Semaphore inFlight;
+	private final boolean virtualThreads;
+
+	/**
+	 * Create executor which uses virtual threads if available.
+	 *
+	 * @param chain used to preprocess documents
+	 * @param maxInFlight maximal number of documents preprocessed at once, must be greater than 0.
+	 * @throws IllegalArgumentException if maxInFlight is not greater than 0
+	 */
+	public ThreadPerDocumentChainExecutor(PreprocessorChain chain, int maxInFlight) throws IllegalArgumentException {
+		this(chain, maxInFlight, true);
+	}
+
+	/**
+	 * Create executor. Call {@link #shutdown()} when executor is not necessary anymore.
+	 *
+	 * @param chain used to preprocess documents
+	 * @param maxInFlight maximal number of documents preprocessed at once, must be greater than 0.
+	 * @param useVirtualThreads true to use virtual threads if available, false to always use platform threads.
+	 * @throws IllegalArgumentException if maxInFlight is not greater than 0
+	 */
+	public ThreadPerDocumentChainExecutor(PreprocessorChain chain, int maxInFlight, boolean useVirtualThreads)
+			throws IllegalArgumentException {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be greater than 0");
+		this.chain = chain;
+		this.maxInFlight = maxInFlight;
+		this.inFlight = new Semaphore(maxInFlight);
+		ExecutorService e = useVirtualThreads ? createVirtualThreadExecutor() : null;
+		this.virtualThreads = e != null;
+		this.executor = e != null ? e : createPlatformThreadExecutor(maxInFlight);
+	}
+
+	/**
+	 * Create executor starting new virtual thread for each task.
+	 *
+	 * @return executor or <code>null</code> if virtual threads are not supported by running Java
+	 */
+	protected static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static ExecutorService createPlatformThreadExecutor(int threads) {
+		final String namePrefix = "ThreadPerDocumentChainExecutor-" + EXECUTOR_COUNTER.incrementAndGet() + "-";
+		ThreadPoolExecutor ret = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger counter = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, namePrefix + counter.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		ret.allowCoreThreadTimeOut(true);
+		return ret;
+	}
+
+	/**
+	 * Check if virtual threads are supported by running Java.
+	 *
+	 * @return true if virtual threads are supported
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		ExecutorService e = createVirtualThreadExecutor();
+		if (e == null)
+			return false;
+		e.shutdown();
+		return true;
+	}
+
+	/**
+	 * Preprocess batch of documents, each in its own thread. Blocks until all documents are processed.
+	 *
+	 * @param batch of documents to be preprocessed - documents may be changed during call!
+	 * @return result with preprocessed documents in same order as in <code>batch</code> and failures.
+	 * @throws ElasticSearchInterruptedException if calling thread is interrupted while waiting for documents
+	 */
+	public ChainBatchResult processBatch(List<Map<String, Object>> batch) throws ElasticSearchInterruptedException {
+		final Object[] documents = batch != null ? batch.toArray() : new Object[0];
+		final RuntimeException[] failures = new RuntimeException[documents.length];
+		final CountDownLatch done = new CountDownLatch(documents.length);
+		try {
+			for (int i = 0; i < documents.length; i++) {
+				inFlight.acquire();
+				final int index = i;
+				try {
+					executor.execute(new Runnable() {
+						@SuppressWarnings("unchecked")
+						@Override
+						public void run() {
+							try {
+								documents[index] = chain.process((Map<String, Object>) documents[index]);
+							} catch (RuntimeException e) {
+								failures[index] = e;
+							} finally {
+								inFlight.release();
+								done.countDown();
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					inFlight.release();
+					throw e;
+				}
+			}
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ElasticSearchInterruptedException("Interrupted while waiting for documents preprocessing", e);
+		}
+		return ChainBatchResult.create(documents, failures);
+	}
+
+	/**
+	 * Shut down threads used by this executor.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	public PreprocessorChain getChain() {
+		return chain;
+	}
+
+	/**
+	 * @return maximal number of documents preprocessed at once
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @return true if virtual threads are used, false if platform threads are used
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+}
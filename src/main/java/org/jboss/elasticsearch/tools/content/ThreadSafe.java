@@ -0,0 +1,27 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks class whose instances may be safely shared by more threads without external synchronization. For
+ * {@link StructuredContentPreprocessor} implementations it means instance is not changed after
+ * {@link StructuredContentPreprocessor#init(String, org.elasticsearch.client.Client, java.util.Map)} call, see contract
+ * described in interface javadoc.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface ThreadSafe {
+
+}
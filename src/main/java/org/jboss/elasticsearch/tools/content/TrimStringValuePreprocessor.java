@@ -6,6 +6,7 @@
 package org.jboss.elasticsearch.tools.content;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -44,7 +45,9 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class TrimStringValuePreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class TrimStringValuePreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor, StreamableStructuredContentPreprocessor {
 
 	protected static final String CFG_SOURCE_FIELD = "source_field";
 	protected static final String CFG_TARGET_FIELD = "target_field";
@@ -53,6 +56,9 @@ public class TrimStringValuePreprocessor extends StructuredContentPreprocessorBa
 
 	protected String fieldSource;
 	protected String fieldTarget;
+	protected FieldPath fieldSourcePath;
+	protected FieldPath fieldTargetPath;
+	protected List<FieldPath> sourceBasesPaths;
 	protected int maxSize;
 	protected List<String> sourceBases;
 
@@ -68,6 +74,14 @@ public class TrimStringValuePreprocessor extends StructuredContentPreprocessorBa
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
 		maxSize = readMandatoryIntegerConfigValue(settings, CFG_MAX_SIZE);
 		sourceBases = (List<String>) settings.get(CFG_source_bases);
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldSourcePath = FieldPath.create(fieldSource);
+		fieldTargetPath = FieldPath.create(fieldTarget);
+		sourceBasesPaths = FieldPath.create(sourceBases);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -76,11 +90,11 @@ public class TrimStringValuePreprocessor extends StructuredContentPreprocessorBa
 		if (data == null)
 			return null;
 
-		if (sourceBases == null) {
+		if (sourceBasesPaths == null) {
 			processOneSourceValue(data);
 		} else {
-			for (String base : sourceBases) {
-				Object obj = XContentMapValues.extractValue(base, data);
+			for (FieldPath base : sourceBasesPaths) {
+				Object obj = base.get(data);
 				if (obj != null) {
 					if (obj instanceof Map) {
 						processOneSourceValue((Map<String, Object>) obj);
@@ -103,29 +117,58 @@ public class TrimStringValuePreprocessor extends StructuredContentPreprocessorBa
 	}
 
 	private void processOneSourceValue(Map<String, Object> data) {
-		Object v = null;
-		if (fieldSource.contains(".")) {
-			v = XContentMapValues.extractValue(fieldSource, data);
-		} else {
-			v = data.get(fieldSource);
+		String value = trimValue(fieldSourcePath.get(data));
+		if (value != null) {
+			putTargetValue(data, value);
 		}
+	}
 
-		if (v != null) {
-			if (!(v instanceof String)) {
-				logger.warn("value for field '" + fieldSource + "' is not String, so can't be processed by '" + name
-						+ "' preprocessor");
-			} else {
-				String origValue = v.toString().trim();
-				if (origValue.length() > maxSize) {
-					origValue = origValue.substring(0, maxSize);
-				}
-				putTargetValue(data, origValue);
-			}
+	/**
+	 * Trim one value of source field. Used for both Map of Maps structure and streaming.
+	 *
+	 * @param v value of source field, can be <code>null</code>
+	 * @return trimmed value, <code>null</code> if value is <code>null</code> or is not String (warning is logged then)
+	 */
+	protected String trimValue(Object v) {
+		if (v == null)
+			return null;
+		if (!(v instanceof String)) {
+			logger.warn("value for field '" + fieldSource + "' is not String, so can't be processed by '" + name
+					+ "' preprocessor");
+			return null;
 		}
+		String ret = v.toString().trim();
+		if (ret.length() > maxSize) {
+			ret = ret.substring(0, maxSize);
+		}
+		return ret;
 	}
 
 	protected void putTargetValue(Map<String, Object> data, String value) {
-		StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, value);
+		fieldTargetPath.put(data, value);
+	}
+
+	@Override
+	public FieldAccess getFieldAccess() {
+		return FieldAccess.create(sourceBases, Collections.singletonList(fieldSource),
+				Collections.singletonList(fieldTarget));
+	}
+
+	/**
+	 * Streamed only if source and target field is same.
+	 */
+	@Override
+	public List<StreamingTransform> getStreamingTransforms() {
+		if (!fieldSource.equals(fieldTarget))
+			return null;
+		StreamingTransform ret = new StreamingTransform(sourceBases, fieldSource, false, false) {
+			@Override
+			public Object transform(Object value) {
+				String v = trimValue(value);
+				return v != null ? v : value;
+			}
+		};
+		return Collections.singletonList(ret);
 	}
 
 	public String getFieldSource() {
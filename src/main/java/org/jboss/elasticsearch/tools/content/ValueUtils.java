@@ -111,12 +111,14 @@ public class ValueUtils {
    * <code>{@value #PATTERN_KEY_ORIGINAL_VALUE}</code> is used to be replaced by original value passed to this method as
    * separate parameter. Example of value with replacement keys:
    * <code>My name is {user.name} and surname is {user.surname}.</code>. If value is not found in data structure then
-   * empty string is used. If value in data is not String then <code>toString()</code> is used to convert it.
+   * empty string is used. If value in data is not String then <code>toString()</code> is used to convert it. Use
+   * {@link CompiledTemplate} if you process same pattern repeatedly, it is parsed only once then.
    * 
    * @param patternValue to process
    * @param data to get replacement values from
    * @param originalValue used in pattern if {@value #PATTERN_KEY_ORIGINAL_VALUE} is used as key
    * @return value with replaced keys
+   * @see CompiledTemplate
    */
   public static String processStringValuePatternReplacement(String patternValue, Map<String, Object> data,
       Object originalValue) {
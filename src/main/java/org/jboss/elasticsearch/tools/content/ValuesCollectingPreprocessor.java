@@ -5,8 +5,8 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -41,13 +41,17 @@ import org.elasticsearch.common.xcontent.support.XContentMapValues;
  * @author Vlastimil Elias (velias at redhat dot com)
  * @see StructuredContentPreprocessorFactory
  */
-public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorBase {
+@ThreadSafe
+public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorBase implements
+		ProjectableStructuredContentPreprocessor {
 
 	protected static final String CFG_SOURCE_FIELDS = "source_fields";
 	protected static final String CFG_TARGET_FIELD = "target_field";
 
 	protected String fieldTarget;
 	protected List<String> fieldsSource;
+	protected FieldPath fieldTargetPath;
+	protected List<FieldPath> fieldsSourcePaths;
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -59,6 +63,13 @@ public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorB
 		validateConfigurationObjectNotEmpty(fieldsSource, CFG_SOURCE_FIELDS);
 		fieldTarget = XContentMapValues.nodeStringValue(settings.get(CFG_TARGET_FIELD), null);
 		validateConfigurationStringNotEmpty(fieldTarget, CFG_TARGET_FIELD);
+		compileConfiguration();
+	}
+
+	@Override
+	protected void compileConfiguration() {
+		fieldTargetPath = FieldPath.create(fieldTarget);
+		fieldsSourcePaths = FieldPath.create(fieldsSource);
 	}
 
 	@Override
@@ -67,16 +78,16 @@ public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorB
 			return null;
 		Set<Object> vals = new HashSet<Object>();
 
-		for (String sourceField : fieldsSource) {
-			if (ValueUtils.isEmpty(sourceField))
-				continue;
-			Object v = XContentMapValues.extractValue(sourceField, data);
+		for (FieldPath sourceField : fieldsSourcePaths) {
+			Object v = sourceField.get(data);
 			collectValue(vals, v);
 		}
 		if (vals != null && !vals.isEmpty()) {
-			StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, new ArrayList<Object>(vals));
+			List<Object> l = StructureUtils.createList();
+			l.addAll(vals);
+			fieldTargetPath.put(data, l);
 		} else {
-			StructureUtils.putValueIntoMapOfMaps(data, fieldTarget, null);
+			fieldTargetPath.put(data, null);
 		}
 		return data;
 	}
@@ -93,6 +104,11 @@ public class ValuesCollectingPreprocessor extends StructuredContentPreprocessorB
 		}
 	}
 
+	@Override
+	public FieldAccess getFieldAccess() {
+		return new FieldAccess(fieldsSource, Collections.singletonList(fieldTarget));
+	}
+
 	public String getFieldTarget() {
 		return fieldTarget;
 	}
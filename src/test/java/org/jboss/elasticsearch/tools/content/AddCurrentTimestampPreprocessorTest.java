@@ -5,7 +5,9 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
@@ -82,6 +84,7 @@ public class AddCurrentTimestampPreprocessorTest {
   public void preprocessData() {
     AddCurrentTimestampPreprocessor tested = new AddCurrentTimestampPreprocessor();
     tested.field = "my_field";
+    tested.compileConfiguration();
 
     // case - not NPE
     tested.preprocessData(null);
@@ -105,4 +108,48 @@ public class AddCurrentTimestampPreprocessorTest {
       Assert.assertTrue(now <= val && val <= now + 100);
     }
   }
+
+  @Test
+  public void preprocessBatch() {
+    AddCurrentTimestampPreprocessor tested = new AddCurrentTimestampPreprocessor();
+    Map<String, Object> settings = new HashMap<String, Object>();
+    settings.put(AddCurrentTimestampPreprocessor.CFG_FIELD, "my_field");
+    tested.init("Test mapper", null, settings);
+
+    Assert.assertNull(tested.preprocessBatch(null));
+    Assert.assertTrue(tested.preprocessBatch(new ArrayList<Map<String, Object>>()).isEmpty());
+
+    // case - same timestamp is used for whole batch, null document is kept
+    List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+    for (int i = 0; i < 5; i++) {
+      batch.add(new HashMap<String, Object>());
+    }
+    batch.add(null);
+    long before = System.currentTimeMillis();
+    List<Map<String, Object>> ret = tested.preprocessBatch(batch);
+    long after = System.currentTimeMillis();
+    Assert.assertEquals(6, ret.size());
+    Assert.assertNull(ret.get(5));
+    Object timestamp = ret.get(0).get(tested.field);
+    long val = ISODateTimeFormat.dateTimeParser().parseMillis((String) timestamp);
+    Assert.assertTrue(before <= val && val <= after);
+    for (int i = 0; i < 5; i++) {
+      Assert.assertTrue(batch.get(i) == ret.get(i));
+      Assert.assertEquals(timestamp, ret.get(i).get(tested.field));
+    }
+
+    // case - batch is processed by overridden preprocessData
+    final List<Map<String, Object>> processed = new ArrayList<Map<String, Object>>();
+    tested = new AddCurrentTimestampPreprocessor() {
+      @Override
+      public Map<String, Object> preprocessData(Map<String, Object> data) {
+        processed.add(data);
+        return super.preprocessData(data);
+      }
+    };
+    tested.init("Test mapper", null, settings);
+    ret = tested.preprocessBatch(batch);
+    Assert.assertEquals(batch, processed);
+    Assert.assertEquals(6, ret.size());
+  }
 }
@@ -70,6 +70,7 @@ public class AddMultipleValuesPreprocessorTest {
 		settings.put("field_replace.complex", "I'm {user.name} and like to read '{title}'");
 		settings.put("field_replace.complex2", "{title} - {user.name}");
 		tested.fields = settings;
+		tested.compileConfiguration();
 
 		// case - not NPE
 		tested.preprocessData(null);
@@ -124,6 +124,7 @@ public class AddValuePreprocessorTest {
 
     AddValuePreprocessor tested = new AddValuePreprocessor();
     tested.field = "my_field";
+    tested.compileConfiguration();
 
     // case - not NPE
     tested.preprocessData(null);
@@ -147,6 +148,7 @@ public class AddValuePreprocessorTest {
     {
       Map<String, Object> values = new HashMap<String, Object>();
       tested.value = "Value";
+      tested.compileConfiguration();
       tested.preprocessData(values);
       Assert.assertEquals("Value", values.get(tested.field));
     }
@@ -156,6 +158,7 @@ public class AddValuePreprocessorTest {
       Map<String, Object> values = new HashMap<String, Object>();
       values.put(tested.field, "value old");
       tested.value = "Value";
+      tested.compileConfiguration();
       tested.preprocessData(values);
       Assert.assertEquals("Value", values.get(tested.field));
     }
@@ -164,6 +167,7 @@ public class AddValuePreprocessorTest {
     {
       Map<String, Object> values = new HashMap<String, Object>();
       tested.value = new Integer(10);
+      tested.compileConfiguration();
       tested.preprocessData(values);
       Assert.assertEquals(new Integer(10), values.get(tested.field));
     }
@@ -173,6 +177,7 @@ public class AddValuePreprocessorTest {
       Map<String, Object> values = new HashMap<String, Object>();
       values.put(tested.field, "value old");
       tested.value = new Integer(10);
+      tested.compileConfiguration();
       tested.preprocessData(values);
       Assert.assertEquals(new Integer(10), values.get(tested.field));
     }
@@ -182,8 +187,26 @@ public class AddValuePreprocessorTest {
     {
       Map<String, Object> values = new HashMap<String, Object>();
       tested.value = "Value";
+      tested.compileConfiguration();
       tested.preprocessData(values);
       Assert.assertEquals("Value", XContentMapValues.extractValue(tested.field, values));
     }
+
+    // case - pattern is evaluated for each document and configured value is not changed
+    tested.field = "my_field";
+    tested.value = "Name {name}";
+    tested.compileConfiguration();
+    {
+      Map<String, Object> values = new HashMap<String, Object>();
+      values.put("name", "Joe");
+      tested.preprocessData(values);
+      Assert.assertEquals("Name Joe", values.get(tested.field));
+
+      values = new HashMap<String, Object>();
+      values.put("name", "Dan");
+      tested.preprocessData(values);
+      Assert.assertEquals("Name Dan", values.get(tested.field));
+      Assert.assertEquals("Name {name}", tested.getValue());
+    }
   }
 }
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link AsyncPreprocessorAdapter}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class AsyncPreprocessorAdapterTest {
+
+	@Test
+	public void adapt() {
+		try {
+			AsyncPreprocessorAdapter.adapt(null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		StructuredContentPreprocessor preproc = PreprocessorChainTest.createAddValuePreprocessor("p1", "field1", "value1");
+		AsyncStructuredContentPreprocessor tested = AsyncPreprocessorAdapter.adapt(preproc);
+		Assert.assertTrue(preproc == ((AsyncPreprocessorAdapter) tested).getPreprocessor());
+		Assert.assertEquals("p1", tested.getName());
+
+		// case - async preprocessor is not adapted again
+		Assert.assertTrue(tested == AsyncPreprocessorAdapter.adapt(tested));
+	}
+
+	@Test
+	public void preprocessDataAsync() throws Exception {
+		AsyncStructuredContentPreprocessor tested = AsyncPreprocessorAdapter.adapt(PreprocessorChainTest
+				.createRequiredValidatorPreprocessor("p1", "required"));
+
+		// case - listener is notified before method returns
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("required", "yes");
+		PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+		tested.preprocessDataAsync(data, future);
+		Assert.assertTrue(future.isDone());
+		Assert.assertTrue(data == future.actionGet());
+		Assert.assertTrue(data == tested.preprocessData(data));
+
+		// case - exception is passed to listener
+		future = PlainActionFuture.newFuture();
+		tested.preprocessDataAsync(new HashMap<String, Object>(), future);
+		Assert.assertTrue(future.isDone());
+		try {
+			future.get();
+			Assert.fail("ExecutionException must be thrown");
+		} catch (ExecutionException e) {
+			Assert.assertEquals(InvalidDataException.class, e.getCause().getClass());
+		}
+	}
+
+}
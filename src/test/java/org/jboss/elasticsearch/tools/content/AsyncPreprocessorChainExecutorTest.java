@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link AsyncPreprocessorChainExecutor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class AsyncPreprocessorChainExecutorTest {
+
+	@Test
+	public void constructor() {
+		PreprocessorChain chain = new PreprocessorChain(null);
+		try {
+			new AsyncPreprocessorChainExecutor(chain, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		AsyncPreprocessorChainExecutor tested = new AsyncPreprocessorChainExecutor(chain, 3);
+		Assert.assertEquals(chain, tested.getChain());
+		Assert.assertEquals(3, tested.getMaxInFlight());
+	}
+
+	@Test
+	public void processBatch() {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(PreprocessorChainTest.createAddValuePreprocessor("p1", "field1", "value1"));
+		preprocs.add(PreprocessorChainTest.createThreadedAsyncPreprocessor("p2", "field2", "value{id}"));
+		preprocs.add(PreprocessorChainTest.createRequiredValidatorPreprocessor("p3", "required"));
+		AsyncPreprocessorChainExecutor tested = new AsyncPreprocessorChainExecutor(new PreprocessorChain(preprocs), 8);
+
+		// case - empty batches
+		Assert.assertTrue(tested.processBatch(null).getDocuments().isEmpty());
+		Assert.assertTrue(tested.processBatch(new ArrayList<Map<String, Object>>()).getDocuments().isEmpty());
+
+		// case - order is stable and failures are collected
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < 200; i++) {
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("id", i);
+			if (i % 7 != 0)
+				data.put("required", "yes");
+			batch.add(data);
+		}
+		ChainBatchResult ret = tested.processBatch(batch);
+		Assert.assertEquals(200, ret.getDocuments().size());
+		Assert.assertEquals(29, ret.getFailures().size());
+		for (int i = 0; i < 200; i++) {
+			if (i % 7 == 0) {
+				Assert.assertTrue(ret.isFailed(i));
+				Assert.assertNull(ret.getDocuments().get(i));
+				Assert.assertEquals(InvalidDataException.class, ret.getFailures().get(i).getClass());
+			} else {
+				Assert.assertFalse(ret.isFailed(i));
+				Map<String, Object> doc = ret.getDocuments().get(i);
+				Assert.assertTrue(batch.get(i) == doc);
+				Assert.assertEquals("value1", doc.get("field1"));
+				Assert.assertEquals("value" + i, doc.get("field2"));
+			}
+		}
+		// all permits are returned
+		Assert.assertEquals(8, tested.inFlight.availablePermits());
+
+		// case - exception thrown synchronously by async preprocessor fails documents, batch doesn't hang
+		preprocs.set(1, PreprocessorChainTest.createFailingAsyncPreprocessor("p2"));
+		tested = new AsyncPreprocessorChainExecutor(new PreprocessorChain(preprocs), 2);
+		ret = tested.processBatch(batch.subList(0, 10));
+		Assert.assertEquals(10, ret.getFailures().size());
+		Assert.assertEquals(IllegalStateException.class, ret.getFailures().get(5).getClass());
+		Assert.assertEquals(2, tested.inFlight.availablePermits());
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BloomFilter}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class BloomFilterTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new BloomFilter(0, 0.01);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new BloomFilter(10, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new BloomFilter(10, 1);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		BloomFilter tested = new BloomFilter(1000, 0.01);
+		Assert.assertEquals(9600, tested.getNumBits());
+		Assert.assertEquals(7, tested.getNumHashFunctions());
+	}
+
+	@Test
+	public void putAndMightContain() {
+		BloomFilter tested = new BloomFilter(1000, 0.01);
+
+		// case - empty filter contains nothing
+		Assert.assertFalse(tested.mightContain("ORG"));
+		Assert.assertFalse(tested.mightContain(""));
+
+		// case - no false negatives
+		for (int i = 0; i < 1000; i++) {
+			tested.put("key" + i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(tested.mightContain("key" + i));
+		}
+
+		// case - false positive rate is close to configured one
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (tested.mightContain("other" + i))
+				falsePositives++;
+		}
+		Assert.assertTrue("False positives: " + falsePositives, falsePositives < 300);
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CompactMap}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class CompactMapTest {
+
+	@Test
+	public void putGetRemove() {
+		CompactMap<String, Object> tested = new CompactMap<String, Object>();
+		Assert.assertTrue(tested.isEmpty());
+		Assert.assertNull(tested.get("a"));
+
+		Assert.assertNull(tested.put("a", "va"));
+		Assert.assertNull(tested.put("b", null));
+		Assert.assertNull(tested.put(null, "vnull"));
+		Assert.assertEquals(3, tested.size());
+		Assert.assertEquals("va", tested.get("a"));
+		Assert.assertNull(tested.get("b"));
+		Assert.assertTrue(tested.containsKey("b"));
+		Assert.assertEquals("vnull", tested.get(null));
+		Assert.assertTrue(tested.containsKey(null));
+		Assert.assertFalse(tested.containsKey("c"));
+		Assert.assertTrue(tested.containsValue("va"));
+
+		// case - replace value keeps order
+		Assert.assertEquals("va", tested.put("a", "va2"));
+		Assert.assertEquals("{a=va2, b=null, null=vnull}", tested.toString());
+
+		// case - remove
+		Assert.assertNull(tested.remove("c"));
+		Assert.assertNull(tested.remove("b"));
+		Assert.assertEquals("{a=va2, null=vnull}", tested.toString());
+		Assert.assertEquals("vnull", tested.remove(null));
+		Assert.assertEquals(1, tested.size());
+
+		// case - clear
+		tested.clear();
+		Assert.assertTrue(tested.isEmpty());
+		tested.put("c", "vc");
+		Assert.assertEquals("{c=vc}", tested.toString());
+		Assert.assertFalse(tested.isPromoted());
+	}
+
+	@Test
+	public void promotion() {
+		CompactMap<String, Object> tested = new CompactMap<String, Object>(1);
+		for (int i = 0; i < CompactMap.PROMOTION_THRESHOLD; i++) {
+			tested.put("k" + i, i);
+		}
+		Assert.assertFalse(tested.isPromoted());
+		tested.put("k0", "replaced");
+		Assert.assertFalse(tested.isPromoted());
+
+		tested.put("last", "vlast");
+		Assert.assertTrue(tested.isPromoted());
+		Assert.assertEquals(CompactMap.PROMOTION_THRESHOLD + 1, tested.size());
+		Assert.assertEquals("replaced", tested.get("k0"));
+		Assert.assertEquals(3, tested.get("k3"));
+		Assert.assertEquals("{k0=replaced, k1=1, k2=2, k3=3, k4=4, k5=5, k6=6, k7=7, last=vlast}", tested.toString());
+		Assert.assertEquals(3, tested.remove("k3"));
+		Assert.assertFalse(tested.containsKey("k3"));
+
+		// case - big expected size creates promoted map directly
+		Assert.assertTrue(new CompactMap<String, Object>(CompactMap.PROMOTION_THRESHOLD + 1).isPromoted());
+
+		// case - copy constructor
+		Map<String, Object> source = new HashMap<String, Object>();
+		source.put("a", "va");
+		source.put("b", "vb");
+		CompactMap<String, Object> copy = new CompactMap<String, Object>(source);
+		Assert.assertFalse(copy.isPromoted());
+		Assert.assertEquals(source, copy);
+	}
+
+	@Test
+	public void equalsAndHashCode() {
+		Map<String, Object> expected = new HashMap<String, Object>();
+		expected.put("a", "va");
+		expected.put("b", null);
+		CompactMap<String, Object> tested = new CompactMap<String, Object>();
+		tested.put("b", null);
+		tested.put("a", "va");
+		Assert.assertEquals(expected, tested);
+		Assert.assertEquals(tested, expected);
+		Assert.assertEquals(expected.hashCode(), tested.hashCode());
+		Assert.assertEquals(expected.entrySet(), tested.entrySet());
+
+		tested.put("c", "vc");
+		Assert.assertFalse(expected.equals(tested));
+		Assert.assertFalse(tested.equals(expected));
+	}
+
+	@Test
+	public void entrySet() {
+		CompactMap<String, Object> tested = new CompactMap<String, Object>();
+		tested.put("a", "va");
+		tested.put("b", "vb");
+		tested.put("c", "vc");
+
+		// case - write through entry
+		for (Map.Entry<String, Object> e : tested.entrySet()) {
+			e.setValue(e.getValue() + "2");
+		}
+		Assert.assertEquals("{a=va2, b=vb2, c=vc2}", tested.toString());
+
+		// case - remove over iterator
+		Iterator<Map.Entry<String, Object>> it = tested.entrySet().iterator();
+		Assert.assertEquals("a", it.next().getKey());
+		try {
+			new CompactMap<String, Object>().entrySet().iterator().remove();
+			Assert.fail("IllegalStateException must be thrown");
+		} catch (IllegalStateException e) {
+			// OK
+		}
+		it.remove();
+		Assert.assertEquals("b", it.next().getKey());
+		Assert.assertEquals("c", it.next().getKey());
+		it.remove();
+		Assert.assertFalse(it.hasNext());
+		Assert.assertEquals("{b=vb2}", tested.toString());
+
+		// case - concurrent modification
+		it = tested.entrySet().iterator();
+		tested.put("d", "vd");
+		try {
+			it.next();
+			Assert.fail("ConcurrentModificationException must be thrown");
+		} catch (ConcurrentModificationException e) {
+			// OK
+		}
+
+		// case - key set and values views
+		Assert.assertEquals("[b, d]", tested.keySet().toString());
+		Assert.assertEquals("[vb2, vd]", tested.values().toString());
+		tested.keySet().remove("b");
+		Assert.assertEquals("{d=vd}", tested.toString());
+
+		// case - held entry is not shifted by removal of earlier key
+		tested.clear();
+		tested.put("a", "va");
+		tested.put("b", "vb");
+		it = tested.entrySet().iterator();
+		it.next();
+		Map.Entry<String, Object> entry = it.next();
+		tested.remove("a");
+		Assert.assertEquals("b", entry.getKey());
+		Assert.assertEquals("vb", entry.getValue());
+		Assert.assertEquals("vb", entry.setValue("vb2"));
+		Assert.assertEquals("{b=vb2}", tested.toString());
+
+		// case - value of held entry is not written back for removed key
+		tested.remove("b");
+		Assert.assertEquals("vb2", entry.setValue("vb3"));
+		Assert.assertEquals("vb3", entry.getValue());
+		Assert.assertTrue(tested.isEmpty());
+
+		// case - held entry and iterator after promotion
+		tested.put("b", "vb");
+		tested.put("d", "vd");
+		it = tested.entrySet().iterator();
+		entry = it.next();
+		for (int i = 0; i < CompactMap.PROMOTION_THRESHOLD; i++) {
+			tested.put("k" + i, "v" + i);
+		}
+		Assert.assertTrue(tested.isPromoted());
+		Assert.assertEquals("b", entry.getKey());
+		Assert.assertEquals("vb", entry.getValue());
+		entry.setValue("vb2");
+		Assert.assertEquals("vb2", tested.get("b"));
+		Assert.assertTrue(it.hasNext());
+		try {
+			it.next();
+			Assert.fail("ConcurrentModificationException must be thrown");
+		} catch (ConcurrentModificationException e) {
+			// OK
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CompiledTemplate}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class CompiledTemplateTest {
+
+	@Test
+	public void compile_constant() {
+		CompiledTemplate tested = CompiledTemplate.compile(null);
+		Assert.assertTrue(tested.isConstant());
+		Assert.assertNull(tested.render(null, null));
+		Assert.assertNull(tested.getPattern());
+
+		tested = CompiledTemplate.compile("");
+		Assert.assertTrue(tested.isConstant());
+		Assert.assertEquals("", tested.render(null, null));
+
+		tested = CompiledTemplate.compile("no keys");
+		Assert.assertTrue(tested.isConstant());
+		Assert.assertTrue(tested.getKeys().isEmpty());
+		Assert.assertEquals("no keys", tested.getPattern());
+		Assert.assertEquals("no keys", tested.render(null, null));
+		// case - same instance is returned for each render
+		Assert.assertTrue(tested.render(null, null) == tested.render(new HashMap<String, Object>(), "orig"));
+
+		// case - unclosed brace is literal
+		tested = CompiledTemplate.compile("unclosed {brace");
+		Assert.assertTrue(tested.isConstant());
+		Assert.assertEquals("unclosed {brace", tested.render(null, null));
+
+		// case - empty key is removed
+		tested = CompiledTemplate.compile("empty {} key");
+		Assert.assertTrue(tested.isConstant());
+		Assert.assertEquals("empty  key", tested.render(null, null));
+	}
+
+	@Test
+	public void compile_keys() {
+		CompiledTemplate tested = CompiledTemplate.compile("{a} and {b.c}{__original} {d");
+		Assert.assertFalse(tested.isConstant());
+		Assert.assertEquals(3, tested.getKeys().size());
+		Assert.assertEquals("a", tested.getKeys().get(0));
+		Assert.assertEquals("b.c", tested.getKeys().get(1));
+		Assert.assertEquals(ValueUtils.PATTERN_KEY_ORIGINAL_VALUE, tested.getKeys().get(2));
+		Assert.assertEquals("{a} and {b.c}{__original} {d", tested.toString());
+	}
+
+	@Test
+	public void render() {
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("simple", "value");
+		data.put("number", new Integer(10));
+		data.put("dotted.key", "dotted");
+		Map<String, Object> level1 = new HashMap<String, Object>();
+		data.put("level1", level1);
+		level1.put("level2", "nested");
+		List<Object> list = new ArrayList<Object>();
+		list.add("l1");
+		list.add("l2");
+		data.put("list", list);
+
+		// case - null data and original value
+		Assert.assertEquals("a  b ", CompiledTemplate.compile("a {simple} b {__original}").render(null, null));
+
+		// case - all key types
+		String[] patterns = new String[] { "{simple}", "My {simple} is {number}.", "{level1.level2}", "{dotted.key}",
+				"{unknown} {level1.unknown}", "{__original}-{simple}", "{list}", "{ {simple}}", "x{simple}{simple}y",
+				"{simple", "}{simple}{", "{ }", "{.simple}", "{.}" };
+		for (String pattern : patterns) {
+			Assert.assertEquals("Pattern " + pattern, renderReference(pattern, data, "orig"),
+					CompiledTemplate.compile(pattern).render(data, "orig"));
+		}
+
+		Assert.assertEquals("My value is 10.", CompiledTemplate.compile("My {simple} is {number}.").render(data, null));
+		Assert.assertEquals("nested", CompiledTemplate.compile("{level1.level2}").render(data, null));
+		Assert.assertEquals("dotted", CompiledTemplate.compile("{dotted.key}").render(data, null));
+		Assert.assertEquals("orig-value", CompiledTemplate.compile("{__original}-{simple}").render(data, "orig"));
+		Assert.assertEquals("[l1, l2]", CompiledTemplate.compile("{list}").render(data, null));
+
+		// case - template is reusable for more documents
+		CompiledTemplate tested = CompiledTemplate.compile("v{simple}");
+		Map<String, Object> data2 = new HashMap<String, Object>();
+		data2.put("simple", "other");
+		Assert.assertEquals("vvalue", tested.render(data, null));
+		Assert.assertEquals("vother", tested.render(data2, null));
+	}
+
+	/**
+	 * Reference implementation of pattern replacement scanning pattern char by char, used to check that compiled
+	 * template has same semantic.
+	 */
+	private static String renderReference(String patternValue, Map<String, Object> data, Object originalValue) {
+		StringBuilder sb = new StringBuilder();
+		StringBuilder key = null;
+		for (int i = 0; i < patternValue.length(); i++) {
+			char ch = patternValue.charAt(i);
+			if (key == null) {
+				if (ch == '{') {
+					key = new StringBuilder();
+				} else {
+					sb.append(ch);
+				}
+			} else {
+				if (ch == '}') {
+					String k = key.toString();
+					Object v = null;
+					if (ValueUtils.PATTERN_KEY_ORIGINAL_VALUE.equals(k)) {
+						v = originalValue;
+					} else if (k.length() > 0) {
+						if (k.contains(".") && !ValueUtils.isEmpty(k)) {
+							v = XContentMapValues.extractValue(k, data);
+						} else {
+							v = data.get(k);
+						}
+					}
+					if (v != null)
+						sb.append(v.toString());
+					key = null;
+				} else {
+					key.append(ch);
+				}
+			}
+		}
+		if (key != null)
+			sb.append("{").append(key);
+		return sb.toString();
+	}
+
+}
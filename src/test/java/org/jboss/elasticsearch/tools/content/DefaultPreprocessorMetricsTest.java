@@ -0,0 +1,72 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link DefaultPreprocessorMetrics}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class DefaultPreprocessorMetricsTest {
+
+	@Test
+	public void constructor() {
+		Assert.assertTrue(new DefaultPreprocessorMetrics().isEnabled());
+		Assert.assertFalse(new DefaultPreprocessorMetrics().isModificationDetectionEnabled());
+		Assert.assertTrue(new DefaultPreprocessorMetrics(true).isModificationDetectionEnabled());
+		Assert.assertFalse(NoopPreprocessorMetrics.INSTANCE.isEnabled());
+	}
+
+	@Test
+	public void record() {
+		DefaultPreprocessorMetrics tested = new DefaultPreprocessorMetrics(true);
+		Assert.assertTrue(tested.snapshot().isEmpty());
+
+		tested.recordInvocation("p1", 1, 1000, 1);
+		tested.recordInvocation("p1", 1, 3000, 0);
+		tested.recordError("p1", 1, 2000);
+		// case - batch invocation
+		tested.recordInvocation("p2", 10, 100000, 4);
+		// case - empty batch is ignored
+		tested.recordInvocation("p2", 0, 100, 0);
+
+		Map<String, PreprocessorMetricsSnapshot> snapshot = tested.snapshot();
+		Assert.assertEquals(2, snapshot.size());
+
+		PreprocessorMetricsSnapshot p1 = snapshot.get("p1");
+		Assert.assertEquals("p1", p1.getPreprocessorName());
+		Assert.assertEquals(3, p1.getInvocationCount());
+		Assert.assertEquals(6000, p1.getTotalNanos());
+		Assert.assertEquals(1, p1.getErrorCount());
+		Assert.assertEquals(1, p1.getModifiedCount());
+		Assert.assertEquals(2000, p1.getMeanNanos());
+		Assert.assertEquals(LatencyHistogram.bucketHighestValue(LatencyHistogram.bucketIndex(2000)),
+				p1.getLatencyAtPercentile(50));
+		Assert.assertEquals(LatencyHistogram.bucketHighestValue(LatencyHistogram.bucketIndex(3000)), p1.getMaxNanos());
+
+		PreprocessorMetricsSnapshot p2 = snapshot.get("p2");
+		Assert.assertEquals(10, p2.getInvocationCount());
+		Assert.assertEquals(100000, p2.getTotalNanos());
+		Assert.assertEquals(0, p2.getErrorCount());
+		Assert.assertEquals(4, p2.getModifiedCount());
+		Assert.assertEquals(LatencyHistogram.bucketHighestValue(LatencyHistogram.bucketIndex(10000)), p2.getMaxNanos());
+
+		// case - snapshot is not changed by later records
+		tested.recordInvocation("p1", 1, 1000, 0);
+		Assert.assertEquals(3, p1.getInvocationCount());
+		Assert.assertEquals(4, tested.snapshot().get("p1").getInvocationCount());
+
+		tested.reset();
+		Assert.assertTrue(tested.snapshot().isEmpty());
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.Client;
+import org.jboss.elasticsearch.tools.content.testtools.ESRealClientTestBase;
+import org.jboss.elasticsearch.tools.content.testtools.TestUtils;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link ESLookupSource}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class ESLookupSourceTest extends ESRealClientTestBase {
+
+	private static final String[] RESULT_FIELDS = new String[] { "code", "name" };
+
+	@Test
+	public void constructor() {
+		Client client = Mockito.mock(Client.class);
+		try {
+			new ESLookupSource(null, "idx", "type", ESLookupValuePreprocessor.LOOKUP_MODE_MATCH, "field", RESULT_FIELDS);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ESLookupSource(client, null, "type", ESLookupValuePreprocessor.LOOKUP_MODE_MATCH, "field", RESULT_FIELDS);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ESLookupSource(client, "idx", "type", ESLookupValuePreprocessor.LOOKUP_MODE_MATCH, null, RESULT_FIELDS);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ESLookupSource(client, "idx", "type", ESLookupValuePreprocessor.LOOKUP_MODE_MATCH, "field", null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		ESLookupSource tested = new ESLookupSource(client, "idx", "type", ESLookupValuePreprocessor.LOOKUP_MODE_GET, null,
+				RESULT_FIELDS);
+		Assert.assertTrue(tested.isGetLookupMode());
+	}
+
+	@Test
+	public void lookup() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+			client.admin().indices().prepareCreate("projects").execute().actionGet();
+			client.admin().indices().preparePutMapping("projects").setType("project")
+					.setSource(TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-mapping.json")).execute()
+					.actionGet();
+			client.prepareIndex("projects", "project").setId("data1")
+					.setSource(TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData_data1.json")).execute()
+					.actionGet();
+			client.prepareIndex("projects", "project").setId("data2")
+					.setSource(TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData_data2.json")).execute()
+					.actionGet();
+			client.admin().indices().prepareRefresh("projects").execute().actionGet();
+
+			// case - search
+			ESLookupSource tested = new ESLookupSource(client, "projects", "project",
+					ESLookupValuePreprocessor.LOOKUP_MODE_TERM, "jbossorg_jira_project", RESULT_FIELDS);
+			Assert.assertEquals("jbossorg", tested.lookup("ORG").get("code"));
+			Assert.assertTrue(tested.lookup("AAA").isEmpty());
+			Map<Object, ElasticSearchException> failures = new HashMap<Object, ElasticSearchException>();
+			Map<Object, Map<String, Object>> ret = tested.lookup(Arrays.asList(new Object[] { "ORGA", "ISPN", "AAA" }),
+					failures);
+			Assert.assertEquals(2, ret.size());
+			Assert.assertEquals("jboss.org", ret.get("ORGA").get("name"));
+			Assert.assertEquals("infinispan", ret.get("ISPN").get("code"));
+			Assert.assertTrue(failures.isEmpty());
+			Assert.assertFalse(tested.isInMemory());
+
+			// case - failed item of multi search fails its key only
+			{
+				List<Object> keys = Arrays.asList(new Object[] { "ORGA", "ISPN", "AAA" });
+				MultiSearchResponse.Item[] items = ((MultiSearchResponse) tested.executeMultiRequest(keys).actionGet())
+						.getResponses();
+				items[1] = new MultiSearchResponse.Item(null, "search failed");
+				ret = new HashMap<Object, Map<String, Object>>();
+				tested.readMultiResponse(keys, new MultiSearchResponse(items), ret, failures);
+				Assert.assertEquals(1, ret.size());
+				Assert.assertEquals("jboss.org", ret.get("ORGA").get("name"));
+				Assert.assertEquals(1, failures.size());
+				Assert.assertEquals("search failed", failures.get("ISPN").getMessage());
+				failures.clear();
+			}
+
+			// case - asynchronous batch
+			PlainActionFuture<Map<Object, Map<String, Object>>> future = PlainActionFuture.newFuture();
+			tested.lookupAsync(Arrays.asList(new Object[] { "ORG", "AAA" }), failures, future);
+			ret = future.actionGet();
+			Assert.assertEquals(1, ret.size());
+			Assert.assertEquals("jbossorg", ret.get("ORG").get("code"));
+
+			// case - preloaded table is used instead of index
+			tested.enablePreload(0);
+			Assert.assertTrue(tested.isInMemory());
+			Assert.assertEquals(4, tested.preloadedTable.size());
+			Assert.assertEquals("jboss.org", tested.lookup("ORG").get("name"));
+			Assert.assertTrue(tested.lookup("AAA").isEmpty());
+			future = PlainActionFuture.newFuture();
+			tested.lookupAsync(Arrays.asList(new Object[] { "ISPN", "AAA" }), failures, future);
+			Assert.assertTrue(future.isDone());
+			Assert.assertEquals("infinispan", future.actionGet().get("ISPN").get("code"));
+			tested.close();
+			Assert.assertFalse(tested.isInMemory());
+
+			// case - keys missing in bloom filter are not searched
+			tested = new ESLookupSource(client, "projects", "project", ESLookupValuePreprocessor.LOOKUP_MODE_TERM,
+					"jbossorg_jira_project", RESULT_FIELDS);
+			tested.enableBloomFilter(0);
+			Assert.assertNotNull(tested.bloomFilter);
+			Assert.assertFalse(tested.mayContain("AAA"));
+			Assert.assertTrue(tested.mayContain("ISPN"));
+			Assert.assertFalse(tested.isInMemory());
+			tested.close();
+			Assert.assertNull(tested.bloomFilter);
+
+			// case - get by id
+			tested = new ESLookupSource(client, "projects", "project", ESLookupValuePreprocessor.LOOKUP_MODE_GET, null,
+					RESULT_FIELDS);
+			Assert.assertEquals("jbossorg", tested.lookup("data1").get("code"));
+			Assert.assertTrue(tested.lookup("ORG").isEmpty());
+			ret = tested.lookup(Arrays.asList(new Object[] { "data1", "data2", "ORG" }), failures);
+			Assert.assertEquals(2, ret.size());
+			Assert.assertEquals("Infinispan", ret.get("data2").get("name"));
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+}
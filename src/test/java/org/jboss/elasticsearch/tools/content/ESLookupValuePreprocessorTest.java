@@ -5,13 +5,22 @@
  */
 package org.jboss.elasticsearch.tools.content;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.settings.SettingsException;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
@@ -114,6 +123,27 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 							e.getMessage());
 		}
 
+		try {
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_mode, "prefix");
+			tested.init("Test mapper", client, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals(
+					"Invalid 'settings/lookup_mode' configuration value 'prefix' for 'Test mapper' preprocessor, use one of: match, term, get",
+					e.getMessage());
+		}
+
+		// case - idx_search_field is not necessary in get lookup mode
+		{
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.remove(ESLookupValuePreprocessor.CFG_idx_search_field);
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_mode, "get");
+			tested.init("Test mapper", client, settings);
+			Assert.assertTrue(tested.isGetLookupMode());
+			Assert.assertNull(tested.idxSearchField);
+		}
+
 		// case - no more mandatory setting fields
 		{
 			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
@@ -157,7 +187,61 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 			tested.init("Test mapper", client, settings);
 			Assert.assertEquals("source {value}", tested.sourceValuePattern);
 			Assert.assertNull(tested.sourceField);
+			Assert.assertNull(tested.getLookupCache());
+		}
+
+		// case - lookup cache
+		{
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			Client client = Mockito.mock(Client.class);
+
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 100);
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(100, tested.getLookupCache().getMaxEntries());
+			Assert.assertEquals(0, tested.getLookupCache().getTtl());
+
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, "50");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_ttl, "10m");
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(50, tested.getLookupCache().getMaxEntries());
+			Assert.assertEquals(600000, tested.getLookupCache().getTtl());
+
+			settings.put(ESLookupValuePreprocessor.CFG_cache_ttl, "1000");
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(1000, tested.getLookupCache().getTtl());
 
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 0);
+			tested.init("Test mapper", client, settings);
+			Assert.assertNull(tested.getLookupCache());
+
+			try {
+				settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, "aa");
+				tested.init("Test mapper", client, settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				Assert.assertEquals("Invalid 'settings/cache_max_entries' configuration value for 'Test mapper' preprocessor: aa",
+						e.getMessage());
+			}
+
+			try {
+				settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, -1);
+				tested.init("Test mapper", client, settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				Assert.assertEquals("Invalid 'settings/cache_max_entries' configuration value for 'Test mapper' preprocessor: -1",
+						e.getMessage());
+			}
+
+			try {
+				settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+				settings.put(ESLookupValuePreprocessor.CFG_cache_ttl, "-5");
+				tested.init("Test mapper", client, settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				Assert.assertEquals("Invalid 'settings/cache_ttl' configuration value for 'Test mapper' preprocessor: -5",
+						e.getMessage());
+			}
 		}
 	}
 
@@ -168,8 +252,8 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 			Client client = prepareESClientForUnitTest();
 
 			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
-			tested.init("Test mapper", client,
-					TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json"));
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			tested.init("Test mapper", client, settings);
 
 			// case - lookup index is missing so default value is used
 			{
@@ -232,6 +316,7 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 				Map<String, Object> values = new HashMap<String, Object>();
 				tested.resultMapping.get(0)
 						.put(ESLookupValuePreprocessor.CFG_value_default, "unknown {field} for {__original}");
+				tested.init("Test mapper", client, settings);
 				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "BBB");
 				StructureUtils.putValueIntoMapOfMaps(values, "field", "jj");
 				tested.preprocessData(values);
@@ -241,6 +326,7 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 			// case - test handling when source field contains list of values
 			{
 				tested.resultMapping.get(0).put(ESLookupValuePreprocessor.CFG_value_default, "unknown");
+				tested.init("Test mapper", client, settings);
 				Map<String, Object> values = new HashMap<String, Object>();
 				List<Object> obj = new ArrayList<Object>();
 				obj.add("ORG");
@@ -347,6 +433,7 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 				Map<String, Object> values = new HashMap<String, Object>();
 				tested.resultMapping.get(0)
 						.put(ESLookupValuePreprocessor.CFG_value_default, "unknown {field} for {__original}");
+				tested.init("Test mapper", client, settings);
 				StructureUtils.putValueIntoMapOfMaps(values, testInputField, "BBB");
 				StructureUtils.putValueIntoMapOfMaps(values, "field", "jj");
 				tested.preprocessData(values);
@@ -403,6 +490,1008 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessData_lookupCache() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+			((List<Map<String, Object>>) settings.get(ESLookupValuePreprocessor.CFG_result_mapping)).get(0).put(
+					ESLookupValuePreprocessor.CFG_value_default, "unknown {__original}");
+			tested.init("Test mapper", client, settings);
+			LookupCache<Object, Map<String, Object>> cache = tested.getLookupCache();
+
+			// case - failed lookup is not cached
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values);
+				Assert.assertEquals("unknown ORG", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(0, cache.size());
+			}
+
+			prepareTestData(client, tested);
+
+			// case - lookup result is cached over documents
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values);
+				Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(1, cache.size());
+				long misses = cache.getMissCount();
+
+				values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values);
+				Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals("jboss.org", XContentMapValues.extractValue("project_name", values));
+				Assert.assertEquals(1, cache.getHitCount());
+				Assert.assertEquals(misses, cache.getMissCount());
+			}
+
+			// case - not found lookup is cached, but default is evaluated for each document
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values);
+				Assert.assertEquals("unknown AAA", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(2, cache.size());
+
+				values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values);
+				Assert.assertEquals("unknown AAA", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(2, cache.getHitCount());
+			}
+
+			// case - cached value is used even if index is not available anymore
+			{
+				client.admin().indices().prepareDelete(tested.indexName).execute().actionGet();
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values);
+				Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(3, cache.getHitCount());
+			}
+
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessData_lookupCacheNegativeTtl() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+			((List<Map<String, Object>>) settings.get(ESLookupValuePreprocessor.CFG_result_mapping)).get(0).put(
+					ESLookupValuePreprocessor.CFG_value_default, "unknown {__original}");
+
+			// case - cache_ttl is used for not found keys by default
+			settings.put(ESLookupValuePreprocessor.CFG_cache_ttl, "10m");
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(600000, tested.cacheNegativeTtl);
+
+			settings.put(ESLookupValuePreprocessor.CFG_cache_negative_ttl, "100ms");
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(100, tested.cacheNegativeTtl);
+			LookupCache<Object, Map<String, Object>> cache = tested.getLookupCache();
+
+			prepareTestData(client, tested);
+
+			// case - not found key expires sooner than found one
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values);
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values);
+				Assert.assertEquals("unknown AAA", XContentMapValues.extractValue("project.code", values));
+				Assert.assertNotNull(cache.get("AAA"));
+				Assert.assertNotNull(cache.get("ORG"));
+				Thread.sleep(200);
+				Assert.assertNull(cache.get("AAA"));
+				Assert.assertNotNull(cache.get("ORG"));
+			}
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public void preprocessData_lookupCacheFile() throws Exception {
+		final AtomicInteger searchCount = new AtomicInteger();
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor() {
+			@Override
+			protected Map<String, Object> searchLookupIndex(Object sourceValue) {
+				searchCount.incrementAndGet();
+				Map<String, Object> ret = new HashMap<String, Object>();
+				if ("ORG".equals(sourceValue))
+					ret.put("name", "name of " + sourceValue);
+				return ret;
+			}
+		};
+		File dir = LookupCacheFileTest.createTempFile().getParentFile();
+		File file = new File(dir, "Test_mapper.lookupcache");
+		try {
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_dir, dir.getAbsolutePath());
+
+			// case - file is not used without lookup cache
+			tested.init("Test mapper", Mockito.mock(Client.class), settings);
+			Assert.assertNull(tested.lookupCacheFile);
+
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+			tested.init("Test mapper", Mockito.mock(Client.class), settings);
+			Assert.assertEquals(file, tested.lookupCacheFile.getFile());
+			tested.searchLookupIndexCached("ORG");
+			tested.searchLookupIndexCached("AAA");
+			Assert.assertEquals(2, searchCount.get());
+			tested.close();
+			Assert.assertNull(tested.lookupCacheFile);
+
+			// case - results persisted before are loaded by next init so no search is performed
+			searchCount.set(0);
+			tested.init("Test mapper", Mockito.mock(Client.class), settings);
+			Assert.assertEquals("name of ORG", tested.searchLookupIndexCached("ORG").get("name"));
+			Assert.assertTrue(tested.searchLookupIndexCached("AAA").isEmpty());
+			Assert.assertEquals(0, searchCount.get());
+
+			// case - persisted results are discarded when generation changes
+			settings.put(ESLookupValuePreprocessor.CFG_cache_generation, "2");
+			tested.init("Test mapper", Mockito.mock(Client.class), settings);
+			tested.searchLookupIndexCached("ORG");
+			Assert.assertEquals(1, searchCount.get());
+			tested.close();
+		} finally {
+			tested.close();
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void preprocessData_bloomFilter() throws Exception {
+		final AtomicInteger searchCount = new AtomicInteger();
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor() {
+			@Override
+			protected ESLookupSource createESLookupSource() {
+				return new ESLookupSource(client, indexName, indexType, lookupMode, idxSearchField, getIdxResultFields()) {
+					@Override
+					protected Map<String, Object> searchIndex(Object key) {
+						searchCount.incrementAndGet();
+						return super.searchIndex(key);
+					}
+
+					@Override
+					protected ListenableActionFuture<? extends ActionResponse> executeMultiRequest(List<Object> keys) {
+						searchCount.addAndGet(keys.size());
+						return super.executeMultiRequest(keys);
+					}
+				};
+			}
+		};
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_bloom_filter, true);
+
+			// case - bloom filter load fails so all keys are searched
+			tested.init("Test mapper", client, settings);
+			Assert.assertTrue(tested.isBloomFilter());
+			Assert.assertNull(esLookupSource(tested).bloomFilter);
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values);
+				Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(1, searchCount.get());
+			}
+
+			// case - bloom filter is loaded in init, missing keys are not searched
+			prepareTestData(client, tested);
+			tested.init("Test mapper", client, settings);
+			Assert.assertNotNull(esLookupSource(tested).bloomFilter);
+			searchCount.set(0);
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values);
+				Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", values));
+				Assert.assertNull(XContentMapValues.extractValue("project_name", values));
+				Assert.assertEquals(0, searchCount.get());
+
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORGA");
+				tested.preprocessData(values);
+				Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", values));
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ISPN");
+				tested.preprocessData(values);
+				Assert.assertEquals("infinispan", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(2, searchCount.get());
+			}
+
+			// case - missing keys are not searched in batch
+			{
+				List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "BBB");
+				batch.add(values);
+				searchCount.set(0);
+				tested.preprocessBatch(batch);
+				Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals(0, searchCount.get());
+			}
+
+			// case - bloom filter is not used with preload
+			settings.put(ESLookupValuePreprocessor.CFG_preload, true);
+			tested.init("Test mapper", client, settings);
+			Assert.assertFalse(tested.isBloomFilter());
+			Assert.assertNull(esLookupSource(tested).bloomFilter);
+
+			// case - close
+			settings.remove(ESLookupValuePreprocessor.CFG_preload);
+			tested.init("Test mapper", client, settings);
+			ESLookupSource source = esLookupSource(tested);
+			Assert.assertNotNull(source.bloomFilter);
+			tested.close();
+			Assert.assertNull(source.bloomFilter);
+		} finally {
+			tested.close();
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public void preprocessData_lookupModes() throws Exception {
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+		try {
+			Client client = prepareESClientForUnitTest();
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(ESLookupValuePreprocessor.LOOKUP_MODE_MATCH, tested.lookupMode);
+			prepareTestData(client, tested);
+
+			// case - term filter
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_mode, "term");
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(ESLookupValuePreprocessor.LOOKUP_MODE_TERM, tested.lookupMode);
+			assertLookup(tested, "ORGA", "jbossorg", "jboss.org");
+			assertLookup(tested, "ISPN", "infinispan", "Infinispan");
+			assertLookup(tested, "AAA", "defval", null);
+
+			// case - get by id
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_mode, "get");
+			tested.init("Test mapper", client, settings);
+			assertLookup(tested, "data1", "jbossorg", "jboss.org");
+			assertLookup(tested, "data2", "infinispan", "Infinispan");
+			assertLookup(tested, "ORG", "defval", null);
+
+			// case - multi get in batch
+			{
+				List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+				for (String key : new String[] { "data1", "data2", "ORG" }) {
+					Map<String, Object> values = new HashMap<String, Object>();
+					StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, key);
+					batch.add(values);
+				}
+				tested.preprocessBatch(batch);
+				Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", batch.get(0)));
+				Assert.assertEquals("infinispan", XContentMapValues.extractValue("project.code", batch.get(1)));
+				Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", batch.get(2)));
+			}
+
+			// case - multi get in async preprocessing
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "data2");
+				PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+				tested.preprocessDataAsync(values, future);
+				future.actionGet();
+				Assert.assertEquals("infinispan", XContentMapValues.extractValue("project.code", values));
+			}
+
+			// case - preloaded table is keyed by id
+			settings.put(ESLookupValuePreprocessor.CFG_preload, true);
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(3, esLookupSource(tested).preloadedTable.size());
+			client.admin().indices().prepareDelete(tested.indexName).execute().actionGet();
+			assertLookup(tested, "data1", "jbossorg", "jboss.org");
+		} finally {
+			tested.close();
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public void preprocessData_circuitBreaker() throws Exception {
+		final AtomicInteger searchCount = new AtomicInteger();
+		final AtomicInteger failSearch = new AtomicInteger();
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor() {
+			@Override
+			protected Map<String, Object> searchLookupIndex(Object sourceValue) {
+				searchCount.incrementAndGet();
+				if (failSearch.get() > 0)
+					throw new ElasticSearchException("search failed");
+				return super.searchLookupIndex(sourceValue);
+			}
+		};
+		try {
+			Client client = prepareESClientForUnitTest();
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+
+			// case - circuit breaker is not used by default
+			tested.init("Test mapper", client, settings);
+			Assert.assertNull(tested.getCircuitBreaker());
+
+			// case - invalid configuration
+			settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_failure_rate, 101);
+			try {
+				tested.init("Test mapper", client, settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				Assert.assertEquals(
+						"Invalid 'settings/circuit_breaker_failure_rate' configuration value for 'Test mapper' preprocessor: 101",
+						e.getMessage());
+			}
+
+			// case - defaults
+			settings.remove(ESLookupValuePreprocessor.CFG_circuit_breaker_failure_rate);
+			settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_slow_request, "1s");
+			tested.init("Test mapper", client, settings);
+			LookupCircuitBreaker breaker = tested.getCircuitBreaker();
+			Assert.assertEquals(50, breaker.getFailureRateThreshold());
+			Assert.assertEquals(1000, breaker.getSlowRequestThreshold());
+			Assert.assertEquals(20, breaker.getWindowSize());
+			Assert.assertEquals(30000, breaker.getOpenDuration());
+
+			settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_failure_rate, 50);
+			settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_window, 2);
+			settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_open_duration, "200ms");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+			settings.put(ESLookupValuePreprocessor.CFG_cache_ttl, "100ms");
+			tested.init("Test mapper", client, settings);
+			breaker = tested.getCircuitBreaker();
+			Assert.assertEquals(2, breaker.getWindowSize());
+			prepareTestData(client, tested);
+
+			// case - breaker opens due failed lookups
+			assertLookup(tested, "ORG", "jbossorg", "jboss.org");
+			failSearch.set(1);
+			Thread.sleep(150);
+			assertLookup(tested, "ISPN", "defval", null);
+			Assert.assertEquals(2, searchCount.get());
+			Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, breaker.getState());
+
+			// case - expired cached values or defaults are used while breaker is open, lookup index is not asked
+			assertLookup(tested, "ORG", "jbossorg", "jboss.org");
+			assertLookup(tested, "ISPN", "defval", null);
+			{
+				List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+				for (String key : new String[] { "ORG", "ISPN" }) {
+					Map<String, Object> values = new HashMap<String, Object>();
+					StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, key);
+					batch.add(values);
+				}
+				tested.preprocessBatch(batch);
+				Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", batch.get(0)));
+				Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", batch.get(1)));
+			}
+			Assert.assertEquals(2, searchCount.get());
+
+			// case - probe in background closes breaker and refreshes cache
+			Thread.sleep(250);
+			assertLookup(tested, "ISPN", "defval", null);
+			for (int i = 0; i < 50 && breaker.getState() != LookupCircuitBreaker.STATE_CLOSED; i++) {
+				Thread.sleep(100);
+			}
+			Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, breaker.getState());
+			Assert.assertNotNull(tested.getLookupCache().getIncludingExpired("ISPN"));
+			Assert.assertEquals(2, searchCount.get());
+			failSearch.set(0);
+			assertLookup(tested, "ISPN", "infinispan", "Infinispan");
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public void probeLookupIndex() throws Exception {
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+		tested.name = "Test mapper";
+		tested.circuitBreaker = new LookupCircuitBreaker(100, 0, 1, 0);
+		tested.circuitBreaker.requestFinished(false, 0);
+
+		// case - exception thrown by lookup source fails probe, so breaker is not left half open
+		tested.lookupSource = new MapLookupSource(new HashMap<String, Map<String, Object>>()) {
+			@Override
+			public void lookupAsync(Collection<Object> keys, Map<Object, ElasticSearchException> failures,
+					ActionListener<Map<Object, Map<String, Object>>> listener) {
+				throw new IllegalStateException("source failed");
+			}
+		};
+		long probe = tested.circuitBreaker.tryStartProbe();
+		Assert.assertTrue(probe != LookupCircuitBreaker.NO_PROBE);
+		tested.probeLookupIndex("ORG", probe);
+		Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, tested.circuitBreaker.getState());
+
+		// case - failure passed to listener fails probe
+		tested.lookupSource = new MapLookupSource(new HashMap<String, Map<String, Object>>()) {
+			@Override
+			public void lookupAsync(Collection<Object> keys, Map<Object, ElasticSearchException> failures,
+					ActionListener<Map<Object, Map<String, Object>>> listener) {
+				listener.onFailure(new IllegalStateException("source failed"));
+			}
+		};
+		probe = tested.circuitBreaker.tryStartProbe();
+		tested.probeLookupIndex("ORG", probe);
+		Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, tested.circuitBreaker.getState());
+
+		// case - successful probe closes breaker
+		tested.lookupSource = new MapLookupSource(new HashMap<String, Map<String, Object>>());
+		probe = tested.circuitBreaker.tryStartProbe();
+		tested.probeLookupIndex("ORG", probe);
+		Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, tested.circuitBreaker.getState());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void preprocessData_localLookupSource() throws Exception {
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+		Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+		settings.remove(ESLookupValuePreprocessor.CFG_index_name);
+		settings.remove(ESLookupValuePreprocessor.CFG_index_type);
+		settings.put(ESLookupValuePreprocessor.CFG_preload, true);
+		settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_failure_rate, 50);
+
+		// case - client and index are required for search index
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals("ElasticSearch client is required for preprocessor Test mapper", e.getMessage());
+		}
+
+		// case - in-memory table
+		{
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_table, TestUtils
+					.loadJSONFromClasspathFile("/LookupSource_data-object.json"));
+			tested.init("Test mapper", null, settings);
+			Assert.assertTrue(tested.getLookupSource() instanceof MapLookupSource);
+			Assert.assertFalse(tested.isPreload());
+			Assert.assertNull(tested.getCircuitBreaker());
+			assertLookup(tested, "ORG", "jbossorg", "jboss.org");
+			assertLookup(tested, "ISPN", "infinispan", "Infinispan");
+			assertLookup(tested, "AAA", "defval", null);
+
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_table, "invalid");
+			try {
+				tested.init("Test mapper", null, settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				Assert.assertEquals(
+						"Invalid 'settings/lookup_table' configuration value for 'Test mapper' preprocessor, object expected",
+						e.getMessage());
+			}
+			settings.remove(ESLookupValuePreprocessor.CFG_lookup_table);
+		}
+
+		// case - local file
+		{
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_file,
+					FileLookupSourceTest.getTestFile("/LookupSource_data.json").getAbsolutePath());
+			tested.init("Test mapper", null, settings);
+			Assert.assertTrue(tested.getLookupSource() instanceof FileLookupSource);
+			assertLookup(tested, "ORGA", "jbossorg", "jboss.org");
+			assertLookup(tested, "AAA", "defval", null);
+
+			// case - batch and asynchronous preprocessing
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			for (String key : new String[] { "ORG", "ISPN", "AAA" }) {
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, key);
+				batch.add(values);
+			}
+			tested.preprocessBatch(batch);
+			Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", batch.get(0)));
+			Assert.assertEquals("infinispan", XContentMapValues.extractValue("project.code", batch.get(1)));
+			Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", batch.get(2)));
+
+			Map<String, Object> values = new HashMap<String, Object>();
+			StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ISPN");
+			PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+			tested.preprocessDataAsync(values, future);
+			Assert.assertEquals("Infinispan", XContentMapValues.extractValue("project_name", future.get()));
+
+			// case - custom source is used for single, batch and asynchronous lookups
+			final MapLookupSource table = new MapLookupSource((Map) TestUtils
+					.loadJSONFromClasspathFile("/LookupSource_data-object.json"));
+			final List<String> calls = new ArrayList<String>();
+			tested.setLookupSource(new LookupSource() {
+				@Override
+				public Map<String, Object> lookup(Object key) {
+					calls.add("lookup");
+					return table.lookup(key);
+				}
+
+				@Override
+				public Map<Object, Map<String, Object>> lookup(Collection<Object> keys,
+						Map<Object, ElasticSearchException> failures) {
+					calls.add("batch");
+					return table.lookup(keys, failures);
+				}
+
+				@Override
+				public void lookupAsync(Collection<Object> keys, Map<Object, ElasticSearchException> failures,
+						ActionListener<Map<Object, Map<String, Object>>> listener) {
+					calls.add("async");
+					table.lookupAsync(keys, failures, listener);
+				}
+
+				@Override
+				public boolean isInMemory() {
+					return false;
+				}
+
+				@Override
+				public void close() {
+					calls.add("close");
+				}
+			});
+			assertLookup(tested, "ORG", "jbossorg", "jboss.org");
+			tested.preprocessBatch(batch);
+			Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", batch.get(2)));
+			future = PlainActionFuture.newFuture();
+			tested.preprocessDataAsync(values, future);
+			Assert.assertEquals("Infinispan", XContentMapValues.extractValue("project_name", future.get()));
+			Assert.assertEquals("[lookup, batch, async]", calls.toString());
+
+			settings.put(ESLookupValuePreprocessor.CFG_lookup_file, "nonexisting.json");
+			try {
+				tested.init("Test mapper", null, settings);
+				Assert.fail("SettingsException must be thrown");
+			} catch (SettingsException e) {
+				Assert.assertTrue(e.getMessage().startsWith(
+						"Invalid 'settings/lookup_file' configuration value for 'Test mapper' preprocessor, file can't be loaded"));
+			}
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void preprocessBatch_failedLookupItem() throws Exception {
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+		Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+		settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+		settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_failure_rate, 100);
+		settings.put(ESLookupValuePreprocessor.CFG_circuit_breaker_window, 1);
+		tested.init("Test mapper", Mockito.mock(Client.class), settings);
+		// lookup of ISPN fails as failed item of multi search, other keys are resolved
+		tested.setLookupSource(new MapLookupSource((Map) TestUtils
+				.loadJSONFromClasspathFile("/LookupSource_data-object.json")) {
+			@Override
+			public Map<Object, Map<String, Object>> lookup(Collection<Object> keys,
+					Map<Object, ElasticSearchException> failures) {
+				Map<Object, Map<String, Object>> ret = super.lookup(keys, failures);
+				if (ret.remove("ISPN") != null)
+					failures.put("ISPN", new ElasticSearchException("search failed"));
+				return ret;
+			}
+
+			@Override
+			public boolean isInMemory() {
+				return false;
+			}
+		});
+
+		// case - batch, failed key only gets default values and is not cached
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		for (String key : new String[] { "ORG", "ISPN", "AAA" }) {
+			Map<String, Object> values = new HashMap<String, Object>();
+			StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, key);
+			batch.add(values);
+		}
+		tested.preprocessBatch(batch);
+		Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", batch.get(0)));
+		Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", batch.get(1)));
+		Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", batch.get(2)));
+		Assert.assertNotNull(tested.getLookupCache().get("ORG"));
+		Assert.assertNull(tested.getLookupCache().get("ISPN"));
+		Assert.assertTrue(tested.getLookupCache().get("AAA").isEmpty());
+		Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, tested.getCircuitBreaker().getState());
+
+		// case - asynchronous, same result as batch
+		Map<String, Object> values = new HashMap<String, Object>();
+		StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ISPN");
+		PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+		tested.preprocessDataAsync(values, future);
+		Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", future.get()));
+		Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, tested.getCircuitBreaker().getState());
+		tested.close();
+	}
+
+	private static ESLookupSource esLookupSource(ESLookupValuePreprocessor tested) {
+		return (ESLookupSource) tested.getLookupSource();
+	}
+
+	private void assertLookup(ESLookupValuePreprocessor tested, String key, String expectedCode, String expectedName) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, key);
+		tested.preprocessData(values);
+		Assert.assertEquals(expectedCode, XContentMapValues.extractValue("project.code", values));
+		Assert.assertEquals(expectedName, XContentMapValues.extractValue("project_name", values));
+	}
+
+	@Test
+	public void searchLookupIndexCoalesced() throws Exception {
+		final AtomicInteger searchCount = new AtomicInteger();
+		final AtomicInteger failNext = new AtomicInteger();
+		final ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor() {
+			@Override
+			protected Map<String, Object> searchLookupIndex(Object sourceValue) {
+				searchCount.incrementAndGet();
+				try {
+					// simulates slow search request
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (failNext.getAndSet(0) > 0)
+					throw new ElasticSearchException("search failed");
+				Map<String, Object> ret = new HashMap<String, Object>();
+				ret.put("name", "name of " + sourceValue);
+				return ret;
+			}
+		};
+		tested.init("Test mapper", Mockito.mock(Client.class),
+				TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json"));
+
+		// case - concurrent lookups of same key are performed by one search, other keys by own search
+		{
+			List<Object> results = runConcurrentLookups(tested, "ORG", "ORG", "ORG", "ORG", "ISPN", "ISPN");
+			Assert.assertEquals(2, searchCount.get());
+			for (int i = 0; i < 4; i++) {
+				Assert.assertEquals("name of ORG", ((Map<?, ?>) results.get(i)).get("name"));
+			}
+			Assert.assertTrue(results.get(0) == results.get(3));
+			Assert.assertEquals("name of ISPN", ((Map<?, ?>) results.get(5)).get("name"));
+			Assert.assertTrue(tested.inFlightLookups.isEmpty());
+		}
+
+		// case - lookup is performed again when previous finished
+		{
+			searchCount.set(0);
+			tested.searchLookupIndexCached("ORG");
+			Assert.assertEquals(1, searchCount.get());
+		}
+
+		// case - failure is passed to all waiting threads and not kept
+		{
+			searchCount.set(0);
+			failNext.set(1);
+			List<Object> results = runConcurrentLookups(tested, "ORG", "ORG", "ORG");
+			Assert.assertEquals(1, searchCount.get());
+			for (Object result : results) {
+				Assert.assertTrue(result instanceof ElasticSearchException);
+			}
+			Assert.assertTrue(tested.inFlightLookups.isEmpty());
+			Assert.assertEquals("name of ORG", tested.searchLookupIndexCached("ORG").get("name"));
+		}
+	}
+
+	private List<Object> runConcurrentLookups(final ESLookupValuePreprocessor tested, final String... keys)
+			throws InterruptedException {
+		final Object[] results = new Object[keys.length];
+		Thread[] threads = new Thread[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						results[index] = tested.searchLookupIndexCached(keys[index]);
+					} catch (ElasticSearchException e) {
+						results[index] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return Arrays.asList(results);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessBatch() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			final AtomicInteger searchCount = new AtomicInteger();
+			final AtomicInteger multiSearchCount = new AtomicInteger();
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor() {
+				@Override
+				protected Map<String, Object> searchLookupIndex(Object sourceValue) {
+					searchCount.incrementAndGet();
+					return super.searchLookupIndex(sourceValue);
+				}
+
+				@Override
+				protected void multiSearchLookupIndex(List<Object> sourceValues, Map<Object, Object> prefetched) {
+					multiSearchCount.incrementAndGet();
+					super.multiSearchLookupIndex(sourceValues, prefetched);
+				}
+			};
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-bases.json");
+			((List<Map<String, Object>>) settings.get(ESLookupValuePreprocessor.CFG_result_mapping)).get(0).put(
+					ESLookupValuePreprocessor.CFG_value_default, "unknown {projectcode}");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+			tested.init("Test mapper", client, settings);
+
+			Assert.assertNull(tested.preprocessBatch(null));
+			Assert.assertTrue(tested.preprocessBatch(new ArrayList<Map<String, Object>>()).isEmpty());
+
+			// case - lookup index is missing so default value is used
+			{
+				List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+				Map<String, Object> values = new HashMap<String, Object>();
+				values.put("author", createProjectStructureMap("ORG", "jboss.org project"));
+				batch.add(values);
+				batch.add(null);
+				List<Map<String, Object>> ret = tested.preprocessBatch(batch);
+				Assert.assertEquals(2, ret.size());
+				Assert.assertNull(ret.get(1));
+				assertProjectStructure(ret.get(0).get("author"), "ORG", "jboss.org project", "unknown ORG");
+				Assert.assertEquals(0, tested.getLookupCache().size());
+			}
+
+			prepareTestData(client, tested);
+			multiSearchCount.set(0);
+
+			// case - lookups for whole batch are performed by one multi search request
+			{
+				List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+				for (int i = 0; i < 10; i++) {
+					Map<String, Object> values = new HashMap<String, Object>();
+					values.put("author", createProjectStructureMap("ORG", "jboss.org project"));
+					values.put("editor", createProjectStructureMap("ISPN", "Infinispan"));
+					List<Map<String, Object>> comments = new ArrayList<Map<String, Object>>();
+					values.put("comments", comments);
+					Map<String, Object> comment1 = new HashMap<String, Object>();
+					comment1.put("author", createProjectStructureMap("AAA", "unknown project"));
+					comments.add(comment1);
+					batch.add(values);
+				}
+
+				List<Map<String, Object>> ret = tested.preprocessBatch(batch);
+				Assert.assertEquals(10, ret.size());
+				for (int i = 0; i < 10; i++) {
+					Map<String, Object> values = ret.get(i);
+					Assert.assertTrue(batch.get(i) == values);
+					assertProjectStructure(values.get("author"), "ORG", "jboss.org project", "jbossorg");
+					assertProjectStructure(values.get("editor"), "ISPN", "Infinispan", "infinispan");
+					Map<String, Object> comment1 = ((List<Map<String, Object>>) values.get("comments")).get(0);
+					assertProjectStructure(comment1.get("author"), "AAA", "unknown project", "unknown AAA");
+				}
+				Assert.assertEquals(1, multiSearchCount.get());
+				Assert.assertEquals(0, searchCount.get());
+				Assert.assertEquals(3, tested.getLookupCache().size());
+			}
+
+			// case - cached lookups are not searched again
+			{
+				multiSearchCount.set(0);
+				List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+				Map<String, Object> values = new HashMap<String, Object>();
+				values.put("author", createProjectStructureMap("ORG", "jboss.org project"));
+				batch.add(values);
+				tested.preprocessBatch(batch);
+				assertProjectStructure(values.get("author"), "ORG", "jboss.org project", "jbossorg");
+				Assert.assertEquals(0, multiSearchCount.get());
+				Assert.assertEquals(0, searchCount.get());
+			}
+
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessDataAsync() throws Exception {
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			final AtomicInteger searchCount = new AtomicInteger();
+			final AtomicInteger multiSearchCount = new AtomicInteger();
+			ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor() {
+				@Override
+				protected Map<String, Object> searchLookupIndex(Object sourceValue) {
+					searchCount.incrementAndGet();
+					return super.searchLookupIndex(sourceValue);
+				}
+
+				@Override
+				protected void multiSearchLookupIndexAsync(List<Object> sourceValues, Map<Object, Object> prefetched,
+						Runnable requestFinished) {
+					multiSearchCount.incrementAndGet();
+					super.multiSearchLookupIndexAsync(sourceValues, prefetched, requestFinished);
+				}
+			};
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-bases.json");
+			((List<Map<String, Object>>) settings.get(ESLookupValuePreprocessor.CFG_result_mapping)).get(0).put(
+					ESLookupValuePreprocessor.CFG_value_default, "unknown {projectcode}");
+			settings.put(ESLookupValuePreprocessor.CFG_cache_max_entries, 10);
+			tested.init("Test mapper", client, settings);
+
+			// case - null data
+			{
+				PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+				tested.preprocessDataAsync(null, future);
+				Assert.assertNull(future.actionGet());
+			}
+
+			// case - lookup index is missing so default value is used
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				values.put("author", createProjectStructureMap("ORG", "jboss.org project"));
+				PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+				tested.preprocessDataAsync(values, future);
+				Assert.assertTrue(values == future.actionGet());
+				assertProjectStructure(values.get("author"), "ORG", "jboss.org project", "unknown ORG");
+				Assert.assertEquals(0, tested.getLookupCache().size());
+			}
+
+			prepareTestData(client, tested);
+			multiSearchCount.set(0);
+
+			// case - all lookups of document are performed by one multi search request
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				values.put("author", createProjectStructureMap("ORG", "jboss.org project"));
+				values.put("editor", createProjectStructureMap("ISPN", "Infinispan"));
+				List<Map<String, Object>> comments = new ArrayList<Map<String, Object>>();
+				values.put("comments", comments);
+				Map<String, Object> comment1 = new HashMap<String, Object>();
+				comment1.put("author", createProjectStructureMap("AAA", "unknown project"));
+				comments.add(comment1);
+
+				PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+				tested.preprocessDataAsync(values, future);
+				Assert.assertTrue(values == future.actionGet());
+				assertProjectStructure(values.get("author"), "ORG", "jboss.org project", "jbossorg");
+				assertProjectStructure(values.get("editor"), "ISPN", "Infinispan", "infinispan");
+				assertProjectStructure(comment1.get("author"), "AAA", "unknown project", "unknown AAA");
+				Assert.assertEquals(1, multiSearchCount.get());
+				Assert.assertEquals(0, searchCount.get());
+				Assert.assertEquals(3, tested.getLookupCache().size());
+			}
+
+			// case - cached lookups are not searched again, listener is called directly
+			{
+				multiSearchCount.set(0);
+				Map<String, Object> values = new HashMap<String, Object>();
+				values.put("author", createProjectStructureMap("ORG", "jboss.org project"));
+				PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+				tested.preprocessDataAsync(values, future);
+				Assert.assertTrue(future.isDone());
+				assertProjectStructure(values.get("author"), "ORG", "jboss.org project", "jbossorg");
+				Assert.assertEquals(0, multiSearchCount.get());
+				Assert.assertEquals(0, searchCount.get());
+			}
+
+			// case - key not resolved asynchronously gets default value instead of blocking lookup
+			{
+				ESLookupValuePreprocessor tested2 = new ESLookupValuePreprocessor() {
+					@Override
+					protected Map<String, Object> searchLookupIndex(Object sourceValue) {
+						searchCount.incrementAndGet();
+						return super.searchLookupIndex(sourceValue);
+					}
+
+					@Override
+					protected void multiSearchLookupIndexAsync(List<Object> sourceValues, Map<Object, Object> prefetched,
+							Runnable requestFinished) {
+						requestFinished.run();
+					}
+				};
+				tested2.init("Test mapper", client, settings);
+				Map<String, Object> values = new HashMap<String, Object>();
+				values.put("author", createProjectStructureMap("ORG", "jboss.org project"));
+				PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+				tested2.preprocessDataAsync(values, future);
+				Assert.assertTrue(values == future.actionGet());
+				assertProjectStructure(values.get("author"), "ORG", "jboss.org project", "unknown ORG");
+				Assert.assertEquals(0, tested2.getLookupCache().size());
+				Assert.assertEquals(0, searchCount.get());
+			}
+
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@Test
+	public void preprocessData_preload() throws Exception {
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+		try {
+			Client client = prepareESClientForUnitTest();
+
+			Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+			settings.put(ESLookupValuePreprocessor.CFG_preload, true);
+
+			// case - preload fails so search is used
+			tested.init("Test mapper", client, settings);
+			Assert.assertTrue(tested.isPreload());
+			Assert.assertNull(esLookupSource(tested).preloadedTable);
+			Assert.assertNull(esLookupSource(tested).reloadExecutor);
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORG");
+				tested.preprocessData(values);
+				Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", values));
+			}
+
+			// case - table is preloaded in init
+			prepareTestData(client, tested);
+			tested.init("Test mapper", client, settings);
+			Assert.assertEquals(5, esLookupSource(tested).preloadedTable.size());
+			// lookup index is not used anymore
+			client.admin().indices().prepareDelete(tested.indexName).execute().actionGet();
+			{
+				Map<String, Object> values = new HashMap<String, Object>();
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ORGA");
+				tested.preprocessData(values);
+				Assert.assertEquals("jbossorg", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals("jboss.org", XContentMapValues.extractValue("project_name", values));
+
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "ISPN");
+				tested.preprocessData(values);
+				Assert.assertEquals("infinispan", XContentMapValues.extractValue("project.code", values));
+				Assert.assertEquals("Infinispan", XContentMapValues.extractValue("project_name", values));
+
+				StructureUtils.putValueIntoMapOfMaps(values, tested.sourceField, "AAA");
+				tested.preprocessData(values);
+				Assert.assertEquals("defval", XContentMapValues.extractValue("project.code", values));
+				Assert.assertNull(XContentMapValues.extractValue("project_name", values));
+			}
+
+			// case - table is refreshed in background, actual table is kept if refresh fails
+			settings.put(ESLookupValuePreprocessor.CFG_preload_refresh_interval, "50ms");
+			prepareTestData(client, tested);
+			tested.init("Test mapper", client, settings);
+			Assert.assertNotNull(esLookupSource(tested).reloadExecutor);
+			Map<String, Map<String, Object>> table = esLookupSource(tested).preloadedTable;
+			Assert.assertEquals(5, table.size());
+			client.prepareDelete(tested.indexName, tested.indexType, "data3").setRefresh(true).execute().actionGet();
+			for (int i = 0; i < 100 && esLookupSource(tested).preloadedTable == table; i++) {
+				Thread.sleep(20);
+			}
+			Assert.assertEquals(4, esLookupSource(tested).preloadedTable.size());
+			table = esLookupSource(tested).preloadedTable;
+			client.admin().indices().prepareDelete(tested.indexName).execute().actionGet();
+			Thread.sleep(200);
+			Assert.assertTrue(table == esLookupSource(tested).preloadedTable);
+
+			// case - close
+			tested.close();
+			Assert.assertNull(esLookupSource(tested).reloadExecutor);
+			Assert.assertNull(esLookupSource(tested).preloadedTable);
+		} finally {
+			tested.close();
+			finalizeESClientForUnitTest();
+		}
+	}
+
 	private void prepareTestData(Client client, ESLookupValuePreprocessor tested) {
 		// fill testing data
 		client.admin().indices().prepareCreate(tested.indexName).execute().actionGet();
@@ -435,4 +1524,44 @@ public class ESLookupValuePreprocessorTest extends ESRealClientTestBase {
 		Assert.assertEquals(projectname, data.get("projectname"));
 		Assert.assertEquals(transformedcode, data.get("transformedcode"));
 	}
+
+	@Test
+	public void getFieldAccess() throws Exception {
+		Client client = Mockito.mock(Client.class);
+		ESLookupValuePreprocessor tested = new ESLookupValuePreprocessor();
+
+		// case - source field without bases
+		tested.init("Test mapper", client,
+				TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json"));
+		FieldAccess fa = tested.getFieldAccess();
+		Assert.assertFalse(fa.isWholeDocument());
+		Assert.assertEquals("[fields.projectcode]", fa.getReadFields().toString());
+		Assert.assertEquals(2, fa.getWrittenFields().size());
+		Assert.assertTrue(fa.getWrittenFields().contains("project.code"));
+		Assert.assertTrue(fa.getWrittenFields().contains("project_name"));
+
+		// case - source value pattern and default value pattern
+		Map<String, Object> settings = TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-nobases.json");
+		settings.remove(ESLookupValuePreprocessor.CFG_source_field);
+		settings.put(ESLookupValuePreprocessor.CFG_source_value, "{fields.code}-{key}");
+		Map<String, String> mapping = new HashMap<String, String>();
+		mapping.put(ESLookupValuePreprocessor.CFG_idx_result_field, "code");
+		mapping.put(ESLookupValuePreprocessor.CFG_target_field, "target");
+		mapping.put(ESLookupValuePreprocessor.CFG_value_default, "{__original}-{summary}");
+		settings.put(ESLookupValuePreprocessor.CFG_result_mapping, Arrays.asList(mapping));
+		tested.init("Test mapper", client, settings);
+		fa = tested.getFieldAccess();
+		Assert.assertEquals("[fields.code, key, summary]", fa.getReadFields().toString());
+		Assert.assertEquals("[target]", fa.getWrittenFields().toString());
+
+		// case - bases
+		tested.init("Test mapper", client, TestUtils.loadJSONFromClasspathFile("/ESLookupValue_preprocessData-bases.json"));
+		fa = tested.getFieldAccess();
+		Assert.assertEquals(
+				"[author.projectcode, editor.projectcode, comments.author.projectcode, comments.editor.projectcode]", fa
+						.getReadFields().toString());
+		Assert.assertEquals(4, fa.getWrittenFields().size());
+		Assert.assertTrue(fa.getWrittenFields().contains("comments.editor.transformedcode"));
+	}
+
 }
@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FieldAccess}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class FieldAccessTest {
+
+	@Test
+	public void constructor() {
+		FieldAccess tested = new FieldAccess(null, null);
+		Assert.assertFalse(tested.isWholeDocument());
+		Assert.assertTrue(tested.getFields().isEmpty());
+
+		tested = new FieldAccess(Arrays.asList("a", "", null, "b.c", "a"), Arrays.asList("d"));
+		Assert.assertEquals("[a, b.c]", tested.getReadFields().toString());
+		Assert.assertEquals("[d]", tested.getWrittenFields().toString());
+		Assert.assertEquals("[a, b.c, d]", tested.getFields().toString());
+		try {
+			tested.getReadFields().add("e");
+			Assert.fail("UnsupportedOperationException must be thrown");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+
+		Assert.assertTrue(FieldAccess.WHOLE_DOCUMENT.isWholeDocument());
+		Assert.assertTrue(FieldAccess.WHOLE_DOCUMENT.getFields().isEmpty());
+	}
+
+	@Test
+	public void create() {
+		FieldAccess tested = FieldAccess.create(null, Arrays.asList("a"), Arrays.asList("b"));
+		Assert.assertEquals("[a]", tested.getReadFields().toString());
+		Assert.assertEquals("[b]", tested.getWrittenFields().toString());
+
+		tested = FieldAccess.create(Arrays.asList("x", "", "y.z"), Arrays.asList("a"), null);
+		Assert.assertEquals("[x.a, y.z.a]", tested.getReadFields().toString());
+		Assert.assertTrue(tested.getWrittenFields().isEmpty());
+	}
+
+	@Test
+	public void merge() {
+		FieldAccess tested = new FieldAccess(Arrays.asList("a"), Arrays.asList("b")).merge(new FieldAccess(Arrays
+				.asList("c", "a"), Arrays.asList("b", "d")));
+		Assert.assertFalse(tested.isWholeDocument());
+		Assert.assertEquals("[a, c]", tested.getReadFields().toString());
+		Assert.assertEquals("[b, d]", tested.getWrittenFields().toString());
+
+		Assert.assertTrue(tested.merge(null).isWholeDocument());
+		Assert.assertTrue(tested.merge(FieldAccess.WHOLE_DOCUMENT).isWholeDocument());
+		Assert.assertTrue(FieldAccess.WHOLE_DOCUMENT.merge(tested).isWholeDocument());
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FieldPath}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class FieldPathTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new FieldPath(null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new FieldPath("  ");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		FieldPath tested = new FieldPath("field");
+		Assert.assertEquals("field", tested.getPath());
+		Assert.assertEquals("field", tested.toString());
+		Assert.assertTrue(tested.isSimple());
+
+		tested = new FieldPath("field.level1");
+		Assert.assertEquals("field.level1", tested.getPath());
+		Assert.assertFalse(tested.isSimple());
+
+		Assert.assertEquals(new FieldPath("a.b"), new FieldPath("a.b"));
+		Assert.assertEquals(new FieldPath("a.b").hashCode(), new FieldPath("a.b").hashCode());
+		Assert.assertFalse(new FieldPath("a.b").equals(new FieldPath("a.c")));
+	}
+
+	@Test
+	public void create() {
+		Assert.assertNull(FieldPath.create((String) null));
+		Assert.assertNull(FieldPath.create(" "));
+		Assert.assertEquals(new FieldPath("a.b"), FieldPath.create("a.b"));
+
+		Assert.assertNull(FieldPath.create((List<String>) null));
+		List<String> paths = new ArrayList<String>();
+		paths.add("a");
+		paths.add("");
+		paths.add("b.c");
+		List<FieldPath> ret = FieldPath.create(paths);
+		Assert.assertEquals(2, ret.size());
+		Assert.assertEquals(new FieldPath("a"), ret.get(0));
+		Assert.assertEquals(new FieldPath("b.c"), ret.get(1));
+	}
+
+	@Test
+	public void get() {
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("simple", "simple value");
+		data.put("dotted.key", "dotted value");
+		Map<String, Object> level1 = new HashMap<String, Object>();
+		data.put("level1", level1);
+		level1.put("level2", "level2 value");
+		level1.put("dotted.key", "level2 dotted value");
+		List<Object> list = new ArrayList<Object>();
+		level1.put("list", list);
+		list.add(newMap("name", "name1"));
+		list.add(newMap("name", "name2"));
+		list.add(newMap("other", "other"));
+		list.add("string");
+
+		Assert.assertNull(new FieldPath("simple").get(null));
+
+		String[] paths = new String[] { "simple", "unknown", "dotted.key", "level1", "level1.level2", "level1.unknown",
+				"level1.dotted.key", "level1.list", "level1.list.name", "level1.list.unknown", "simple.unknown",
+				"level1.level2.unknown", "level1..level2", ".simple" };
+		for (String path : paths) {
+			Assert.assertEquals("Path " + path, XContentMapValues.extractValue(path, data), new FieldPath(path).get(data));
+		}
+
+		List<?> names = (List<?>) new FieldPath("level1.list.name").get(data);
+		Assert.assertEquals(2, names.size());
+		Assert.assertEquals("name1", names.get(0));
+		Assert.assertEquals("name2", names.get(1));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void put() {
+		FieldPath tested = new FieldPath("field");
+		// case - no NPE
+		tested.put(null, "value");
+
+		// case - simple field
+		Map<String, Object> data = new HashMap<String, Object>();
+		tested.put(data, "value");
+		Assert.assertEquals("value", data.get("field"));
+		tested.put(data, null);
+		Assert.assertTrue(data.containsKey("field"));
+		Assert.assertNull(data.get("field"));
+
+		// case - nested field, maps created
+		tested = new FieldPath("level1.level2.field");
+		data = new HashMap<String, Object>();
+		tested.put(data, "value");
+		Assert.assertEquals("value", ((Map<String, Object>) ((Map<String, Object>) data.get("level1")).get("level2"))
+				.get("field"));
+
+		// case - nested field, existing maps used
+		Map<String, Object> level1 = (Map<String, Object>) data.get("level1");
+		tested.put(data, "value2");
+		Assert.assertTrue(level1 == data.get("level1"));
+		Assert.assertEquals("value2", tested.get(data));
+
+		// case - same result as StructureUtils
+		Map<String, Object> data2 = new HashMap<String, Object>();
+		StructureUtils.putValueIntoMapOfMaps(data2, "level1.level2.field", "value2");
+		Assert.assertEquals(data2, data);
+
+		// case - something in path is not map
+		data = new HashMap<String, Object>();
+		data.put("level1", "value");
+		try {
+			tested.put(data, "value");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals("Cant put value for field 'level1.level2.field' because some element in the path is not Map",
+					e.getMessage());
+		}
+	}
+
+	private static Map<String, Object> newMap(String key, Object value) {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		ret.put(key, value);
+		return ret;
+	}
+
+}
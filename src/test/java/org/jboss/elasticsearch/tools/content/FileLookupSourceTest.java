@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FileLookupSource}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class FileLookupSourceTest {
+
+	private static final List<String> RESULT_FIELDS = Arrays.asList("code", "name");
+
+	@Test
+	public void constructor_errors() throws Exception {
+		try {
+			new FileLookupSource(null, "code", null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new FileLookupSource(new File("nonexisting.json"), "code", null);
+			Assert.fail("FileNotFoundException must be thrown");
+		} catch (FileNotFoundException e) {
+			// OK
+		}
+		try {
+			new FileLookupSource(getTestFile("/LookupSource_data.csv"), null, null);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			// OK
+		}
+		try {
+			new FileLookupSource(getTestFile("/LookupSource_data.json"), null, null);
+			Assert.fail("IOException must be thrown");
+		} catch (IOException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void loadCsv() throws Exception {
+		FileLookupSource tested = new FileLookupSource(getTestFile("/LookupSource_data.csv"), "jbossorg_jira_project",
+				RESULT_FIELDS);
+		Assert.assertEquals(2, tested.size());
+		Assert.assertEquals("jbossorg", tested.lookup("ORG").get("code"));
+		Assert.assertEquals("jboss.org", tested.lookup("ORG").get("name"));
+		Assert.assertEquals("Infinispan, \"data grid\"", tested.lookup("ISPN").get("name"));
+		Assert.assertEquals(2, tested.lookup("ISPN").size());
+	}
+
+	@Test
+	public void loadJson() throws Exception {
+		// case - array of records, key field with more values, only result fields kept
+		FileLookupSource tested = new FileLookupSource(getTestFile("/LookupSource_data.json"), "jbossorg_jira_project",
+				RESULT_FIELDS);
+		Assert.assertEquals(3, tested.size());
+		Assert.assertEquals("jbossorg", tested.lookup("ORG").get("code"));
+		Assert.assertEquals("jboss.org", tested.lookup("ORGA").get("name"));
+		Assert.assertEquals("infinispan", tested.lookup("ISPN").get("code"));
+		Assert.assertFalse(tested.lookup("ISPN").containsKey("other"));
+
+		// case - all fields kept
+		tested = new FileLookupSource(getTestFile("/LookupSource_data.json"), "jbossorg_jira_project", null);
+		Assert.assertEquals("not loaded", tested.lookup("ISPN").get("other"));
+
+		// case - object with records
+		tested = new FileLookupSource(getTestFile("/LookupSource_data-object.json"), null, RESULT_FIELDS);
+		Assert.assertEquals(2, tested.size());
+		Assert.assertEquals("jboss.org", tested.lookup("ORG").get("name"));
+		Assert.assertEquals("infinispan", tested.lookup("ISPN").get("code"));
+	}
+
+	@Test
+	public void parseCsvLine() {
+		Assert.assertEquals(Arrays.asList(""), FileLookupSource.parseCsvLine(""));
+		Assert.assertEquals(Arrays.asList("a", "", "c"), FileLookupSource.parseCsvLine("a,,c"));
+		Assert.assertEquals(Arrays.asList("a,b", "c\"d", ""), FileLookupSource.parseCsvLine("\"a,b\",\"c\"\"d\","));
+	}
+
+	protected static File getTestFile(String path) throws Exception {
+		return new File(FileLookupSourceTest.class.getResource(path).toURI());
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LatencyHistogram}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketIndex() {
+		// case - small values have exact buckets
+		for (int i = 0; i < LatencyHistogram.SUB_BUCKET_COUNT; i++) {
+			Assert.assertEquals(i, LatencyHistogram.bucketIndex(i));
+			Assert.assertEquals(i, LatencyHistogram.bucketHighestValue(i));
+		}
+		Assert.assertEquals(0, LatencyHistogram.bucketIndex(-10));
+
+		// case - each value is in bucket which covers it, buckets are ordered and relative error is bounded
+		long[] values = new long[] { 16, 17, 31, 32, 33, 100, 1000, 12345, 999999, 123456789L, Long.MAX_VALUE / 3,
+				Long.MAX_VALUE };
+		int previousIndex = -1;
+		for (long value : values) {
+			int index = LatencyHistogram.bucketIndex(value);
+			Assert.assertTrue(index >= previousIndex);
+			Assert.assertTrue(index < LatencyHistogram.BUCKET_COUNT);
+			long highest = LatencyHistogram.bucketHighestValue(index);
+			Assert.assertTrue("Value " + value, highest >= value);
+			Assert.assertTrue("Value " + value, (highest - value) <= value / LatencyHistogram.SUB_BUCKET_COUNT);
+			if (index > 0)
+				Assert.assertTrue("Value " + value, LatencyHistogram.bucketHighestValue(index - 1) < value);
+			previousIndex = index;
+		}
+		Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void percentiles() {
+		LatencyHistogram tested = new LatencyHistogram();
+		long[] counts = tested.getCounts();
+		Assert.assertEquals(0, LatencyHistogram.getTotalCount(counts));
+		Assert.assertEquals(0, LatencyHistogram.getValueAtPercentile(counts, 50));
+		Assert.assertEquals(0, LatencyHistogram.getMaxValue(counts));
+
+		for (int i = 1; i <= 100; i++) {
+			tested.record(i * 1000);
+		}
+		tested.record(5000000, 0);
+		counts = tested.getCounts();
+		Assert.assertEquals(100, LatencyHistogram.getTotalCount(counts));
+		assertWithinPrecision(50000, LatencyHistogram.getValueAtPercentile(counts, 50));
+		assertWithinPrecision(90000, LatencyHistogram.getValueAtPercentile(counts, 90));
+		assertWithinPrecision(99000, LatencyHistogram.getValueAtPercentile(counts, 99));
+		assertWithinPrecision(100000, LatencyHistogram.getValueAtPercentile(counts, 100));
+		assertWithinPrecision(1000, LatencyHistogram.getValueAtPercentile(counts, 0));
+		assertWithinPrecision(100000, LatencyHistogram.getMaxValue(counts));
+
+		// case - counted record
+		tested.record(5000000, 100);
+		counts = tested.getCounts();
+		Assert.assertEquals(200, LatencyHistogram.getTotalCount(counts));
+		assertWithinPrecision(5000000, LatencyHistogram.getValueAtPercentile(counts, 51));
+		assertWithinPrecision(5000000, LatencyHistogram.getMaxValue(counts));
+	}
+
+	private static void assertWithinPrecision(long expected, long actual) {
+		Assert.assertTrue("Expected " + expected + " but was " + actual, actual >= expected
+				&& actual - expected <= expected / LatencyHistogram.SUB_BUCKET_COUNT);
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.ElasticSearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link LazyJsonMap}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LazyJsonMapTest {
+
+	private static final String JSON = "{ \"key\" : \"ORG-1\", \"fields\" : {\n  \"summary\" : \"Test \\\"issue\\\" \\u00e9\\n\",\n"
+			+ "  \"votes\" : 10, \"big\" : 12345678901,\n"
+			+ "  \"ratio\" : 1.5e2, \"resolved\" : false, \"assignee\" : null, \"labels\" : [ \"a\", {\"b\" : [1, 2]}, [] ],\n"
+			+ "  \"empty\" : { } },\n\"comments\" : [ {\"body\":\"text with } and ] in it\"} ], \"\\u0041\" : true }";
+
+	@Test
+	public void constructor() {
+		try {
+			new LazyJsonMap((byte[]) null, 0, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LazyJsonMap(new byte[10], 5, 6);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		byte[] bytes = ("xx" + JSON + "yy").getBytes();
+		LazyJsonMap tested = new LazyJsonMap(new BytesArray(bytes, 2, bytes.length - 4));
+		Assert.assertFalse(tested.isIndexed());
+		Assert.assertEquals("ORG-1", tested.get("key"));
+		Assert.assertTrue(tested.isIndexed());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void get() throws Exception {
+		LazyJsonMap tested = new LazyJsonMap(JSON.getBytes("UTF-8"));
+		Assert.assertEquals(4, tested.size());
+		Assert.assertEquals("ORG-1", tested.get("key"));
+		Assert.assertEquals(Boolean.TRUE, tested.get("A"));
+		Assert.assertNull(tested.get("unknown"));
+		Assert.assertTrue(tested.containsKey("comments"));
+
+		// case - nested object is lazy too
+		LazyJsonMap fields = (LazyJsonMap) tested.get("fields");
+		Assert.assertFalse(fields.isIndexed());
+		Assert.assertEquals("Test \"issue\" \u00e9\n", fields.get("summary"));
+		Assert.assertEquals(new Integer(10), fields.get("votes"));
+		Assert.assertEquals(new Long(12345678901L), fields.get("big"));
+		Assert.assertEquals(new Double(150), fields.get("ratio"));
+		Assert.assertEquals(Boolean.FALSE, fields.get("resolved"));
+		Assert.assertNull(fields.get("assignee"));
+		Assert.assertTrue(fields.containsKey("assignee"));
+		Assert.assertTrue(((Map<String, Object>) fields.get("empty")).isEmpty());
+		List<Object> labels = (List<Object>) fields.get("labels");
+		Assert.assertEquals(3, labels.size());
+		Assert.assertEquals("a", labels.get(0));
+		Assert.assertEquals(2, ((List<Object>) ((Map<String, Object>) labels.get(1)).get("b")).get(1));
+		Assert.assertTrue(((List<Object>) labels.get(2)).isEmpty());
+		Assert.assertEquals("[text with } and ] in it]", XContentMapValues.extractValue("comments.body", tested).toString());
+
+		// case - same content as parsed by ElasticSearch
+		Map<String, Object> expected = XContentFactory.xContent(XContentType.JSON).createParser(JSON).mapAndClose();
+		Assert.assertEquals(expected, new LazyJsonMap(JSON.getBytes("UTF-8")));
+
+		// case - number out of long range
+		Assert.assertEquals(new BigInteger("123456789012345678901234567890"),
+				new LazyJsonMap("{\"a\":123456789012345678901234567890}".getBytes()).get("a"));
+	}
+
+	@Test
+	public void get_invalidJson() {
+		String[] invalid = new String[] { "", "[]", "{", "{\"a\"}", "{\"a\":}", "{\"a\":1,}", "{\"a\":\"b}", "{\"a\":[1}",
+				"{\"a\":abc}" };
+		for (String json : invalid) {
+			try {
+				new LazyJsonMap(json.getBytes()).get("a");
+				Assert.fail("ElasticSearchParseException must be thrown for " + json);
+			} catch (ElasticSearchParseException e) {
+				// OK
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void writeTo() throws Exception {
+		// case - untouched content is copied verbatim
+		LazyJsonMap tested = new LazyJsonMap(JSON.getBytes("UTF-8"));
+		Assert.assertEquals(JSON, tested.toBytes().toUtf8());
+		tested.get("key");
+		Assert.assertEquals("{\"key\":\"ORG-1\",\"fields\":" + JSON.substring(JSON.indexOf("{\n"), JSON.indexOf("},\n") + 1)
+				+ ",\"comments\":[ {\"body\":\"text with } and ] in it\"} ],\"A\":true}", tested.toBytes().toUtf8());
+
+		// case - changed content
+		Map<String, Object> fields = (Map<String, Object>) tested.get("fields");
+		fields.put("votes", 11);
+		fields.remove("labels");
+		fields.put("new", "line\n\"quoted\" \u00e9\u0001");
+		((Map<String, Object>) fields.get("empty")).put("list", new Object[] { 1L, 2.5d, null });
+		tested.remove("comments");
+		Map<String, Object> added = new HashMap<String, Object>();
+		added.put("a", new ArrayList<Object>());
+		tested.put("added", added);
+		tested.put("key", "ORG-2");
+
+		String json = tested.toBytes().toUtf8();
+		Map<String, Object> parsed = XContentFactory.xContent(XContentType.JSON).createParser(json).mapAndClose();
+		Assert.assertEquals(4, parsed.size());
+		Assert.assertEquals("ORG-2", parsed.get("key"));
+		Assert.assertEquals(11, XContentMapValues.extractValue("fields.votes", parsed));
+		Assert.assertNull(XContentMapValues.extractValue("fields.labels", parsed));
+		Assert.assertEquals("Test \"issue\" \u00e9\n", XContentMapValues.extractValue("fields.summary", parsed));
+		Assert.assertEquals("line\n\"quoted\" \u00e9\u0001", XContentMapValues.extractValue("fields.new", parsed));
+		Assert.assertEquals("[1, 2.5, null]", XContentMapValues.extractValue("fields.empty.list", parsed).toString());
+		Assert.assertEquals(new ArrayList<Object>(), XContentMapValues.extractValue("added.a", parsed));
+		// unchanged value is copied verbatim, with original escapes
+		Assert.assertTrue(json.contains("\"summary\":\"Test \\\"issue\\\" \\u00e9\\n\""));
+
+		// case - cleared and changed by iterator
+		tested = new LazyJsonMap(JSON.getBytes("UTF-8"));
+		for (Iterator<Map.Entry<String, Object>> it = tested.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Object> e = it.next();
+			if (e.getKey().equals("key")) {
+				e.setValue("ORG-3");
+			} else if (!e.getKey().equals("A")) {
+				it.remove();
+			}
+		}
+		Assert.assertEquals("{\"key\":\"ORG-3\",\"A\":true}", tested.toBytes().toUtf8());
+		tested.clear();
+		Assert.assertEquals("{}", tested.toBytes().toUtf8());
+	}
+
+	@Test
+	public void preprocessorChain() throws Exception {
+		AddValuePreprocessor preprocessor = new AddValuePreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(AddValuePreprocessor.CFG_FIELD, "fields.project");
+		settings.put(AddValuePreprocessor.CFG_VALUE, "{key}");
+		preprocessor.init("Test", Mockito.mock(org.elasticsearch.client.Client.class), settings);
+
+		LazyJsonMap tested = new LazyJsonMap(JSON.getBytes("UTF-8"));
+		preprocessor.preprocessData(tested);
+		Assert.assertEquals("ORG-1", XContentMapValues.extractValue("fields.project", tested));
+		Assert.assertTrue(tested.toBytes().toUtf8().contains(",\"project\":\"ORG-1\"}"));
+	}
+
+}
@@ -0,0 +1,275 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LookupCacheFile}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LookupCacheFileTest {
+
+	@Test
+	public void constructor() throws Exception {
+		try {
+			new LookupCacheFile(null, "g");
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCacheFile(new File("test.lookupcache"), null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCacheFile(new File("test.lookupcache"), "g", 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		Assert.assertEquals(LookupCacheFile.DEFAULT_COMPACT_MIN_LENGTH, new LookupCacheFile(new File("test.lookupcache"),
+				"g").getCompactMinLength());
+	}
+
+	@Test
+	public void openAppend() throws Exception {
+		File file = createTempFile();
+		try {
+			// case - new file is created in non existing directory
+			LookupCacheFile tested = new LookupCacheFile(file, "g1");
+			Assert.assertFalse(tested.isOpen());
+			tested.append("A", value("a"), 0);
+			Assert.assertEquals(0, tested.open(newCache()));
+			Assert.assertTrue(tested.isOpen());
+			Assert.assertTrue(file.isFile());
+
+			tested.append("A", value("a"), 0);
+			tested.append("B", value("b"), 0);
+			tested.append("A", value("a2"), 0);
+			tested.append(10, new HashMap<String, Object>(), 0);
+			tested.append("E", value("e"), 100);
+			tested.close();
+			Assert.assertFalse(tested.isOpen());
+
+			// case - values are loaded, later value of same key wins
+			{
+				LookupCache<Object, Map<String, Object>> cache = newCache();
+				Assert.assertEquals(4, tested.open(cache));
+				Assert.assertEquals("a2", cache.get("A").get("name"));
+				Assert.assertEquals("b", cache.get("B").get("name"));
+				Assert.assertTrue(cache.get(10).isEmpty());
+				Assert.assertEquals("e", cache.get("E").get("name"));
+				tested.close();
+			}
+
+			// case - expired values are not loaded
+			{
+				Thread.sleep(150);
+				LookupCache<Object, Map<String, Object>> cache = newCache();
+				Assert.assertEquals(3, tested.open(cache));
+				Assert.assertNull(cache.get("E"));
+				Assert.assertEquals("a2", cache.get("A").get("name"));
+				tested.close();
+			}
+
+			// case - file is discarded if generation doesn't match
+			{
+				LookupCacheFile other = new LookupCacheFile(file, "g2");
+				Assert.assertEquals(0, other.open(newCache()));
+				other.append("C", value("c"), 0);
+				other.close();
+				LookupCache<Object, Map<String, Object>> cache = newCache();
+				Assert.assertEquals(0, tested.open(cache));
+				Assert.assertNull(cache.get("C"));
+				tested.close();
+			}
+		} finally {
+			deleteTempFile(file);
+		}
+	}
+
+	@Test
+	public void open_corruptedFile() throws Exception {
+		File file = createTempFile();
+		try {
+			LookupCacheFile tested = new LookupCacheFile(file, "g1");
+			tested.open(newCache());
+			tested.append("A", value("a"), 0);
+			tested.append("B", value("b"), 0);
+			tested.close();
+			long validLength = file.length();
+
+			// case - incomplete record at the end of file is truncated
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.seek(validLength);
+			raf.writeInt(1000);
+			raf.writeInt(0);
+			raf.write(new byte[] { 1, 2, 3 });
+			raf.close();
+			{
+				LookupCache<Object, Map<String, Object>> cache = newCache();
+				Assert.assertEquals(2, tested.open(cache));
+				Assert.assertEquals("b", cache.get("B").get("name"));
+				Assert.assertEquals(validLength, file.length());
+				tested.append("C", value("c"), 0);
+				tested.close();
+			}
+
+			// case - record with invalid checksum and all following are ignored
+			raf = new RandomAccessFile(file, "rw");
+			raf.seek(validLength + 8);
+			raf.write(0xFF);
+			raf.close();
+			{
+				LookupCache<Object, Map<String, Object>> cache = newCache();
+				Assert.assertEquals(2, tested.open(cache));
+				Assert.assertNull(cache.get("C"));
+				Assert.assertEquals(validLength, file.length());
+				tested.close();
+			}
+
+			// case - file with invalid header is rewritten
+			raf = new RandomAccessFile(file, "rw");
+			raf.writeInt(0);
+			raf.close();
+			{
+				Assert.assertEquals(0, tested.open(newCache()));
+				tested.append("D", value("d"), 0);
+				tested.close();
+				LookupCache<Object, Map<String, Object>> cache = newCache();
+				Assert.assertEquals(1, tested.open(cache));
+				Assert.assertEquals("d", cache.get("D").get("name"));
+				tested.close();
+			}
+		} finally {
+			deleteTempFile(file);
+		}
+	}
+
+	@Test
+	public void open_compaction() throws Exception {
+		File file = createTempFile();
+		try {
+			LookupCacheFile tested = new LookupCacheFile(file, "g1");
+			tested.open(newCache());
+			for (int i = 0; i < 10; i++) {
+				tested.append("A", value("a" + i), 0);
+			}
+			tested.append("B", value("b"), 0);
+			tested.close();
+			long length = file.length();
+
+			LookupCache<Object, Map<String, Object>> cache = newCache();
+			Assert.assertEquals(2, tested.open(cache));
+			tested.close();
+			Assert.assertTrue(file.length() < length / 2);
+			Assert.assertEquals("a9", cache.get("A").get("name"));
+
+			cache = newCache();
+			Assert.assertEquals(2, tested.open(cache));
+			Assert.assertEquals("a9", cache.get("A").get("name"));
+			Assert.assertEquals("b", cache.get("B").get("name"));
+			tested.close();
+		} finally {
+			deleteTempFile(file);
+		}
+	}
+
+	@Test
+	public void append_compaction() throws Exception {
+		File file = createTempFile();
+		try {
+			LookupCacheFile tested = new LookupCacheFile(file, "g1", 1);
+			tested.open(newCache());
+			tested.append("A", value("a"), 0);
+			tested.close();
+			long oneRecordLength = file.length();
+
+			// case - file is compacted by writer when it grows over threshold
+			tested.open(newCache());
+			for (int i = 0; i < 100; i++) {
+				tested.append("A", value("a" + i), 0);
+			}
+			tested.close();
+			Assert.assertTrue("File length: " + file.length(), file.length() <= LookupCacheFile.COMPACT_RATIO
+					* oneRecordLength);
+			LookupCache<Object, Map<String, Object>> cache = newCache();
+			Assert.assertEquals(1, tested.open(cache));
+			Assert.assertEquals("a99", cache.get("A").get("name"));
+
+			// case - value which can't be serialized is skipped, following are written
+			Map<String, Object> invalid = new HashMap<String, Object>();
+			invalid.put("name", new Object());
+			tested.append("B", invalid, 0);
+			tested.append("C", value("c"), 0);
+			tested.close();
+			cache = newCache();
+			Assert.assertEquals(2, tested.open(cache));
+			Assert.assertNull(cache.get("B"));
+			Assert.assertEquals("c", cache.get("C").get("name"));
+			tested.close();
+			Assert.assertEquals(0, tested.getDroppedCount());
+		} finally {
+			deleteTempFile(file);
+		}
+	}
+
+	@Test
+	public void open_maxRecords() throws Exception {
+		File file = createTempFile();
+		try {
+			LookupCacheFile tested = new LookupCacheFile(file, "g1");
+			tested.open(newCache());
+			for (int i = 0; i < 10; i++) {
+				tested.append("K" + i, value("v" + i), 0);
+			}
+			tested.close();
+
+			// case - only last written records fitting into the cache are kept
+			LookupCache<Object, Map<String, Object>> cache = new LookupCache<Object, Map<String, Object>>(3, 0);
+			Assert.assertEquals(3, tested.open(cache));
+			Assert.assertNull(cache.get("K6"));
+			Assert.assertEquals("v7", cache.get("K7").get("name"));
+			Assert.assertEquals("v9", cache.get("K9").get("name"));
+			tested.close();
+		} finally {
+			deleteTempFile(file);
+		}
+	}
+
+	protected static LookupCache<Object, Map<String, Object>> newCache() {
+		return new LookupCache<Object, Map<String, Object>>(100, 0);
+	}
+
+	protected static Map<String, Object> value(String name) {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		ret.put("name", name);
+		return ret;
+	}
+
+	protected static File createTempFile() throws Exception {
+		File dir = File.createTempFile("lookupcache", "");
+		dir.delete();
+		return new File(dir, "test.lookupcache");
+	}
+
+	protected static void deleteTempFile(File file) {
+		file.delete();
+		file.getParentFile().delete();
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LookupCache}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LookupCacheTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new LookupCache<String, String>(0, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCache<String, String>(10, -1);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		LookupCache<String, String> tested = new LookupCache<String, String>(10, 100);
+		Assert.assertEquals(10, tested.getMaxEntries());
+		Assert.assertEquals(100, tested.getTtl());
+	}
+
+	@Test
+	public void getPut() {
+		LookupCache<String, String> tested = new LookupCache<String, String>(10, 0);
+		Assert.assertNull(tested.get("a"));
+		Assert.assertEquals(0, tested.getHitCount());
+		Assert.assertEquals(1, tested.getMissCount());
+
+		tested.put("a", "va");
+		Assert.assertEquals("va", tested.get("a"));
+		Assert.assertEquals(1, tested.getHitCount());
+		Assert.assertEquals(1, tested.getMissCount());
+
+		// case - rewrite
+		tested.put("a", "va2");
+		Assert.assertEquals("va2", tested.get("a"));
+		Assert.assertEquals(1, tested.size());
+
+		// case - null is not cached
+		tested.put("b", null);
+		Assert.assertEquals(1, tested.size());
+
+		tested.clear();
+		Assert.assertEquals(0, tested.size());
+		Assert.assertNull(tested.get("a"));
+		Assert.assertEquals(2, tested.getHitCount());
+		Assert.assertEquals(2, tested.getMissCount());
+	}
+
+	@Test
+	public void eviction_lru() {
+		LookupCache<String, String> tested = new LookupCache<String, String>(3, 0);
+		tested.put("a", "va");
+		tested.put("b", "vb");
+		tested.put("c", "vc");
+		// access makes "a" most recently used so "b" is evicted
+		Assert.assertEquals("va", tested.get("a"));
+		tested.put("d", "vd");
+		Assert.assertEquals(3, tested.size());
+		Assert.assertNull(tested.get("b"));
+		Assert.assertEquals("va", tested.get("a"));
+		Assert.assertEquals("vc", tested.get("c"));
+		Assert.assertEquals("vd", tested.get("d"));
+	}
+
+	@Test
+	public void eviction_ttl() throws InterruptedException {
+		LookupCache<String, String> tested = new LookupCache<String, String>(3, 50);
+		tested.put("a", "va");
+		Assert.assertEquals("va", tested.get("a"));
+		Thread.sleep(100);
+		Assert.assertNull(tested.get("a"));
+		Assert.assertEquals(1, tested.getMissCount());
+
+		// case - put renews entry
+		tested.put("a", "va2");
+		Assert.assertEquals("va2", tested.get("a"));
+	}
+
+	@Test
+	public void eviction_entryTtl() throws InterruptedException {
+		LookupCache<String, String> tested = new LookupCache<String, String>(3, 0);
+		tested.put("a", "va");
+		tested.put("b", "vb", 50);
+		Assert.assertEquals("vb", tested.get("b"));
+		Thread.sleep(100);
+		Assert.assertNull(tested.get("b"));
+		Assert.assertEquals("va", tested.get("a"));
+
+		// case - entry ttl may be longer than default one
+		tested = new LookupCache<String, String>(3, 50);
+		tested.put("a", "va");
+		tested.put("b", "vb", 0);
+		Thread.sleep(100);
+		Assert.assertNull(tested.get("a"));
+		Assert.assertEquals("vb", tested.get("b"));
+	}
+
+	@Test
+	public void getIncludingExpired() throws InterruptedException {
+		LookupCache<String, String> tested = new LookupCache<String, String>(3, 50);
+		Assert.assertNull(tested.getIncludingExpired("a"));
+		tested.put("a", "va");
+		Thread.sleep(100);
+		Assert.assertEquals("va", tested.getIncludingExpired("a"));
+		Assert.assertNull(tested.get("a"));
+		Assert.assertEquals(0, tested.getHitCount());
+		Assert.assertEquals(1, tested.getMissCount());
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LookupCircuitBreaker}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class LookupCircuitBreakerTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new LookupCircuitBreaker(0, 0, 10, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCircuitBreaker(101, 0, 10, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCircuitBreaker(50, -1, 10, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCircuitBreaker(50, 0, 0, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCircuitBreaker(50, 0, 10, -1);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new LookupCircuitBreaker(50, 0, 10, 0, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		LookupCircuitBreaker tested = new LookupCircuitBreaker(50, 100, 10, 1000);
+		Assert.assertEquals(LookupCircuitBreaker.DEFAULT_PROBE_TIMEOUT, tested.getProbeTimeout());
+		tested = new LookupCircuitBreaker(50, 100, 10, 1000, 2000);
+		Assert.assertEquals(2000, tested.getProbeTimeout());
+		Assert.assertEquals(50, tested.getFailureRateThreshold());
+		Assert.assertEquals(100, tested.getSlowRequestThreshold());
+		Assert.assertEquals(10, tested.getWindowSize());
+		Assert.assertEquals(1000, tested.getOpenDuration());
+		Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, tested.getState());
+	}
+
+	@Test
+	public void failureRate() {
+		LookupCircuitBreaker tested = new LookupCircuitBreaker(50, 0, 4, 10000);
+
+		// case - not opened before window is full
+		Assert.assertFalse(tested.requestFinished(false, 0));
+		Assert.assertFalse(tested.requestFinished(false, 0));
+		Assert.assertFalse(tested.requestFinished(false, 0));
+		Assert.assertTrue(tested.isRequestAllowed());
+
+		// case - opened when failure rate reached
+		Assert.assertTrue(tested.requestFinished(true, 0));
+		Assert.assertFalse(tested.isRequestAllowed());
+		Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, tested.getState());
+		Assert.assertEquals(LookupCircuitBreaker.NO_PROBE, tested.tryStartProbe());
+
+		// case - outcomes of requests finished while open are ignored
+		Assert.assertFalse(tested.requestFinished(true, 0));
+		Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, tested.getState());
+
+		// case - sliding window, old failures are forgotten
+		tested = new LookupCircuitBreaker(50, 0, 4, 10000);
+		tested.requestFinished(false, 0);
+		for (int i = 0; i < 10; i++) {
+			Assert.assertFalse(tested.requestFinished(true, 0));
+		}
+		Assert.assertFalse(tested.requestFinished(false, 0));
+		Assert.assertTrue(tested.requestFinished(false, 0));
+	}
+
+	@Test
+	public void slowRequest() {
+		LookupCircuitBreaker tested = new LookupCircuitBreaker(100, 100, 2, 10000);
+		Assert.assertFalse(tested.requestFinished(true, 100));
+		Assert.assertFalse(tested.requestFinished(true, 101));
+		Assert.assertTrue(tested.isRequestAllowed());
+		Assert.assertTrue(tested.requestFinished(true, 500));
+		Assert.assertFalse(tested.isRequestAllowed());
+	}
+
+	@Test
+	public void probe() throws InterruptedException {
+		LookupCircuitBreaker tested = new LookupCircuitBreaker(100, 0, 1, 50);
+		tested.requestFinished(false, 0);
+		Assert.assertEquals(LookupCircuitBreaker.NO_PROBE, tested.tryStartProbe());
+		Thread.sleep(100);
+
+		// case - only one probe at a time, failed probe opens breaker again
+		long probe = tested.tryStartProbe();
+		Assert.assertTrue(probe != LookupCircuitBreaker.NO_PROBE);
+		Assert.assertEquals(LookupCircuitBreaker.STATE_HALF_OPEN, tested.getState());
+		Assert.assertEquals(LookupCircuitBreaker.NO_PROBE, tested.tryStartProbe());
+		Assert.assertFalse(tested.isRequestAllowed());
+		Assert.assertFalse(tested.probeFinished(probe, false, 0));
+		Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, tested.getState());
+		Assert.assertEquals(LookupCircuitBreaker.NO_PROBE, tested.tryStartProbe());
+		Thread.sleep(100);
+
+		// case - other requests and stale probe don't decide half open breaker
+		long probe2 = tested.tryStartProbe();
+		Assert.assertTrue(probe2 != LookupCircuitBreaker.NO_PROBE);
+		Assert.assertTrue(probe2 != probe);
+		Assert.assertFalse(tested.requestFinished(true, 0));
+		Assert.assertFalse(tested.requestFinished(false, 0));
+		Assert.assertFalse(tested.probeFinished(probe, true, 0));
+		Assert.assertFalse(tested.probeFinished(LookupCircuitBreaker.NO_PROBE, true, 0));
+		Assert.assertEquals(LookupCircuitBreaker.STATE_HALF_OPEN, tested.getState());
+
+		// case - successful probe closes breaker, its repeated outcome is ignored
+		Assert.assertTrue(tested.probeFinished(probe2, true, 0));
+		Assert.assertTrue(tested.isRequestAllowed());
+		Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, tested.getState());
+		Assert.assertFalse(tested.probeFinished(probe2, false, 0));
+		Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, tested.getState());
+	}
+
+	@Test
+	public void probeTimeout() throws InterruptedException {
+		LookupCircuitBreaker tested = new LookupCircuitBreaker(100, 0, 1, 50, 50);
+		tested.requestFinished(false, 0);
+		Thread.sleep(100);
+
+		// case - unfinished probe opens breaker again after timeout
+		long probe = tested.tryStartProbe();
+		Assert.assertTrue(probe != LookupCircuitBreaker.NO_PROBE);
+		Thread.sleep(100);
+		Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, tested.getState());
+		Assert.assertFalse(tested.probeFinished(probe, true, 0));
+		Assert.assertEquals(LookupCircuitBreaker.STATE_OPEN, tested.getState());
+
+		// case - new probe is allowed after open duration
+		Thread.sleep(100);
+		long probe2 = tested.tryStartProbe();
+		Assert.assertTrue(probe2 != LookupCircuitBreaker.NO_PROBE);
+		Assert.assertTrue(tested.probeFinished(probe2, true, 0));
+		Assert.assertEquals(LookupCircuitBreaker.STATE_CLOSED, tested.getState());
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link MapLookupSource}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class MapLookupSourceTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new MapLookupSource(null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		Map<Object, Map<String, Object>> table = new HashMap<Object, Map<String, Object>>();
+		table.put("ORG", record("jbossorg"));
+		table.put(10, record("ten"));
+		table.put("NULL", null);
+		MapLookupSource tested = new MapLookupSource(table);
+		Assert.assertEquals(2, tested.size());
+
+		// case - table is copied
+		table.get("ORG").put("code", "changed");
+		table.put("ISPN", record("infinispan"));
+		Assert.assertEquals("jbossorg", tested.lookup("ORG").get("code"));
+		Assert.assertTrue(tested.lookup("ISPN").isEmpty());
+	}
+
+	@Test
+	public void lookup() {
+		Map<Object, Map<String, Object>> table = new HashMap<Object, Map<String, Object>>();
+		table.put("ORG", record("jbossorg"));
+		table.put(10, record("ten"));
+		MapLookupSource tested = new MapLookupSource(table);
+
+		Assert.assertEquals("jbossorg", tested.lookup("ORG").get("code"));
+		Assert.assertEquals("ten", tested.lookup("10").get("code"));
+		Assert.assertEquals("ten", tested.lookup(10).get("code"));
+		Assert.assertTrue(tested.lookup("AAA").isEmpty());
+		Assert.assertTrue(tested.lookup((Object) null).isEmpty());
+		try {
+			tested.lookup("ORG").put("code", "changed");
+			Assert.fail("UnsupportedOperationException must be thrown");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+
+		// case - batch
+		Map<Object, Map<String, Object>> ret = tested.lookup(Arrays.asList(new Object[] { "ORG", 10, "AAA", null }),
+				new HashMap<Object, ElasticSearchException>());
+		Assert.assertEquals(2, ret.size());
+		Assert.assertEquals("jbossorg", ret.get("ORG").get("code"));
+		Assert.assertEquals("ten", ret.get(10).get("code"));
+		Assert.assertTrue(tested.isInMemory());
+
+		// case - asynchronous batch is resolved in calling thread
+		PlainActionFuture<Map<Object, Map<String, Object>>> future = PlainActionFuture.newFuture();
+		tested.lookupAsync(Arrays.asList(new Object[] { "ORG", "AAA" }), new HashMap<Object, ElasticSearchException>(),
+				future);
+		Assert.assertTrue(future.isDone());
+		Assert.assertEquals(1, future.actionGet().size());
+	}
+
+	private static Map<String, Object> record(String code) {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		ret.put("code", code);
+		return ret;
+	}
+
+}
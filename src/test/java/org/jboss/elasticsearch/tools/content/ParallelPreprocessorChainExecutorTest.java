@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.common.util.concurrent.jsr166y.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ParallelPreprocessorChainExecutor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class ParallelPreprocessorChainExecutorTest {
+
+	@Test
+	public void constructor() {
+		PreprocessorChain chain = new PreprocessorChain(null);
+		try {
+			new ParallelPreprocessorChainExecutor(chain, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		ParallelPreprocessorChainExecutor tested = new ParallelPreprocessorChainExecutor(chain, 3);
+		Assert.assertEquals(chain, tested.getChain());
+		Assert.assertEquals(3, tested.getParallelism());
+		tested.shutdown();
+		Assert.assertTrue(tested.pool.isShutdown());
+
+		// case - foreign pool is not shut down
+		ForkJoinPool pool = new ForkJoinPool(2);
+		tested = new ParallelPreprocessorChainExecutor(chain, pool);
+		Assert.assertEquals(2, tested.getParallelism());
+		tested.shutdown();
+		Assert.assertFalse(pool.isShutdown());
+		pool.shutdown();
+	}
+
+	@Test
+	public void processBatch() {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(PreprocessorChainTest.createAddValuePreprocessor("p1", "field1", "value1"));
+		preprocs.add(PreprocessorChainTest.createRequiredValidatorPreprocessor("p2", "required"));
+		preprocs.add(PreprocessorChainTest.createAddValuePreprocessor("p3", "field3", "value{id}"));
+		ParallelPreprocessorChainExecutor tested = new ParallelPreprocessorChainExecutor(new PreprocessorChain(preprocs), 4);
+		try {
+
+			// case - empty batches
+			Assert.assertTrue(tested.processBatch(null).getDocuments().isEmpty());
+			Assert.assertFalse(tested.processBatch(null).hasFailures());
+			Assert.assertTrue(tested.processBatch(new ArrayList<Map<String, Object>>()).getDocuments().isEmpty());
+
+			// case - order is stable and failures are collected
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			for (int i = 0; i < 1000; i++) {
+				Map<String, Object> data = new HashMap<String, Object>();
+				data.put("id", i);
+				if (i % 7 != 0)
+					data.put("required", "yes");
+				batch.add(data);
+			}
+			ChainBatchResult ret = tested.processBatch(batch);
+			Assert.assertEquals(1000, ret.getDocuments().size());
+			Assert.assertTrue(ret.hasFailures());
+			Assert.assertEquals(143, ret.getFailures().size());
+			for (int i = 0; i < 1000; i++) {
+				if (i % 7 == 0) {
+					Assert.assertTrue(ret.isFailed(i));
+					Assert.assertNull(ret.getDocuments().get(i));
+					Assert.assertEquals(InvalidDataException.class, ret.getFailures().get(i).getClass());
+					// failed document is not processed by next preprocessors
+					Assert.assertNull(batch.get(i).get("field3"));
+				} else {
+					Assert.assertFalse(ret.isFailed(i));
+					Map<String, Object> doc = ret.getDocuments().get(i);
+					Assert.assertTrue(batch.get(i) == doc);
+					Assert.assertEquals(i, doc.get("id"));
+					Assert.assertEquals("value1", doc.get("field1"));
+					Assert.assertEquals("value" + i, doc.get("field3"));
+				}
+			}
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,416 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test for {@link PreprocessorChain}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class PreprocessorChainTest {
+
+	@Test
+	public void constructor() {
+		PreprocessorChain tested = new PreprocessorChain(null);
+		Assert.assertEquals(0, tested.size());
+		Assert.assertTrue(tested.getPreprocessors().isEmpty());
+
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(createAddValuePreprocessor("p1", "field1", "value1"));
+		preprocs.add(createAddValuePreprocessor("p2", "field2", "value2"));
+		tested = new PreprocessorChain(preprocs);
+		Assert.assertEquals(2, tested.size());
+		Assert.assertEquals("p1", tested.getPreprocessors().get(0).getName());
+		Assert.assertEquals("p2", tested.getPreprocessors().get(1).getName());
+
+		// case - chain is not affected by changes of list passed to constructor
+		preprocs.clear();
+		Assert.assertEquals(2, tested.size());
+	}
+
+	@Test
+	public void process() {
+		// case - empty chain
+		{
+			PreprocessorChain tested = new PreprocessorChain(null);
+			Assert.assertNull(tested.process(null));
+			Map<String, Object> data = new HashMap<String, Object>();
+			Assert.assertEquals(data, tested.process(data));
+		}
+
+		// case - preprocessors called in order
+		{
+			List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+			preprocs.add(createAddValuePreprocessor("p1", "field1", "value1"));
+			preprocs.add(createAddValuePreprocessor("p2", "field2", "{field1}-value2"));
+			PreprocessorChain tested = new PreprocessorChain(preprocs);
+
+			Assert.assertNull(tested.process(null));
+			Map<String, Object> data = new HashMap<String, Object>();
+			Map<String, Object> ret = tested.process(data);
+			Assert.assertEquals(data, ret);
+			Assert.assertEquals("value1", ret.get("field1"));
+			Assert.assertEquals("value1-value2", ret.get("field2"));
+		}
+
+		// case - data returned from preprocessor are passed to the next one
+		{
+			Map<String, Object> data = new HashMap<String, Object>();
+			Map<String, Object> data2 = new HashMap<String, Object>();
+			StructuredContentPreprocessor p1 = Mockito.mock(StructuredContentPreprocessor.class);
+			Mockito.when(p1.preprocessData(data)).thenReturn(data2);
+			List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+			preprocs.add(p1);
+			preprocs.add(createAddValuePreprocessor("p2", "field2", "value2"));
+			PreprocessorChain tested = new PreprocessorChain(preprocs);
+
+			Map<String, Object> ret = tested.process(data);
+			Assert.assertTrue(ret == data2);
+			Assert.assertEquals("value2", data2.get("field2"));
+			Assert.assertTrue(data.isEmpty());
+		}
+	}
+
+	@Test
+	public void processBatch() {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(createAddValuePreprocessor("p1", "field1", "value1"));
+		preprocs.add(createAddValuePreprocessor("p2", "field2", "{field1}-x"));
+		PreprocessorChain tested = new PreprocessorChain(preprocs);
+
+		Assert.assertNull(tested.processBatch(null));
+		Assert.assertTrue(tested.processBatch(new ArrayList<Map<String, Object>>()).isEmpty());
+
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < 5; i++) {
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("id", i);
+			batch.add(data);
+		}
+		List<Map<String, Object>> ret = tested.processBatch(batch);
+		Assert.assertEquals(5, ret.size());
+		for (int i = 0; i < 5; i++) {
+			Assert.assertTrue(batch.get(i) == ret.get(i));
+			Assert.assertEquals(i, ret.get(i).get("id"));
+			Assert.assertEquals("value1", ret.get(i).get("field1"));
+			Assert.assertEquals("value1-x", ret.get(i).get("field2"));
+		}
+
+		// case - batch preprocessor is invoked once for whole batch, others for each document
+		final AtomicInteger batchCount = new AtomicInteger();
+		final AtomicInteger documentCount = new AtomicInteger();
+		StructuredContentPreprocessor batchPreprocessor = new StructuredContentPreprocessorBase() {
+			@Override
+			public void init(Map<String, Object> settings) throws SettingsException {
+			}
+
+			@Override
+			public Map<String, Object> preprocessData(Map<String, Object> data) {
+				documentCount.incrementAndGet();
+				return data;
+			}
+
+			@Override
+			public List<Map<String, Object>> preprocessBatch(List<Map<String, Object>> batch) {
+				batchCount.incrementAndGet();
+				return super.preprocessBatch(batch);
+			}
+		};
+		StructuredContentPreprocessor documentPreprocessor = new StructuredContentPreprocessor() {
+			@Override
+			public void init(String name, Client client, Map<String, Object> settings) throws SettingsException {
+			}
+
+			@Override
+			public String getName() {
+				return "document";
+			}
+
+			@Override
+			public Map<String, Object> preprocessData(Map<String, Object> data) {
+				documentCount.incrementAndGet();
+				return data;
+			}
+		};
+		List<StructuredContentPreprocessor> preprocs2 = new ArrayList<StructuredContentPreprocessor>();
+		preprocs2.add(batchPreprocessor);
+		preprocs2.add(documentPreprocessor);
+		Assert.assertEquals(5, new PreprocessorChain(preprocs2).processBatch(batch).size());
+		Assert.assertEquals(1, batchCount.get());
+		Assert.assertEquals(10, documentCount.get());
+
+		// case - exception aborts batch
+		preprocs.add(createRequiredValidatorPreprocessor("p3", "required"));
+		tested = new PreprocessorChain(preprocs);
+		try {
+			tested.processBatch(batch);
+			Assert.fail("InvalidDataException must be thrown");
+		} catch (InvalidDataException e) {
+			// OK
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void processBatch_pool() {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(createAddValuePreprocessor("p1", "author.name", "John"));
+		PreprocessorChain tested = new PreprocessorChain(preprocs);
+		StructurePool pool = new StructurePool();
+
+		// case - no pool
+		Assert.assertNull(tested.processBatch(null, null));
+		Assert.assertNull(tested.processBatch(null, pool));
+
+		List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < 3; i++) {
+			batch.add(new HashMap<String, Object>());
+		}
+		List<Map<String, Object>> ret = tested.processBatch(batch, pool);
+		Assert.assertEquals(3, ret.size());
+		Assert.assertEquals("John", XContentMapValues.extractValue("author.name", ret.get(0)));
+		Assert.assertEquals(3, pool.getUsedCount());
+		Assert.assertNull(StructurePool.current());
+
+		// case - structures are reused after release
+		Map<String, Object> author = (Map<String, Object>) ret.get(0).get("author");
+		pool.release();
+		Assert.assertTrue(author.isEmpty());
+		batch.clear();
+		batch.add(new HashMap<String, Object>());
+		ret = tested.processBatch(batch, pool);
+		Assert.assertEquals(3, pool.getCreatedCount());
+		Assert.assertEquals(1, pool.getReusedCount());
+		Assert.assertEquals("John", XContentMapValues.extractValue("author.name", ret.get(0)));
+
+		// case - pool is unbound on exception
+		preprocs.add(createRequiredValidatorPreprocessor("p2", "required"));
+		tested = new PreprocessorChain(preprocs);
+		try {
+			tested.processBatch(batch, pool);
+			Assert.fail("InvalidDataException must be thrown");
+		} catch (InvalidDataException e) {
+			Assert.assertNull(StructurePool.current());
+		}
+	}
+
+	@Test
+	public void processAsync() throws Exception {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(createAddValuePreprocessor("p1", "field1", "value1"));
+		preprocs.add(createThreadedAsyncPreprocessor("p2", "field2", "{field1}-x"));
+		preprocs.add(createAddValuePreprocessor("p3", "field3", "{field2}-y"));
+		preprocs.add(createRequiredValidatorPreprocessor("p4", "required"));
+		DefaultPreprocessorMetrics metrics = new DefaultPreprocessorMetrics(true);
+		PreprocessorChain tested = new PreprocessorChain(preprocs, metrics);
+
+		// case - empty chain calls listener directly
+		{
+			PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+			Map<String, Object> data = new HashMap<String, Object>();
+			new PreprocessorChain(null).processAsync(data, future);
+			Assert.assertTrue(future.isDone());
+			Assert.assertTrue(data == future.actionGet());
+		}
+
+		// case - preprocessors after async one are invoked when it finishes
+		{
+			PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("required", "yes");
+			tested.processAsync(data, future);
+			Map<String, Object> ret = future.actionGet();
+			Assert.assertTrue(data == ret);
+			Assert.assertEquals("value1", ret.get("field1"));
+			Assert.assertEquals("value1-x", ret.get("field2"));
+			Assert.assertEquals("value1-x-y", ret.get("field3"));
+		}
+
+		// case - exception is passed to listener
+		{
+			PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+			tested.processAsync(new HashMap<String, Object>(), future);
+			try {
+				future.get();
+				Assert.fail("ExecutionException must be thrown");
+			} catch (ExecutionException e) {
+				Assert.assertEquals(InvalidDataException.class, e.getCause().getClass());
+			}
+		}
+
+		// case - async invocations are measured too
+		Map<String, PreprocessorMetricsSnapshot> snapshot = metrics.snapshot();
+		Assert.assertEquals(4, snapshot.size());
+		assertSnapshot(snapshot.get("p2"), 2, 0, 2);
+		assertSnapshot(snapshot.get("p4"), 2, 1, 0);
+
+		// case - exception thrown synchronously by async preprocessor is passed to listener
+		{
+			preprocs.set(1, createFailingAsyncPreprocessor("p2"));
+			PlainActionFuture<Map<String, Object>> future = PlainActionFuture.newFuture();
+			new PreprocessorChain(preprocs, metrics).processAsync(new HashMap<String, Object>(), future);
+			Assert.assertTrue(future.isDone());
+			try {
+				future.get();
+				Assert.fail("ExecutionException must be thrown");
+			} catch (ExecutionException e) {
+				Assert.assertEquals(IllegalStateException.class, e.getCause().getClass());
+			}
+			assertSnapshot(metrics.snapshot().get("p2"), 3, 1, 2);
+		}
+	}
+
+	@Test
+	public void metrics() {
+		// case - no metrics by default
+		Assert.assertTrue(new PreprocessorChain(null).getMetrics() == NoopPreprocessorMetrics.INSTANCE);
+		Assert.assertTrue(new PreprocessorChain(null).getMetrics().snapshot().isEmpty());
+
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(createAddValuePreprocessor("p1", "field1", "value1"));
+		preprocs.add(createRequiredValidatorPreprocessor("p2", "field1"));
+		preprocs.add(createRequiredValidatorPreprocessor("p3", "required"));
+
+		// case - process with modification detection
+		{
+			DefaultPreprocessorMetrics metrics = new DefaultPreprocessorMetrics(true);
+			PreprocessorChain tested = new PreprocessorChain(preprocs, metrics);
+			Assert.assertTrue(tested.getMetrics() == metrics);
+
+			Map<String, Object> data = new HashMap<String, Object>();
+			data.put("required", "value");
+			tested.process(data);
+			data.remove("required");
+			try {
+				tested.process(data);
+				Assert.fail("InvalidDataException must be thrown");
+			} catch (InvalidDataException e) {
+				// OK
+			}
+
+			Map<String, PreprocessorMetricsSnapshot> snapshot = metrics.snapshot();
+			Assert.assertEquals(3, snapshot.size());
+			assertSnapshot(snapshot.get("p1"), 2, 0, 1);
+			assertSnapshot(snapshot.get("p2"), 2, 0, 0);
+			assertSnapshot(snapshot.get("p3"), 2, 1, 0);
+		}
+
+		// case - processBatch without modification detection
+		{
+			DefaultPreprocessorMetrics metrics = new DefaultPreprocessorMetrics();
+			PreprocessorChain tested = new PreprocessorChain(preprocs, metrics);
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			for (int i = 0; i < 5; i++) {
+				Map<String, Object> data = new HashMap<String, Object>();
+				data.put("required", "value");
+				batch.add(data);
+			}
+			Assert.assertEquals(5, tested.processBatch(batch).size());
+
+			Map<String, PreprocessorMetricsSnapshot> snapshot = metrics.snapshot();
+			Assert.assertEquals(3, snapshot.size());
+			assertSnapshot(snapshot.get("p1"), 5, 0, 0);
+			assertSnapshot(snapshot.get("p2"), 5, 0, 0);
+			assertSnapshot(snapshot.get("p3"), 5, 0, 0);
+		}
+	}
+
+	@Test
+	public void getFieldAccess() {
+		List<StructuredContentPreprocessor> preprocessors = new ArrayList<StructuredContentPreprocessor>();
+
+		// case - empty chain
+		Assert.assertTrue(new PreprocessorChain(preprocessors).getFieldAccess().getFields().isEmpty());
+
+		// case - fields merged from all preprocessors
+		preprocessors.add(createAddValuePreprocessor("add", "fields.project", "{key}-{fields.type}"));
+		preprocessors.add(createRequiredValidatorPreprocessor("validate", "fields.project"));
+		FieldAccess fa = new PreprocessorChain(preprocessors).getFieldAccess();
+		Assert.assertFalse(fa.isWholeDocument());
+		Assert.assertEquals("[key, fields.type, fields.project]", fa.getReadFields().toString());
+		Assert.assertEquals("[fields.project]", fa.getWrittenFields().toString());
+
+		// case - preprocessor which doesn't declare fields needs whole document
+		preprocessors.add(new AsyncPreprocessorAdapter(createAddValuePreprocessor("add2", "other", "value")));
+		Assert.assertTrue(new PreprocessorChain(preprocessors).getFieldAccess().isWholeDocument());
+	}
+
+	private static void assertSnapshot(PreprocessorMetricsSnapshot snapshot, long invocationCount, long errorCount,
+			long modifiedCount) {
+		Assert.assertEquals(invocationCount, snapshot.getInvocationCount());
+		Assert.assertEquals(errorCount, snapshot.getErrorCount());
+		Assert.assertEquals(modifiedCount, snapshot.getModifiedCount());
+		Assert.assertTrue(snapshot.getTotalNanos() >= 0);
+		Assert.assertTrue(snapshot.getMaxNanos() >= snapshot.getLatencyAtPercentile(50));
+	}
+
+	protected static StructuredContentPreprocessor createAddValuePreprocessor(String name, String field, Object value) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(AddValuePreprocessor.CFG_FIELD, field);
+		settings.put(AddValuePreprocessor.CFG_VALUE, value);
+		AddValuePreprocessor preproc = new AddValuePreprocessor();
+		preproc.init(name, null, settings);
+		return preproc;
+	}
+
+	/**
+	 * Create async preprocessor which adds value in new thread.
+	 */
+	protected static StructuredContentPreprocessor createThreadedAsyncPreprocessor(String name, String field,
+			Object value) {
+		final AsyncStructuredContentPreprocessor preproc = new AsyncPreprocessorAdapter(createAddValuePreprocessor(name,
+				field, value));
+		return new AsyncPreprocessorAdapter(preproc) {
+			@Override
+			public void preprocessDataAsync(final Map<String, Object> data,
+					final ActionListener<Map<String, Object>> listener) {
+				new Thread() {
+					public void run() {
+						preproc.preprocessDataAsync(data, listener);
+					}
+				}.start();
+			}
+		};
+	}
+
+	/**
+	 * Create async preprocessor which throws exception instead of notifying listener.
+	 */
+	protected static StructuredContentPreprocessor createFailingAsyncPreprocessor(String name) {
+		return new AsyncPreprocessorAdapter(createAddValuePreprocessor(name, "field", "value")) {
+			@Override
+			public void preprocessDataAsync(Map<String, Object> data, ActionListener<Map<String, Object>> listener) {
+				throw new IllegalStateException("preprocessor failed");
+			}
+		};
+	}
+
+	protected static StructuredContentPreprocessor createRequiredValidatorPreprocessor(String name, String field) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(RequiredValidatorPreprocessor.CFG_FIELD, field);
+		RequiredValidatorPreprocessor preproc = new RequiredValidatorPreprocessor();
+		preproc.init(name, null, settings);
+		return preproc;
+	}
+
+}
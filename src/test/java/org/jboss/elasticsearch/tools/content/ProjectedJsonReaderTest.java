@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.ElasticSearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ProjectedJsonReader} and {@link RawJsonValue}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class ProjectedJsonReaderTest {
+
+	private static final String JSON = "{ \"key\" : \"ORG-1\", \"fields\" : {\n  \"summary\" : \"Test \\\"issue\\\"\",\n"
+			+ "  \"votes\" : 10, \"labels\" : [ \"a\", {\"b\" : [1, 2]} ], \"project\" : { \"key\" : \"ORG\" } },\n"
+			+ "\"comments\" : [ {\"author\" : {\"name\" : \"john\", \"mail\" : \"john@test.org\"}, \"body\":\"text } ]\"},"
+			+ " \"nocomment\" ], \"a.b\" : { \"c\" : 1, \"d\" : 2 } }";
+
+	@Test
+	public void constructor() {
+		try {
+			new ProjectedJsonReader(null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		FieldAccess fa = new FieldAccess(Arrays.asList("key"), null);
+		Assert.assertEquals(fa, new ProjectedJsonReader(fa).getFieldAccess());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void read() throws Exception {
+		ProjectedJsonReader tested = new ProjectedJsonReader(new FieldAccess(Arrays.asList("fields.summary",
+				"comments.author.name", "a.b.c"), Arrays.asList("fields.project")));
+
+		byte[] bytes = ("xx" + JSON + "yy").getBytes("UTF-8");
+		Map<String, Object> data = tested.read(new BytesArray(bytes, 2, bytes.length - 4));
+		Assert.assertEquals(4, data.size());
+		Assert.assertEquals("[key, fields, comments, a.b]", data.keySet().toString());
+
+		// case - fields out of projection are raw
+		Assert.assertEquals(new RawJsonValue("\"ORG-1\"".getBytes(), 0, 7), data.get("key"));
+
+		// case - objects on the way contain only projected fields parsed
+		Map<String, Object> fields = (Map<String, Object>) data.get("fields");
+		Assert.assertEquals("Test \"issue\"", fields.get("summary"));
+		Assert.assertTrue(fields.get("votes") instanceof RawJsonValue);
+		Assert.assertEquals("[ \"a\", {\"b\" : [1, 2]} ]", fields.get("labels").toString());
+		Assert.assertEquals("ORG", ((Map<String, Object>) fields.get("project")).get("key"));
+
+		// case - lists on the way
+		List<Object> comments = (List<Object>) data.get("comments");
+		Assert.assertEquals(2, comments.size());
+		Map<String, Object> comment = (Map<String, Object>) comments.get(0);
+		Assert.assertTrue(comment.get("body") instanceof RawJsonValue);
+		Map<String, Object> author = (Map<String, Object>) comment.get("author");
+		Assert.assertEquals("john", author.get("name"));
+		Assert.assertEquals("\"john@test.org\"", author.get("mail").toString());
+		Assert.assertEquals("nocomment", comments.get(1));
+
+		// case - key containing dot
+		Map<String, Object> ab = (Map<String, Object>) data.get("a.b");
+		Assert.assertEquals(new Integer(1), ab.get("c"));
+		Assert.assertTrue(ab.get("d") instanceof RawJsonValue);
+		Assert.assertEquals(new Integer(1), new FieldPath("a.b.c").get(data));
+
+		// case - no projection
+		data = new ProjectedJsonReader(FieldAccess.NONE).read(JSON.getBytes("UTF-8"));
+		Assert.assertEquals(4, data.size());
+		for (Object value : data.values()) {
+			Assert.assertTrue(value instanceof RawJsonValue);
+		}
+
+		// case - whole document
+		data = new ProjectedJsonReader(FieldAccess.WHOLE_DOCUMENT).read(JSON.getBytes("UTF-8"));
+		Assert.assertEquals(parse(JSON), data);
+	}
+
+	@Test
+	public void read_invalidJson() {
+		ProjectedJsonReader tested = new ProjectedJsonReader(new FieldAccess(Arrays.asList("key"), null));
+		assertInvalidJson(tested, "[ 1, 2 ]");
+		assertInvalidJson(tested, "{ \"key\" : \"value }");
+		assertInvalidJson(tested, "{ \"key\" : }");
+		assertInvalidJson(tested, "{ \"key\" : 1 \"other\" : 2 }");
+		assertInvalidJson(tested, "{ \"other\" : [ 1, 2 }");
+	}
+
+	private void assertInvalidJson(ProjectedJsonReader tested, String json) {
+		try {
+			tested.read(json.getBytes());
+			Assert.fail("ElasticSearchParseException must be thrown for " + json);
+		} catch (ElasticSearchParseException e) {
+			// OK
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void writeTo() throws Exception {
+		ProjectedJsonReader tested = new ProjectedJsonReader(new FieldAccess(Arrays.asList("fields.summary"), Arrays
+				.asList("fields.project.name")));
+
+		// case - unchanged document
+		Map<String, Object> data = tested.read(JSON.getBytes("UTF-8"));
+		Assert.assertEquals(parse(JSON), parse(ProjectedJsonReader.toBytes(data).toUtf8()));
+
+		// case - changed document, raw values are copied verbatim
+		new FieldPath("fields.project.name").put(data, "JBoss.org");
+		((Map<String, Object>) data.get("fields")).remove("summary");
+		String json = ProjectedJsonReader.toBytes(data).toUtf8();
+		Assert.assertTrue(json.contains("\"labels\":[ \"a\", {\"b\" : [1, 2]} ]"));
+		Map<String, Object> expected = parse(JSON);
+		Map<String, Object> expectedFields = (Map<String, Object>) expected.get("fields");
+		((Map<String, Object>) expectedFields.get("project")).put("name", "JBoss.org");
+		expectedFields.remove("summary");
+		Assert.assertEquals(expected, parse(json));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void preprocessorChain() throws Exception {
+		List<StructuredContentPreprocessor> preprocessors = new ArrayList<StructuredContentPreprocessor>();
+		preprocessors.add(PreprocessorChainTest.createAddValuePreprocessor("add", "fields.project.name", "{key} project"));
+		preprocessors.add(PreprocessorChainTest.createRequiredValidatorPreprocessor("validate", "fields.summary"));
+		PreprocessorChain chain = new PreprocessorChain(preprocessors);
+
+		ProjectedJsonReader tested = new ProjectedJsonReader(chain.getFieldAccess());
+		Map<String, Object> data = chain.process(tested.read(JSON.getBytes("UTF-8")));
+		Assert.assertTrue(((Map<String, Object>) data.get("fields")).get("labels") instanceof RawJsonValue);
+
+		Map<String, Object> expected = parse(JSON);
+		((Map<String, Object>) ((Map<String, Object>) expected.get("fields")).get("project")).put("name", "ORG-1 project");
+		Assert.assertEquals(expected, parse(ProjectedJsonReader.toBytes(data).toUtf8()));
+	}
+
+	@Test
+	public void rawJsonValue() {
+		try {
+			new RawJsonValue(null, 0, 1);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new RawJsonValue(new byte[10], 5, 6);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		byte[] bytes = "xx{\"a\" : [1, \"b\"]}".getBytes();
+		RawJsonValue tested = new RawJsonValue(bytes, 2, bytes.length - 2);
+		Assert.assertEquals("{\"a\" : [1, \"b\"]}", tested.toString());
+		Assert.assertEquals(bytes.length - 2, tested.length());
+		Assert.assertEquals(tested.toString(), new String(tested.toBytes()));
+		Assert.assertEquals(parse(tested.toString()), tested.parse());
+
+		RawJsonValue other = new RawJsonValue(tested.toBytes(), 0, tested.length());
+		Assert.assertEquals(tested, other);
+		Assert.assertEquals(tested.hashCode(), other.hashCode());
+		Assert.assertFalse(tested.equals(new RawJsonValue(bytes, 1, bytes.length - 1)));
+	}
+
+	private static Map<String, Object> parse(String json) {
+		try {
+			return XContentFactory.xContent(XContentType.JSON).createParser(json).mapAndClose();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -83,6 +83,7 @@ public class RequiredValidatorPreprocessorTest {
 	public void preprocessData() {
 		RequiredValidatorPreprocessor tested = new RequiredValidatorPreprocessor();
 		tested.field = "my_field";
+		tested.compileConfiguration();
 
 		// case - not NPE
 		tested.preprocessData(null);
@@ -132,6 +132,7 @@ public class SimpleValueMapMapperPreprocessorTest {
 
     // case - correct mapping if input data are in map, dot notation for source field
     tested.fieldSource = "source.level1";
+    tested.compileConfiguration();
     {
       Map<String, Object> values = new HashMap<String, Object>();
       Map<String, Object> source = new HashMap<String, Object>();
@@ -149,6 +150,7 @@ public class SimpleValueMapMapperPreprocessorTest {
     // case - default set to original marker
     tested.fieldSource = "source";
     tested.defaultValue = "{" + ValueUtils.PATTERN_KEY_ORIGINAL_VALUE + "}";
+    tested.compileConfiguration();
     {
       Map<String, Object> values = new HashMap<String, Object>();
       values.put("source", "unknown");
@@ -159,6 +161,7 @@ public class SimpleValueMapMapperPreprocessorTest {
     // case - more complicated pattern in default value
     tested.fieldSource = "source";
     tested.defaultValue = "I'm {name} and no map value is found for '{" + ValueUtils.PATTERN_KEY_ORIGINAL_VALUE + "}'";
+    tested.compileConfiguration();
     {
       Map<String, Object> values = new HashMap<String, Object>();
       values.put("source", "unknown");
@@ -169,6 +172,7 @@ public class SimpleValueMapMapperPreprocessorTest {
 
     // case - default not set so nothing in target field
     tested.defaultValue = null;
+    tested.compileConfiguration();
     {
       Map<String, Object> values = new HashMap<String, Object>();
       values.put("source", "unknown");
@@ -178,6 +182,7 @@ public class SimpleValueMapMapperPreprocessorTest {
 
     // case - bad value type in source field, so nothing in target, and WARN in log (not asserted)
     tested.defaultValue = "default";
+    tested.compileConfiguration();
     {
       Map<String, Object> values = new HashMap<String, Object>();
       values.put("source", new HashMap<String, Object>());
@@ -197,6 +202,7 @@ public class SimpleValueMapMapperPreprocessorTest {
 
     // case - dot notation on target field, map exists on target first level
     tested.fieldTarget = "target.value";
+    tested.compileConfiguration();
     {
       Map<String, Object> values = new HashMap<String, Object>();
       Map<String, Object> target = new HashMap<String, Object>();
@@ -210,6 +216,7 @@ public class SimpleValueMapMapperPreprocessorTest {
 
     // case - dot notation on target field, map do not exists on any target level
     tested.fieldTarget = "target.value.level2.level3";
+    tested.compileConfiguration();
     {
       Map<String, Object> values = new HashMap<String, Object>();
       values.put("source", "orig1");
@@ -0,0 +1,146 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link StreamingHtmlStripper}. Output is compared with Jsoup based stripping from
+ * {@link StripHtmlPreprocessor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class StreamingHtmlStripperTest {
+
+	private static final StripHtmlPreprocessor JSOUP_STRIPPER = new StripHtmlPreprocessor();
+
+	private static void assertSameAsJsoup(String html) {
+		Assert.assertEquals("Input: " + html, JSOUP_STRIPPER.stripHtmlJsoup(html), StreamingHtmlStripper.stripHtml(html));
+	}
+
+	@Test
+	public void stripHtml_basic() {
+		Assert.assertNull(StreamingHtmlStripper.stripHtml(null));
+		Assert.assertEquals("", StreamingHtmlStripper.stripHtml(""));
+		Assert.assertEquals("  ", StreamingHtmlStripper.stripHtml("  "));
+		Assert.assertEquals("text", StreamingHtmlStripper.stripHtml("text"));
+		Assert.assertEquals("a b c", StreamingHtmlStripper.stripHtml("<p>a</p><div> b<br/>c</div>"));
+		Assert.assertEquals("abc", StreamingHtmlStripper.stripHtml("a<span>b</span>c"));
+		Assert.assertEquals("a < b & c > d", StreamingHtmlStripper.stripHtml("a &lt; b &amp; c &gt; d"));
+		Assert.assertEquals("a b", StreamingHtmlStripper.stripHtml("a<script>var x = '<b>';</script><style>p {}</style> b"));
+		Assert.assertEquals("a b", StreamingHtmlStripper.stripHtml("a<!-- comment <b>x</b> --> b"));
+		Assert.assertEquals("a b", StreamingHtmlStripper.stripHtml("a&nbsp;&nbsp;<p>&nbsp;</p>\n\t b"));
+	}
+
+	@Test
+	public void stripHtml_sameAsJsoup() {
+		String[] samples = new String[] {
+				"text",
+				"  text with   more \n whitespaces \t ",
+				"<p>Paragraph</p><p>Second paragraph</p>",
+				"<div><h1>Title</h1><p>Some <b>bold</b> and <i>italic</i> text with <a href=\"http://x.org?a=1&amp;b=2\">link</a>.</p></div>",
+				"<ul><li>first</li><li>second <code>code</code></li></ul>",
+				"a<span>b</span>c<font color=\"red\">d</font>e",
+				"a <span> b </span> c",
+				"a<span> </span>b",
+				"a&nbsp;b &nbsp; c&nbsp;&nbsp;",
+				"&lt;b&gt;not a tag&lt;/b&gt; &amp;amp; &quot;quoted&quot; &#39;apos&#39; &#x41; &copy; &unknown; &amp",
+				"&am<span></span>p; text",
+				"a < b and c > d",
+				"a<b",
+				"a</b>c",
+				"a</p>c",
+				"a</br>c",
+				"a</>b",
+				"a</ x>b",
+				"a<!DOCTYPE html>b",
+				"a<?xml version=\"1.0\"?>b",
+				"a<!-- comment -->b",
+				"a<!---->b<!-->c",
+				"a<!-- unfinished comment",
+				"a<script type=\"text/javascript\">if (a < b) document.write('<p>x</p>');</script>b",
+				"a<style>\n p { color: red; }\n</style>b",
+				"a<SCRIPT>x</SCRIPT >b",
+				"a<textarea>x <b>y</b> &amp; z</textarea>b",
+				"a<title>x &amp; <i>y</i></title>b",
+				"a<xmp>x <b>y</b> &amp; z</xmp>b",
+				"<img src=\"a.png\" alt=\"a > b\"/>text<img src='b.png'>",
+				"<a title='x>y' href=x>link</a>",
+				"<pre>  preformatted\n   text  </pre>after",
+				"<table><tr><td>a</td><td>b</td></tr></table>",
+				"<blockquote>quote <cite>author</cite></blockquote>",
+				"<P>Upper <B>case</B> tags</P>",
+				"<p>Some text<br>next line<br/>third line</p>",
+				"<div> </div>x  y",
+				"<unknown>a</unknown><custom-tag>b</custom-tag>",
+				"<b>a<p>b</b>c</p>",
+				"<p>a<p>b<p>c",
+				"<!-- only comment -->",
+				"<script>only script</script>",
+				"<p></p>",
+				"x<image src=a>y",
+				"Říška <b>žluťoučký</b> kůň" };
+		for (String html : samples) {
+			assertSameAsJsoup(html);
+		}
+	}
+
+	private static final String[] GENERATED_BLOCK_ELEMENTS = new String[] { "p", "div", "ul", "li", "pre", "h2",
+			"blockquote" };
+
+	private static final String[] GENERATED_INLINE_ELEMENTS = new String[] { "b", "i", "span", "font size=2",
+			"a href=\"x\"", "code", "em", "strong", "sup", "u", "small", "label" };
+
+	private static final String[] GENERATED_TEXTS = new String[] { "text", "more text", " ", "\n", "\t", "&amp;", "&lt;",
+			"&gt;", "&nbsp;", "&#169;", "&quot;", "a&b", "x<y", "1 > 0", "JIRA-123", "<br>", "<br/>", "</br>",
+			"<img src='x.png'>", "<!-- c -->", "<script>x<y</script>", "</span>", "</p>", "</li>" };
+
+	/**
+	 * Randomly generated documents with properly nested elements (with omitted end tags for <code>p</code> and
+	 * <code>li</code>, and some stray end tags), compared with Jsoup based stripping. Inline elements contain only
+	 * inline content, as output for misnested formatting elements may differ.
+	 */
+	@Test
+	public void stripHtml_sameAsJsoup_generated() {
+		Random random = new Random(12345);
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int count = 1 + random.nextInt(5);
+			for (int j = 0; j < count; j++) {
+				generateContent(sb, random, 3, false);
+			}
+			assertSameAsJsoup(sb.toString());
+		}
+	}
+
+	private static void generateContent(StringBuilder sb, Random random, int depth, boolean inline) {
+		if (depth == 0 || random.nextInt(3) == 0) {
+			sb.append(GENERATED_TEXTS[random.nextInt(GENERATED_TEXTS.length)]);
+			return;
+		}
+		String element;
+		boolean inlineContent = true;
+		if (inline || random.nextBoolean()) {
+			element = GENERATED_INLINE_ELEMENTS[random.nextInt(GENERATED_INLINE_ELEMENTS.length)];
+		} else {
+			element = GENERATED_BLOCK_ELEMENTS[random.nextInt(GENERATED_BLOCK_ELEMENTS.length)];
+			inlineContent = "p".equals(element);
+		}
+		String name = element.split(" ")[0];
+		sb.append("<").append(element).append(">");
+		int count = random.nextInt(4);
+		for (int j = 0; j < count; j++) {
+			generateContent(sb, random, depth - 1, inlineContent);
+		}
+		if (!("p".equals(name) || "li".equals(name)) || random.nextBoolean())
+			sb.append("</").append(name).append(">");
+	}
+
+}
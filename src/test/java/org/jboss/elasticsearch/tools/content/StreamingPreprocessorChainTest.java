@@ -0,0 +1,224 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.ElasticSearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link StreamingPreprocessorChain}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class StreamingPreprocessorChainTest {
+
+	private static final String JSON = "{ \"key\" : \" ORG-1 \", \"fields\" : {\n"
+			+ "  \"description\" : \"<b>Bold</b> text\", \"status\" : \"Resolved\", \"votes\" : 10,\n"
+			+ "  \"labels\" : [ \"a\", {\"b\" : [1, 2]} ], \"priority\" : null },\n"
+			+ "\"comments\" : [ {\"body\" : \"  first comment  \", \"author\" : \"john\"}, \"nocomment\", [ 1 ],"
+			+ " {\"body\" : 12} ], \"summary\" : [ \" list \" ] }";
+
+	@Test
+	public void constructor() {
+		try {
+			new StreamingPreprocessorChain(null);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		PreprocessorChain chain = new PreprocessorChain(null);
+		StreamingPreprocessorChain tested = new StreamingPreprocessorChain(chain);
+		Assert.assertEquals(chain, tested.getChain());
+		Assert.assertTrue(tested.isStreamable());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void process_streamed() throws Exception {
+		List<StructuredContentPreprocessor> preprocessors = new ArrayList<StructuredContentPreprocessor>();
+		preprocessors.add(createTrimPreprocessor("trim key", "key", null));
+		preprocessors.add(createTrimPreprocessor("trim comments", "body", Arrays.asList("comments")));
+		preprocessors.add(createTrimPreprocessor("trim summary", "summary", null));
+		preprocessors.add(createStripHtmlPreprocessor("strip", "fields.description"));
+		preprocessors.add(createMapperPreprocessor("status", "fields.status", null));
+		preprocessors.add(createMapperPreprocessor("priority", "fields.priority", "Unknown {__original}"));
+		preprocessors.add(createMapperPreprocessor("type", "fields.type.name", "Bug"));
+		preprocessors.add(PreprocessorChainTest.createAddValuePreprocessor("project", "fields.project.name", "JBoss"));
+		preprocessors.add(PreprocessorChainTest.createAddValuePreprocessor("labels", "fields.labels", Arrays
+				.asList("x", "y")));
+		Map<String, Object> multi = new HashMap<String, Object>();
+		multi.put("source.name", "jira");
+		multi.put("source.votes", 5);
+		preprocessors.add(createAddMultipleValuesPreprocessor("multi", multi));
+		PreprocessorChain chain = new PreprocessorChain(preprocessors);
+
+		StreamingPreprocessorChain tested = new StreamingPreprocessorChain(chain);
+		Assert.assertTrue(tested.isStreamable());
+		Map<String, Object> expected = chain.process(parse(JSON));
+		Map<String, Object> ret = parse(tested.process(new BytesArray(JSON)));
+		Assert.assertEquals(expected, ret);
+		Assert.assertEquals("ORG-1", ret.get("key"));
+		Assert.assertEquals("first comment", ((Map<String, Object>) ((List<Object>) ret.get("comments")).get(0))
+				.get("body"));
+		Assert.assertEquals("Bold text", XContentMapValues.extractValue("fields.description", ret));
+		Assert.assertEquals("Closed", XContentMapValues.extractValue("fields.status", ret));
+		Assert.assertEquals("Unknown ", XContentMapValues.extractValue("fields.priority", ret));
+		Assert.assertEquals("Bug", XContentMapValues.extractValue("fields.type.name", ret));
+		Assert.assertEquals("[ list ]", ret.get("summary").toString());
+
+		// case - parser and builder API, timestamp added
+		preprocessors.add(createAddCurrentTimestampPreprocessor("timestamp", "fields.indexed"));
+		tested = new StreamingPreprocessorChain(new PreprocessorChain(preprocessors));
+		Assert.assertTrue(tested.isStreamable());
+		XContentParser parser = XContentFactory.xContent(XContentType.JSON).createParser(JSON);
+		XContentBuilder builder = XContentFactory.jsonBuilder();
+		parser.nextToken();
+		tested.process(parser, builder);
+		parser.close();
+		ret = parse(builder.bytes());
+		Assert.assertNotNull(((Map<String, Object>) ret.get("fields")).remove("indexed"));
+		Assert.assertEquals(expected, ret);
+	}
+
+	@Test
+	public void process_notStreamed() throws Exception {
+		List<StructuredContentPreprocessor> preprocessors = new ArrayList<StructuredContentPreprocessor>();
+		preprocessors.add(createTrimPreprocessor("trim key", "key", null));
+
+		// case - preprocessor which is not streamable
+		preprocessors.add(PreprocessorChainTest.createRequiredValidatorPreprocessor("validate", "key"));
+		assertNotStreamed(preprocessors);
+
+		// case - pattern with keys
+		preprocessors.set(1, PreprocessorChainTest.createAddValuePreprocessor("add", "project", "{key}"));
+		assertNotStreamed(preprocessors);
+
+		// case - transformed field is parent of other transformed field
+		preprocessors.set(0, createTrimPreprocessor("trim fields", "fields", null));
+		preprocessors.set(1, PreprocessorChainTest.createAddValuePreprocessor("add", "fields.extra", "value"));
+		assertNotStreamed(preprocessors);
+
+		// case - same object over source bases and field path
+		preprocessors.set(0, createTrimPreprocessor("trim comments", "body", Arrays.asList("comments")));
+		preprocessors.set(1, createTrimPreprocessor("trim comment", "comments.author", null));
+		assertNotStreamed(preprocessors);
+	}
+
+	private void assertNotStreamed(List<StructuredContentPreprocessor> preprocessors) throws Exception {
+		PreprocessorChain chain = new PreprocessorChain(preprocessors);
+		StreamingPreprocessorChain tested = new StreamingPreprocessorChain(chain);
+		Assert.assertFalse(tested.isStreamable());
+		Assert.assertEquals(chain.process(parse(JSON)), parse(tested.process(new BytesArray(JSON))));
+
+		XContentParser parser = XContentFactory.xContent(XContentType.JSON).createParser(JSON);
+		XContentBuilder builder = XContentFactory.jsonBuilder();
+		tested.process(parser, builder);
+		parser.close();
+		Assert.assertEquals(chain.process(parse(JSON)), parse(builder.bytes()));
+	}
+
+	@Test
+	public void process_errors() throws Exception {
+		List<StructuredContentPreprocessor> preprocessors = new ArrayList<StructuredContentPreprocessor>();
+		preprocessors.add(PreprocessorChainTest.createAddValuePreprocessor("add", "fields.votes.value", "value"));
+		StreamingPreprocessorChain tested = new StreamingPreprocessorChain(new PreprocessorChain(preprocessors));
+		Assert.assertTrue(tested.isStreamable());
+
+		// case - value can't be put into field
+		try {
+			tested.process(new BytesArray(JSON));
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals("Cant put value for field 'fields.votes.value' because some element in the path is not Map",
+					e.getMessage());
+		}
+
+		// case - null in path is replaced
+		Assert.assertEquals("value", XContentMapValues.extractValue("fields.votes.value", parse(tested
+				.process(new BytesArray("{\"fields\" : {\"votes\" : null}}")))));
+
+		// case - invalid JSON
+		try {
+			tested.process(new BytesArray("[ 1 ]"));
+			Assert.fail("ElasticSearchParseException must be thrown");
+		} catch (ElasticSearchParseException e) {
+			// OK
+		}
+	}
+
+	protected static StructuredContentPreprocessor createTrimPreprocessor(String name, String field, List<String> bases) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(TrimStringValuePreprocessor.CFG_SOURCE_FIELD, field);
+		settings.put(TrimStringValuePreprocessor.CFG_TARGET_FIELD, field);
+		settings.put(TrimStringValuePreprocessor.CFG_MAX_SIZE, 20);
+		settings.put(TrimStringValuePreprocessor.CFG_source_bases, bases);
+		TrimStringValuePreprocessor preproc = new TrimStringValuePreprocessor();
+		preproc.init(name, null, settings);
+		return preproc;
+	}
+
+	protected static StructuredContentPreprocessor createStripHtmlPreprocessor(String name, String field) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(StripHtmlPreprocessor.CFG_SOURCE_FIELD, field);
+		settings.put(StripHtmlPreprocessor.CFG_TARGET_FIELD, field);
+		StripHtmlPreprocessor preproc = new StripHtmlPreprocessor();
+		preproc.init(name, null, settings);
+		return preproc;
+	}
+
+	protected static StructuredContentPreprocessor createMapperPreprocessor(String name, String field,
+			String valueDefault) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_SOURCE_FIELD, field);
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_TARGET_FIELD, field);
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_DEFAULT, valueDefault);
+		Map<String, String> mapping = new HashMap<String, String>();
+		mapping.put("Resolved", "Closed");
+		settings.put(SimpleValueMapMapperPreprocessor.CFG_VALUE_MAPPING, mapping);
+		SimpleValueMapMapperPreprocessor preproc = new SimpleValueMapMapperPreprocessor();
+		preproc.init(name, null, settings);
+		return preproc;
+	}
+
+	protected static StructuredContentPreprocessor createAddMultipleValuesPreprocessor(String name,
+			Map<String, Object> settings) {
+		AddMultipleValuesPreprocessor preproc = new AddMultipleValuesPreprocessor();
+		preproc.init(name, null, settings);
+		return preproc;
+	}
+
+	protected static StructuredContentPreprocessor createAddCurrentTimestampPreprocessor(String name, String field) {
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(AddCurrentTimestampPreprocessor.CFG_FIELD, field);
+		AddCurrentTimestampPreprocessor preproc = new AddCurrentTimestampPreprocessor();
+		preproc.init(name, null, settings);
+		return preproc;
+	}
+
+	private static Map<String, Object> parse(String json) throws Exception {
+		return XContentFactory.xContent(XContentType.JSON).createParser(json).mapAndClose();
+	}
+
+	private static Map<String, Object> parse(BytesReference json) throws Exception {
+		return XContentFactory.xContent(XContentType.JSON).createParser(json).mapAndClose();
+	}
+
+}
@@ -81,6 +81,18 @@ public class StripHtmlPreprocessorTest {
 							e.getMessage());
 		}
 
+		// case - invalid strip_mode
+		settings.put(StripHtmlPreprocessor.CFG_TARGET_FIELD, "tf");
+		settings.put(StripHtmlPreprocessor.CFG_strip_mode, "unknown");
+		try {
+			tested.init("Test mapper", null, settings);
+			Assert.fail("SettingsException must be thrown");
+		} catch (SettingsException e) {
+			Assert.assertEquals(
+					"Invalid 'settings/strip_mode' configuration value 'unknown' for 'Test mapper' preprocessor, use one of: jsoup, streaming",
+					e.getMessage());
+		}
+
 	}
 
 	@Test
@@ -102,6 +114,21 @@ public class StripHtmlPreprocessorTest {
 			Assert.assertEquals("sf", tested.getFieldSource());
 			Assert.assertEquals("tf", tested.getFieldTarget());
 			Assert.assertEquals(sb, tested.getSourceBases());
+			Assert.assertFalse(tested.isStreaming());
+		}
+
+		// case - strip_mode
+		{
+			Map<String, Object> settings = new HashMap<String, Object>();
+			settings.put(StripHtmlPreprocessor.CFG_SOURCE_FIELD, "sf");
+			settings.put(StripHtmlPreprocessor.CFG_TARGET_FIELD, "tf");
+			settings.put(StripHtmlPreprocessor.CFG_strip_mode, "streaming");
+			tested.init("Test mapper", client, settings);
+			Assert.assertTrue(tested.isStreaming());
+
+			settings.put(StripHtmlPreprocessor.CFG_strip_mode, "jsoup");
+			tested.init("Test mapper", client, settings);
+			Assert.assertFalse(tested.isStreaming());
 		}
 
 	}
@@ -113,6 +140,7 @@ public class StripHtmlPreprocessorTest {
 		tested.name = "Test";
 		tested.fieldSource = "source";
 		tested.fieldTarget = "target";
+		tested.compileConfiguration();
 
 		// case - not NPE
 		tested.preprocessData(null);
@@ -163,6 +191,7 @@ public class StripHtmlPreprocessorTest {
 		{
 			tested.fieldSource = "values2.source";
 			tested.fieldTarget = "values2.target";
+			tested.compileConfiguration();
 			Map<String, Object> values = new HashMap<String, Object>();
 			Map<String, Object> values2 = new HashMap<String, Object>();
 			values.put("values2", values2);
@@ -173,6 +202,21 @@ public class StripHtmlPreprocessorTest {
 			Assert.assertEquals("aa bb cdgh < text in div & then invalid paragraph test pre &",
 					(String) values2.get("target"));
 		}
+
+		// case - process HTML - streaming mode
+		{
+			tested.fieldSource = "source";
+			tested.fieldTarget = "target";
+			tested.streaming = true;
+			tested.compileConfiguration();
+			Map<String, Object> values = new HashMap<String, Object>();
+			values
+					.put(tested.fieldSource,
+							"<b>aa<b>bb<br>cdgh &lt;<div>text in div</div>\n &amp; then\n invalid <p> paragraph <pre>test\npre &amp;</pre>");
+			tested.preprocessData(values);
+			Assert.assertEquals("aa bb cdgh < text in div & then invalid paragraph test pre &",
+					(String) values.get(tested.fieldTarget));
+		}
 	}
 
 	@Test
@@ -183,6 +227,7 @@ public class StripHtmlPreprocessorTest {
 		tested.fieldSource = "source";
 		tested.fieldTarget = "target";
 		tested.sourceBases = Arrays.asList(new String[] { "author", "editor", "comments" });
+		tested.compileConfiguration();
 
 		// case - test it
 		{
@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link StructurePool}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class StructurePoolTest {
+
+	@Test
+	public void constructor() {
+		try {
+			new StructurePool(-1);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		StructurePool tested = new StructurePool(0);
+		Assert.assertEquals(0, tested.getUsedCount());
+		Assert.assertEquals(0, tested.getFreeCount());
+	}
+
+	@Test
+	public void createAndRelease() {
+		StructurePool tested = new StructurePool(1);
+
+		Map<String, Object> m1 = tested.createMap();
+		Map<String, Object> m2 = tested.createMap();
+		List<Object> l1 = tested.createList();
+		Assert.assertTrue(m1.isEmpty());
+		Assert.assertNotSame(m1, m2);
+		m1.put("a", "va");
+		m2.put("b", "vb");
+		l1.add("x");
+		Assert.assertEquals(3, tested.getUsedCount());
+		Assert.assertEquals(3, tested.getCreatedCount());
+
+		// case - released structures are cleared, only maxRetained of each type is kept
+		tested.release();
+		Assert.assertTrue(m1.isEmpty());
+		Assert.assertTrue(m2.isEmpty());
+		Assert.assertTrue(l1.isEmpty());
+		Assert.assertEquals(0, tested.getUsedCount());
+		Assert.assertEquals(2, tested.getFreeCount());
+
+		// case - free structures are reused
+		Map<String, Object> m3 = tested.createMap();
+		Assert.assertTrue(m3 == m1 || m3 == m2);
+		Assert.assertTrue(m3.isEmpty());
+		Assert.assertSame(l1, tested.createList());
+		Assert.assertNotSame(m3, tested.createMap());
+		Assert.assertEquals(2, tested.getReusedCount());
+		Assert.assertEquals(4, tested.getCreatedCount());
+		Assert.assertEquals(0, tested.getFreeCount());
+	}
+
+	@Test
+	public void bind() {
+		StructurePool tested = new StructurePool();
+		Assert.assertNull(StructurePool.current());
+		Assert.assertTrue(StructureUtils.createMap() instanceof CompactMap);
+		StructureUtils.createList();
+		Assert.assertEquals(0, tested.getUsedCount());
+
+		// case - bound pool is used by StructureUtils
+		Assert.assertNull(StructurePool.bind(tested));
+		try {
+			Assert.assertSame(tested, StructurePool.current());
+			StructureUtils.createMap();
+			StructureUtils.createList();
+			StructureUtils.putValueIntoMapOfMaps(StructureUtils.createMap(), "a.b", "value");
+			Assert.assertEquals(4, tested.getUsedCount());
+		} finally {
+			Assert.assertSame(tested, StructurePool.bind(null));
+		}
+		Assert.assertNull(StructurePool.current());
+	}
+
+}
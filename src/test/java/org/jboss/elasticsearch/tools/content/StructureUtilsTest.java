@@ -247,6 +247,7 @@ public class StructureUtilsTest {
 
     StructureUtils.putValueIntoMapOfMaps(map, "field.level1.level12", "value2");
     Assert.assertEquals("value2", XContentMapValues.extractValue("field.level1.level12", map));
+    Assert.assertTrue(XContentMapValues.extractValue("field.level1", map) instanceof CompactMap);
 
     // case - dot notation structure error leads to exception
     try {
@@ -64,4 +64,21 @@ public class StructuredContentPreprocessorFactoryTest {
         ((StructuredContentPreprocessorMock) preprocs.get(1)).settings.get("some_setting_2_2"));
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void createPreprocessorChain() {
+    Client clientMock = mock(Client.class);
+
+    PreprocessorChain chain = StructuredContentPreprocessorFactory.createPreprocessorChain(null, clientMock);
+    Assert.assertEquals(0, chain.size());
+
+    List<Map<String, Object>> preprocessorConfig = (List<Map<String, Object>>) (TestUtils
+        .loadJSONFromClasspathFile("/StructuredContentPreprocessorFactory.json")).get("preprocessors");
+    chain = StructuredContentPreprocessorFactory.createPreprocessorChain(preprocessorConfig, clientMock);
+    Assert.assertEquals(2, chain.size());
+    Assert.assertEquals("Status Normalizer", chain.getPreprocessors().get(0).getName());
+    Assert.assertEquals("Issue type Normalizer", chain.getPreprocessors().get(1).getName());
+    Assert.assertEquals(clientMock, ((StructuredContentPreprocessorMock) chain.getPreprocessors().get(1)).client);
+  }
+
 }
@@ -0,0 +1,145 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2013 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.jboss.elasticsearch.tools.content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.SettingsException;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ThreadPerDocumentChainExecutor}.
+ *
+ * @author Vlastimil Elias (velias at redhat dot com)
+ */
+public class ThreadPerDocumentChainExecutorTest {
+
+	@Test
+	public void constructor() {
+		PreprocessorChain chain = new PreprocessorChain(null);
+		try {
+			new ThreadPerDocumentChainExecutor(chain, 0);
+			Assert.fail("IllegalArgumentException must be thrown");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		ThreadPerDocumentChainExecutor tested = new ThreadPerDocumentChainExecutor(chain, 3);
+		Assert.assertEquals(chain, tested.getChain());
+		Assert.assertEquals(3, tested.getMaxInFlight());
+		Assert.assertEquals(ThreadPerDocumentChainExecutor.isVirtualThreadsSupported(), tested.isVirtualThreads());
+		tested.shutdown();
+		Assert.assertTrue(tested.executor.isShutdown());
+
+		// case - platform threads forced
+		tested = new ThreadPerDocumentChainExecutor(chain, 3, false);
+		Assert.assertFalse(tested.isVirtualThreads());
+		tested.shutdown();
+	}
+
+	@Test
+	public void processBatch() {
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(PreprocessorChainTest.createAddValuePreprocessor("p1", "field1", "value1"));
+		preprocs.add(PreprocessorChainTest.createRequiredValidatorPreprocessor("p2", "required"));
+		preprocs.add(PreprocessorChainTest.createAddValuePreprocessor("p3", "field3", "value{id}"));
+		ThreadPerDocumentChainExecutor tested = new ThreadPerDocumentChainExecutor(new PreprocessorChain(preprocs), 8);
+		try {
+
+			// case - empty batches
+			Assert.assertTrue(tested.processBatch(null).getDocuments().isEmpty());
+			Assert.assertFalse(tested.processBatch(null).hasFailures());
+			Assert.assertTrue(tested.processBatch(new ArrayList<Map<String, Object>>()).getDocuments().isEmpty());
+
+			// case - order is stable and failures are collected
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			for (int i = 0; i < 500; i++) {
+				Map<String, Object> data = new HashMap<String, Object>();
+				data.put("id", i);
+				if (i % 7 != 0)
+					data.put("required", "yes");
+				batch.add(data);
+			}
+			ChainBatchResult ret = tested.processBatch(batch);
+			Assert.assertEquals(500, ret.getDocuments().size());
+			Assert.assertEquals(72, ret.getFailures().size());
+			for (int i = 0; i < 500; i++) {
+				if (i % 7 == 0) {
+					Assert.assertTrue(ret.isFailed(i));
+					Assert.assertNull(ret.getDocuments().get(i));
+					Assert.assertEquals(InvalidDataException.class, ret.getFailures().get(i).getClass());
+				} else {
+					Assert.assertFalse(ret.isFailed(i));
+					Map<String, Object> doc = ret.getDocuments().get(i);
+					Assert.assertTrue(batch.get(i) == doc);
+					Assert.assertEquals("value1", doc.get("field1"));
+					Assert.assertEquals("value" + i, doc.get("field3"));
+				}
+			}
+			// all permits are returned
+			Assert.assertEquals(8, tested.inFlight.availablePermits());
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+	@Test
+	public void processBatch_inFlightBounded() {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		StructuredContentPreprocessor blocking = new StructuredContentPreprocessorBase() {
+			@Override
+			public void init(Map<String, Object> settings) throws SettingsException {
+			}
+
+			@Override
+			public Map<String, Object> preprocessData(Map<String, Object> data) {
+				int r = running.incrementAndGet();
+				synchronized (maxRunning) {
+					if (r > maxRunning.get())
+						maxRunning.set(r);
+				}
+				try {
+					// simulates blocking lookup
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				return data;
+			}
+		};
+		blocking.init("blocking", (Client) null, null);
+		List<StructuredContentPreprocessor> preprocs = new ArrayList<StructuredContentPreprocessor>();
+		preprocs.add(blocking);
+		ThreadPerDocumentChainExecutor tested = new ThreadPerDocumentChainExecutor(new PreprocessorChain(preprocs), 4);
+		try {
+			List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>();
+			for (int i = 0; i < 40; i++) {
+				batch.add(new HashMap<String, Object>());
+			}
+			long start = System.currentTimeMillis();
+			ChainBatchResult ret = tested.processBatch(batch);
+			long duration = System.currentTimeMillis() - start;
+			Assert.assertEquals(40, ret.getDocuments().size());
+			Assert.assertFalse(ret.hasFailures());
+			Assert.assertTrue("Max running " + maxRunning.get(), maxRunning.get() <= 4);
+			Assert.assertTrue("Max running " + maxRunning.get(), maxRunning.get() > 1);
+			// blocking calls overlap, sequential processing takes 800ms
+			Assert.assertTrue("Duration " + duration, duration < 600);
+		} finally {
+			tested.shutdown();
+		}
+	}
+
+}
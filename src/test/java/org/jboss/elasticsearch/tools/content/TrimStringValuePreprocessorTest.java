@@ -181,6 +181,7 @@ public class TrimStringValuePreprocessorTest {
 		tested.fieldSource = "source";
 		tested.fieldTarget = "target";
 		tested.maxSize = 5;
+		tested.compileConfiguration();
 
 		// case - not NPE
 		tested.preprocessData(null);
@@ -253,6 +254,7 @@ public class TrimStringValuePreprocessorTest {
 			tested.fieldSource = "my_field.level1.level2";
 			tested.fieldTarget = "my_field.level21.level22";
 			tested.maxSize = 3;
+			tested.compileConfiguration();
 			Map<String, Object> values = new HashMap<String, Object>();
 			StructureUtils.putValueIntoMapOfMaps(values, tested.fieldSource, "   Value   ");
 			tested.preprocessData(values);
@@ -269,6 +271,7 @@ public class TrimStringValuePreprocessorTest {
 		tested.fieldTarget = "target";
 		tested.maxSize = 3;
 		tested.sourceBases = Arrays.asList(new String[] { "author", "editor", "comments" });
+		tested.compileConfiguration();
 
 		// case - test it
 		{
@@ -309,4 +312,25 @@ public class TrimStringValuePreprocessorTest {
 		Assert.assertEquals(target, data.get("target"));
 	}
 
+	@Test
+	public void getFieldAccess() {
+		TrimStringValuePreprocessor tested = new TrimStringValuePreprocessor();
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(TrimStringValuePreprocessor.CFG_SOURCE_FIELD, "source");
+		settings.put(TrimStringValuePreprocessor.CFG_TARGET_FIELD, "target.value");
+		settings.put(TrimStringValuePreprocessor.CFG_MAX_SIZE, 3);
+
+		// case - no bases
+		tested.init("Test", null, settings);
+		Assert.assertEquals("[source]", tested.getFieldAccess().getReadFields().toString());
+		Assert.assertEquals("[target.value]", tested.getFieldAccess().getWrittenFields().toString());
+
+		// case - bases
+		settings.put(TrimStringValuePreprocessor.CFG_source_bases, Arrays.asList(new String[] { "author", "comments" }));
+		tested.init("Test", null, settings);
+		Assert.assertEquals("[author.source, comments.source]", tested.getFieldAccess().getReadFields().toString());
+		Assert.assertEquals("[author.target.value, comments.target.value]", tested.getFieldAccess().getWrittenFields()
+				.toString());
+	}
+
 }
@@ -165,6 +165,7 @@ public class ValuesCollectingPreprocessorTest {
 			al2.add(newMapWithFiled("id", "ca2"));
 
 			tested.fieldTarget = "target.level1";
+			tested.compileConfiguration();
 
 			tested.preprocessData(values);
 			List<Object> vals = (List<Object>) XContentMapValues.extractValue(tested.fieldTarget, values);